@@ -89,17 +89,31 @@ public abstract class BaseRuntimeElementCompositeDefinition<T extends IBase> ext
 		myClassToElementDefinitions = theClassToElementDefinitions;
 		
 		/*
-		 * We scan classes for annotated fields in the class but also all of its superclasses
+		 * We scan classes for annotated fields in the class but also all of its superclasses. Where
+		 * metadata was generated for a class at build time, it is used instead of the annotations.
 		 */
 		Class<? extends IBase> current = theImplementingClass;
 		LinkedList<Class<? extends IBase>> classes = new LinkedList<>();
+		Map<Class<? extends IBase>, GeneratedModelMetadata> classToGeneratedMetadata = new HashMap<>();
 		do {
+			GeneratedModelMetadata generatedMetadata = GeneratedModelMetadata.forClass(current);
+			if (generatedMetadata != null) {
+				classToGeneratedMetadata.put(current, generatedMetadata);
+			}
 			if (forcedOrder == null) {
-				ChildOrder childOrder = current.getAnnotation(ChildOrder.class);
-				if (childOrder != null) {
+				String[] childOrderNames = null;
+				if (generatedMetadata != null) {
+					childOrderNames = generatedMetadata.getChildOrder();
+				} else {
+					ChildOrder childOrder = current.getAnnotation(ChildOrder.class);
+					if (childOrder != null) {
+						childOrderNames = childOrder.names();
+					}
+				}
+				if (childOrderNames != null) {
 					forcedOrder = new HashMap<>();
-					for (int i = 0; i < childOrder.names().length; i++) {
-						String nextName = childOrder.names()[i];
+					for (int i = 0; i < childOrderNames.length; i++) {
+						String nextName = childOrderNames[i];
 						if (nextName.endsWith("[x]")) {
 							nextName = nextName.substring(0, nextName.length() - 3);
 						}
@@ -118,6 +132,14 @@ public abstract class BaseRuntimeElementCompositeDefinition<T extends IBase> ext
 		Set<Field> fields = new HashSet<>();
 		for (Class<? extends IBase> nextClass : classes) {
 			int fieldIndexInClass = 0;
+			GeneratedModelMetadata generatedMetadata = classToGeneratedMetadata.get(nextClass);
+			if (generatedMetadata != null) {
+				for (GeneratedModelMetadata.ChildField next : generatedMetadata.getChildFields()) {
+					myScannedFields.add(new ScannedField(next, fieldIndexInClass == 0));
+					fieldIndexInClass++;
+				}
+				continue;
+			}
 			for (Field next : nextClass.getDeclaredFields()) {
 				if (fields.add(next)) {
 					ScannedField scannedField = new ScannedField(next, theImplementingClass, fieldIndexInClass == 0);
@@ -249,10 +271,10 @@ public abstract class BaseRuntimeElementCompositeDefinition<T extends IBase> ext
 			
 			Class<?> declaringClass = next.getField().getDeclaringClass(); 
 
-			Description descriptionAnnotation = ModelScanner.pullAnnotation(next.getField(), Description.class);
+			Description descriptionAnnotation = next.getDescriptionAnnotation();
 
 			TreeMap<Integer, BaseRuntimeDeclaredChildDefinition> orderMap = theOrderToElementDef;
-			Extension extensionAttr = ModelScanner.pullAnnotation(next.getField(), Extension.class);
+			Extension extensionAttr = next.getExtensionAnnotation();
 			if (extensionAttr != null) {
 				orderMap = theOrderToExtensionDef;
 			}
@@ -441,7 +463,7 @@ public abstract class BaseRuntimeElementCompositeDefinition<T extends IBase> ext
 					throw new ConfigurationException("Field '" + elementName + "' in type '" + declaringClass.getCanonicalName() + "' is not a valid child type: " + nextElementType);
 				}
 
-				Binding bindingAnnotation = ModelScanner.pullAnnotation(nextField, Binding.class);
+				Binding bindingAnnotation = next.getBindingAnnotation();
 				if (bindingAnnotation != null) {
 					if (isNotBlank(bindingAnnotation.valueSet())) {
 						def.setBindingValueSet(bindingAnnotation.valueSet());
@@ -552,10 +574,13 @@ public abstract class BaseRuntimeElementCompositeDefinition<T extends IBase> ext
 	}
 
 	private static class ScannedField {
+		private Binding myBindingAnnotation;
 		private Child myChildAnnotation;
 
 		private List<Class<? extends IBase>> myChoiceTypes = new ArrayList<>();
+		private Description myDescriptionAnnotation;
 		private Class<?> myElementType;
+		private Extension myExtensionAnnotation;
 		private Field myField;
 		private boolean myFirstFieldInNewClass;
 		ScannedField(Field theField, Class<?> theClass, boolean theFirstFieldInNewClass) {
@@ -573,15 +598,42 @@ public abstract class BaseRuntimeElementCompositeDefinition<T extends IBase> ext
 			}
 			
 			myChildAnnotation = childAnnotation;
+			myDescriptionAnnotation = ModelScanner.pullAnnotation(theField, Description.class);
+			myExtensionAnnotation = ModelScanner.pullAnnotation(theField, Extension.class);
+			myBindingAnnotation = ModelScanner.pullAnnotation(theField, Binding.class);
 			myElementType = ModelScanner.determineElementType(theField);
 
 			Collections.addAll(myChoiceTypes, childAnnotation.type());
 		}
-		
+
+		ScannedField(GeneratedModelMetadata.ChildField theChildField, boolean theFirstFieldInNewClass) {
+			myField = theChildField.getField();
+			myFirstFieldInNewClass = theFirstFieldInNewClass;
+			myChildAnnotation = theChildField.getChild();
+			myDescriptionAnnotation = theChildField.getDescription();
+			myExtensionAnnotation = theChildField.getExtension();
+			myBindingAnnotation = theChildField.getBinding();
+			myElementType = theChildField.getElementType();
+
+			Collections.addAll(myChoiceTypes, myChildAnnotation.type());
+		}
+
+		public Binding getBindingAnnotation() {
+			return myBindingAnnotation;
+		}
+
 		public Child getChildAnnotation() {
 			return myChildAnnotation;
 		}
 
+		public Description getDescriptionAnnotation() {
+			return myDescriptionAnnotation;
+		}
+
+		public Extension getExtensionAnnotation() {
+			return myExtensionAnnotation;
+		}
+
 		public List<Class<? extends IBase>> getChoiceTypes() {
 			return myChoiceTypes;
 		}
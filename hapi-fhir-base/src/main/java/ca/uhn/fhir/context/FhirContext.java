@@ -87,7 +87,7 @@ public class FhirContext {
 	private HapiLocalizer myLocalizer = new HapiLocalizer();
 	private volatile Map<String, BaseRuntimeElementDefinition<?>> myNameToElementDefinition = Collections.emptyMap();
 	private volatile Map<String, RuntimeResourceDefinition> myNameToResourceDefinition = Collections.emptyMap();
-	private volatile Map<String, Class<? extends IBaseResource>> myNameToResourceType;
+	private volatile Map<String, String> myNameToResourceTypeName;
 	private volatile INarrativeGenerator myNarrativeGenerator;
 	private volatile IParserErrorHandler myParserErrorHandler = new LenientErrorHandler();
 	private ParserOptions myParserOptions = new ParserOptions();
@@ -95,8 +95,9 @@ public class FhirContext {
 	private Collection<Class<? extends IBaseResource>> myResourceTypesToScan;
 	private volatile IRestfulClientFactory myRestfulClientFactory;
 	private volatile RuntimeChildUndeclaredExtensionDefinition myRuntimeChildUndeclaredExtensionDefinition;
+	private volatile FhirTerser myTerser;
 	private IContextValidationSupport<?, ?, ?, ?, ?, ?> myValidationSupport;
-	private Map<FhirVersionEnum, Map<String, Class<? extends IBaseResource>>> myVersionToNameToResourceType = Collections.emptyMap();
+	private Map<FhirVersionEnum, Map<String, String>> myVersionToNameToResourceTypeName = Collections.emptyMap();
 
 	/**
 	 * @deprecated It is recommended that you use one of the static initializer methods instead
@@ -396,24 +397,24 @@ public class FhirContext {
 			return getResourceDefinition(theResourceName);
 		}
 
-		Map<String, Class<? extends IBaseResource>> nameToType = myVersionToNameToResourceType.get(theVersion);
-		if (nameToType == null) {
-			nameToType = new HashMap<>();
+		Map<String, String> nameToTypeName = myVersionToNameToResourceTypeName.get(theVersion);
+		if (nameToTypeName == null) {
+			nameToTypeName = new HashMap<>();
 			Map<Class<? extends IBase>, BaseRuntimeElementDefinition<?>> existing = new HashMap<>();
-			ModelScanner.scanVersionPropertyFile(null, nameToType, theVersion, existing);
+			ModelScanner.scanVersionPropertyFile(null, nameToTypeName, theVersion, existing);
 
-			Map<FhirVersionEnum, Map<String, Class<? extends IBaseResource>>> newVersionToNameToResourceType = new HashMap<>();
-			newVersionToNameToResourceType.putAll(myVersionToNameToResourceType);
-			newVersionToNameToResourceType.put(theVersion, nameToType);
-			myVersionToNameToResourceType = newVersionToNameToResourceType;
+			Map<FhirVersionEnum, Map<String, String>> newVersionToNameToResourceTypeName = new HashMap<>();
+			newVersionToNameToResourceTypeName.putAll(myVersionToNameToResourceTypeName);
+			newVersionToNameToResourceTypeName.put(theVersion, nameToTypeName);
+			myVersionToNameToResourceTypeName = newVersionToNameToResourceTypeName;
 		}
 
-		Class<? extends IBaseResource> resourceType = nameToType.get(theResourceName.toLowerCase());
-		if (resourceType == null) {
+		String resourceTypeName = nameToTypeName.get(theResourceName.toLowerCase());
+		if (resourceTypeName == null) {
 			throw new DataFormatException(createUnknownResourceNameError(theResourceName, theVersion));
 		}
 
-		return getResourceDefinition(resourceType);
+		return getResourceDefinition(ModelScanner.toResourceType(theResourceName, resourceTypeName));
 	}
 
 	/**
@@ -443,17 +444,15 @@ public class FhirContext {
 		RuntimeResourceDefinition retVal = myNameToResourceDefinition.get(resourceName);
 
 		if (retVal == null) {
-			Class<? extends IBaseResource> clazz = myNameToResourceType.get(resourceName.toLowerCase());
-			if (clazz == null) {
+			String className = myNameToResourceTypeName.get(resourceName);
+			if (className == null) {
 				// ***********************************************************************
 				// Multiple spots in HAPI FHIR and Smile CDR depend on DataFormatException
 				// being thrown by this method, don't change that.
 				// ***********************************************************************
 				throw new DataFormatException(createUnknownResourceNameError(theResourceName, myVersion.getVersion()));
 			}
-			if (IBaseResource.class.isAssignableFrom(clazz)) {
-				retVal = scanResourceType(clazz);
-			}
+			retVal = scanResourceType(ModelScanner.toResourceType(theResourceName, className));
 		}
 
 		return retVal;
@@ -678,8 +677,17 @@ public class FhirContext {
 		return getRestfulClientFactory().newGenericClient(theServerBase);
 	}
 
+	/**
+	 * Returns a terser for this context. The terser is thread safe, so the same instance
+	 * is returned every time, which lets it reuse the paths it has already compiled.
+	 */
 	public FhirTerser newTerser() {
-		return new FhirTerser(this);
+		FhirTerser retVal = myTerser;
+		if (retVal == null) {
+			retVal = new FhirTerser(this);
+			myTerser = retVal;
+		}
+		return retVal;
 	}
 
 	/**
@@ -820,7 +828,7 @@ public class FhirContext {
 		myIdToResourceDefinition = idToElementDefinition;
 		myNameToResourceDefinition = nameToResourceDefinition;
 
-		myNameToResourceType = scanner.getNameToResourceType();
+		myNameToResourceTypeName = scanner.getNameToResourceTypeName();
 
 		myInitialized = true;
 		return classToElementDefinition;
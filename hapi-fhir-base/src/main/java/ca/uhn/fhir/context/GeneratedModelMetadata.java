@@ -0,0 +1,440 @@
+package ca.uhn.fhir.context;
+
+/*
+ * #%L
+ * HAPI FHIR - Core Library
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.model.api.IElement;
+import ca.uhn.fhir.model.api.annotation.Binding;
+import ca.uhn.fhir.model.api.annotation.Child;
+import ca.uhn.fhir.model.api.annotation.ChildOrder;
+import ca.uhn.fhir.model.api.annotation.Description;
+import ca.uhn.fhir.model.api.annotation.Extension;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * The children of a model class, as declared by the {@link Child}, {@link Description}, {@link Extension},
+ * {@link Binding} and {@link ChildOrder} annotations on the class. This is generated at build time by
+ * {@link ModelMetadataGenerator}, so that a {@link FhirContext} scanning the class doesn't need to read these
+ * annotations by reflection. Only the {@link Field} handles are resolved at runtime.
+ * <p>
+ * The metadata for a class is stored in a properties file in the package of the class, named after the class
+ * (e.g. <code>Patient$ContactComponent.hapimodel.properties</code>). Classes without this file, such as custom
+ * types, are scanned by reflection as before. So are classes whose declared fields don't match the ones
+ * recorded in the file, e.g. because a different version of the model classes is on the classpath.
+ * </p>
+ */
+class GeneratedModelMetadata {
+
+	static final String FILE_SUFFIX = ".hapimodel.properties";
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(GeneratedModelMetadata.class);
+	private static final String CHILD_FIELDS = "childFields";
+	private static final String CHILD_ORDER = "childOrder";
+	private static final String DECLARED_FIELDS = "declaredFields";
+
+	private final List<ChildField> myChildFields;
+	private final String[] myChildOrder;
+
+	private GeneratedModelMetadata(String[] theChildOrder, List<ChildField> theChildFields) {
+		myChildOrder = theChildOrder;
+		myChildFields = Collections.unmodifiableList(theChildFields);
+	}
+
+	/**
+	 * Returns the fields declared by the class which have a {@link Child} annotation, in declaration order
+	 */
+	List<ChildField> getChildFields() {
+		return myChildFields;
+	}
+
+	/**
+	 * Returns the names in the {@link ChildOrder} annotation of the class, or <code>null</code> if it has none
+	 */
+	String[] getChildOrder() {
+		return myChildOrder;
+	}
+
+	static String getFileName(Class<?> theClass) {
+		String name = theClass.getName();
+		return name.substring(name.lastIndexOf('.') + 1) + FILE_SUFFIX;
+	}
+
+	/**
+	 * Loads the generated metadata for the given class
+	 *
+	 * @return Returns <code>null</code> if no metadata was generated for the class, or if it doesn't match the class
+	 */
+	static GeneratedModelMetadata forClass(Class<?> theClass) {
+		Properties properties = new Properties();
+		try (InputStream stream = theClass.getResourceAsStream(getFileName(theClass))) {
+			if (stream == null) {
+				return null;
+			}
+			properties.load(stream);
+		} catch (IOException e) {
+			ourLog.warn("Failed to load generated model metadata for {}: {}", theClass.getName(), e.toString());
+			return null;
+		}
+
+		Field[] declaredFields = getDeclaredFields(theClass);
+		if (!toFieldNames(declaredFields).equals(properties.getProperty(DECLARED_FIELDS))) {
+			ourLog.debug("Ignoring generated model metadata for {} as the declared fields don't match", theClass.getName());
+			return null;
+		}
+		Map<String, Field> nameToField = new HashMap<>();
+		for (Field next : declaredFields) {
+			nameToField.put(next.getName(), next);
+		}
+
+		List<ChildField> childFields = new ArrayList<>();
+		try {
+			for (String nextName : StringUtils.split(properties.getProperty(CHILD_FIELDS, ""), ',')) {
+				Field field = nameToField.get(nextName);
+				if (field == null) {
+					throw new ConfigurationException("Unknown field: " + nextName);
+				}
+				childFields.add(toChildField(field, properties, theClass.getClassLoader()));
+			}
+		} catch (ClassNotFoundException | RuntimeException e) {
+			ourLog.debug("Ignoring invalid generated model metadata for {}: {}", theClass.getName(), e.toString());
+			return null;
+		}
+
+		String childOrder = properties.getProperty(CHILD_ORDER);
+		return new GeneratedModelMetadata(childOrder != null ? StringUtils.split(childOrder, ',') : null, childFields);
+	}
+
+	/**
+	 * Reads the annotations of the given class into the properties which are loaded by {@link #forClass(Class)}
+	 */
+	static Properties toProperties(Class<?> theClass) {
+		Properties retVal = new Properties();
+
+		Field[] declaredFields = getDeclaredFields(theClass);
+		retVal.setProperty(DECLARED_FIELDS, toFieldNames(declaredFields));
+
+		ChildOrder childOrder = theClass.getAnnotation(ChildOrder.class);
+		if (childOrder != null) {
+			retVal.setProperty(CHILD_ORDER, String.join(",", childOrder.names()));
+		}
+
+		List<String> childFieldNames = new ArrayList<>();
+		for (Field next : declaredFields) {
+			Child child = next.getAnnotation(Child.class);
+			if (child == null || Modifier.isFinal(next.getModifiers())) {
+				continue;
+			}
+			childFieldNames.add(next.getName());
+
+			String prefix = next.getName() + ".";
+			retVal.setProperty(prefix + "name", child.name());
+			retVal.setProperty(prefix + "order", Integer.toString(child.order()));
+			retVal.setProperty(prefix + "min", Integer.toString(child.min()));
+			retVal.setProperty(prefix + "max", Integer.toString(child.max()));
+			retVal.setProperty(prefix + "modifier", Boolean.toString(child.modifier()));
+			retVal.setProperty(prefix + "summary", Boolean.toString(child.summary()));
+			List<String> typeNames = new ArrayList<>();
+			for (Class<?> nextType : child.type()) {
+				typeNames.add(nextType.getName());
+			}
+			retVal.setProperty(prefix + "type", String.join(",", typeNames));
+			retVal.setProperty(prefix + "elementType", ModelScanner.determineElementType(next).getName());
+
+			Description description = next.getAnnotation(Description.class);
+			if (description != null) {
+				retVal.setProperty(prefix + "shortDefinition", description.shortDefinition());
+				retVal.setProperty(prefix + "formalDefinition", description.formalDefinition());
+			}
+			Extension extension = next.getAnnotation(Extension.class);
+			if (extension != null) {
+				retVal.setProperty(prefix + "extension.url", extension.url());
+				retVal.setProperty(prefix + "extension.definedLocally", Boolean.toString(extension.definedLocally()));
+				retVal.setProperty(prefix + "extension.isModifier", Boolean.toString(extension.isModifier()));
+			}
+			Binding binding = next.getAnnotation(Binding.class);
+			if (binding != null) {
+				retVal.setProperty(prefix + "binding", binding.valueSet());
+			}
+		}
+		retVal.setProperty(CHILD_FIELDS, String.join(",", childFieldNames));
+
+		return retVal;
+	}
+
+	private static Field[] getDeclaredFields(Class<?> theClass) {
+		// Synthetic fields may be added by tools such as code coverage agents
+		List<Field> retVal = new ArrayList<>();
+		for (Field next : theClass.getDeclaredFields()) {
+			if (!next.isSynthetic()) {
+				retVal.add(next);
+			}
+		}
+		return retVal.toArray(new Field[0]);
+	}
+
+	private static Class<?> loadClass(String theName, ClassLoader theClassLoader) throws ClassNotFoundException {
+		return Class.forName(theName, false, theClassLoader);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static ChildField toChildField(Field theField, Properties theProperties, ClassLoader theClassLoader) throws ClassNotFoundException {
+		String prefix = theField.getName() + ".";
+
+		String[] typeNames = StringUtils.split(theProperties.getProperty(prefix + "type", ""), ',');
+		Class<? extends IElement>[] types = (Class<? extends IElement>[]) new Class<?>[typeNames.length];
+		for (int i = 0; i < typeNames.length; i++) {
+			types[i] = (Class<? extends IElement>) loadClass(typeNames[i], theClassLoader);
+		}
+		Child child = new ChildImpl(
+			theProperties.getProperty(prefix + "name"),
+			Integer.parseInt(theProperties.getProperty(prefix + "order")),
+			Integer.parseInt(theProperties.getProperty(prefix + "min")),
+			Integer.parseInt(theProperties.getProperty(prefix + "max")),
+			types,
+			Boolean.parseBoolean(theProperties.getProperty(prefix + "modifier")),
+			Boolean.parseBoolean(theProperties.getProperty(prefix + "summary")));
+		if (child.name() == null) {
+			throw new ConfigurationException("No name for field: " + theField.getName());
+		}
+
+		Description description = null;
+		if (theProperties.containsKey(prefix + "shortDefinition")) {
+			description = new DescriptionImpl(theProperties.getProperty(prefix + "shortDefinition"), theProperties.getProperty(prefix + "formalDefinition", ""));
+		}
+		Extension extension = null;
+		if (theProperties.containsKey(prefix + "extension.url")) {
+			extension = new ExtensionImpl(
+				theProperties.getProperty(prefix + "extension.url"),
+				Boolean.parseBoolean(theProperties.getProperty(prefix + "extension.definedLocally")),
+				Boolean.parseBoolean(theProperties.getProperty(prefix + "extension.isModifier")));
+		}
+		Binding binding = null;
+		if (theProperties.containsKey(prefix + "binding")) {
+			binding = new BindingImpl(theProperties.getProperty(prefix + "binding"));
+		}
+
+		Class<?> elementType = loadClass(theProperties.getProperty(prefix + "elementType"), theClassLoader);
+		return new ChildField(theField, child, description, extension, binding, elementType);
+	}
+
+	private static String toFieldNames(Field[] theFields) {
+		List<String> retVal = new ArrayList<>();
+		for (Field next : theFields) {
+			retVal.add(next.getName());
+		}
+		return String.join(",", retVal);
+	}
+
+	/**
+	 * A field with a {@link Child} annotation, along with its other annotations (which are <code>null</code> if
+	 * the field doesn't have them)
+	 */
+	static class ChildField {
+		private final Binding myBinding;
+		private final Child myChild;
+		private final Description myDescription;
+		private final Class<?> myElementType;
+		private final Extension myExtension;
+		private final Field myField;
+
+		ChildField(Field theField, Child theChild, Description theDescription, Extension theExtension, Binding theBinding, Class<?> theElementType) {
+			myField = theField;
+			myChild = theChild;
+			myDescription = theDescription;
+			myExtension = theExtension;
+			myBinding = theBinding;
+			myElementType = theElementType;
+		}
+
+		Binding getBinding() {
+			return myBinding;
+		}
+
+		Child getChild() {
+			return myChild;
+		}
+
+		Description getDescription() {
+			return myDescription;
+		}
+
+		/**
+		 * The type of the field, or of its elements if it is a {@link List}
+		 */
+		Class<?> getElementType() {
+			return myElementType;
+		}
+
+		Extension getExtension() {
+			return myExtension;
+		}
+
+		Field getField() {
+			return myField;
+		}
+	}
+
+	private static class BindingImpl implements Binding {
+		private final String myValueSet;
+
+		BindingImpl(String theValueSet) {
+			myValueSet = theValueSet;
+		}
+
+		@Override
+		public Class<? extends Annotation> annotationType() {
+			return Binding.class;
+		}
+
+		@Override
+		public String valueSet() {
+			return myValueSet;
+		}
+	}
+
+	private static class ChildImpl implements Child {
+		private final int myMax;
+		private final int myMin;
+		private final boolean myModifier;
+		private final String myName;
+		private final int myOrder;
+		private final boolean mySummary;
+		private final Class<? extends IElement>[] myType;
+
+		ChildImpl(String theName, int theOrder, int theMin, int theMax, Class<? extends IElement>[] theType, boolean theModifier, boolean theSummary) {
+			myName = theName;
+			myOrder = theOrder;
+			myMin = theMin;
+			myMax = theMax;
+			myType = theType;
+			myModifier = theModifier;
+			mySummary = theSummary;
+		}
+
+		@Override
+		public Class<? extends Annotation> annotationType() {
+			return Child.class;
+		}
+
+		@Override
+		public int max() {
+			return myMax;
+		}
+
+		@Override
+		public int min() {
+			return myMin;
+		}
+
+		@Override
+		public boolean modifier() {
+			return myModifier;
+		}
+
+		@Override
+		public String name() {
+			return myName;
+		}
+
+		@Override
+		public int order() {
+			return myOrder;
+		}
+
+		@Override
+		public boolean summary() {
+			return mySummary;
+		}
+
+		@Override
+		public Class<? extends IElement>[] type() {
+			return myType.clone();
+		}
+	}
+
+	private static class DescriptionImpl implements Description {
+		private final String myFormalDefinition;
+		private final String myShortDefinition;
+
+		DescriptionImpl(String theShortDefinition, String theFormalDefinition) {
+			myShortDefinition = theShortDefinition;
+			myFormalDefinition = theFormalDefinition;
+		}
+
+		@Override
+		public Class<? extends Annotation> annotationType() {
+			return Description.class;
+		}
+
+		@Override
+		public String formalDefinition() {
+			return myFormalDefinition;
+		}
+
+		@Override
+		public String shortDefinition() {
+			return myShortDefinition;
+		}
+	}
+
+	private static class ExtensionImpl implements Extension {
+		private final boolean myDefinedLocally;
+		private final boolean myModifier;
+		private final String myUrl;
+
+		ExtensionImpl(String theUrl, boolean theDefinedLocally, boolean theModifier) {
+			myUrl = theUrl;
+			myDefinedLocally = theDefinedLocally;
+			myModifier = theModifier;
+		}
+
+		@Override
+		public Class<? extends Annotation> annotationType() {
+			return Extension.class;
+		}
+
+		@Override
+		public boolean definedLocally() {
+			return myDefinedLocally;
+		}
+
+		@Override
+		public boolean isModifier() {
+			return myModifier;
+		}
+
+		@Override
+		public String url() {
+			return myUrl;
+		}
+	}
+
+}
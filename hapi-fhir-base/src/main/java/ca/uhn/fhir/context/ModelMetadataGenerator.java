@@ -0,0 +1,104 @@
+package ca.uhn.fhir.context;
+
+/*
+ * #%L
+ * HAPI FHIR - Core Library
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.model.api.annotation.Child;
+import org.hl7.fhir.instance.model.api.IBase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+/**
+ * Generates the {@link GeneratedModelMetadata} files for the model classes of a FHIR version. This is run at
+ * build time by the structures module of the version, once the classes are on its compile classpath.
+ * <p>
+ * Usage: <code>ModelMetadataGenerator [FHIR version] [model package] [output directory]</code>, e.g.
+ * <code>ModelMetadataGenerator R4 org.hl7.fhir.r4.model target/classes</code>. Files are written for every
+ * class in the model package which is reachable from the resources and datatypes listed in the version property
+ * file, including the superclasses and the block (component) classes of each.
+ * </p>
+ */
+public class ModelMetadataGenerator {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(ModelMetadataGenerator.class);
+
+	public static void main(String[] theArgs) throws IOException {
+		if (theArgs.length != 3) {
+			throw new IllegalArgumentException("Usage: " + ModelMetadataGenerator.class.getSimpleName() + " [FHIR version] [model package] [output directory]");
+		}
+		FhirVersionEnum version = FhirVersionEnum.valueOf(theArgs[0]);
+		String modelPackage = theArgs[1];
+		File outputDirectory = new File(theArgs[2], modelPackage.replace('.', '/'));
+
+		int count = generate(version, modelPackage, outputDirectory);
+		ourLog.info("Wrote model metadata for {} classes in package {} to {}", count, modelPackage, outputDirectory);
+	}
+
+	static int generate(FhirVersionEnum theVersion, String theModelPackage, File theOutputDirectory) throws IOException {
+		Set<Class<? extends IBase>> datatypes = new HashSet<>();
+		Map<String, String> resourceTypeNames = new HashMap<>();
+		ModelScanner.scanVersionPropertyFile(datatypes, resourceTypeNames, theVersion, new HashMap<>());
+
+		Deque<Class<?>> toVisit = new ArrayDeque<>(datatypes);
+		for (Map.Entry<String, String> next : resourceTypeNames.entrySet()) {
+			toVisit.add(ModelScanner.toResourceType(next.getKey(), next.getValue()));
+		}
+
+		if (!theOutputDirectory.isDirectory() && !theOutputDirectory.mkdirs()) {
+			throw new IOException("Failed to create directory: " + theOutputDirectory);
+		}
+
+		Set<Class<?>> visited = new HashSet<>();
+		int retVal = 0;
+		while (!toVisit.isEmpty()) {
+			Class<?> next = toVisit.pop();
+			if (!IBase.class.isAssignableFrom(next) || !visited.add(next)) {
+				continue;
+			}
+
+			if (next.getSuperclass() != null) {
+				toVisit.add(next.getSuperclass());
+			}
+			for (Field nextField : next.getDeclaredFields()) {
+				Child child = nextField.getAnnotation(Child.class);
+				if (child != null && !Modifier.isFinal(nextField.getModifiers())) {
+					toVisit.add(ModelScanner.determineElementType(nextField));
+					Collections.addAll(toVisit, child.type());
+				}
+			}
+
+			if (next.getName().substring(0, next.getName().lastIndexOf('.')).equals(theModelPackage)) {
+				File file = new File(theOutputDirectory, GeneratedModelMetadata.getFileName(next));
+				try (OutputStream stream = new FileOutputStream(file)) {
+					GeneratedModelMetadata.toProperties(next).store(stream, null);
+				}
+				retVal++;
+			}
+		}
+		return retVal;
+	}
+
+}
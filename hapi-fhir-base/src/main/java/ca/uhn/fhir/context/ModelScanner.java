@@ -38,18 +38,20 @@ import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.apache.commons.lang3.StringUtils.isBlank;
 
 class ModelScanner {
 	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(ModelScanner.class);
+	private static final Map<FhirVersionEnum, Map<String, String>> ourVersionPropertyFiles = new ConcurrentHashMap<FhirVersionEnum, Map<String, String>>();
 
 	private Map<Class<? extends IBase>, BaseRuntimeElementDefinition<?>> myClassToElementDefinitions = new HashMap<Class<? extends IBase>, BaseRuntimeElementDefinition<?>>();
 	private FhirContext myContext;
 	private Map<String, RuntimeResourceDefinition> myIdToResourceDefinition = new HashMap<String, RuntimeResourceDefinition>();
 	private Map<String, BaseRuntimeElementDefinition<?>> myNameToElementDefinitions = new HashMap<String, BaseRuntimeElementDefinition<?>>();
 	private Map<String, RuntimeResourceDefinition> myNameToResourceDefinitions = new HashMap<String, RuntimeResourceDefinition>();
-	private Map<String, Class<? extends IBaseResource>> myNameToResourceType = new HashMap<String, Class<? extends IBaseResource>>();
+	private Map<String, String> myNameToResourceTypeName = new HashMap<String, String>();
 	private RuntimeChildUndeclaredExtensionDefinition myRuntimeChildUndeclaredExtensionDefinition;
 	private Set<Class<? extends IBase>> myScanAlso = new HashSet<Class<? extends IBase>>();
 	private FhirVersionEnum myVersion;
@@ -89,8 +91,13 @@ class ModelScanner {
 		return (myNameToResourceDefinitions);
 	}
 
-	public Map<String, Class<? extends IBaseResource>> getNameToResourceType() {
-		return myNameToResourceType;
+	/**
+	 * Returns the built-in resource types for this version, keyed by lowercase resource name. The values
+	 * are class names rather than classes so that resource classes are only loaded once they are actually
+	 * used (see {@link #toResourceType(String, String)}).
+	 */
+	public Map<String, String> getNameToResourceTypeName() {
+		return myNameToResourceTypeName;
 	}
 
 	public RuntimeChildUndeclaredExtensionDefinition getRuntimeChildUndeclaredExtensionDefinition() {
@@ -104,7 +111,7 @@ class ModelScanner {
 
 		int startSize = myClassToElementDefinitions.size();
 		long start = System.currentTimeMillis();
-		Map<String, Class<? extends IBaseResource>> resourceTypes = myNameToResourceType;
+		Map<String, String> resourceTypes = myNameToResourceTypeName;
 
 		Set<Class<? extends IBase>> typesToScan = theTypesToScan;
 		myVersionTypes = scanVersionPropertyFile(typesToScan, resourceTypes, myVersion, myClassToElementDefinitions);
@@ -301,10 +308,10 @@ class ModelScanner {
 		}
 
 		String resourceNameLowerCase = resourceName.toLowerCase();
-		Class<? extends IBaseResource> builtInType = myNameToResourceType.get(resourceNameLowerCase);
-		boolean standardType = builtInType != null && builtInType.equals(theClass) == true;
+		String builtInTypeName = myNameToResourceTypeName.get(resourceNameLowerCase);
+		boolean standardType = builtInTypeName != null && builtInTypeName.equals(theClass.getName()) == true;
 		if (primaryNameProvider) {
-			if (builtInType != null && builtInType.equals(theClass) == false) {
+			if (builtInTypeName != null && builtInTypeName.equals(theClass.getName()) == false) {
 				primaryNameProvider = false;
 			}
 		}
@@ -485,71 +492,98 @@ class ModelScanner {
 		return type;
 	}
 
-	static Set<Class<? extends IBase>> scanVersionPropertyFile(Set<Class<? extends IBase>> theDatatypes, Map<String, Class<? extends IBaseResource>> theResourceTypes, FhirVersionEnum theVersion, Map<Class<? extends IBase>, BaseRuntimeElementDefinition<?>> theExistingElementDefinitions) {
+	/**
+	 * Reads the model property file for the given version. Datatype classes are loaded immediately since they
+	 * are always scanned, but resource classes are only recorded by name: loading and initializing every
+	 * resource class (and all of its static search parameter constants) is a large part of the startup
+	 * cost of a context, and most applications only ever touch a handful of resource types.
+	 */
+	static Set<Class<? extends IBase>> scanVersionPropertyFile(Set<Class<? extends IBase>> theDatatypes, Map<String, String> theResourceTypeNames, FhirVersionEnum theVersion, Map<Class<? extends IBase>, BaseRuntimeElementDefinition<?>> theExistingElementDefinitions) {
 		Set<Class<? extends IBase>> retVal = new HashSet<Class<? extends IBase>>();
 
-		try (InputStream str = theVersion.getVersionImplementation().getFhirVersionPropertiesFile()) {
-			Properties prop = new Properties();
-			prop.load(str);
-			for (Entry<Object, Object> nextEntry : prop.entrySet()) {
-				String nextKey = nextEntry.getKey().toString();
-				String nextValue = nextEntry.getValue().toString();
+		for (Entry<String, String> nextEntry : loadVersionPropertyFile(theVersion).entrySet()) {
+			String nextKey = nextEntry.getKey();
+			String nextValue = nextEntry.getValue();
 
-				if (nextKey.startsWith("datatype.")) {
-					if (theDatatypes != null) {
-						try {
-							// Datatypes
-
-							@SuppressWarnings("unchecked")
-							Class<? extends IBase> dtType = (Class<? extends IBase>) Class.forName(nextValue);
-							if (theExistingElementDefinitions.containsKey(dtType)) {
-								continue;
-							}
-							retVal.add(dtType);
-
-							if (IElement.class.isAssignableFrom(dtType)) {
-								@SuppressWarnings("unchecked")
-								Class<? extends IElement> nextClass = (Class<? extends IElement>) dtType;
-								theDatatypes.add(nextClass);
-							} else if (IBaseDatatype.class.isAssignableFrom(dtType)) {
-								@SuppressWarnings("unchecked")
-								Class<? extends IBaseDatatype> nextClass = (Class<? extends IBaseDatatype>) dtType;
-								theDatatypes.add(nextClass);
-							} else {
-								ourLog.warn("Class is not assignable from " + IElement.class.getSimpleName() + " or " + IBaseDatatype.class.getSimpleName() + ": " + nextValue);
-								continue;
-							}
-
-						} catch (ClassNotFoundException e) {
-							throw new ConfigurationException("Unknown class[" + nextValue + "] for data type definition: " + nextKey.substring("datatype.".length()), e);
-						}
-					}
-				} else if (nextKey.startsWith("resource.")) {
-					// Resources
-					String resName = nextKey.substring("resource.".length()).toLowerCase();
+			if (nextKey.startsWith("datatype.")) {
+				if (theDatatypes != null) {
 					try {
+						// Datatypes
+
 						@SuppressWarnings("unchecked")
-						Class<? extends IBaseResource> nextClass = (Class<? extends IBaseResource>) Class.forName(nextValue);
-						if (theExistingElementDefinitions.containsKey(nextClass)) {
+						Class<? extends IBase> dtType = (Class<? extends IBase>) Class.forName(nextValue);
+						if (theExistingElementDefinitions.containsKey(dtType)) {
 							continue;
 						}
-						if (!IBaseResource.class.isAssignableFrom(nextClass)) {
-							throw new ConfigurationException("Class is not assignable from " + IBaseResource.class.getSimpleName() + ": " + nextValue);
+						retVal.add(dtType);
+
+						if (IElement.class.isAssignableFrom(dtType)) {
+							@SuppressWarnings("unchecked")
+							Class<? extends IElement> nextClass = (Class<? extends IElement>) dtType;
+							theDatatypes.add(nextClass);
+						} else if (IBaseDatatype.class.isAssignableFrom(dtType)) {
+							@SuppressWarnings("unchecked")
+							Class<? extends IBaseDatatype> nextClass = (Class<? extends IBaseDatatype>) dtType;
+							theDatatypes.add(nextClass);
+						} else {
+							ourLog.warn("Class is not assignable from " + IElement.class.getSimpleName() + " or " + IBaseDatatype.class.getSimpleName() + ": " + nextValue);
+							continue;
 						}
 
-						theResourceTypes.put(resName, nextClass);
 					} catch (ClassNotFoundException e) {
-						throw new ConfigurationException("Unknown class[" + nextValue + "] for resource definition: " + nextKey.substring("resource.".length()), e);
+						throw new ConfigurationException("Unknown class[" + nextValue + "] for data type definition: " + nextKey.substring("datatype.".length()), e);
 					}
-				} else {
-					throw new ConfigurationException("Unexpected property in version property file: " + nextKey + "=" + nextValue);
 				}
+			} else if (nextKey.startsWith("resource.")) {
+				// Resources
+				String resName = nextKey.substring("resource.".length()).toLowerCase();
+				theResourceTypeNames.put(resName, nextValue);
+			} else {
+				throw new ConfigurationException("Unexpected property in version property file: " + nextKey + "=" + nextValue);
 			}
-		} catch (IOException e) {
-			throw new ConfigurationException("Failed to load model property file from classpath: " + "/ca/uhn/fhir/model/dstu/model.properties");
 		}
 
 		return retVal;
 	}
 
+	/**
+	 * Loads a built-in resource class which was recorded by name by {@link #scanVersionPropertyFile(Set, Map, FhirVersionEnum, Map)}
+	 */
+	@SuppressWarnings("unchecked")
+	static Class<? extends IBaseResource> toResourceType(String theResourceName, String theClassName) {
+		Class<?> retVal;
+		try {
+			retVal = Class.forName(theClassName);
+		} catch (ClassNotFoundException e) {
+			throw new ConfigurationException("Unknown class[" + theClassName + "] for resource definition: " + theResourceName, e);
+		}
+		if (!IBaseResource.class.isAssignableFrom(retVal)) {
+			throw new ConfigurationException("Class is not assignable from " + IBaseResource.class.getSimpleName() + ": " + theClassName);
+		}
+		return (Class<? extends IBaseResource>) retVal;
+	}
+
+	/**
+	 * A new scanner is created every time a context scans a type it has not seen before, so the
+	 * property file for each version is only read and parsed once per JVM
+	 */
+	private static Map<String, String> loadVersionPropertyFile(FhirVersionEnum theVersion) {
+		Map<String, String> retVal = ourVersionPropertyFiles.get(theVersion);
+		if (retVal == null) {
+			Map<String, String> entries = new HashMap<String, String>();
+			try (InputStream str = theVersion.getVersionImplementation().getFhirVersionPropertiesFile()) {
+				Properties prop = new Properties();
+				prop.load(str);
+				for (Entry<Object, Object> nextEntry : prop.entrySet()) {
+					entries.put(nextEntry.getKey().toString(), nextEntry.getValue().toString());
+				}
+			} catch (IOException e) {
+				throw new ConfigurationException("Failed to load model property file from classpath: " + "/ca/uhn/fhir/model/dstu/model.properties");
+			}
+			retVal = Collections.unmodifiableMap(entries);
+			ourVersionPropertyFiles.put(theVersion, retVal);
+		}
+		return retVal;
+	}
+
 }
@@ -37,6 +37,7 @@ public class ParserOptions {
 	private boolean myStripVersionsFromReferences = true;
 	private Set<String> myDontStripVersionsFromReferencesAtPaths = Collections.emptySet();
 	private boolean myOverrideResourceIdWithBundleEntryFullUrl = true;
+	private boolean myStreamingJsonParserEnabled;
 
 	/**
 	 * If supplied value(s), any resource references at the specified paths will have their
@@ -166,4 +167,34 @@ public class ParserOptions {
 		return this;
 	}
 
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>), the JSON parser reads
+	 * resources using a streaming token reader which populates the model as the
+	 * document is read, instead of first loading the entire document into an in-memory
+	 * JSON tree. This greatly reduces the memory required to parse very large
+	 * documents (e.g. large transaction Bundles). This setting has no effect on
+	 * the encoding process.
+	 *
+	 * @return Returns the configuration setting for the streaming JSON parser. Default is <code>false</code>.
+	 */
+	public boolean isStreamingJsonParserEnabled() {
+		return myStreamingJsonParserEnabled;
+	}
+
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>), the JSON parser reads
+	 * resources using a streaming token reader which populates the model as the
+	 * document is read, instead of first loading the entire document into an in-memory
+	 * JSON tree. This greatly reduces the memory required to parse very large
+	 * documents (e.g. large transaction Bundles). This setting has no effect on
+	 * the encoding process.
+	 *
+	 * @param theStreamingJsonParserEnabled Set to <code>true</code> to enable the streaming JSON parser
+	 * @return Returns a reference to <code>this</code> parser so that method calls can be chained together
+	 */
+	public ParserOptions setStreamingJsonParserEnabled(boolean theStreamingJsonParserEnabled) {
+		myStreamingJsonParserEnabled = theStreamingJsonParserEnabled;
+		return this;
+	}
+
 }
@@ -0,0 +1,506 @@
+package ca.uhn.fhir.interceptor.executor;
+
+/*-
+ * #%L
+ * HAPI FHIR - Core Library
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.interceptor.api.HookParams;
+import org.apache.commons.lang3.ClassUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * Creates callers for hook methods which are implemented by {@link LambdaMetafactory}, so that
+ * each hook is invoked through a generated class which calls the hook method directly, with no
+ * reflection and no argument array. One functional interface is declared for each arity, since
+ * the generated class must have a fixed signature.
+ */
+final class HookLambdas {
+
+	/**
+	 * Hook methods with more parameters than this are invoked using reflection
+	 */
+	static final int MAX_ARITY = 7;
+	private static final Logger ourLog = LoggerFactory.getLogger(HookLambdas.class);
+	private static final Class<?>[] RETURNING_INTERFACES = {Fn0.class, Fn1.class, Fn2.class, Fn3.class, Fn4.class, Fn5.class, Fn6.class, Fn7.class};
+	private static final Class<?>[] VOID_INTERFACES = {VoidFn0.class, VoidFn1.class, VoidFn2.class, VoidFn3.class, VoidFn4.class, VoidFn5.class, VoidFn6.class, VoidFn7.class};
+
+	/**
+	 * Non instantiable
+	 */
+	private HookLambdas() {
+		// nothing
+	}
+
+	/**
+	 * Creates a caller for the given hook method bound to the given interceptor, or returns <code>null</code>
+	 * if the method can't be called this way (e.g. because its class is not visible to this library) and
+	 * reflection must be used instead
+	 */
+	static Caller createCallerOrNull(Object theInterceptor, Method theMethod) {
+		Class<?>[] parameterTypes = theMethod.getParameterTypes();
+		if (parameterTypes.length > MAX_ARITY) {
+			return null;
+		}
+		if (!isAccessible(theMethod.getDeclaringClass()) || !isAccessible(theMethod.getReturnType())) {
+			return null;
+		}
+		for (Class<?> next : parameterTypes) {
+			if (!isAccessible(next)) {
+				return null;
+			}
+		}
+
+		boolean isVoid = void.class.equals(theMethod.getReturnType());
+		Class<?> functionType = isVoid ? VOID_INTERFACES[parameterTypes.length] : RETURNING_INTERFACES[parameterTypes.length];
+		MethodType erasedType = MethodType.genericMethodType(parameterTypes.length);
+		if (isVoid) {
+			erasedType = erasedType.changeReturnType(void.class);
+		}
+		MethodType instantiatedType = MethodType
+			.methodType(ClassUtils.primitiveToWrapper(theMethod.getReturnType()), ClassUtils.primitivesToWrappers(parameterTypes));
+		if (isVoid) {
+			instantiatedType = instantiatedType.changeReturnType(void.class);
+		}
+
+		Object function;
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			MethodHandle implementation = lookup.unreflect(theMethod);
+			MethodType factoryType = MethodType.methodType(functionType, theMethod.getDeclaringClass());
+			CallSite callSite = LambdaMetafactory.metafactory(lookup, "invoke", factoryType, erasedType, implementation, instantiatedType);
+			function = callSite.getTarget().invoke(theInterceptor);
+		} catch (Throwable e) {
+			ourLog.debug("Hook method {} will be invoked using reflection: {}", theMethod, e.toString());
+			return null;
+		}
+
+		return newCaller(function, parameterTypes);
+	}
+
+	/**
+	 * The generated class refers to the types in the hook method signature by name, and
+	 * resolves them through the class loader of this library, so they must be visible and
+	 * accessible from here
+	 */
+	private static boolean isAccessible(Class<?> theType) {
+		Class<?> type = theType;
+		while (type.isArray()) {
+			type = type.getComponentType();
+		}
+		if (type.isPrimitive()) {
+			return true;
+		}
+
+		try {
+			if (Class.forName(type.getName(), false, HookLambdas.class.getClassLoader()) != type) {
+				return false;
+			}
+		} catch (ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+
+		boolean samePackage = HookLambdas.class.getPackage().equals(type.getPackage());
+		for (Class<?> next = type; next != null; next = next.getEnclosingClass()) {
+			if (!samePackage && !Modifier.isPublic(next.getModifiers())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Checks whether an exception thrown by a caller was caused by an argument which the hook
+	 * method can't accept, and if so replaces it with an {@link InvalidArgumentException}.
+	 * Otherwise the exception was thrown by the hook method itself and is returned unchanged.
+	 */
+	private static RuntimeException checkArguments(RuntimeException theException, Class<?>[] theParameterTypes, Object... theArguments) {
+		for (int i = 0; i < theArguments.length; i++) {
+			Object next = theArguments[i];
+			if (next == null ? theParameterTypes[i].isPrimitive() : !ClassUtils.primitiveToWrapper(theParameterTypes[i]).isInstance(next)) {
+				return new InvalidArgumentException(new IllegalArgumentException("Invalid value for parameter " + i + " of hook method, expected " + theParameterTypes[i].getName()));
+			}
+		}
+		return theException;
+	}
+
+	private static Caller newCaller(Object theFunction, Class<?>[] theParameterTypes) {
+		switch (theParameterTypes.length) {
+			case 0:
+				if (theFunction instanceof VoidFn0) {
+					VoidFn0 f = (VoidFn0) theFunction;
+					return (s, p) -> {
+						f.invoke();
+						return null;
+					};
+				} else {
+					Fn0 f = (Fn0) theFunction;
+					return (s, p) -> {
+						return f.invoke();
+					};
+				}
+			case 1:
+				if (theFunction instanceof VoidFn1) {
+					VoidFn1 f = (VoidFn1) theFunction;
+					return (s, p) -> {
+						Object a0 = s.getArgument(0, p);
+						try {
+							f.invoke(a0);
+							return null;
+						} catch (ClassCastException | NullPointerException e) {
+							throw checkArguments(e, theParameterTypes, a0);
+						}
+					};
+				} else {
+					Fn1 f = (Fn1) theFunction;
+					return (s, p) -> {
+						Object a0 = s.getArgument(0, p);
+						try {
+							return f.invoke(a0);
+						} catch (ClassCastException | NullPointerException e) {
+							throw checkArguments(e, theParameterTypes, a0);
+						}
+					};
+				}
+			case 2:
+				if (theFunction instanceof VoidFn2) {
+					VoidFn2 f = (VoidFn2) theFunction;
+					return (s, p) -> {
+						Object a0 = s.getArgument(0, p);
+						Object a1 = s.getArgument(1, p);
+						try {
+							f.invoke(a0, a1);
+							return null;
+						} catch (ClassCastException | NullPointerException e) {
+							throw checkArguments(e, theParameterTypes, a0, a1);
+						}
+					};
+				} else {
+					Fn2 f = (Fn2) theFunction;
+					return (s, p) -> {
+						Object a0 = s.getArgument(0, p);
+						Object a1 = s.getArgument(1, p);
+						try {
+							return f.invoke(a0, a1);
+						} catch (ClassCastException | NullPointerException e) {
+							throw checkArguments(e, theParameterTypes, a0, a1);
+						}
+					};
+				}
+			case 3:
+				if (theFunction instanceof VoidFn3) {
+					VoidFn3 f = (VoidFn3) theFunction;
+					return (s, p) -> {
+						Object a0 = s.getArgument(0, p);
+						Object a1 = s.getArgument(1, p);
+						Object a2 = s.getArgument(2, p);
+						try {
+							f.invoke(a0, a1, a2);
+							return null;
+						} catch (ClassCastException | NullPointerException e) {
+							throw checkArguments(e, theParameterTypes, a0, a1, a2);
+						}
+					};
+				} else {
+					Fn3 f = (Fn3) theFunction;
+					return (s, p) -> {
+						Object a0 = s.getArgument(0, p);
+						Object a1 = s.getArgument(1, p);
+						Object a2 = s.getArgument(2, p);
+						try {
+							return f.invoke(a0, a1, a2);
+						} catch (ClassCastException | NullPointerException e) {
+							throw checkArguments(e, theParameterTypes, a0, a1, a2);
+						}
+					};
+				}
+			case 4:
+				if (theFunction instanceof VoidFn4) {
+					VoidFn4 f = (VoidFn4) theFunction;
+					return (s, p) -> {
+						Object a0 = s.getArgument(0, p);
+						Object a1 = s.getArgument(1, p);
+						Object a2 = s.getArgument(2, p);
+						Object a3 = s.getArgument(3, p);
+						try {
+							f.invoke(a0, a1, a2, a3);
+							return null;
+						} catch (ClassCastException | NullPointerException e) {
+							throw checkArguments(e, theParameterTypes, a0, a1, a2, a3);
+						}
+					};
+				} else {
+					Fn4 f = (Fn4) theFunction;
+					return (s, p) -> {
+						Object a0 = s.getArgument(0, p);
+						Object a1 = s.getArgument(1, p);
+						Object a2 = s.getArgument(2, p);
+						Object a3 = s.getArgument(3, p);
+						try {
+							return f.invoke(a0, a1, a2, a3);
+						} catch (ClassCastException | NullPointerException e) {
+							throw checkArguments(e, theParameterTypes, a0, a1, a2, a3);
+						}
+					};
+				}
+			case 5:
+				if (theFunction instanceof VoidFn5) {
+					VoidFn5 f = (VoidFn5) theFunction;
+					return (s, p) -> {
+						Object a0 = s.getArgument(0, p);
+						Object a1 = s.getArgument(1, p);
+						Object a2 = s.getArgument(2, p);
+						Object a3 = s.getArgument(3, p);
+						Object a4 = s.getArgument(4, p);
+						try {
+							f.invoke(a0, a1, a2, a3, a4);
+							return null;
+						} catch (ClassCastException | NullPointerException e) {
+							throw checkArguments(e, theParameterTypes, a0, a1, a2, a3, a4);
+						}
+					};
+				} else {
+					Fn5 f = (Fn5) theFunction;
+					return (s, p) -> {
+						Object a0 = s.getArgument(0, p);
+						Object a1 = s.getArgument(1, p);
+						Object a2 = s.getArgument(2, p);
+						Object a3 = s.getArgument(3, p);
+						Object a4 = s.getArgument(4, p);
+						try {
+							return f.invoke(a0, a1, a2, a3, a4);
+						} catch (ClassCastException | NullPointerException e) {
+							throw checkArguments(e, theParameterTypes, a0, a1, a2, a3, a4);
+						}
+					};
+				}
+			case 6:
+				if (theFunction instanceof VoidFn6) {
+					VoidFn6 f = (VoidFn6) theFunction;
+					return (s, p) -> {
+						Object a0 = s.getArgument(0, p);
+						Object a1 = s.getArgument(1, p);
+						Object a2 = s.getArgument(2, p);
+						Object a3 = s.getArgument(3, p);
+						Object a4 = s.getArgument(4, p);
+						Object a5 = s.getArgument(5, p);
+						try {
+							f.invoke(a0, a1, a2, a3, a4, a5);
+							return null;
+						} catch (ClassCastException | NullPointerException e) {
+							throw checkArguments(e, theParameterTypes, a0, a1, a2, a3, a4, a5);
+						}
+					};
+				} else {
+					Fn6 f = (Fn6) theFunction;
+					return (s, p) -> {
+						Object a0 = s.getArgument(0, p);
+						Object a1 = s.getArgument(1, p);
+						Object a2 = s.getArgument(2, p);
+						Object a3 = s.getArgument(3, p);
+						Object a4 = s.getArgument(4, p);
+						Object a5 = s.getArgument(5, p);
+						try {
+							return f.invoke(a0, a1, a2, a3, a4, a5);
+						} catch (ClassCastException | NullPointerException e) {
+							throw checkArguments(e, theParameterTypes, a0, a1, a2, a3, a4, a5);
+						}
+					};
+				}
+			case 7:
+				if (theFunction instanceof VoidFn7) {
+					VoidFn7 f = (VoidFn7) theFunction;
+					return (s, p) -> {
+						Object a0 = s.getArgument(0, p);
+						Object a1 = s.getArgument(1, p);
+						Object a2 = s.getArgument(2, p);
+						Object a3 = s.getArgument(3, p);
+						Object a4 = s.getArgument(4, p);
+						Object a5 = s.getArgument(5, p);
+						Object a6 = s.getArgument(6, p);
+						try {
+							f.invoke(a0, a1, a2, a3, a4, a5, a6);
+							return null;
+						} catch (ClassCastException | NullPointerException e) {
+							throw checkArguments(e, theParameterTypes, a0, a1, a2, a3, a4, a5, a6);
+						}
+					};
+				} else {
+					Fn7 f = (Fn7) theFunction;
+					return (s, p) -> {
+						Object a0 = s.getArgument(0, p);
+						Object a1 = s.getArgument(1, p);
+						Object a2 = s.getArgument(2, p);
+						Object a3 = s.getArgument(3, p);
+						Object a4 = s.getArgument(4, p);
+						Object a5 = s.getArgument(5, p);
+						Object a6 = s.getArgument(6, p);
+						try {
+							return f.invoke(a0, a1, a2, a3, a4, a5, a6);
+						} catch (ClassCastException | NullPointerException e) {
+							throw checkArguments(e, theParameterTypes, a0, a1, a2, a3, a4, a5, a6);
+						}
+					};
+				}
+			default:
+				throw new IllegalArgumentException("Unsupported arity: " + theParameterTypes.length);
+		}
+	}
+
+	/**
+	 * Supplies the argument for each parameter of a hook method
+	 */
+	interface ArgumentSource {
+
+		Object getArgument(int theIndex, HookParams theParams);
+
+	}
+
+	/**
+	 * Invokes a single hook method on a single interceptor instance
+	 */
+	interface Caller {
+
+		/**
+		 * @return The value returned by the hook method, or <code>null</code> if it returns void
+		 * @throws InvalidArgumentException If an argument can't be passed to the hook method
+		 */
+		Object call(ArgumentSource theSource, HookParams theParams);
+
+	}
+
+	/**
+	 * Thrown when an argument can't be passed to a hook method, which is an error
+	 * in how the hook is declared and not an exception thrown by the hook itself
+	 */
+	static class InvalidArgumentException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		InvalidArgumentException(IllegalArgumentException theCause) {
+			super(theCause);
+		}
+
+	}
+
+	interface Fn0 {
+
+		Object invoke();
+
+	}
+
+	interface Fn1 {
+
+		Object invoke(Object theArg0);
+
+	}
+
+	interface Fn2 {
+
+		Object invoke(Object theArg0, Object theArg1);
+
+	}
+
+	interface Fn3 {
+
+		Object invoke(Object theArg0, Object theArg1, Object theArg2);
+
+	}
+
+	interface Fn4 {
+
+		Object invoke(Object theArg0, Object theArg1, Object theArg2, Object theArg3);
+
+	}
+
+	interface Fn5 {
+
+		Object invoke(Object theArg0, Object theArg1, Object theArg2, Object theArg3, Object theArg4);
+
+	}
+
+	interface Fn6 {
+
+		Object invoke(Object theArg0, Object theArg1, Object theArg2, Object theArg3, Object theArg4, Object theArg5);
+
+	}
+
+	interface Fn7 {
+
+		Object invoke(Object theArg0, Object theArg1, Object theArg2, Object theArg3, Object theArg4, Object theArg5, Object theArg6);
+
+	}
+
+	interface VoidFn0 {
+
+		void invoke();
+
+	}
+
+	interface VoidFn1 {
+
+		void invoke(Object theArg0);
+
+	}
+
+	interface VoidFn2 {
+
+		void invoke(Object theArg0, Object theArg1);
+
+	}
+
+	interface VoidFn3 {
+
+		void invoke(Object theArg0, Object theArg1, Object theArg2);
+
+	}
+
+	interface VoidFn4 {
+
+		void invoke(Object theArg0, Object theArg1, Object theArg2, Object theArg3);
+
+	}
+
+	interface VoidFn5 {
+
+		void invoke(Object theArg0, Object theArg1, Object theArg2, Object theArg3, Object theArg4);
+
+	}
+
+	interface VoidFn6 {
+
+		void invoke(Object theArg0, Object theArg1, Object theArg2, Object theArg3, Object theArg4, Object theArg5);
+
+	}
+
+	interface VoidFn7 {
+
+		void invoke(Object theArg0, Object theArg1, Object theArg2, Object theArg3, Object theArg4, Object theArg5, Object theArg6);
+
+	}
+
+}
@@ -42,16 +42,25 @@ import java.lang.reflect.Method;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class InterceptorService implements IInterceptorService, IInterceptorBroadcaster {
 	private static final Logger ourLog = LoggerFactory.getLogger(InterceptorService.class);
+	private static final BaseInvoker[] EMPTY_INVOKER_ARRAY = new BaseInvoker[0];
 	private final List<Object> myInterceptors = new ArrayList<>();
 	private final ListMultimap<Pointcut, BaseInvoker> myGlobalInvokers = ArrayListMultimap.create();
 	private final ListMultimap<Pointcut, BaseInvoker> myAnonymousInvokers = ArrayListMultimap.create();
 	private final Object myRegistryMutex = new Object();
+	/**
+	 * An ordered snapshot of the global and anonymous invokers for each pointcut. This
+	 * map and its arrays are never modified once published: any change to the registry
+	 * replaces it with a new snapshot, so that invoking hooks requires no locking.
+	 */
+	private volatile EnumMap<Pointcut, BaseInvoker[]> myInvokerSnapshot = new EnumMap<>(Pointcut.class);
 	private final ThreadLocal<ListMultimap<Pointcut, BaseInvoker>> myThreadlocalInvokers = new ThreadLocal<>();
 	private String myName;
 	private boolean myThreadlocalInvokersEnabled = true;
+	private volatile boolean myMethodHandleInvokersEnabled;
 
 	/**
 	 * Constructor which uses a default name of "default"
@@ -84,6 +93,38 @@ public class InterceptorService implements IInterceptorService, IInterceptorBroa
 		myThreadlocalInvokersEnabled = theThreadlocalInvokersEnabled;
 	}
 
+	/**
+	 * If enabled (default is <code>false</code>), a class which calls each hook method
+	 * directly is generated (using {@link java.lang.invoke.LambdaMetafactory}) when its
+	 * interceptor is registered, and hooks are called through it instead of using
+	 * {@link Method#invoke(Object, Object...)}. No argument array is created and there are
+	 * no reflective access checks on each call. Hook methods whose class or parameter types
+	 * are not accessible to this library, or which have more than seven parameters, are
+	 * still invoked using reflection.
+	 * <p>
+	 * This setting only affects interceptors registered after it is changed.
+	 * </p>
+	 */
+	public boolean isMethodHandleInvokersEnabled() {
+		return myMethodHandleInvokersEnabled;
+	}
+
+	/**
+	 * If enabled (default is <code>false</code>), a class which calls each hook method
+	 * directly is generated (using {@link java.lang.invoke.LambdaMetafactory}) when its
+	 * interceptor is registered, and hooks are called through it instead of using
+	 * {@link Method#invoke(Object, Object...)}. No argument array is created and there are
+	 * no reflective access checks on each call. Hook methods whose class or parameter types
+	 * are not accessible to this library, or which have more than seven parameters, are
+	 * still invoked using reflection.
+	 * <p>
+	 * This setting only affects interceptors registered after it is changed.
+	 * </p>
+	 */
+	public void setMethodHandleInvokersEnabled(boolean theMethodHandleInvokersEnabled) {
+		myMethodHandleInvokersEnabled = theMethodHandleInvokersEnabled;
+	}
+
 	@VisibleForTesting
 	List<Object> getGlobalInterceptorsForUnitTest() {
 		return myInterceptors;
@@ -109,6 +150,7 @@ public class InterceptorService implements IInterceptorService, IInterceptorBroa
 			if (!isInterceptorAlreadyRegistered(theInterceptor)) {
 				myInterceptors.add(theInterceptor);
 			}
+			rebuildInvokerSnapshot();
 		}
 	}
 
@@ -128,6 +170,7 @@ public class InterceptorService implements IInterceptorService, IInterceptorBroa
 			myAnonymousInvokers.clear();
 			myGlobalInvokers.clear();
 			myInterceptors.clear();
+			rebuildInvokerSnapshot();
 		}
 	}
 
@@ -151,7 +194,7 @@ public class InterceptorService implements IInterceptorService, IInterceptorBroa
 			return false;
 		}
 		ListMultimap<Pointcut, BaseInvoker> invokers = getThreadLocalInvokerMultimap();
-		scanInterceptorAndAddToInvokerMultimap(theInterceptor, invokers);
+		scanInterceptorAndAddToInvokerMultimap(theInterceptor, invokers, myMethodHandleInvokersEnabled);
 		return !invokers.isEmpty();
 
 	}
@@ -184,7 +227,7 @@ public class InterceptorService implements IInterceptorService, IInterceptorBroa
 				return false;
 			}
 
-			List<HookInvoker> addedInvokers = scanInterceptorAndAddToInvokerMultimap(theInterceptor, myGlobalInvokers);
+			List<HookInvoker> addedInvokers = scanInterceptorAndAddToInvokerMultimap(theInterceptor, myGlobalInvokers, myMethodHandleInvokersEnabled);
 			if (addedInvokers.isEmpty()) {
 				ourLog.warn("Interceptor registered with no valid hooks - Type was: {}", theInterceptor.getClass().getName());
 				return false;
@@ -193,6 +236,7 @@ public class InterceptorService implements IInterceptorService, IInterceptorBroa
 			// Add to the global list
 			myInterceptors.add(theInterceptor);
 			sortByOrderAnnotation(myInterceptors);
+			rebuildInvokerSnapshot();
 
 			return true;
 		}
@@ -213,10 +257,36 @@ public class InterceptorService implements IInterceptorService, IInterceptorBroa
 			boolean removed = myInterceptors.removeIf(t -> t == theInterceptor);
 			removed |= myGlobalInvokers.entries().removeIf(t -> t.getValue().getInterceptor() == theInterceptor);
 			removed |= myAnonymousInvokers.entries().removeIf(t -> t.getValue().getInterceptor() == theInterceptor);
+			if (removed) {
+				rebuildInvokerSnapshot();
+			}
 			return removed;
 		}
 	}
 
+	/**
+	 * Replaces the invoker snapshot with one reflecting the current contents of the
+	 * registry. Must be called while holding {@link #myRegistryMutex}.
+	 */
+	private void rebuildInvokerSnapshot() {
+		EnumMap<Pointcut, BaseInvoker[]> snapshot = new EnumMap<>(Pointcut.class);
+		for (Pointcut nextPointcut : Pointcut.values()) {
+			List<BaseInvoker> globalInvokers = myGlobalInvokers.get(nextPointcut);
+			List<BaseInvoker> anonymousInvokers = myAnonymousInvokers.get(nextPointcut);
+			if (globalInvokers.isEmpty() && anonymousInvokers.isEmpty()) {
+				continue;
+			}
+
+			// The sort is stable, so invokers with the same order keep their registration order
+			BaseInvoker[] invokers = Stream
+				.concat(globalInvokers.stream(), anonymousInvokers.stream())
+				.sorted()
+				.toArray(BaseInvoker[]::new);
+			snapshot.put(nextPointcut, invokers);
+		}
+		myInvokerSnapshot = snapshot;
+	}
+
 	private void sortByOrderAnnotation(List<Object> theObjects) {
 		IdentityHashMap<Object, Integer> interceptorToOrder = new IdentityHashMap<>();
 		for (Object next : theObjects) {
@@ -242,8 +312,7 @@ public class InterceptorService implements IInterceptorService, IInterceptorBroa
 
 	@Override
 	public boolean hasHooks(Pointcut thePointcut) {
-		return myGlobalInvokers.containsKey(thePointcut)
-			|| myAnonymousInvokers.containsKey(thePointcut)
+		return myInvokerSnapshot.containsKey(thePointcut)
 			|| hasThreadLocalHooks(thePointcut);
 	}
 
@@ -262,7 +331,7 @@ public class InterceptorService implements IInterceptorService, IInterceptorBroa
 	}
 
 	private Object doCallHooks(Pointcut thePointcut, HookParams theParams, Object theRetVal) {
-		List<BaseInvoker> invokers = getInvokersForPointcut(thePointcut);
+		BaseInvoker[] invokers = getInvokersForPointcut(thePointcut);
 
 		/*
 		 * Call each hook in order
@@ -290,82 +359,42 @@ public class InterceptorService implements IInterceptorService, IInterceptorBroa
 
 	@VisibleForTesting
 	List<Object> getInterceptorsWithInvokersForPointcut(Pointcut thePointcut) {
-		return getInvokersForPointcut(thePointcut)
-			.stream()
+		return Arrays
+			.stream(getInvokersForPointcut(thePointcut))
 			.map(BaseInvoker::getInterceptor)
 			.collect(Collectors.toList());
 	}
 
 	/**
-	 * Returns an ordered list of invokers for the given pointcut. Note that
-	 * a new and stable list is returned to.. do whatever you want with it.
+	 * Returns an ordered array of invokers for the given pointcut. Note that the
+	 * returned array may be shared, so it must not be modified.
 	 */
-	private List<BaseInvoker> getInvokersForPointcut(Pointcut thePointcut) {
-		List<BaseInvoker> invokers;
+	private BaseInvoker[] getInvokersForPointcut(Pointcut thePointcut) {
+		BaseInvoker[] invokers = myInvokerSnapshot.get(thePointcut);
+		if (invokers == null) {
+			invokers = EMPTY_INVOKER_ARRAY;
+		}
 
-		synchronized (myRegistryMutex) {
-			List<BaseInvoker> globalInvokers = myGlobalInvokers.get(thePointcut);
-			List<BaseInvoker> anonymousInvokers = myAnonymousInvokers.get(thePointcut);
-			List<BaseInvoker> threadLocalInvokers = null;
-			if (myThreadlocalInvokersEnabled) {
-				ListMultimap<Pointcut, BaseInvoker> pointcutToInvokers = myThreadlocalInvokers.get();
-				if (pointcutToInvokers != null) {
-					threadLocalInvokers = pointcutToInvokers.get(thePointcut);
+		if (myThreadlocalInvokersEnabled) {
+			ListMultimap<Pointcut, BaseInvoker> pointcutToInvokers = myThreadlocalInvokers.get();
+			if (pointcutToInvokers != null) {
+				List<BaseInvoker> threadLocalInvokers = pointcutToInvokers.get(thePointcut);
+				if (!threadLocalInvokers.isEmpty()) {
+					invokers = union(invokers, threadLocalInvokers);
 				}
 			}
-			invokers = union(globalInvokers, anonymousInvokers, threadLocalInvokers);
 		}
 
 		return invokers;
 	}
 
-	/**
-	 * First argument must be the global invoker list!!
-	 */
-	@SafeVarargs
-	private final List<BaseInvoker> union(List<BaseInvoker>... theInvokersLists) {
-		List<BaseInvoker> haveOne = null;
-		boolean haveMultiple = false;
-		for (List<BaseInvoker> nextInvokerList : theInvokersLists) {
-			if (nextInvokerList == null || nextInvokerList.isEmpty()) {
-				continue;
-			}
-
-			if (haveOne == null) {
-				haveOne = nextInvokerList;
-			} else {
-				haveMultiple = true;
-			}
-		}
-
-		if (haveOne == null) {
-			return Collections.emptyList();
+	private static BaseInvoker[] union(BaseInvoker[] theInvokers, List<BaseInvoker> theThreadLocalInvokers) {
+		BaseInvoker[] retVal = Arrays.copyOf(theInvokers, theInvokers.length + theThreadLocalInvokers.size());
+		int index = theInvokers.length;
+		for (BaseInvoker next : theThreadLocalInvokers) {
+			retVal[index++] = next;
 		}
-
-		List<BaseInvoker> retVal;
-
-		if (haveMultiple == false) {
-
-			// The global list doesn't need to be sorted every time since it's sorted on
-			// insertion each time. Doing so is a waste of cycles..
-			if (haveOne == theInvokersLists[0]) {
-				retVal = haveOne;
-			} else {
-				retVal = new ArrayList<>(haveOne);
-				retVal.sort(Comparator.naturalOrder());
-			}
-
-		} else {
-
-			retVal = Arrays
-				.stream(theInvokersLists)
-				.filter(t -> t != null)
-				.flatMap(t -> t.stream())
-				.sorted()
-				.collect(Collectors.toList());
-
-		}
-
+		Arrays.sort(retVal);
 		return retVal;
 	}
 
@@ -428,17 +457,25 @@ public class InterceptorService implements IInterceptorService, IInterceptorBroa
 		}
 	}
 
-	private static class HookInvoker extends BaseInvoker {
+	private static class HookInvoker extends BaseInvoker implements HookLambdas.ArgumentSource {
+
+		/**
+		 * Marks a hook method parameter which receives the {@link Pointcut} itself
+		 */
+		private static final int POINTCUT_PARAMETER_INDEX = -1;
 
 		private final Method myMethod;
+		private final HookLambdas.Caller myCaller;
 		private final Class<?>[] myParameterTypes;
 		private final int[] myParameterIndexes;
 		private final Pointcut myPointcut;
 
 		/**
 		 * Constructor
+		 *
+		 * @param theUseLambdaCaller If true, the hook method is invoked through a generated caller where possible
 		 */
-		private HookInvoker(Hook theHook, @Nonnull Object theInterceptor, @Nonnull Method theHookMethod, int theOrder) {
+		private HookInvoker(Hook theHook, @Nonnull Object theInterceptor, @Nonnull Method theHookMethod, int theOrder, boolean theUseLambdaCaller) {
 			super(theInterceptor, theOrder);
 			myPointcut = theHook.value();
 			myParameterTypes = theHookMethod.getParameterTypes();
@@ -456,11 +493,16 @@ public class InterceptorService implements IInterceptorService, IInterceptorBroa
 			myParameterIndexes = new int[myParameterTypes.length];
 			Map<Class<?>, AtomicInteger> typeToCount = new HashMap<>();
 			for (int i = 0; i < myParameterTypes.length; i++) {
+				if (myParameterTypes[i].equals(Pointcut.class)) {
+					myParameterIndexes[i] = POINTCUT_PARAMETER_INDEX;
+					continue;
+				}
 				AtomicInteger counter = typeToCount.computeIfAbsent(myParameterTypes[i], t -> new AtomicInteger(0));
 				myParameterIndexes[i] = counter.getAndIncrement();
 			}
 
 			myMethod.setAccessible(true);
+			myCaller = theUseLambdaCaller ? HookLambdas.createCallerOrNull(theInterceptor, theHookMethod) : null;
 		}
 
 		@Override
@@ -474,52 +516,67 @@ public class InterceptorService implements IInterceptorService, IInterceptorBroa
 			return myPointcut;
 		}
 
+		@Override
+		public Object getArgument(int theIndex, HookParams theParams) {
+			int paramIndex = myParameterIndexes[theIndex];
+			if (paramIndex == POINTCUT_PARAMETER_INDEX) {
+				return myPointcut;
+			}
+			return theParams.get(myParameterTypes[theIndex], paramIndex);
+		}
+
 		/**
 		 * @return Returns true/false if the hook method returns a boolean, returns true otherwise
 		 */
 		@Override
 		Object invoke(HookParams theParams) {
 
+			if (myCaller != null) {
+				try {
+					return myCaller.call(this, theParams);
+				} catch (HookLambdas.InvalidArgumentException e) {
+					throw new InternalErrorException(e.getCause());
+				} catch (Throwable e) {
+					return handleHookException(e);
+				}
+			}
+
 			Object[] args = new Object[myParameterTypes.length];
 			for (int i = 0; i < myParameterTypes.length; i++) {
-				Class<?> nextParamType = myParameterTypes[i];
-				if (nextParamType.equals(Pointcut.class)) {
-					args[i] = myPointcut;
-				} else {
-					int nextParamIndex = myParameterIndexes[i];
-					Object nextParamValue = theParams.get(nextParamType, nextParamIndex);
-					args[i] = nextParamValue;
-				}
+				args[i] = getArgument(i, theParams);
 			}
 
 			// Invoke the method
 			try {
 				return myMethod.invoke(getInterceptor(), args);
 			} catch (InvocationTargetException e) {
-				Throwable targetException = e.getTargetException();
-				if (myPointcut.isShouldLogAndSwallowException(targetException)) {
-					ourLog.error("Exception thrown by interceptor: " + targetException.toString(), targetException);
-					return null;
-				}
-
-				if (targetException instanceof RuntimeException) {
-					throw ((RuntimeException) targetException);
-				} else {
-					throw new InternalErrorException("Failure invoking interceptor for pointcut(s) " + getPointcut(), targetException);
-				}
+				return handleHookException(e.getTargetException());
 			} catch (Exception e) {
 				throw new InternalErrorException(e);
 			}
 
 		}
 
+		private Object handleHookException(Throwable theTargetException) {
+			if (myPointcut.isShouldLogAndSwallowException(theTargetException)) {
+				ourLog.error("Exception thrown by interceptor: " + theTargetException.toString(), theTargetException);
+				return null;
+			}
+
+			if (theTargetException instanceof RuntimeException) {
+				throw ((RuntimeException) theTargetException);
+			} else {
+				throw new InternalErrorException("Failure invoking interceptor for pointcut(s) " + getPointcut(), theTargetException);
+			}
+		}
+
 	}
 
-	private static List<HookInvoker> scanInterceptorAndAddToInvokerMultimap(Object theInterceptor, ListMultimap<Pointcut, BaseInvoker> theInvokers) {
+	private static List<HookInvoker> scanInterceptorAndAddToInvokerMultimap(Object theInterceptor, ListMultimap<Pointcut, BaseInvoker> theInvokers, boolean theUseMethodHandles) {
 		Class<?> interceptorClass = theInterceptor.getClass();
 		int typeOrder = determineOrder(interceptorClass);
 
-		List<HookInvoker> addedInvokers = scanInterceptorForHookMethods(theInterceptor, typeOrder);
+		List<HookInvoker> addedInvokers = scanInterceptorForHookMethods(theInterceptor, typeOrder, theUseMethodHandles);
 
 		// Invoke the REGISTERED pointcut for any added hooks
 		addedInvokers.stream()
@@ -548,7 +605,7 @@ public class InterceptorService implements IInterceptorService, IInterceptorBroa
 	/**
 	 * @return Returns a list of any added invokers
 	 */
-	private static List<HookInvoker> scanInterceptorForHookMethods(Object theInterceptor, int theTypeOrder) {
+	private static List<HookInvoker> scanInterceptorForHookMethods(Object theInterceptor, int theTypeOrder, boolean theUseMethodHandles) {
 		ArrayList<HookInvoker> retVal = new ArrayList<>();
 		for (Method nextMethod : theInterceptor.getClass().getMethods()) {
 			Optional<Hook> hook = findAnnotation(nextMethod, Hook.class);
@@ -560,7 +617,7 @@ public class InterceptorService implements IInterceptorService, IInterceptorBroa
 					methodOrder = methodOrderAnnotation;
 				}
 
-				retVal.add(new HookInvoker(hook.get(), theInterceptor, nextMethod, methodOrder));
+				retVal.add(new HookInvoker(hook.get(), theInterceptor, nextMethod, methodOrder, theUseMethodHandles));
 			}
 		}
 
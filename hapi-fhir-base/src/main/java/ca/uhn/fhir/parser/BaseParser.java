@@ -66,6 +66,7 @@ public abstract class BaseParser implements IParser {
 	private boolean mySummaryMode;
 	private boolean mySuppressNarratives;
 	private Set<String> myDontStripVersionsFromReferencesAtPaths;
+	private Iterator<? extends IBase> myStreamingBundleEntries;
 
 	/**
 	 * Constructor
@@ -352,8 +353,29 @@ public abstract class BaseParser implements IParser {
 	}
 
 	protected void encodeResourceToWriter(IBaseResource theResource, Writer theWriter, EncodeContext theEncodeContext) throws IOException {
-		Validate.notNull(theResource, "theResource can not be null");
 		Validate.notNull(theWriter, "theWriter can not be null");
+		String resourceName = validateResourceForEncodingAndGetName(theResource, theEncodeContext);
+		theEncodeContext.pushPath(resourceName, true);
+
+		doEncodeResourceToWriter(theResource, theWriter, theEncodeContext);
+
+		theEncodeContext.popPath();
+	}
+
+	@Override
+	public final void encodeResourceToOutputStream(IBaseResource theResource, OutputStream theOutputStream) throws IOException, DataFormatException {
+		Validate.notNull(theOutputStream, "theOutputStream can not be null");
+		EncodeContext encodeContext = new EncodeContext();
+		String resourceName = validateResourceForEncodingAndGetName(theResource, encodeContext);
+		encodeContext.pushPath(resourceName, true);
+
+		doEncodeResourceToOutputStream(theResource, theOutputStream, encodeContext);
+
+		encodeContext.popPath();
+	}
+
+	private String validateResourceForEncodingAndGetName(IBaseResource theResource, EncodeContext theEncodeContext) {
+		Validate.notNull(theResource, "theResource can not be null");
 		Validate.notNull(theEncodeContext, "theEncodeContext can not be null");
 
 		if (theResource.getStructureFhirVersionEnum() != myContext.getVersion().getVersion()) {
@@ -361,12 +383,17 @@ public abstract class BaseParser implements IParser {
 				"This parser is for FHIR version " + myContext.getVersion().getVersion() + " - Can not encode a structure for version " + theResource.getStructureFhirVersionEnum());
 		}
 
-		String resourceName = myContext.getResourceDefinition(theResource).getName();
-		theEncodeContext.pushPath(resourceName, true);
-
-		doEncodeResourceToWriter(theResource, theWriter, theEncodeContext);
+		return myContext.getResourceDefinition(theResource).getName();
+	}
 
-		theEncodeContext.popPath();
+	/**
+	 * Encodes the resource to the given stream as UTF-8. Subclasses may override this
+	 * to write bytes directly, the default implementation wraps the stream in a {@link Writer}.
+	 */
+	protected void doEncodeResourceToOutputStream(IBaseResource theResource, OutputStream theOutputStream, EncodeContext theEncodeContext) throws IOException {
+		Writer writer = new OutputStreamWriter(theOutputStream, Charsets.UTF_8);
+		doEncodeResourceToWriter(theResource, writer, theEncodeContext);
+		writer.flush();
 	}
 
 	private void filterCodingsWithNoCodeOrSystem(List<? extends IBaseCoding> tagList) {
@@ -648,17 +675,41 @@ public abstract class BaseParser implements IParser {
 
 	@Override
 	public IBaseResource parseResource(InputStream theInputStream) throws DataFormatException {
-		return parseResource(new InputStreamReader(theInputStream, Charsets.UTF_8));
+		return parseResource(null, theInputStream);
 	}
 
 	@Override
 	public <T extends IBaseResource> T parseResource(Class<T> theResourceType, InputStream theInputStream) throws DataFormatException {
-		return parseResource(theResourceType, new InputStreamReader(theInputStream, Constants.CHARSET_UTF8));
+		verifyResourceTypeBeforeParse(theResourceType);
+
+		// Actually do the parse
+		T retVal = doParseResource(theResourceType, theInputStream);
+
+		postProcessParsedResource(retVal);
+		return retVal;
 	}
 
 	@Override
 	public <T extends IBaseResource> T parseResource(Class<T> theResourceType, Reader theReader) throws DataFormatException {
+		verifyResourceTypeBeforeParse(theResourceType);
+
+		// Actually do the parse
+		T retVal = doParseResource(theResourceType, theReader);
+
+		postProcessParsedResource(retVal);
+		return retVal;
+	}
+
+	/**
+	 * Parses a resource from an InputStream containing UTF-8 encoded content. By default the
+	 * stream is simply decoded through a {@link Reader}, but parsers which are able to work
+	 * directly from bytes may override this.
+	 */
+	protected <T extends IBaseResource> T doParseResource(Class<T> theResourceType, InputStream theInputStream) throws DataFormatException {
+		return doParseResource(theResourceType, new InputStreamReader(theInputStream, Constants.CHARSET_UTF8));
+	}
 
+	private void verifyResourceTypeBeforeParse(Class<? extends IBaseResource> theResourceType) {
 		/*
 		 * We do this so that the context can verify that the structure is for
 		 * the correct FHIR version
@@ -666,16 +717,15 @@ public abstract class BaseParser implements IParser {
 		if (theResourceType != null) {
 			myContext.getResourceDefinition(theResourceType);
 		}
+	}
 
-		// Actually do the parse
-		T retVal = doParseResource(theResourceType, theReader);
-
-		RuntimeResourceDefinition def = myContext.getResourceDefinition(retVal);
+	private void postProcessParsedResource(IBaseResource theResource) {
+		RuntimeResourceDefinition def = myContext.getResourceDefinition(theResource);
 		if ("Bundle".equals(def.getName())) {
 
 			BaseRuntimeChildDefinition entryChild = def.getChildByName("entry");
 			BaseRuntimeElementCompositeDefinition<?> entryDef = (BaseRuntimeElementCompositeDefinition<?>) entryChild.getChildByName("entry");
-			List<IBase> entries = entryChild.getAccessor().getValues(retVal);
+			List<IBase> entries = entryChild.getAccessor().getValues(theResource);
 			if (entries != null) {
 				for (IBase nextEntry : entries) {
 
@@ -709,8 +759,6 @@ public abstract class BaseParser implements IParser {
 			}
 
 		}
-
-		return retVal;
 	}
 
 	@SuppressWarnings("cast")
@@ -730,6 +778,34 @@ public abstract class BaseParser implements IParser {
 		return parseResource(null, theMessageString);
 	}
 
+	/**
+	 * Returns the values of the given child which should be encoded, or <code>null</code> if there are none.
+	 * These are normally the values held by the element, after {@link #preProcessValues(BaseRuntimeChildDefinition, IBaseResource, List, CompositeChildElement, EncodeContext) pre-processing}.
+	 * The <code>Bundle.entry</code> values of a Bundle being encoded after {@link #setStreamingBundleEntries(Iterator)}
+	 * was called are instead taken from the supplied iterator, and can only be iterated over once.
+	 */
+	@SuppressWarnings("unchecked")
+	protected Iterable<? extends IBase> getValuesToEncode(BaseRuntimeChildDefinition theChild, IBase theElement, IBaseResource theResource, CompositeChildElement theCompositeChildElement,
+																		 EncodeContext theEncodeContext) {
+		if (myStreamingBundleEntries != null && theEncodeContext.getPath().size() == 1 && "entry".equals(theChild.getElementName())) {
+			if ("Bundle".equals(myContext.getResourceDefinition(theResource).getName())) {
+				Iterator<IBase> entries = (Iterator<IBase>) myStreamingBundleEntries;
+				myStreamingBundleEntries = null;
+				if (!entries.hasNext()) {
+					return null;
+				}
+				return () -> entries;
+			}
+		}
+
+		List<? extends IBase> values = theChild.getAccessor().getValues(theElement);
+		values = preProcessValues(theChild, theResource, values, theCompositeChildElement, theEncodeContext);
+		if (values == null || values.isEmpty()) {
+			return null;
+		}
+		return values;
+	}
+
 	protected List<? extends IBase> preProcessValues(BaseRuntimeChildDefinition theMetaChildUncast, IBaseResource theResource, List<? extends IBase> theValues,
 																	 CompositeChildElement theCompositeChildElement, EncodeContext theEncodeContext) {
 		if (myContext.getVersion().getVersion().isRi()) {
@@ -892,6 +968,12 @@ public abstract class BaseParser implements IParser {
 		return this;
 	}
 
+	@Override
+	public IParser setStreamingBundleEntries(Iterator<? extends IBase> theEntries) {
+		myStreamingBundleEntries = theEntries;
+		return this;
+	}
+
 	protected boolean shouldAddSubsettedTag(EncodeContext theEncodeContext) {
 		if (isSummaryMode()) {
 			return true;
@@ -26,14 +26,19 @@ import ca.uhn.fhir.context.ParserOptions;
 import ca.uhn.fhir.model.api.IResource;
 import ca.uhn.fhir.rest.api.EncodingEnum;
 import org.hl7.fhir.instance.model.api.IAnyResource;
+import org.hl7.fhir.instance.model.api.IBase;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.IIdType;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
@@ -51,6 +56,25 @@ public interface IParser {
 
 	void encodeResourceToWriter(IBaseResource theResource, Writer theWriter) throws IOException, DataFormatException;
 
+	/**
+	 * Encodes a resource to the given stream as UTF-8. Parsers which are able to do so
+	 * write encoded bytes directly to the stream instead of going through a {@link Writer},
+	 * which is more efficient. Note that the stream will be flushed but will not be closed
+	 * by the parser upon completion.
+	 *
+	 * <p>
+	 * The default implementation encodes through an {@link OutputStreamWriter}.
+	 * </p>
+	 *
+	 * @param theResource     The resource to encode
+	 * @param theOutputStream The stream to write to
+	 */
+	default void encodeResourceToOutputStream(IBaseResource theResource, OutputStream theOutputStream) throws IOException, DataFormatException {
+		Writer writer = new OutputStreamWriter(theOutputStream, StandardCharsets.UTF_8);
+		encodeResourceToWriter(theResource, writer);
+		writer.flush();
+	}
+
 	/**
 	 * If not set to null (as is the default) this ID will be used as the ID in any
 	 * resources encoded by this parser
@@ -363,6 +387,31 @@ public interface IParser {
 	 */
 	IParser setSuppressNarratives(boolean theSuppressNarratives);
 
+	/**
+	 * If set, the next time a Bundle resource is encoded by this parser, the values for its
+	 * <code>Bundle.entry</code> element are taken from the given iterator instead of from the
+	 * Bundle itself. Each entry is encoded as soon as it is returned by the iterator, so a
+	 * large Bundle can be written without holding all of its entries in memory at once.
+	 * <p>
+	 * This only applies to the Bundle being encoded, and not to any resources within its
+	 * entries. The iterator is consumed by the encoding.
+	 * </p>
+	 *
+	 * <p>
+	 * The default implementation supports only <code>null</code>, for parsers which can not stream entries.
+	 * </p>
+	 *
+	 * @param theEntries The <code>Bundle.entry</code> values to encode, or <code>null</code> to use the entries in the Bundle
+	 * @return Returns a reference to <code>this</code> parser so that method calls can be chained together
+	 * @throws UnsupportedOperationException If entries are given and this parser can not stream them
+	 */
+	default IParser setStreamingBundleEntries(Iterator<? extends IBase> theEntries) {
+		if (theEntries != null) {
+			throw new UnsupportedOperationException("This parser does not support streaming Bundle entries");
+		}
+		return this;
+	}
+
 	/**
 	 * If supplied value(s), any resource references at the specified paths will have their
 	 * resource versions encoded instead of being automatically stripped during the encoding
@@ -42,6 +42,7 @@ import org.apache.commons.text.WordUtils;
 import org.hl7.fhir.instance.model.api.*;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.io.Writer;
 import java.math.BigDecimal;
@@ -170,8 +171,31 @@ public class JsonParser extends BaseParser implements IJsonLikeParser {
 		doEncodeResourceToJsonLikeWriter(theResource, eventWriter, theEncodeContext);
 	}
 
+	/**
+	 * Encodes directly to UTF-8 bytes using {@link JacksonWriter}
+	 */
+	@Override
+	protected void doEncodeResourceToOutputStream(IBaseResource theResource, OutputStream theOutputStream, EncodeContext theEncodeContext) throws IOException {
+		JsonLikeWriter eventWriter = new JacksonWriter(theOutputStream);
+		try {
+			doEncodeResourceToJsonLikeWriter(theResource, eventWriter, theEncodeContext);
+		} finally {
+			// Releases the generator's buffers, the stream itself is left open
+			eventWriter.close();
+		}
+	}
+
 	@Override
 	public <T extends IBaseResource> T doParseResource(Class<T> theResourceType, Reader theReader) {
+		if (myContext.getParserOptions().isStreamingJsonParserEnabled()) {
+			ParserState<? extends IBaseResource> state = ParserState.getPreResourceInstance(this, theResourceType, myContext, true, getErrorHandler());
+			new JsonStreamingReader(this, state, theReader).parse();
+
+			@SuppressWarnings("unchecked")
+			T retVal = (T) state.getObject();
+			return retVal;
+		}
+
 		JsonLikeStructure jsonStructure = new GsonStructure();
 		jsonStructure.load(theReader);
 
@@ -390,10 +414,8 @@ public class JsonParser extends BaseParser implements IJsonLikeParser {
 				continue;
 			}
 
-			List<? extends IBase> values = nextChild.getAccessor().getValues(theElement);
-			values = preProcessValues(nextChild, theResource, values, nextChildElem, theEncodeContext);
-
-			if (values == null || values.isEmpty()) {
+			Iterable<? extends IBase> values = getValuesToEncode(nextChild, theElement, theResource, nextChildElem, theEncodeContext);
+			if (values == null) {
 				continue;
 			}
 
@@ -911,7 +933,7 @@ public class JsonParser extends BaseParser implements IJsonLikeParser {
 	// return object;
 	// }
 
-	private void parseAlternates(JsonLikeValue theAlternateVal, ParserState<?> theState, String theElementName, String theAlternateName) {
+	void parseAlternates(JsonLikeValue theAlternateVal, ParserState<?> theState, String theElementName, String theAlternateName) {
 		if (theAlternateVal == null || theAlternateVal.isNull()) {
 			return;
 		}
@@ -957,7 +979,7 @@ public class JsonParser extends BaseParser implements IJsonLikeParser {
 		}
 	}
 
-	private void parseChildren(JsonLikeObject theObject, ParserState<?> theState) {
+	void parseChildren(JsonLikeObject theObject, ParserState<?> theState) {
 		Set<String> keySet = theObject.keySet();
 
 		int allUnderscoreNames = 0;
@@ -1030,7 +1052,7 @@ public class JsonParser extends BaseParser implements IJsonLikeParser {
 
 	}
 
-	private void parseChildren(ParserState<?> theState, String theName, JsonLikeValue theJsonVal, JsonLikeValue theAlternateVal, String theAlternateName, boolean theInArray) {
+	void parseChildren(ParserState<?> theState, String theName, JsonLikeValue theJsonVal, JsonLikeValue theAlternateVal, String theAlternateName, boolean theInArray) {
 		if (theName.equals("id")) {
 			if (!theJsonVal.isString()) {
 				getErrorHandler().incorrectJsonType(null, "id", ValueType.SCALAR, ScalarType.STRING, theJsonVal.getJsonType(), theJsonVal.getDataType());
@@ -0,0 +1,276 @@
+package ca.uhn.fhir.parser;
+
+/*
+ * #%L
+ * HAPI FHIR - Core Library
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.parser.json.JacksonStructure;
+import ca.uhn.fhir.parser.json.JsonLikeArray;
+import ca.uhn.fhir.parser.json.JsonLikeObject;
+import ca.uhn.fhir.parser.json.JsonLikeValue;
+import ca.uhn.fhir.parser.json.JsonLikeValue.ValueType;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+/**
+ * Parses a FHIR JSON document by pulling tokens from a Jackson
+ * {@link com.fasterxml.jackson.core.JsonParser} and feeding them directly into a
+ * {@link ParserState}, instead of loading the whole document into a tree first.
+ * <p>
+ * Complex elements (JSON objects and arrays of objects, including contained and
+ * Bundle entry resources) are streamed as they are encountered. Within each object,
+ * the remaining members (primitive values, their <code>_name</code> alternates,
+ * extensions and comments) are small, so they are collected into a tree and handed
+ * to the regular tree parsing logic in {@link JsonParser} once the end of the object
+ * is reached. This means that peak memory is bounded by the largest single object's
+ * primitive members rather than by the size of the document.
+ * </p>
+ * <p>
+ * The <code>resourceType</code> of a resource is expected to be its first member (as
+ * it is in any JSON produced by HAPI FHIR or other common implementations). Members
+ * which appear before it are buffered until it is found.
+ * </p>
+ */
+class JsonStreamingReader {
+
+	private final JsonParser myFhirParser;
+	private final ParserState<?> myState;
+	private final com.fasterxml.jackson.core.JsonParser myTokens;
+
+	JsonStreamingReader(JsonParser theFhirParser, ParserState<?> theState, Reader theReader) {
+		myFhirParser = theFhirParser;
+		myState = theState;
+		myTokens = JacksonStructure.createParser(theReader);
+	}
+
+	void parse() {
+		try {
+			if (myTokens.nextToken() != JsonToken.START_OBJECT) {
+				throw new DataFormatException("Content must be a valid JSON Object. It must start with '{'.");
+			}
+			myTokens.nextToken();
+
+			PendingMembers pending = new PendingMembers();
+			JsonLikeValue resourceTypeObj = readMembersUntilResourceType(pending);
+			if (resourceTypeObj == null || !resourceTypeObj.isString() || isBlank(resourceTypeObj.getAsString())) {
+				throw new DataFormatException("Invalid JSON content detected, missing required element: 'resourceType'");
+			}
+
+			myState.enteringNewElement(null, resourceTypeObj.getAsString());
+			parseMembers(pending);
+			myState.endingElement();
+			myState.endingElement();
+
+			if (myTokens.nextToken() != null) {
+				throw new DataFormatException("Failed to parse JSON content, error was: JSON document was not fully consumed.");
+			}
+		} catch (IOException e) {
+			throw JacksonStructure.newDataFormatException(e);
+		}
+	}
+
+	/**
+	 * Reads the members of the current object up to and including <code>resourceType</code>,
+	 * buffering any others which come before it. On return, the current token is the
+	 * one following the <code>resourceType</code> value (or the end of the object if it
+	 * was not found).
+	 *
+	 * @return The <code>resourceType</code> value, or <code>null</code> if the object has none
+	 */
+	private JsonLikeValue readMembersUntilResourceType(PendingMembers thePending) throws IOException {
+		while (myTokens.getCurrentToken() == JsonToken.FIELD_NAME) {
+			String name = myTokens.getCurrentName();
+			myTokens.nextToken();
+			JsonLikeValue value = JacksonStructure.readValue(myTokens);
+			myTokens.nextToken();
+			if ("resourceType".equals(name)) {
+				return value;
+			}
+			thePending.put(name, value);
+		}
+		return null;
+	}
+
+	/**
+	 * Parses the members of the current object, starting at the current token and
+	 * ending at the {@link JsonToken#END_OBJECT} which closes the object.
+	 */
+	private void parseMembers(PendingMembers thePending) throws IOException {
+		Set<String> streamedNames = null;
+
+		while (myTokens.getCurrentToken() == JsonToken.FIELD_NAME) {
+			String name = myTokens.getCurrentName();
+			JsonToken valueToken = myTokens.nextToken();
+
+			if (name.length() > 0 && name.charAt(0) == '_') {
+				JsonLikeValue value = JacksonStructure.readValue(myTokens);
+				// Alternates are only meaningful for primitives, so one that follows an
+				// already streamed complex element is ignored
+				if (streamedNames == null || !streamedNames.contains(name.substring(1))) {
+					thePending.put(name, value);
+				}
+			} else if (isStreamable(name) && valueToken == JsonToken.START_OBJECT) {
+				streamedNames = addStreamedName(streamedNames, name);
+				parseObject(name, thePending.remove('_' + name), false);
+			} else if (isStreamable(name) && valueToken == JsonToken.START_ARRAY) {
+				if (myTokens.nextToken() == JsonToken.START_OBJECT) {
+					streamedNames = addStreamedName(streamedNames, name);
+					parseArrayOfObjects(name, thePending.remove('_' + name));
+				} else {
+					thePending.put(name, JacksonStructure.readArrayItems(myTokens));
+				}
+			} else {
+				thePending.put(name, JacksonStructure.readValue(myTokens));
+			}
+
+			myTokens.nextToken();
+		}
+
+		if (!thePending.isEmpty()) {
+			myFhirParser.parseChildren(thePending, myState);
+		}
+	}
+
+	/**
+	 * Parses the object starting at the current token as a child element called <code>theName</code>
+	 */
+	private void parseObject(String theName, JsonLikeValue theAlternateVal, boolean theInArray) throws IOException {
+		if (!theInArray && myState.elementIsRepeating(theName)) {
+			myFhirParser.getErrorHandler().incorrectJsonType(null, theName, ValueType.ARRAY, null, ValueType.OBJECT, null);
+		}
+
+		String alternateName = '_' + theName;
+		myState.enteringNewElement(null, theName);
+		myFhirParser.parseAlternates(theAlternateVal, myState, alternateName, alternateName);
+
+		myTokens.nextToken();
+		PendingMembers pending = new PendingMembers();
+		if (myState.isPreResource()) {
+			JsonLikeValue resType = readMembersUntilResourceType(pending);
+			if (resType == null || !resType.isString()) {
+				throw new DataFormatException("Missing required element 'resourceType' from JSON resource object, unable to parse");
+			}
+			myState.enteringNewElement(null, resType.getAsString());
+			parseMembers(pending);
+			myState.endingElement();
+		} else {
+			parseMembers(pending);
+		}
+
+		myState.endingElement();
+	}
+
+	/**
+	 * Parses the array whose first item (an object) is the current token
+	 */
+	private void parseArrayOfObjects(String theName, JsonLikeValue theAlternateVal) throws IOException {
+		String alternateName = '_' + theName;
+		JsonLikeValue alternateVal = theAlternateVal;
+		if (alternateVal != null && !alternateVal.isArray()) {
+			myFhirParser.getErrorHandler().incorrectJsonType(null, alternateName, ValueType.ARRAY, null, alternateVal.getJsonType(), null);
+			alternateVal = null;
+		}
+		JsonLikeArray alternateArray = JsonLikeValue.asArray(alternateVal);
+
+		int index = 0;
+		while (myTokens.getCurrentToken() != JsonToken.END_ARRAY) {
+			JsonLikeValue nextAlternate = null;
+			if (alternateArray != null && alternateArray.size() > index) {
+				nextAlternate = alternateArray.get(index);
+			}
+			if (myTokens.getCurrentToken() == JsonToken.START_OBJECT) {
+				parseObject(theName, nextAlternate, true);
+			} else {
+				JsonLikeValue nextValue = JacksonStructure.readValue(myTokens);
+				myFhirParser.parseChildren(myState, theName, nextValue, nextAlternate, alternateName, true);
+			}
+			index++;
+			myTokens.nextToken();
+		}
+	}
+
+	private static Set<String> addStreamedName(Set<String> theStreamedNames, String theName) {
+		Set<String> retVal = theStreamedNames;
+		if (retVal == null) {
+			retVal = new HashSet<>();
+		}
+		retVal.add(theName);
+		return retVal;
+	}
+
+	/**
+	 * Members with these names are always passed to the tree based logic, since it
+	 * applies special handling to them
+	 */
+	private static boolean isStreamable(String theName) {
+		switch (theName) {
+			case "id":
+			case "resourceType":
+			case "extension":
+			case "modifierExtension":
+			case "fhir_comments":
+				return false;
+			default:
+				return true;
+		}
+	}
+
+	/**
+	 * The members of an object which are not streamed
+	 */
+	private static class PendingMembers extends JsonLikeObject {
+		private final Map<String, JsonLikeValue> myValues = new LinkedHashMap<>();
+
+		void put(String theName, JsonLikeValue theValue) {
+			myValues.put(theName, theValue);
+		}
+
+		JsonLikeValue remove(String theName) {
+			return myValues.remove(theName);
+		}
+
+		boolean isEmpty() {
+			return myValues.isEmpty();
+		}
+
+		@Override
+		public Object getValue() {
+			return null;
+		}
+
+		@Override
+		public Set<String> keySet() {
+			return myValues.keySet();
+		}
+
+		@Override
+		public JsonLikeValue get(String theKey) {
+			return myValues.get(theKey);
+		}
+	}
+
+}
@@ -152,6 +152,15 @@ class ParserState<T> {
 		}
 	}
 
+	/**
+	 * Returns <code>true</code> if the current state needs to receive {@link #xmlEvent(XMLEvent)}
+	 * calls, so that a parser which doesn't otherwise create XML event objects only has to do so
+	 * when they will actually be used
+	 */
+	public boolean isCapturingXmlEvents() {
+		return myState != null && myState.isCapturingXmlEvents();
+	}
+
 
 	/**
 	 * @param theResourceType
@@ -294,6 +303,10 @@ class ParserState<T> {
 			// ignore
 		}
 
+		public boolean isCapturingXmlEvents() {
+			return false;
+		}
+
 	}
 
 	private class ContainedResourcesStateHapi extends PreResourceState {
@@ -1560,6 +1573,11 @@ class ParserState<T> {
 			return myDt;
 		}
 
+		@Override
+		public boolean isCapturingXmlEvents() {
+			return true;
+		}
+
 		@Override
 		public void xmlEvent(XMLEvent theEvent) {
 			if (theEvent.isEndElement()) {
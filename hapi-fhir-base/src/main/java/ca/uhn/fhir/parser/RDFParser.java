@@ -481,10 +481,8 @@ public class RDFParser extends BaseParser {
 					containedResource, nextChildElem, encodeContext);
 			} else {
 
-				List<? extends IBase> values = nextChild.getAccessor().getValues(element);
-				values = super.preProcessValues(nextChild, resource, values, nextChildElem, encodeContext);
-
-				if (values == null || values.isEmpty()) {
+				Iterable<? extends IBase> values = super.getValuesToEncode(nextChild, element, resource, nextChildElem, encodeContext);
+				if (values == null) {
 					continue;
 				}
 				for (IBase nextValue : values) {
@@ -35,15 +35,17 @@ import ca.uhn.fhir.util.XmlUtil;
 import org.apache.commons.lang3.StringUtils;
 import org.hl7.fhir.instance.model.api.*;
 
-import javax.xml.namespace.QName;
 import javax.xml.stream.*;
 import javax.xml.stream.events.*;
+import java.io.InputStream;
 import java.io.Reader;
 import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
+import static org.apache.commons.lang3.StringUtils.defaultString;
 import static org.apache.commons.lang3.StringUtils.isBlank;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 
@@ -71,9 +73,19 @@ public class XmlParser extends BaseParser {
 		myContext = theContext;
 	}
 
-	private XMLEventReader createStreamReader(Reader theReader) {
+	private XMLStreamReader createStreamReader(Reader theReader) {
 		try {
-			return XmlUtil.createXmlReader(theReader);
+			return XmlUtil.createXmlStreamReader(theReader);
+		} catch (FactoryConfigurationError e1) {
+			throw new ConfigurationException("Failed to initialize STaX event factory", e1);
+		} catch (XMLStreamException e1) {
+			throw new DataFormatException(e1);
+		}
+	}
+
+	private XMLStreamReader createStreamReader(InputStream theInputStream) {
+		try {
+			return XmlUtil.createXmlStreamReader(theInputStream);
 		} catch (FactoryConfigurationError e1) {
 			throw new ConfigurationException("Failed to initialize STaX event factory", e1);
 		} catch (XMLStreamException e1) {
@@ -112,48 +124,53 @@ public class XmlParser extends BaseParser {
 
 	@Override
 	public <T extends IBaseResource> T doParseResource(Class<T> theResourceType, Reader theReader) {
-		XMLEventReader streamReader = createStreamReader(theReader);
+		XMLStreamReader streamReader = createStreamReader(theReader);
 		return parseResource(theResourceType, streamReader);
 	}
 
-	private <T> T doXmlLoop(XMLEventReader streamReader, ParserState<T> parserState) {
+	@Override
+	protected <T extends IBaseResource> T doParseResource(Class<T> theResourceType, InputStream theInputStream) {
+		XMLStreamReader streamReader = createStreamReader(theInputStream);
+		return parseResource(theResourceType, streamReader);
+	}
+
+	/**
+	 * This uses a cursor-based reader rather than an event reader, so that no event object
+	 * is allocated for every element, attribute and run of text. The only state which needs
+	 * actual {@link XMLEvent XML events} is the one capturing embedded XHTML, so they are only
+	 * created while that state is active.
+	 */
+	private <T> T doXmlLoop(XMLStreamReader streamReader, ParserState<T> parserState) {
 		ourLog.trace("Entering XML parsing loop with state: {}", parserState);
 
 		try {
 			List<String> heldComments = new ArrayList<>(1);
+			XMLEventFactory eventFactory = null;
 
 			while (streamReader.hasNext()) {
-				XMLEvent nextEvent = streamReader.nextEvent();
+				int nextEventType = streamReader.next();
 				try {
 
-					switch (nextEvent.getEventType()) {
+					switch (nextEventType) {
 						case XMLStreamConstants.START_ELEMENT: {
-							StartElement elem = nextEvent.asStartElement();
-
-							String namespaceURI = elem.getName().getNamespaceURI();
+							String namespaceURI = defaultString(streamReader.getNamespaceURI());
+							String elementName = streamReader.getLocalName();
 
-							if ("extension".equals(elem.getName().getLocalPart())) {
-								Attribute urlAttr = elem.getAttributeByName(new QName("url"));
-								String url;
-								if (urlAttr == null || isBlank(urlAttr.getValue())) {
+							if ("extension".equals(elementName)) {
+								String url = streamReader.getAttributeValue(null, "url");
+								if (isBlank(url)) {
 									getErrorHandler().missingRequiredElement(new ParseLocation().setParentElementName("extension"), "url");
 									url = null;
-								} else {
-									url = urlAttr.getValue();
 								}
-								parserState.enteringNewElementExtension(elem, url, false, getServerBaseUrl());
-							} else if ("modifierExtension".equals(elem.getName().getLocalPart())) {
-								Attribute urlAttr = elem.getAttributeByName(new QName("url"));
-								String url;
-								if (urlAttr == null || isBlank(urlAttr.getValue())) {
+								parserState.enteringNewElementExtension(null, url, false, getServerBaseUrl());
+							} else if ("modifierExtension".equals(elementName)) {
+								String url = streamReader.getAttributeValue(null, "url");
+								if (isBlank(url)) {
 									getErrorHandler().missingRequiredElement(new ParseLocation().setParentElementName("modifierExtension"), "url");
 									url = null;
-								} else {
-									url = urlAttr.getValue();
 								}
-								parserState.enteringNewElementExtension(elem, url, true, getServerBaseUrl());
+								parserState.enteringNewElementExtension(null, url, true, getServerBaseUrl());
 							} else {
-								String elementName = elem.getName().getLocalPart();
 								parserState.enteringNewElement(namespaceURI, elementName);
 							}
 
@@ -164,9 +181,8 @@ public class XmlParser extends BaseParser {
 								heldComments.clear();
 							}
 
-							for (Iterator<Attribute> attributes = elem.getAttributes(); attributes.hasNext(); ) {
-								Attribute next = attributes.next();
-								parserState.attributeValue(next.getName().getLocalPart(), next.getValue());
+							for (int i = 0; i < streamReader.getAttributeCount(); i++) {
+								parserState.attributeValue(streamReader.getAttributeLocalName(i), streamReader.getAttributeValue(i));
 							}
 
 							break;
@@ -180,27 +196,27 @@ public class XmlParser extends BaseParser {
 								heldComments.clear();
 							}
 							parserState.endingElement();
-//						if (parserState.isComplete()) {
-//							return parserState.getObject();
-//						}
 							break;
 						}
 						case XMLStreamConstants.CHARACTERS: {
-							parserState.string(nextEvent.asCharacters().getData());
+							parserState.string(streamReader.getText());
 							break;
 						}
 						case XMLStreamConstants.COMMENT: {
-							Comment comment = (Comment) nextEvent;
-							String commentText = comment.getText();
-							heldComments.add(commentText);
+							heldComments.add(streamReader.getText());
 							break;
 						}
 					}
 
-					parserState.xmlEvent(nextEvent);
+					if (parserState.isCapturingXmlEvents()) {
+						if (eventFactory == null) {
+							eventFactory = XmlUtil.getOrCreateEventFactory();
+						}
+						parserState.xmlEvent(createXmlEvent(eventFactory, streamReader, nextEventType));
+					}
 
 				} catch (DataFormatException e) {
-					throw new DataFormatException("DataFormatException at [" + nextEvent.getLocation().toString() + "]: " + e.getMessage(), e);
+					throw new DataFormatException("DataFormatException at [" + streamReader.getLocation().toString() + "]: " + e.getMessage(), e);
 				}
 			}
 			return parserState.getObject();
@@ -209,6 +225,59 @@ public class XmlParser extends BaseParser {
 		}
 	}
 
+	/**
+	 * Creates an event object for the node the reader is currently positioned on
+	 */
+	private static XMLEvent createXmlEvent(XMLEventFactory theEventFactory, XMLStreamReader theStreamReader, int theEventType) {
+		switch (theEventType) {
+			case XMLStreamConstants.START_ELEMENT: {
+				List<Attribute> attributes = new ArrayList<>(theStreamReader.getAttributeCount());
+				for (int i = 0; i < theStreamReader.getAttributeCount(); i++) {
+					attributes.add(theEventFactory.createAttribute(defaultString(theStreamReader.getAttributePrefix(i)), defaultString(theStreamReader.getAttributeNamespace(i)), theStreamReader.getAttributeLocalName(i), theStreamReader.getAttributeValue(i)));
+				}
+				return theEventFactory.createStartElement(defaultString(theStreamReader.getPrefix()), defaultString(theStreamReader.getNamespaceURI()), theStreamReader.getLocalName(), attributes.iterator(), createNamespaces(theEventFactory, theStreamReader).iterator());
+			}
+			case XMLStreamConstants.END_ELEMENT:
+				return theEventFactory.createEndElement(defaultString(theStreamReader.getPrefix()), defaultString(theStreamReader.getNamespaceURI()), theStreamReader.getLocalName(), createNamespaces(theEventFactory, theStreamReader).iterator());
+			case XMLStreamConstants.CHARACTERS:
+				return theEventFactory.createCharacters(theStreamReader.getText());
+			case XMLStreamConstants.CDATA:
+				return theEventFactory.createCData(theStreamReader.getText());
+			case XMLStreamConstants.SPACE:
+				return theEventFactory.createSpace(theStreamReader.getText());
+			case XMLStreamConstants.COMMENT:
+				return theEventFactory.createComment(theStreamReader.getText());
+			case XMLStreamConstants.PROCESSING_INSTRUCTION:
+				return theEventFactory.createProcessingInstruction(theStreamReader.getPITarget(), theStreamReader.getPIData());
+			case XMLStreamConstants.ENTITY_REFERENCE:
+				return theEventFactory.createEntityReference(theStreamReader.getLocalName(), null);
+			case XMLStreamConstants.DTD:
+				return theEventFactory.createDTD(theStreamReader.getText());
+			case XMLStreamConstants.START_DOCUMENT:
+				return theEventFactory.createStartDocument();
+			case XMLStreamConstants.END_DOCUMENT:
+			default:
+				return theEventFactory.createEndDocument();
+		}
+	}
+
+	private static List<Namespace> createNamespaces(XMLEventFactory theEventFactory, XMLStreamReader theStreamReader) {
+		int count = theStreamReader.getNamespaceCount();
+		if (count == 0) {
+			return Collections.emptyList();
+		}
+		List<Namespace> retVal = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			String prefix = theStreamReader.getNamespacePrefix(i);
+			if (isBlank(prefix)) {
+				retVal.add(theEventFactory.createNamespace(theStreamReader.getNamespaceURI(i)));
+			} else {
+				retVal.add(theEventFactory.createNamespace(prefix, theStreamReader.getNamespaceURI(i)));
+			}
+		}
+		return retVal;
+	}
+
 	private void encodeChildElementToStreamWriter(IBaseResource theResource, XMLStreamWriter theEventWriter, BaseRuntimeChildDefinition theChildDefinition, IBase theElement, String theChildName, BaseRuntimeElementDefinition<?> childDef,
 																 String theExtensionUrl, boolean theIncludedResource, CompositeChildElement theParent, EncodeContext theEncodeContext) throws XMLStreamException, DataFormatException {
 
@@ -380,10 +449,8 @@ public class XmlParser extends BaseParser {
 				encodeChildElementToStreamWriter(theResource, theEventWriter, nextChild, null, nextChild.getChildNameByDatatype(null), nextChild.getChildElementDefinitionByDatatype(null), null, theContainedResource, nextChildElem, theEncodeContext);
 			} else {
 
-				List<? extends IBase> values = nextChild.getAccessor().getValues(theElement);
-				values = preProcessValues(nextChild, theResource, values, nextChildElem, theEncodeContext);
-
-				if (values == null || values.isEmpty()) {
+				Iterable<? extends IBase> values = getValuesToEncode(nextChild, theElement, theResource, nextChildElem, theEncodeContext);
+				if (values == null) {
 					continue;
 				}
 				for (IBase nextValue : values) {
@@ -748,7 +815,7 @@ public class XmlParser extends BaseParser {
 		return EncodingEnum.XML;
 	}
 
-	private <T extends IBaseResource> T parseResource(Class<T> theResourceType, XMLEventReader theStreamReader) {
+	private <T extends IBaseResource> T parseResource(Class<T> theResourceType, XMLStreamReader theStreamReader) {
 		ParserState<T> parserState = ParserState.getPreResourceInstance(this, theResourceType, myContext, false, getErrorHandler());
 		return doXmlLoop(theStreamReader, parserState);
 	}
@@ -0,0 +1,309 @@
+package ca.uhn.fhir.parser.json;
+/*
+ * #%L
+ * HAPI FHIR - Core Library
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.parser.DataFormatException;
+import ca.uhn.fhir.parser.json.JsonLikeValue.ScalarType;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link JsonLikeStructure} implementation which reads JSON using the
+ * Jackson streaming token API instead of building a Gson tree.
+ * <p>
+ * In addition to being used as a regular structure, the static
+ * {@link #createParser(Reader)} and {@link #readValue(JsonParser)} methods are
+ * used by the streaming FHIR JSON parser to read only small parts of a
+ * document (e.g. primitive values and extensions) into a tree, while the rest
+ * of the document is consumed token by token.
+ * </p>
+ */
+public class JacksonStructure implements JsonLikeStructure {
+
+	private static final JsonFactory ourJsonFactory;
+
+	static {
+		// Match the leniency of the Gson based parser
+		ourJsonFactory = new JsonFactory();
+		ourJsonFactory.configure(JsonParser.Feature.AUTO_CLOSE_SOURCE, false);
+		ourJsonFactory.configure(JsonParser.Feature.ALLOW_COMMENTS, true);
+		ourJsonFactory.configure(JsonParser.Feature.ALLOW_NON_NUMERIC_NUMBERS, true);
+		ourJsonFactory.configure(JsonParser.Feature.ALLOW_UNQUOTED_FIELD_NAMES, true);
+	}
+
+	private JsonLikeValue myRoot;
+	private JsonLikeWriter myJsonLikeWriter;
+
+	@Override
+	public JsonLikeStructure getInstance() {
+		return new JacksonStructure();
+	}
+
+	@Override
+	public void load(Reader theReader) throws DataFormatException {
+		load(theReader, false);
+	}
+
+	@Override
+	public void load(Reader theReader, boolean theAllowArray) throws DataFormatException {
+		JsonParser parser = createParser(theReader, theAllowArray);
+		try {
+			parser.nextToken();
+			myRoot = readValue(parser);
+			if (parser.nextToken() != null) {
+				throw new DataFormatException("Failed to parse JSON content, error was: JSON document was not fully consumed.");
+			}
+		} catch (IOException e) {
+			throw newDataFormatException(e);
+		}
+	}
+
+	@Override
+	public JsonLikeWriter getJsonLikeWriter(Writer theWriter) {
+		if (myJsonLikeWriter == null) {
+			myJsonLikeWriter = new JacksonWriter(theWriter);
+		}
+		return myJsonLikeWriter;
+	}
+
+	@Override
+	public JsonLikeWriter getJsonLikeWriter() {
+		if (myJsonLikeWriter == null) {
+			myJsonLikeWriter = new JacksonWriter();
+		}
+		return myJsonLikeWriter;
+	}
+
+	@Override
+	public JsonLikeObject getRootObject() throws DataFormatException {
+		if (myRoot != null && myRoot.isObject()) {
+			return myRoot.getAsObject();
+		}
+		throw new DataFormatException("Content must be a valid JSON Object. It must start with '{'.");
+	}
+
+	@Override
+	public JsonLikeArray getRootArray() throws DataFormatException {
+		if (myRoot != null && myRoot.isArray()) {
+			return myRoot.getAsArray();
+		}
+		throw new DataFormatException("Content must be a valid JSON Array. It must start with '['.");
+	}
+
+	/**
+	 * Creates a Jackson parser for a FHIR JSON document. The first non-whitespace
+	 * character of the content must be '{'. No tokens are consumed.
+	 */
+	public static JsonParser createParser(Reader theReader) throws DataFormatException {
+		return createParser(theReader, false);
+	}
+
+	private static JsonParser createParser(Reader theReader, boolean theAllowArray) throws DataFormatException {
+		PushbackReader pbr = new PushbackReader(theReader);
+		try {
+			while (true) {
+				int nextInt = pbr.read();
+				if (nextInt == -1) {
+					throw new DataFormatException("Did not find any content to parse");
+				}
+				if (nextInt == '{' || (theAllowArray && nextInt == '[')) {
+					pbr.unread(nextInt);
+					break;
+				}
+				if (Character.isWhitespace(nextInt)) {
+					continue;
+				}
+				if (theAllowArray) {
+					throw new DataFormatException("Content does not appear to be FHIR JSON, first non-whitespace character was: '" + (char) nextInt + "' (must be '{' or '[')");
+				}
+				throw new DataFormatException("Content does not appear to be FHIR JSON, first non-whitespace character was: '" + (char) nextInt + "' (must be '{')");
+			}
+			return ourJsonFactory.createParser(pbr);
+		} catch (Exception e) {
+			throw new DataFormatException("Failed to parse JSON content, error was: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Converts an exception thrown by Jackson while reading into a {@link DataFormatException}
+	 */
+	public static DataFormatException newDataFormatException(IOException theException) {
+		if (theException instanceof JsonProcessingException) {
+			return new DataFormatException("Failed to parse JSON encoded FHIR content: " + theException.getMessage(), theException);
+		}
+		return new DataFormatException("Failed to parse JSON content, error was: " + theException.getMessage(), theException);
+	}
+
+	/**
+	 * Reads the value starting at the parser's current token into a tree. When this
+	 * method returns, the current token is the last token of the value (i.e. the
+	 * matching {@link JsonToken#END_OBJECT} or {@link JsonToken#END_ARRAY} for
+	 * a structured value).
+	 */
+	public static JsonLikeValue readValue(JsonParser theParser) throws IOException {
+		JsonToken token = theParser.getCurrentToken();
+		if (token == null) {
+			throw new DataFormatException("Failed to parse JSON encoded FHIR content: Unexpected end of content");
+		}
+		switch (token) {
+			case START_OBJECT: {
+				JacksonJsonObject retVal = new JacksonJsonObject();
+				while (theParser.nextToken() == JsonToken.FIELD_NAME) {
+					String name = theParser.getCurrentName();
+					theParser.nextToken();
+					retVal.put(name, readValue(theParser));
+				}
+				return retVal;
+			}
+			case START_ARRAY: {
+				theParser.nextToken();
+				return readArrayItems(theParser);
+			}
+			case VALUE_STRING:
+				return new JacksonJsonScalar(ScalarType.STRING, theParser.getText(), null);
+			case VALUE_NUMBER_INT:
+			case VALUE_NUMBER_FLOAT:
+				return new JacksonJsonScalar(ScalarType.NUMBER, theParser.getText(), theParser.getNumberValue());
+			case VALUE_TRUE:
+				return JsonLikeValue.TRUE;
+			case VALUE_FALSE:
+				return JsonLikeValue.FALSE;
+			case VALUE_NULL:
+				return JsonLikeValue.NULL;
+			default:
+				throw new DataFormatException("Failed to parse JSON encoded FHIR content: Unexpected token " + token);
+		}
+	}
+
+	/**
+	 * Reads the items of an array into a tree, starting with the item at the parser's
+	 * current token (i.e. the token following {@link JsonToken#START_ARRAY}). When this
+	 * method returns, the current token is the {@link JsonToken#END_ARRAY} which closes
+	 * the array.
+	 */
+	public static JsonLikeArray readArrayItems(JsonParser theParser) throws IOException {
+		JacksonJsonArray retVal = new JacksonJsonArray();
+		while (theParser.getCurrentToken() != JsonToken.END_ARRAY) {
+			retVal.add(readValue(theParser));
+			theParser.nextToken();
+		}
+		return retVal;
+	}
+
+	private static class JacksonJsonObject extends JsonLikeObject {
+		private final Map<String, JsonLikeValue> myValues = new LinkedHashMap<>();
+
+		void put(String theName, JsonLikeValue theValue) {
+			myValues.put(theName, theValue);
+		}
+
+		@Override
+		public Object getValue() {
+			return null;
+		}
+
+		@Override
+		public Set<String> keySet() {
+			return myValues.keySet();
+		}
+
+		@Override
+		public JsonLikeValue get(String theKey) {
+			return myValues.get(theKey);
+		}
+	}
+
+	private static class JacksonJsonArray extends JsonLikeArray {
+		private final List<JsonLikeValue> myValues = new ArrayList<>();
+
+		void add(JsonLikeValue theValue) {
+			myValues.add(theValue);
+		}
+
+		@Override
+		public Object getValue() {
+			return null;
+		}
+
+		@Override
+		public int size() {
+			return myValues.size();
+		}
+
+		@Override
+		public JsonLikeValue get(int theIndex) {
+			return myValues.get(theIndex);
+		}
+	}
+
+	private static class JacksonJsonScalar extends JsonLikeValue {
+		private final ScalarType myDataType;
+		private final String myText;
+		private final Number myNumber;
+
+		JacksonJsonScalar(ScalarType theDataType, String theText, Number theNumber) {
+			myDataType = theDataType;
+			myText = theText;
+			myNumber = theNumber;
+		}
+
+		@Override
+		public ValueType getJsonType() {
+			return ValueType.SCALAR;
+		}
+
+		@Override
+		public ScalarType getDataType() {
+			return myDataType;
+		}
+
+		@Override
+		public Object getValue() {
+			if (myDataType == ScalarType.NUMBER) {
+				return myNumber;
+			}
+			return myText;
+		}
+
+		@Override
+		public String getAsString() {
+			// Numbers keep their original lexical form (e.g. "1.50")
+			return myText;
+		}
+
+		@Override
+		public String toString() {
+			return myText;
+		}
+	}
+
+}
@@ -0,0 +1,345 @@
+package ca.uhn.fhir.parser.json;
+/*
+ * #%L
+ * HAPI FHIR - Core Library
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.DefaultIndenter;
+import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * {@link JsonLikeWriter} implementation which uses a Jackson {@link JsonGenerator}.
+ * <p>
+ * When created with an {@link OutputStream}, content is encoded directly to UTF-8
+ * bytes using Jackson's recycled buffers, without going through an intermediate
+ * {@link Writer}. This is the most efficient way of writing a JSON response body.
+ * </p>
+ * <p>
+ * The buffers are only returned for reuse when {@link #close()} is called. As with
+ * {@link GsonWriter}, closing this writer also closes a {@link Writer} passed to it, but
+ * an {@link OutputStream} is left open for the caller.
+ * </p>
+ */
+public class JacksonWriter extends JsonLikeWriter {
+	private static final Logger ourLog = LoggerFactory.getLogger(JacksonWriter.class);
+	private static final JsonFactory ourJsonFactory = new JsonFactory();
+
+	private enum BlockType {
+		NONE, OBJECT, ARRAY
+	}
+
+	private final Deque<BlockType> myBlockStack = new ArrayDeque<>();
+	private OutputStream myOutputStream;
+	private JsonGenerator myGenerator;
+	private BlockType myBlockType = BlockType.NONE;
+
+	public JacksonWriter() {
+		super();
+	}
+
+	public JacksonWriter(Writer theWriter) {
+		setWriter(theWriter);
+	}
+
+	/**
+	 * Constructor for a writer which encodes UTF-8 directly to the given stream
+	 */
+	public JacksonWriter(OutputStream theOutputStream) {
+		myOutputStream = theOutputStream;
+	}
+
+	@Override
+	public JsonLikeWriter init() throws IOException {
+		if (myOutputStream != null) {
+			myGenerator = ourJsonFactory.createGenerator(myOutputStream, JsonEncoding.UTF8);
+		} else {
+			myGenerator = ourJsonFactory.createGenerator(getWriter());
+		}
+		// The stream is owned by the caller, and an unfinished document should not be completed on close
+		myGenerator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+		myGenerator.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+		if (isPrettyPrint()) {
+			myGenerator.setPrettyPrinter(new HapiPrettyPrinter());
+		}
+		myBlockType = BlockType.NONE;
+		myBlockStack.clear();
+		return this;
+	}
+
+	@Override
+	public JsonLikeWriter flush() throws IOException {
+		if (myBlockType != BlockType.NONE) {
+			ourLog.error("JsonLikeStreamWriter.flush() called but JSON document is not finished");
+		}
+		myGenerator.flush();
+		if (getWriter() != null) {
+			getWriter().flush();
+		}
+		return this;
+	}
+
+	@Override
+	public void close() throws IOException {
+		myGenerator.close();
+		if (getWriter() != null) {
+			getWriter().close();
+		}
+	}
+
+	@Override
+	public JsonLikeWriter beginObject() throws IOException {
+		pushBlock(BlockType.OBJECT);
+		myGenerator.writeStartObject();
+		return this;
+	}
+
+	@Override
+	public JsonLikeWriter beginArray() throws IOException {
+		pushBlock(BlockType.ARRAY);
+		myGenerator.writeStartArray();
+		return this;
+	}
+
+	@Override
+	public JsonLikeWriter beginObject(String theName) throws IOException {
+		pushBlock(BlockType.OBJECT);
+		myGenerator.writeFieldName(theName);
+		myGenerator.writeStartObject();
+		return this;
+	}
+
+	@Override
+	public JsonLikeWriter beginArray(String theName) throws IOException {
+		pushBlock(BlockType.ARRAY);
+		myGenerator.writeFieldName(theName);
+		myGenerator.writeStartArray();
+		return this;
+	}
+
+	@Override
+	public JsonLikeWriter write(String theValue) throws IOException {
+		myGenerator.writeString(theValue);
+		return this;
+	}
+
+	@Override
+	public JsonLikeWriter write(BigInteger theValue) throws IOException {
+		myGenerator.writeNumber(theValue);
+		return this;
+	}
+
+	@Override
+	public JsonLikeWriter write(BigDecimal theValue) throws IOException {
+		myGenerator.writeNumber(theValue);
+		return this;
+	}
+
+	@Override
+	public JsonLikeWriter write(long theValue) throws IOException {
+		myGenerator.writeNumber(theValue);
+		return this;
+	}
+
+	@Override
+	public JsonLikeWriter write(double theValue) throws IOException {
+		myGenerator.writeNumber(theValue);
+		return this;
+	}
+
+	@Override
+	public JsonLikeWriter write(Boolean theValue) throws IOException {
+		if (theValue == null) {
+			myGenerator.writeNull();
+		} else {
+			myGenerator.writeBoolean(theValue);
+		}
+		return this;
+	}
+
+	@Override
+	public JsonLikeWriter write(boolean theValue) throws IOException {
+		myGenerator.writeBoolean(theValue);
+		return this;
+	}
+
+	@Override
+	public JsonLikeWriter writeNull() throws IOException {
+		myGenerator.writeNull();
+		return this;
+	}
+
+	@Override
+	public JsonLikeWriter write(String theName, String theValue) throws IOException {
+		myGenerator.writeFieldName(theName);
+		return write(theValue);
+	}
+
+	@Override
+	public JsonLikeWriter write(String theName, BigInteger theValue) throws IOException {
+		myGenerator.writeFieldName(theName);
+		return write(theValue);
+	}
+
+	@Override
+	public JsonLikeWriter write(String theName, BigDecimal theValue) throws IOException {
+		myGenerator.writeFieldName(theName);
+		return write(theValue);
+	}
+
+	@Override
+	public JsonLikeWriter write(String theName, long theValue) throws IOException {
+		myGenerator.writeFieldName(theName);
+		return write(theValue);
+	}
+
+	@Override
+	public JsonLikeWriter write(String theName, double theValue) throws IOException {
+		myGenerator.writeFieldName(theName);
+		return write(theValue);
+	}
+
+	@Override
+	public JsonLikeWriter write(String theName, Boolean theValue) throws IOException {
+		myGenerator.writeFieldName(theName);
+		return write(theValue);
+	}
+
+	@Override
+	public JsonLikeWriter write(String theName, boolean theValue) throws IOException {
+		myGenerator.writeFieldName(theName);
+		return write(theValue);
+	}
+
+	@Override
+	public JsonLikeWriter writeNull(String theName) throws IOException {
+		myGenerator.writeFieldName(theName);
+		return writeNull();
+	}
+
+	@Override
+	public JsonLikeWriter endObject() throws IOException {
+		if (myBlockType == BlockType.NONE) {
+			ourLog.error("JsonLikeStreamWriter.endObject(); called with no active JSON document");
+		} else {
+			if (myBlockType != BlockType.OBJECT) {
+				ourLog.error("JsonLikeStreamWriter.endObject(); called outside a JSON object. (Use endArray() instead?)");
+				myGenerator.writeEndArray();
+			} else {
+				myGenerator.writeEndObject();
+			}
+			myBlockType = myBlockStack.pop();
+		}
+		return this;
+	}
+
+	@Override
+	public JsonLikeWriter endArray() throws IOException {
+		if (myBlockType == BlockType.NONE) {
+			ourLog.error("JsonLikeStreamWriter.endArray(); called with no active JSON document");
+		} else {
+			if (myBlockType != BlockType.ARRAY) {
+				ourLog.error("JsonLikeStreamWriter.endArray(); called outside a JSON array. (Use endObject() instead?)");
+				myGenerator.writeEndObject();
+			} else {
+				myGenerator.writeEndArray();
+			}
+			myBlockType = myBlockStack.pop();
+		}
+		return this;
+	}
+
+	@Override
+	public JsonLikeWriter endBlock() throws IOException {
+		if (myBlockType == BlockType.NONE) {
+			ourLog.error("JsonLikeStreamWriter.endBlock(); called with no active JSON document");
+		} else {
+			if (myBlockType == BlockType.ARRAY) {
+				myGenerator.writeEndArray();
+			} else {
+				myGenerator.writeEndObject();
+			}
+			myBlockType = myBlockStack.pop();
+		}
+		return this;
+	}
+
+	private void pushBlock(BlockType theBlockType) {
+		myBlockStack.push(myBlockType);
+		myBlockType = theBlockType;
+	}
+
+	/**
+	 * Produces the same layout as the Gson based writer: two space indents,
+	 * <code>"name": value</code> pairs and no padding inside empty objects or arrays
+	 */
+	private static class HapiPrettyPrinter extends DefaultPrettyPrinter {
+		private static final long serialVersionUID = 1L;
+
+		HapiPrettyPrinter() {
+			DefaultIndenter indenter = new DefaultIndenter("  ", "\n");
+			indentObjectsWith(indenter);
+			indentArraysWith(indenter);
+		}
+
+		@Override
+		public DefaultPrettyPrinter createInstance() {
+			return new HapiPrettyPrinter();
+		}
+
+		@Override
+		public void writeObjectFieldValueSeparator(JsonGenerator theGenerator) throws IOException {
+			theGenerator.writeRaw(": ");
+		}
+
+		@Override
+		public void writeEndObject(JsonGenerator theGenerator, int theNrOfEntries) throws IOException {
+			if (!_objectIndenter.isInline()) {
+				--_nesting;
+			}
+			if (theNrOfEntries > 0) {
+				_objectIndenter.writeIndentation(theGenerator, _nesting);
+			}
+			theGenerator.writeRaw('}');
+		}
+
+		@Override
+		public void writeEndArray(JsonGenerator theGenerator, int theNrOfValues) throws IOException {
+			if (!_arrayIndenter.isInline()) {
+				--_nesting;
+			}
+			if (theNrOfValues > 0) {
+				_arrayIndenter.writeIndentation(theGenerator, _nesting);
+			}
+			theGenerator.writeRaw(']');
+		}
+	}
+
+}
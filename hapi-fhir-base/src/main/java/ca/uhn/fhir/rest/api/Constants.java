@@ -58,6 +58,12 @@ public class Constants {
 	public static final String CT_HTML_WITH_UTF8 = "text/html" + CHARSET_UTF8_CTSUFFIX;
 	public static final String CT_JSON = "application/json";
 	public static final String CT_JSON_PATCH = "application/json-patch+json";
+	/**
+	 * The FHIR MimeType for newline delimited JSON, as used by the Bulk Data specification
+	 */
+	public static final String CT_FHIR_NDJSON = "application/fhir+ndjson";
+	public static final String CT_APP_NDJSON = "application/ndjson";
+	public static final String CT_NDJSON = "ndjson";
 	public static final String CT_OCTET_STREAM = "application/octet-stream";
 	public static final String CT_TEXT = "text/plain";
 	public static final String CT_TEXT_WITH_UTF8 = CT_TEXT + CHARSET_UTF8_CTSUFFIX;
@@ -123,6 +129,9 @@ public class Constants {
 	public static final String HEADER_PREFER_RETURN_MINIMAL = "minimal";
 	public static final String HEADER_PREFER_RETURN_REPRESENTATION = "representation";
 	public static final String HEADER_PREFER_RETURN_OPERATION_OUTCOME = "OperationOutcome";
+	public static final String HEADER_PREFER_RESPOND_ASYNC = "respond-async";
+	public static final String HEADER_RETRY_AFTER = "Retry-After";
+	public static final String HEADER_X_PROGRESS = "X-Progress";
 	public static final String HEADER_SUFFIX_CT_UTF_8 = "; charset=UTF-8";
 	public static final String HEADERVALUE_CORS_ALLOW_METHODS_ALL = "GET, POST, PUT, DELETE, OPTIONS";
 	public static final Map<Integer, String> HTTP_STATUS_NAMES;
@@ -183,6 +192,7 @@ public class Constants {
 	public static final String PARAMQUALIFIER_TOKEN_TEXT = ":text";
 	public static final int STATUS_HTTP_200_OK = 200;
 	public static final int STATUS_HTTP_201_CREATED = 201;
+	public static final int STATUS_HTTP_202_ACCEPTED = 202;
 	public static final int STATUS_HTTP_204_NO_CONTENT = 204;
 	public static final int STATUS_HTTP_304_NOT_MODIFIED = 304;
 	public static final int STATUS_HTTP_400_BAD_REQUEST = 400;
@@ -13,6 +13,7 @@ import org.apache.commons.lang3.Validate;
 import org.hl7.fhir.instance.model.api.*;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -42,7 +43,13 @@ import static org.apache.commons.lang3.StringUtils.*;
 public class FhirTerser {
 
 	private static final Pattern COMPARTMENT_MATCHER_PATH = Pattern.compile("([a-zA-Z.]+)\\.where\\(resolve\\(\\) is ([a-zA-Z]+)\\)");
+	/**
+	 * Paths are normally constants in code, but this stops the cache from growing without bound
+	 * if an application builds them dynamically
+	 */
+	private static final int MAX_COMPILED_PATHS_PER_DEFINITION = 1000;
 	private FhirContext myContext;
+	private final Map<BaseRuntimeElementCompositeDefinition<?>, Map<String, CompiledPath>> myCompiledPathCache = new ConcurrentHashMap<>();
 
 	public FhirTerser(FhirContext theContext) {
 		super();
@@ -160,20 +167,117 @@ public class FhirTerser {
 	public <T extends IBase> List<T> getAllPopulatedChildElementsOfType(IBaseResource theResource, final Class<T> theType) {
 		final ArrayList<T> retVal = new ArrayList<>();
 		BaseRuntimeElementCompositeDefinition<?> def = myContext.getResourceDefinition(theResource);
-		visit(new IdentityHashMap<>(), theResource, theResource, null, null, def, new IModelVisitor() {
-			@SuppressWarnings("unchecked")
-			@Override
-			public void acceptElement(IBaseResource theOuterResource, IBase theElement, List<String> thePathToElement, BaseRuntimeChildDefinition theChildDefinition, BaseRuntimeElementDefinition<?> theDefinition) {
-				if (theElement == null || theElement.isEmpty()) {
-					return;
+		findPopulatedChildElementsOfType(new IdentityHashMap<>(), theResource, def, theType, retVal);
+		return retVal;
+	}
+
+	/**
+	 * This walks the same elements as {@link #visit(IdentityHashMap, IBaseResource, IBase, List, BaseRuntimeChildDefinition, BaseRuntimeElementDefinition, IModelVisitor)}
+	 * but is specialized for {@link #getAllPopulatedChildElementsOfType(IBaseResource, Class)}, which the parsers
+	 * call for every resource they encode. It doesn't track the path to each element, and only checks whether
+	 * an element is empty if it is of the wanted type (checking every element is expensive, since
+	 * {@link IBase#isEmpty()} is itself recursive for composites).
+	 */
+	@SuppressWarnings("unchecked")
+	private <T extends IBase> void findPopulatedChildElementsOfType(IdentityHashMap<Object, Object> theStack, IBase theElement, BaseRuntimeElementDefinition<?> theDefinition, Class<T> theType, List<T> theRetVal) {
+		if (theType.isAssignableFrom(theElement.getClass()) && !theElement.isEmpty()) {
+			theRetVal.add((T) theElement);
+		}
+
+		BaseRuntimeElementDefinition<?> def = theDefinition;
+		switch (def.getChildType()) {
+			case ID_DATATYPE:
+			case PRIMITIVE_XHTML_HL7ORG:
+			case PRIMITIVE_XHTML:
+			case PRIMITIVE_DATATYPE:
+				// These are primitive types
+				return;
+			case CONTAINED_RESOURCE_LIST:
+				def = myContext.getElementDefinition(theElement.getClass());
+				break;
+			default:
+				break;
+		}
+
+		if (theStack.put(theElement, theElement) != null) {
+			return;
+		}
+
+		if (theElement instanceof IBaseReference) {
+			IBaseResource target = ((IBaseReference) theElement).getResource();
+			if (target != null) {
+				if (target.getIdElement().hasIdPart() == false || target.getIdElement().isLocal()) {
+					RuntimeResourceDefinition targetDef = myContext.getResourceDefinition(target);
+					findPopulatedChildElementsOfType(theStack, target, targetDef, theType, theRetVal);
 				}
+			}
+		}
 
-				if (theType.isAssignableFrom(theElement.getClass())) {
-					retVal.add((T) theElement);
+		switch (def.getChildType()) {
+			case RESOURCE:
+			case RESOURCE_BLOCK:
+			case COMPOSITE_DATATYPE: {
+				BaseRuntimeElementCompositeDefinition<?> childDef = (BaseRuntimeElementCompositeDefinition<?>) def;
+				for (BaseRuntimeChildDefinition nextChild : childDef.getChildrenAndExtension()) {
+
+					List<?> values = nextChild.getAccessor().getValues(theElement);
+					if (values != null) {
+						for (Object nextValueObject : values) {
+							IBase nextValue;
+							try {
+								nextValue = (IBase) nextValueObject;
+							} catch (ClassCastException e) {
+								String s = "Found instance of " + nextValueObject.getClass() + " - Did you set a field value to the incorrect type? Expected " + IBase.class.getName();
+								throw new ClassCastException(s);
+							}
+							if (nextValue == null) {
+								continue;
+							}
+							/*
+							 * An empty composite can't hold any populated elements, so there's no need to
+							 * check before descending into one. References (whose target resource is walked
+							 * too, and isn't always taken into account by isEmpty()) and anything which can
+							 * hold resources are the exception.
+							 */
+							if ((nextValue instanceof IBaseReference || nextValue instanceof IBaseResource || nextValue instanceof BaseContainedDt) && nextValue.isEmpty()) {
+								continue;
+							}
+							BaseRuntimeElementDefinition<?> childElementDef;
+							childElementDef = nextChild.getChildElementDefinitionByDatatype(nextValue.getClass());
+
+							if (childElementDef == null) {
+								childElementDef = myContext.getElementDefinition(nextValue.getClass());
+							}
+
+							if (nextChild instanceof RuntimeChildDirectResource) {
+								// Don't descend into embedded resources
+								if (theType.isAssignableFrom(nextValue.getClass())) {
+									theRetVal.add((T) nextValue);
+								}
+							} else {
+								findPopulatedChildElementsOfType(theStack, nextValue, childElementDef, theType, theRetVal);
+							}
+						}
+					}
 				}
+				break;
 			}
-		});
-		return retVal;
+			case CONTAINED_RESOURCES: {
+				BaseContainedDt value = (BaseContainedDt) theElement;
+				for (IResource next : value.getContainedResources()) {
+					findPopulatedChildElementsOfType(theStack, next, myContext.getResourceDefinition(next), theType, theRetVal);
+				}
+				break;
+			}
+			default: {
+				// An empty value of one of these types is harmless, since there is nothing to walk
+				if (!theElement.isEmpty()) {
+					throw new IllegalStateException("state should not happen: " + def.getChildType());
+				}
+			}
+		}
+
+		theStack.remove(theElement);
 	}
 
 	public List<ResourceReferenceInfo> getAllResourceReferences(final IBaseResource theResource) {
@@ -232,30 +336,23 @@ public class FhirTerser {
 
 		BaseRuntimeElementCompositeDefinition<?> currentDef = (BaseRuntimeElementCompositeDefinition<?>) def;
 
-		List<String> parts = parsePath(currentDef, thePath);
+		CompiledPath path = getCompiledPath(currentDef, thePath);
 
-		List<T> retVal = getValues(currentDef, theTarget, parts, theWantedType);
+		List<T> retVal = getValues(currentDef, theTarget, path.myParts, theWantedType, false, false);
 		if (retVal.isEmpty()) {
 			return null;
 		}
 		return retVal.get(0);
 	}
 
-	private <T> List<T> getValues(BaseRuntimeElementCompositeDefinition<?> theCurrentDef, Object theCurrentObj, List<String> theSubList, Class<T> theWantedClass) {
-		return getValues(theCurrentDef, theCurrentObj, theSubList, theWantedClass, false, false);
-	}
-
 	@SuppressWarnings("unchecked")
-	private <T> List<T> getValues(BaseRuntimeElementCompositeDefinition<?> theCurrentDef, Object theCurrentObj, List<String> theSubList, Class<T> theWantedClass, boolean theCreate, boolean theAddExtension) {
-		String name = theSubList.get(0);
+	private <T> List<T> getValues(BaseRuntimeElementCompositeDefinition<?> theCurrentDef, Object theCurrentObj, List<PathPart> theSubList, Class<T> theWantedClass, boolean theCreate, boolean theAddExtension) {
+		PathPart part = theSubList.get(0);
+		String name = part.getName();
 		List<T> retVal = new ArrayList<>();
 
-		if (name.startsWith("extension('")) {
-			String extensionUrl = name.substring("extension('".length());
-			int endIndex = extensionUrl.indexOf('\'');
-			if (endIndex != -1) {
-				extensionUrl = extensionUrl.substring(0, endIndex);
-			}
+		if (part.isExtension() && !part.isModifierExtension()) {
+			String extensionUrl = part.getExtensionUrl();
 
 			if (myContext.getVersion().getVersion().isOlderThan(FhirVersionEnum.DSTU3)) {
 				// DTSU2
@@ -334,12 +431,8 @@ public class FhirTerser {
 			return retVal;
 		}
 
-		if (name.startsWith("modifierExtension('")) {
-			String extensionUrl = name.substring("modifierExtension('".length());
-			int endIndex = extensionUrl.indexOf('\'');
-			if (endIndex != -1) {
-				extensionUrl = extensionUrl.substring(0, endIndex);
-			}
+		if (part.isModifierExtension()) {
+			String extensionUrl = part.getExtensionUrl();
 
 			if (myContext.getVersion().getVersion().isOlderThan(FhirVersionEnum.DSTU3)) {
 				// DSTU2
@@ -419,7 +512,7 @@ public class FhirTerser {
 			return retVal;
 		}
 
-		BaseRuntimeChildDefinition nextDef = theCurrentDef.getChildByNameOrThrowDataFormatException(name);
+		BaseRuntimeChildDefinition nextDef = part.getChildDefinition(theCurrentDef);
 		List<? extends IBase> values = nextDef.getAccessor().getValues(theCurrentObj);
 
 		if (values.isEmpty() && theCreate) {
@@ -434,13 +527,13 @@ public class FhirTerser {
 			if (nextDef instanceof RuntimeChildChoiceDefinition) {
 				for (IBase next : values) {
 					if (next != null) {
-						if (name.endsWith("[x]")) {
+						if (part.isChoiceWildcard()) {
 							if (theWantedClass == null || theWantedClass.isAssignableFrom(next.getClass())) {
 								retVal.add((T) next);
 							}
 						} else {
 							String childName = nextDef.getChildNameByDatatype(next.getClass());
-							if (theSubList.get(0).equals(childName)) {
+							if (name.equals(childName)) {
 								if (theWantedClass == null || theWantedClass.isAssignableFrom(next.getClass())) {
 									retVal.add((T) next);
 								}
@@ -524,8 +617,8 @@ public class FhirTerser {
 	 */
 	public <T> List<T> getValues(IBaseResource theResource, String thePath, Class<T> theWantedClass) {
 		RuntimeResourceDefinition def = myContext.getResourceDefinition(theResource);
-		List<String> parts = parsePath(def, thePath);
-		return getValues(def, theResource, parts, theWantedClass);
+		CompiledPath path = getCompiledPath(def, thePath);
+		return getValues(def, theResource, path.myParts, theWantedClass, false, false);
 	}
 
 	/**
@@ -541,8 +634,8 @@ public class FhirTerser {
 	 */
 	public <T> List<T> getValues(IBaseResource theResource, String thePath, Class<T> theWantedClass, boolean theCreate) {
 		RuntimeResourceDefinition def = myContext.getResourceDefinition(theResource);
-		List<String> parts = parsePath(def, thePath);
-		return getValues(def, theResource, parts, theWantedClass, theCreate, false);
+		CompiledPath path = getCompiledPath(def, thePath);
+		return getValues(def, theResource, path.myParts, theWantedClass, theCreate, false);
 	}
 
 	/**
@@ -559,11 +652,64 @@ public class FhirTerser {
 	 */
 	public <T> List<T> getValues(IBaseResource theResource, String thePath, Class<T> theWantedClass, boolean theCreate, boolean theAddExtension) {
 		RuntimeResourceDefinition def = myContext.getResourceDefinition(theResource);
-		List<String> parts = parsePath(def, thePath);
-		return getValues(def, theResource, parts, theWantedClass, theCreate, theAddExtension);
+		CompiledPath path = getCompiledPath(def, thePath);
+		return getValues(def, theResource, path.myParts, theWantedClass, theCreate, theAddExtension);
+	}
+
+	/**
+	 * Compiles a path (using the same syntax accepted by {@link #getValues(IBaseResource, String)}) into
+	 * an accessor which can be reused to read values from many resources of the given type. Child definitions
+	 * are resolved once when the path is compiled instead of on every access.
+	 * <p>
+	 * The returned object is thread safe, and may be held and reused for the lifetime of the {@link FhirContext}.
+	 * </p>
+	 *
+	 * @param theResourceType The resource type the path applies to, e.g. <code>Patient</code>
+	 * @param thePath         The path, e.g. <code>Patient.name.family</code>
+	 * @throws DataFormatException If the path refers to an element which does not exist
+	 * @since 4.1.0
+	 */
+	public CompiledPath compile(String theResourceType, String thePath) {
+		Validate.notBlank(theResourceType, "theResourceType must not be empty");
+		Validate.notBlank(thePath, "thePath must not be empty");
+		return getCompiledPath(myContext.getResourceDefinition(theResourceType), thePath).resolve();
 	}
 
-	private List<String> parsePath(BaseRuntimeElementCompositeDefinition<?> theElementDef, String thePath) {
+	/**
+	 * Compiles a path (using the same syntax accepted by {@link #getValues(IBaseResource, String)}) into
+	 * an accessor which can be reused to read values from many resources of the given type. Child definitions
+	 * are resolved once when the path is compiled instead of on every access.
+	 * <p>
+	 * The returned object is thread safe, and may be held and reused for the lifetime of the {@link FhirContext}.
+	 * </p>
+	 *
+	 * @param theResourceType The resource type the path applies to
+	 * @param thePath         The path, e.g. <code>Patient.name.family</code>
+	 * @throws DataFormatException If the path refers to an element which does not exist
+	 * @since 4.1.0
+	 */
+	public CompiledPath compile(Class<? extends IBaseResource> theResourceType, String thePath) {
+		Validate.notNull(theResourceType, "theResourceType must not be null");
+		Validate.notBlank(thePath, "thePath must not be empty");
+		return getCompiledPath(myContext.getResourceDefinition(theResourceType), thePath).resolve();
+	}
+
+	private CompiledPath getCompiledPath(BaseRuntimeElementCompositeDefinition<?> theDefinition, String thePath) {
+		Map<String, CompiledPath> definitionCache = myCompiledPathCache.get(theDefinition);
+		if (definitionCache == null) {
+			definitionCache = myCompiledPathCache.computeIfAbsent(theDefinition, t -> new ConcurrentHashMap<>());
+		}
+		CompiledPath retVal = definitionCache.get(thePath);
+		if (retVal == null) {
+			retVal = new CompiledPath(this, theDefinition, thePath, parsePath(theDefinition, thePath));
+			if (definitionCache.size() < MAX_COMPILED_PATHS_PER_DEFINITION) {
+				definitionCache.put(thePath, retVal);
+			}
+		}
+		return retVal;
+	}
+
+	private List<PathPart> parsePath(BaseRuntimeElementCompositeDefinition<?> theElementDef, String thePath) {
 		List<String> parts = new ArrayList<>();
 
 		int currentStart = 0;
@@ -593,7 +739,12 @@ public class FhirTerser {
 		if (parts.size() < 1) {
 			throw new ConfigurationException("Invalid path: " + thePath);
 		}
-		return parts;
+
+		List<PathPart> retVal = new ArrayList<>(parts.size());
+		for (String next : parts) {
+			retVal.add(new PathPart(next));
+		}
+		return Collections.unmodifiableList(retVal);
 	}
 
 	/**
@@ -972,4 +1123,195 @@ public class FhirTerser {
 
 		});
 	}
+	/**
+	 * A path which has been parsed and resolved against the model definitions by
+	 * {@link #compile(String, String)}. Instances are immutable and thread safe.
+	 *
+	 * @since 4.1.0
+	 */
+	public static final class CompiledPath {
+
+		private final BaseRuntimeElementCompositeDefinition<?> myDefinition;
+		private final List<PathPart> myParts;
+		private final String myPath;
+		private final FhirTerser myTerser;
+
+		private CompiledPath(FhirTerser theTerser, BaseRuntimeElementCompositeDefinition<?> theDefinition, String thePath, List<PathPart> theParts) {
+			myTerser = theTerser;
+			myDefinition = theDefinition;
+			myPath = thePath;
+			myParts = theParts;
+		}
+
+		/**
+		 * Resolves the child definitions up front, for as long as the element types are known
+		 * statically. Paths used internally by the terser are resolved lazily instead, so that
+		 * an unknown element below an empty element does not cause a failure.
+		 *
+		 * @throws DataFormatException If the path refers to an element which does not exist
+		 */
+		private CompiledPath resolve() {
+			BaseRuntimeElementCompositeDefinition<?> currentDef = myDefinition;
+			for (PathPart next : myParts) {
+				if (next.isExtension()) {
+					break;
+				}
+				BaseRuntimeChildDefinition childDef = next.getChildDefinition(currentDef);
+				if (childDef instanceof RuntimeChildChoiceDefinition) {
+					break;
+				}
+				BaseRuntimeElementDefinition<?> childElementDef = childDef.getChildByName(next.getName());
+				if (!(childElementDef instanceof BaseRuntimeElementCompositeDefinition)) {
+					break;
+				}
+				currentDef = (BaseRuntimeElementCompositeDefinition<?>) childElementDef;
+			}
+			return this;
+		}
+
+		/**
+		 * Returns the path this accessor was compiled from
+		 */
+		public String getPath() {
+			return myPath;
+		}
+
+		/**
+		 * Returns the values found at this path in the given resource
+		 *
+		 * @param theResource The resource instance to be accessed. Must not be null, and must be of the type the path was compiled for.
+		 * @return A list of values of type {@link Object}.
+		 */
+		public List<Object> getValues(IBaseResource theResource) {
+			return getValues(theResource, Object.class, false, false);
+		}
+
+		/**
+		 * Returns the values found at this path in the given resource
+		 *
+		 * @param theResource    The resource instance to be accessed. Must not be null, and must be of the type the path was compiled for.
+		 * @param theWantedClass The desired class to be returned in a list.
+		 * @param <T>            Type declared by <code>theWantedClass</code>
+		 * @return A list of values of type <code>theWantedClass</code>.
+		 */
+		public <T> List<T> getValues(IBaseResource theResource, Class<T> theWantedClass) {
+			return getValues(theResource, theWantedClass, false, false);
+		}
+
+		/**
+		 * Returns the values found at this path in the given resource
+		 *
+		 * @param theResource     The resource instance to be accessed. Must not be null, and must be of the type the path was compiled for.
+		 * @param theWantedClass  The desired class to be returned in a list.
+		 * @param theCreate       When set to <code>true</code>, the terser will create a null-valued element where none exists.
+		 * @param theAddExtension When set to <code>true</code>, the terser will add a null-valued extension where one or more such extensions already exist.
+		 * @param <T>             Type declared by <code>theWantedClass</code>
+		 * @return A list of values of type <code>theWantedClass</code>.
+		 */
+		public <T> List<T> getValues(IBaseResource theResource, Class<T> theWantedClass, boolean theCreate, boolean theAddExtension) {
+			Validate.notNull(theResource, "theResource must not be null");
+			BaseRuntimeElementCompositeDefinition<?> def = myTerser.myContext.getResourceDefinition(theResource);
+			if (def != myDefinition) {
+				throw new IllegalArgumentException("Path '" + myPath + "' was compiled for resource type " + myDefinition.getName() + " and can not be applied to " + def.getName());
+			}
+			return myTerser.getValues(def, theResource, myParts, theWantedClass, theCreate, theAddExtension);
+		}
+
+		/**
+		 * Returns the first value found at this path in the given resource, or <code>null</code> if none
+		 *
+		 * @param theResource    The resource instance to be accessed. Must not be null, and must be of the type the path was compiled for.
+		 * @param theWantedClass The desired class to be returned.
+		 * @param <T>            Type declared by <code>theWantedClass</code>
+		 */
+		public <T> T getSingleValueOrNull(IBaseResource theResource, Class<T> theWantedClass) {
+			List<T> values = getValues(theResource, theWantedClass);
+			if (values.isEmpty()) {
+				return null;
+			}
+			return values.get(0);
+		}
+
+	}
+
+	/**
+	 * One dot-separated segment of a path
+	 */
+	private static final class PathPart {
+
+		private final boolean myChoiceWildcard;
+		private final String myExtensionUrl;
+		private final boolean myModifierExtension;
+		private final String myName;
+		private volatile ResolvedChild myResolvedChild;
+
+		PathPart(String theName) {
+			myName = theName;
+			myChoiceWildcard = theName.endsWith("[x]");
+
+			String extensionUrl = null;
+			if (theName.startsWith("extension('")) {
+				extensionUrl = theName.substring("extension('".length());
+			} else if (theName.startsWith("modifierExtension('")) {
+				extensionUrl = theName.substring("modifierExtension('".length());
+			}
+			if (extensionUrl != null) {
+				int endIndex = extensionUrl.indexOf('\'');
+				if (endIndex != -1) {
+					extensionUrl = extensionUrl.substring(0, endIndex);
+				}
+			}
+			myExtensionUrl = extensionUrl;
+			myModifierExtension = theName.startsWith("modifierExtension('");
+		}
+
+		/**
+		 * Returns the child definition for this segment within the given parent. The last
+		 * resolution is remembered, since a given segment is almost always applied to the
+		 * same parent type.
+		 */
+		BaseRuntimeChildDefinition getChildDefinition(BaseRuntimeElementCompositeDefinition<?> theParentDefinition) {
+			ResolvedChild resolved = myResolvedChild;
+			if (resolved != null && resolved.myParentDefinition == theParentDefinition) {
+				return resolved.myChildDefinition;
+			}
+			BaseRuntimeChildDefinition retVal = theParentDefinition.getChildByNameOrThrowDataFormatException(myName);
+			myResolvedChild = new ResolvedChild(theParentDefinition, retVal);
+			return retVal;
+		}
+
+		String getExtensionUrl() {
+			return myExtensionUrl;
+		}
+
+		String getName() {
+			return myName;
+		}
+
+		boolean isChoiceWildcard() {
+			return myChoiceWildcard;
+		}
+
+		boolean isExtension() {
+			return myExtensionUrl != null;
+		}
+
+		boolean isModifierExtension() {
+			return myModifierExtension;
+		}
+
+	}
+
+	private static final class ResolvedChild {
+
+		private final BaseRuntimeChildDefinition myChildDefinition;
+		private final BaseRuntimeElementCompositeDefinition<?> myParentDefinition;
+
+		ResolvedChild(BaseRuntimeElementCompositeDefinition<?> theParentDefinition, BaseRuntimeChildDefinition theChildDefinition) {
+			myParentDefinition = theParentDefinition;
+			myChildDefinition = theChildDefinition;
+		}
+
+	}
+
 }
@@ -47,6 +47,7 @@ public class XmlUtil {
 	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(XmlUtil.class);
 	private static final Map<String, Integer> VALID_ENTITY_NAMES;
 	private static final ExtendedEntityReplacingXmlResolver XML_RESOLVER = new ExtendedEntityReplacingXmlResolver();
+	private static volatile XMLEventFactory ourEventFactory;
 	private static XMLOutputFactory ourFragmentOutputFactory;
 	private static volatile boolean ourHaveLoggedStaxImplementation;
 	private static volatile XMLInputFactory ourInputFactory;
@@ -1552,6 +1553,28 @@ public class XmlUtil {
 		return inputFactory.createXMLEventReader(reader);
 	}
 
+	/**
+	 * Creates a cursor-based reader, which is cheaper than an {@link XMLEventReader} since
+	 * it doesn't allocate an event object for each node
+	 */
+	public static XMLStreamReader createXmlStreamReader(Reader theReader) throws FactoryConfigurationError, XMLStreamException {
+		throwUnitTestExceptionIfConfiguredToDoSo();
+
+		XMLInputFactory inputFactory = getOrCreateInputFactory();
+		return inputFactory.createXMLStreamReader(theReader);
+	}
+
+	/**
+	 * Creates a cursor-based reader over UTF-8 encoded content. This lets the StAX
+	 * implementation decode the bytes itself instead of going through a {@link Reader}.
+	 */
+	public static XMLStreamReader createXmlStreamReader(InputStream theInputStream) throws FactoryConfigurationError, XMLStreamException {
+		throwUnitTestExceptionIfConfiguredToDoSo();
+
+		XMLInputFactory inputFactory = getOrCreateInputFactory();
+		return inputFactory.createXMLStreamReader(theInputStream, "UTF-8");
+	}
+
 	public static XMLStreamWriter createXmlStreamWriter(Writer theWriter) throws FactoryConfigurationError, XMLStreamException {
 		throwUnitTestExceptionIfConfiguredToDoSo();
 
@@ -1588,6 +1611,22 @@ public class XmlUtil {
 		}
 	}
 
+	/**
+	 * Returns a shared {@link XMLEventFactory}. Callers must not use
+	 * {@link XMLEventFactory#setLocation(javax.xml.stream.Location)} on it, since the
+	 * same instance is used by all threads.
+	 */
+	public static XMLEventFactory getOrCreateEventFactory() throws FactoryConfigurationError {
+		if (ourEventFactory == null) {
+			try {
+				ourEventFactory = XMLEventFactory.newFactory();
+			} catch (Throwable e) {
+				throw new ConfigurationException("Unable to initialize StAX - XML processing is disabled", e);
+			}
+		}
+		return ourEventFactory;
+	}
+
 	private static XMLOutputFactory getOrCreateFragmentOutputFactory() throws FactoryConfigurationError {
 		XMLOutputFactory retVal = ourFragmentOutputFactory;
 		if (retVal == null) {
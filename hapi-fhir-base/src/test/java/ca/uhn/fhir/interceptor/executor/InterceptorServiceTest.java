@@ -15,11 +15,16 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.not;
 import static org.junit.Assert.*;
 
 public class InterceptorServiceTest {
@@ -148,6 +153,26 @@ public class InterceptorServiceTest {
 
 	}
 
+	@Test
+	public void testUnregisterInterceptorUpdatesInvokers() {
+		InterceptorService svc = new InterceptorService();
+		assertFalse(svc.hasHooks(Pointcut.TEST_RB));
+
+		MyTestInterceptorOne interceptor0 = new MyTestInterceptorOne();
+		MyTestInterceptorTwo interceptor1 = new MyTestInterceptorTwo();
+		svc.registerInterceptor(interceptor0);
+		svc.registerInterceptor(interceptor1);
+		assertTrue(svc.hasHooks(Pointcut.TEST_RB));
+		assertThat(svc.getInterceptorsWithInvokersForPointcut(Pointcut.TEST_RB), contains(interceptor0, interceptor1));
+
+		svc.unregisterInterceptor(interceptor0);
+		assertThat(svc.getInterceptorsWithInvokersForPointcut(Pointcut.TEST_RB), contains(interceptor1));
+
+		svc.unregisterAllInterceptors();
+		assertFalse(svc.hasHooks(Pointcut.TEST_RB));
+		assertTrue(svc.getInterceptorsWithInvokersForPointcut(Pointcut.TEST_RB).isEmpty());
+	}
+
 	@Test
 	public void testInvokeGlobalInterceptorMethods() {
 		InterceptorService svc = new InterceptorService();
@@ -205,6 +230,153 @@ public class InterceptorServiceTest {
 		assertSame(null, interceptor1.myLastString1);
 	}
 
+	@Test
+	public void testInvokeGlobalInterceptorMethods_MethodHandleInvokers() {
+		InterceptorService svc = new InterceptorService();
+		svc.setMethodHandleInvokersEnabled(true);
+
+		MyTestInterceptorOne interceptor0 = new MyTestInterceptorOne();
+		MyTestInterceptorTwo interceptor1 = new MyTestInterceptorTwo();
+		MyTestInterceptorManual interceptor2 = new MyTestInterceptorManual();
+		svc.registerInterceptor(interceptor0);
+		svc.registerInterceptor(interceptor1);
+		svc.registerInterceptor(interceptor2);
+
+		class PointcutParamInterceptor {
+			private Pointcut myPointcut;
+			private String myLastString1;
+
+			@Hook(Pointcut.TEST_RB)
+			public void testRb(String theString0, Pointcut thePointcut, String theString1) {
+				myPointcut = thePointcut;
+				myLastString1 = theString1;
+			}
+		}
+		PointcutParamInterceptor interceptor3 = new PointcutParamInterceptor();
+		svc.registerInterceptor(interceptor3);
+
+		boolean outcome = svc.callHooks(Pointcut.TEST_RB, new HookParams("A", "B"));
+		assertTrue(outcome);
+
+		assertThat(myInvocations, contains("MyTestInterceptorOne.testRb", "MyTestInterceptorManual.testRb", "MyTestInterceptorTwo.testRb"));
+		assertSame("A", interceptor0.myLastString0);
+		assertSame("A", interceptor1.myLastString0);
+		assertSame("B", interceptor1.myLastString1);
+		assertEquals(Pointcut.TEST_RB, interceptor3.myPointcut);
+		assertSame("B", interceptor3.myLastString1);
+
+		interceptor0.myNextReturn = false;
+		myInvocations.clear();
+		outcome = svc.callHooks(Pointcut.TEST_RB, new HookParams("A", "B"));
+		assertFalse(outcome);
+		assertThat(myInvocations, contains("MyTestInterceptorOne.testRb"));
+	}
+
+	@Test
+	public void testMethodHandleInvokersDontUseReflection() {
+		class StackCapturingInterceptor {
+			private List<String> myCallers;
+
+			@Hook(Pointcut.TEST_RB)
+			public boolean testRb(String theString0, String theString1, Pointcut thePointcut) {
+				myCallers = Arrays.stream(new Throwable().getStackTrace()).map(StackTraceElement::getClassName).collect(Collectors.toList());
+				return false;
+			}
+		}
+
+		InterceptorService svc = new InterceptorService();
+		svc.setMethodHandleInvokersEnabled(true);
+		StackCapturingInterceptor interceptor = new StackCapturingInterceptor();
+		svc.registerInterceptor(interceptor);
+
+		assertFalse(svc.callHooks(Pointcut.TEST_RB, new HookParams("A", "B")));
+		assertThat(interceptor.myCallers.toString(), interceptor.myCallers, not(hasItem(Method.class.getName())));
+
+		svc = new InterceptorService();
+		svc.registerInterceptor(interceptor);
+		assertFalse(svc.callHooks(Pointcut.TEST_RB, new HookParams("A", "B")));
+		assertThat(interceptor.myCallers, hasItem(Method.class.getName()));
+	}
+
+	@Test
+	public void testInterceptorThrowsException_MethodHandleInvokers() {
+
+		class InterceptorThrowingException {
+			@Hook(Pointcut.TEST_RB)
+			public void test(String theValue) {
+				throw new AuthenticationException(theValue);
+			}
+		}
+
+		InterceptorService svc = new InterceptorService();
+		svc.setMethodHandleInvokersEnabled(true);
+		svc.registerInterceptor(new InterceptorThrowingException());
+
+		try {
+			svc.callHooks(Pointcut.TEST_RB, new HookParams("A MESSAGE", "B"));
+			fail();
+		} catch (AuthenticationException e) {
+			assertEquals("A MESSAGE", e.getMessage());
+		}
+
+	}
+
+	@Test
+	public void testInterceptorThrowsError() {
+		InterceptorService svc = new InterceptorService();
+		svc.registerInterceptor(new InterceptorThrowingError());
+
+		try {
+			svc.callHooks(Pointcut.TEST_RB, new HookParams("A MESSAGE", "B"));
+			fail();
+		} catch (InternalErrorException e) {
+			assertEquals("Failure invoking interceptor for pointcut(s) TEST_RB", e.getMessage());
+			assertEquals(AssertionError.class, e.getCause().getClass());
+		}
+	}
+
+	@Test
+	public void testInterceptorThrowsError_MethodHandleInvokers() {
+		InterceptorService svc = new InterceptorService();
+		svc.setMethodHandleInvokersEnabled(true);
+		svc.registerInterceptor(new InterceptorThrowingError());
+
+		try {
+			svc.callHooks(Pointcut.TEST_RB, new HookParams("A MESSAGE", "B"));
+			fail();
+		} catch (InternalErrorException e) {
+			assertEquals("Failure invoking interceptor for pointcut(s) TEST_RB", e.getMessage());
+			assertEquals(AssertionError.class, e.getCause().getClass());
+		}
+	}
+
+	/**
+	 * A hook parameter which can't accept the value it is given is a programming
+	 * error, so it must not be treated as an exception thrown by the hook
+	 */
+	@Test
+	public void testInvalidHookParameterType() {
+		class InterceptorWithPrimitiveParam {
+			@Hook(Pointcut.TEST_RB)
+			public void test(String theValue, int theInt) {
+				// nothing
+			}
+		}
+
+		for (boolean methodHandleInvokers : new boolean[]{false, true}) {
+			InterceptorService svc = new InterceptorService();
+			svc.setMethodHandleInvokersEnabled(methodHandleInvokers);
+			svc.registerInterceptor(new InterceptorWithPrimitiveParam());
+
+			try {
+				svc.callHooks(Pointcut.TEST_RB, new HookParams("A", "B"));
+				fail();
+			} catch (InternalErrorException e) {
+				assertEquals(IllegalArgumentException.class, e.getCause().getClass());
+			}
+		}
+	}
+
 	@Test
 	public void testCallHooksInvokedWithNullParameters() {
 		InterceptorService svc = new InterceptorService();
@@ -584,5 +756,14 @@ public class InterceptorServiceTest {
 
 	}
 
+	public static class InterceptorThrowingError {
+
+		@Hook(Pointcut.TEST_RB)
+		public void test(String theValue) {
+			throw new AssertionError(theValue);
+		}
+
+	}
+
 
 }
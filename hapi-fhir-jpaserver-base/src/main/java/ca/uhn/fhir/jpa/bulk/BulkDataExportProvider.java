@@ -0,0 +1,213 @@
+package ca.uhn.fhir.jpa.bulk;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.jpa.model.util.JpaConstants;
+import ca.uhn.fhir.rest.annotation.IdParam;
+import ca.uhn.fhir.rest.annotation.Operation;
+import ca.uhn.fhir.rest.annotation.OperationParam;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
+import ca.uhn.fhir.util.OperationOutcomeUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.hl7.fhir.instance.model.api.IBaseOperationOutcome;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.instance.model.api.IPrimitiveType;
+import org.hl7.fhir.r4.model.InstantType;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+
+/**
+ * Provides the FHIR Bulk Data <code>$export</code> operations at the
+ * system, Patient and Group levels, as well as the
+ * <code>$export-poll-status</code> operation used to monitor the resulting
+ * jobs and retrieve their output manifest.
+ */
+public class BulkDataExportProvider {
+
+	@Autowired
+	private IBulkDataExportSvc myBulkDataExportSvc;
+	@Autowired
+	private FhirContext myFhirContext;
+	private ObjectMapper myObjectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+	/**
+	 * $export
+	 */
+	@Operation(name = JpaConstants.OPERATION_EXPORT, global = false, manualResponse = true, idempotent = true)
+	public void export(
+		@OperationParam(name = JpaConstants.PARAM_EXPORT_OUTPUT_FORMAT, min = 0, max = 1, typeName = "string") IPrimitiveType<String> theOutputFormat,
+		@OperationParam(name = JpaConstants.PARAM_EXPORT_TYPE, min = 0, max = 1, typeName = "string") IPrimitiveType<String> theType,
+		@OperationParam(name = JpaConstants.PARAM_EXPORT_SINCE, min = 0, max = 1, typeName = "instant") IPrimitiveType<Date> theSince,
+		@OperationParam(name = JpaConstants.PARAM_EXPORT_TYPE_FILTER, min = 0, max = 1, typeName = "string") IPrimitiveType<String> theTypeFilter,
+		ServletRequestDetails theRequestDetails
+	) {
+		submitJob(theOutputFormat, theType, theSince, theTypeFilter, BulkExportStyleEnum.SYSTEM, null, theRequestDetails);
+	}
+
+	/**
+	 * Patient/$export
+	 */
+	@Operation(name = JpaConstants.OPERATION_EXPORT, typeName = "Patient", manualResponse = true, idempotent = true)
+	public void patientExport(
+		@OperationParam(name = JpaConstants.PARAM_EXPORT_OUTPUT_FORMAT, min = 0, max = 1, typeName = "string") IPrimitiveType<String> theOutputFormat,
+		@OperationParam(name = JpaConstants.PARAM_EXPORT_TYPE, min = 0, max = 1, typeName = "string") IPrimitiveType<String> theType,
+		@OperationParam(name = JpaConstants.PARAM_EXPORT_SINCE, min = 0, max = 1, typeName = "instant") IPrimitiveType<Date> theSince,
+		@OperationParam(name = JpaConstants.PARAM_EXPORT_TYPE_FILTER, min = 0, max = 1, typeName = "string") IPrimitiveType<String> theTypeFilter,
+		ServletRequestDetails theRequestDetails
+	) {
+		submitJob(theOutputFormat, theType, theSince, theTypeFilter, BulkExportStyleEnum.PATIENT, null, theRequestDetails);
+	}
+
+	/**
+	 * Group/[id]/$export
+	 */
+	@Operation(name = JpaConstants.OPERATION_EXPORT, typeName = "Group", manualResponse = true, idempotent = true)
+	public void groupExport(
+		@IdParam IIdType theGroupId,
+		@OperationParam(name = JpaConstants.PARAM_EXPORT_OUTPUT_FORMAT, min = 0, max = 1, typeName = "string") IPrimitiveType<String> theOutputFormat,
+		@OperationParam(name = JpaConstants.PARAM_EXPORT_TYPE, min = 0, max = 1, typeName = "string") IPrimitiveType<String> theType,
+		@OperationParam(name = JpaConstants.PARAM_EXPORT_SINCE, min = 0, max = 1, typeName = "instant") IPrimitiveType<Date> theSince,
+		@OperationParam(name = JpaConstants.PARAM_EXPORT_TYPE_FILTER, min = 0, max = 1, typeName = "string") IPrimitiveType<String> theTypeFilter,
+		ServletRequestDetails theRequestDetails
+	) {
+		submitJob(theOutputFormat, theType, theSince, theTypeFilter, BulkExportStyleEnum.GROUP, theGroupId, theRequestDetails);
+	}
+
+	private void submitJob(IPrimitiveType<String> theOutputFormat, IPrimitiveType<String> theType, IPrimitiveType<Date> theSince, IPrimitiveType<String> theTypeFilter, BulkExportStyleEnum theExportStyle, IIdType theGroupId, ServletRequestDetails theRequestDetails) {
+		String preferHeader = theRequestDetails.getHeader(Constants.HEADER_PREFER);
+		if (preferHeader == null || !preferHeader.contains(Constants.HEADER_PREFER_RESPOND_ASYNC)) {
+			throw new InvalidRequestException("Must request async processing for $export");
+		}
+
+		if (theTypeFilter != null && isNotBlank(theTypeFilter.getValueAsString())) {
+			throw new InvalidRequestException(JpaConstants.PARAM_EXPORT_TYPE_FILTER + " is not currently supported");
+		}
+
+		String outputFormat = theOutputFormat != null ? theOutputFormat.getValueAsString() : null;
+
+		Set<String> resourceTypes = null;
+		if (theType != null && isNotBlank(theType.getValueAsString())) {
+			resourceTypes = Arrays
+				.stream(theType.getValueAsString().split(","))
+				.map(String::trim)
+				.filter(t -> isNotBlank(t))
+				.collect(Collectors.toCollection(TreeSet::new));
+		}
+
+		Date since = theSince != null ? theSince.getValue() : null;
+
+		IBulkDataExportSvc.JobInfo outcome = myBulkDataExportSvc.submitJob(outputFormat, resourceTypes, since, theExportStyle, theGroupId, theRequestDetails.getCompleteUrl());
+
+		String serverBase = getServerBase(theRequestDetails);
+		String pollLocation = serverBase + "/" + JpaConstants.OPERATION_EXPORT_POLL_STATUS + "?" + JpaConstants.PARAM_EXPORT_POLL_STATUS_JOB_ID + "=" + outcome.getJobId();
+
+		HttpServletResponse response = theRequestDetails.getServletResponse();
+
+		// Add standard headers
+		theRequestDetails.getServer().addHeadersToResponse(response);
+
+		// Successful 202 Accepted
+		response.addHeader(Constants.HEADER_CONTENT_LOCATION, pollLocation);
+		response.setStatus(Constants.STATUS_HTTP_202_ACCEPTED);
+	}
+
+	/**
+	 * $export-poll-status
+	 */
+	@Operation(name = JpaConstants.OPERATION_EXPORT_POLL_STATUS, manualResponse = true, idempotent = true)
+	public void exportPollStatus(
+		@OperationParam(name = JpaConstants.PARAM_EXPORT_POLL_STATUS_JOB_ID, typeName = "string", min = 0, max = 1) IPrimitiveType<String> theJobId,
+		ServletRequestDetails theRequestDetails
+	) throws IOException {
+
+		if (theJobId == null || !isNotBlank(theJobId.getValueAsString())) {
+			throw new InvalidRequestException("Missing parameter: " + JpaConstants.PARAM_EXPORT_POLL_STATUS_JOB_ID);
+		}
+
+		HttpServletResponse response = theRequestDetails.getServletResponse();
+		theRequestDetails.getServer().addHeadersToResponse(response);
+
+		IBulkDataExportSvc.JobInfo status = myBulkDataExportSvc.getJobStatusOrThrowResourceNotFound(theJobId.getValueAsString());
+
+		switch (status.getStatus()) {
+			case SUBMITTED:
+			case BUILDING:
+
+				response.setStatus(Constants.STATUS_HTTP_202_ACCEPTED);
+				response.addHeader(Constants.HEADER_X_PROGRESS, "Build in progress - Status set to " + status.getStatus() + " at " + new InstantType(status.getStatusTime()).getValueAsString());
+				response.addHeader(Constants.HEADER_RETRY_AFTER, "120");
+				break;
+
+			case COMPLETE:
+
+				response.setStatus(Constants.STATUS_HTTP_200_OK);
+				response.setContentType(Constants.CT_JSON);
+
+				// Create a response
+				BulkExportResponseJson bulkResponseDocument = new BulkExportResponseJson();
+				bulkResponseDocument.setTransactionTime(status.getStatusTime());
+				bulkResponseDocument.setRequest(status.getRequest());
+				bulkResponseDocument.setRequiresAccessToken(true);
+				String serverBase = getServerBase(theRequestDetails);
+				for (IBulkDataExportSvc.FileEntry nextFile : status.getFiles()) {
+					bulkResponseDocument
+						.addOutput()
+						.setType(nextFile.getResourceType())
+						.setUrl(nextFile.getResourceId().withServerBase(serverBase, "Binary").getValue())
+						.setCount(nextFile.getResourceCount());
+				}
+				myObjectMapper.writeValue(response.getWriter(), bulkResponseDocument);
+				response.getWriter().close();
+				break;
+
+			case ERROR:
+			default:
+
+				response.setStatus(Constants.STATUS_HTTP_500_INTERNAL_ERROR);
+				response.setContentType(Constants.CT_FHIR_JSON);
+
+				// Create an OperationOutcome response
+				IBaseOperationOutcome oo = OperationOutcomeUtil.newInstance(myFhirContext);
+				OperationOutcomeUtil.addIssue(myFhirContext, oo, "error", status.getStatusMessage(), null, null);
+				myFhirContext.newJsonParser().setPrettyPrint(true).encodeResourceToWriter(oo, response.getWriter());
+				response.getWriter().close();
+				break;
+		}
+	}
+
+	private String getServerBase(ServletRequestDetails theRequestDetails) {
+		return theRequestDetails.getServerBaseForRequest().replaceAll("/+$", "");
+	}
+
+}
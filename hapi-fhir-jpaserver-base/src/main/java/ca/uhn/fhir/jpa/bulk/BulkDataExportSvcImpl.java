@@ -0,0 +1,646 @@
+package ca.uhn.fhir.jpa.bulk;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.RuntimeResourceDefinition;
+import ca.uhn.fhir.jpa.dao.DaoConfig;
+import ca.uhn.fhir.jpa.dao.DaoRegistry;
+import ca.uhn.fhir.jpa.dao.IFhirResourceDao;
+import ca.uhn.fhir.jpa.dao.ISearchBuilder;
+import ca.uhn.fhir.jpa.dao.data.IBulkExportCollectionDao;
+import ca.uhn.fhir.jpa.dao.data.IBulkExportCollectionFileDao;
+import ca.uhn.fhir.jpa.dao.data.IBulkExportJobDao;
+import ca.uhn.fhir.jpa.dao.data.IResourceTableDao;
+import ca.uhn.fhir.jpa.dao.expunge.IResourceExpungeService;
+import ca.uhn.fhir.jpa.dao.index.IdHelperService;
+import ca.uhn.fhir.jpa.entity.BulkExportCollectionEntity;
+import ca.uhn.fhir.jpa.entity.BulkExportCollectionFileEntity;
+import ca.uhn.fhir.jpa.entity.BulkExportJobEntity;
+import ca.uhn.fhir.parser.IParser;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import ca.uhn.fhir.util.BinaryUtil;
+import ca.uhn.fhir.util.StopWatch;
+import org.apache.commons.lang3.time.DateUtils;
+import org.hl7.fhir.instance.model.api.IBaseBinary;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.transaction.Transactional;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+import static org.apache.commons.lang3.StringUtils.left;
+
+/**
+ * Builds the NDJSON files for bulk data <code>$export</code> jobs.
+ * <p>
+ * Resources are never loaded as a single result set. Instead, each resource
+ * type is exported by repeatedly fetching the next page of resource PIDs
+ * (in ascending PID order, strictly greater than the last PID already
+ * written), loading those resources through the {@link ISearchBuilder}, and
+ * appending them to the current file. Once a file reaches the configured
+ * maximum size it is stored as a Binary resource (which means that it is
+ * externalized to the {@link ca.uhn.fhir.jpa.binstore.IBinaryStorageSvc} if
+ * one is configured) and the last exported PID is recorded, so an export
+ * that is interrupted can resume where it left off.
+ * </p>
+ * <p>
+ * Each claim on a job is identified by a new owner ID, and the job's status
+ * time is refreshed (conditionally on that owner ID) for every page that is
+ * exported. If another server reclaims a job that it believes has been
+ * abandoned, the original server notices on its next page and stops without
+ * writing anything further to the job.
+ * </p>
+ */
+public class BulkDataExportSvcImpl implements IBulkDataExportSvc {
+
+	private static final Logger ourLog = LoggerFactory.getLogger(BulkDataExportSvcImpl.class);
+	private static final long REFRESH_INTERVAL = 10 * DateUtils.MILLIS_PER_SECOND;
+	private static final Date BEGINNING_OF_TIME = new Date(0);
+	/**
+	 * Jobs which are marked as building but whose status has not been updated
+	 * in this long are assumed to have been abandoned (e.g. because the
+	 * server building them was shut down) and will be resumed
+	 */
+	private static final long STALE_BUILDING_JOB_MILLIS = 10 * DateUtils.MILLIS_PER_MINUTE;
+	/**
+	 * Number of resource PIDs fetched (and resources loaded) at a time
+	 */
+	private static final int PID_PAGE_SIZE = 500;
+	private static final Set<String> VALID_OUTPUT_FORMATS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+		Constants.CT_FHIR_NDJSON,
+		Constants.CT_APP_NDJSON,
+		Constants.CT_NDJSON
+	)));
+	private final ReentrantLock myRunningLock = new ReentrantLock();
+	@Autowired
+	private IBulkExportJobDao myBulkExportJobDao;
+	@Autowired
+	private IBulkExportCollectionDao myBulkExportCollectionDao;
+	@Autowired
+	private IBulkExportCollectionFileDao myBulkExportCollectionFileDao;
+	@Autowired
+	private IResourceTableDao myResourceTableDao;
+	@Autowired
+	private IdHelperService myIdHelperService;
+	@Autowired
+	private IResourceExpungeService myResourceExpungeService;
+	@Autowired
+	private PlatformTransactionManager myTxManager;
+	@Autowired
+	private FhirContext myContext;
+	@Autowired
+	private DaoRegistry myDaoRegistry;
+	@Autowired
+	private DaoConfig myDaoConfig;
+	private TransactionTemplate myTxTemplate;
+
+	@PostConstruct
+	public void start() {
+		myTxTemplate = new TransactionTemplate(myTxManager);
+	}
+
+	@Transactional(value = Transactional.TxType.NEVER)
+	@Scheduled(fixedDelay = REFRESH_INTERVAL)
+	public void scheduleBuildExportFiles() {
+		if (myDaoConfig.isSchedulingDisabled()) {
+			return;
+		}
+		buildExportFiles();
+	}
+
+	@Transactional(value = Transactional.TxType.NEVER)
+	@Scheduled(fixedDelay = DateUtils.MILLIS_PER_HOUR)
+	public void schedulePurgeExpiredFiles() {
+		if (myDaoConfig.isSchedulingDisabled()) {
+			return;
+		}
+		purgeExpiredFiles();
+	}
+
+	@Override
+	@Transactional(value = Transactional.TxType.NEVER)
+	public void buildExportFiles() {
+		if (!myRunningLock.tryLock()) {
+			return;
+		}
+		try {
+			while (true) {
+				String ownerId = UUID.randomUUID().toString();
+				String jobId = claimNextJob(ownerId);
+				if (jobId == null) {
+					break;
+				}
+				processJob(jobId, ownerId);
+			}
+		} finally {
+			myRunningLock.unlock();
+		}
+	}
+
+	/**
+	 * Marks the next available job as {@link BulkJobStatusEnum#BUILDING} and
+	 * returns its ID, or returns <code>null</code> if there is nothing to do. If
+	 * another server claims the same job at the same time, optimistic locking
+	 * ensures that only one of them succeeds.
+	 *
+	 * @param theOwnerId The owner ID to record against the job for this claim
+	 */
+	private String claimNextJob(String theOwnerId) {
+		try {
+			return myTxTemplate.execute(t -> {
+				Slice<BulkExportJobEntity> jobs = myBulkExportJobDao.findByStatus(PageRequest.of(0, 1), BulkJobStatusEnum.SUBMITTED);
+				if (!jobs.hasContent()) {
+					Date cutoff = new Date(System.currentTimeMillis() - STALE_BUILDING_JOB_MILLIS);
+					jobs = myBulkExportJobDao.findByStatusWithStatusTimeBefore(PageRequest.of(0, 1), BulkJobStatusEnum.BUILDING, cutoff);
+					if (jobs.hasContent()) {
+						ourLog.info("Resuming abandoned bulk export job: {}", jobs.getContent().get(0).getJobId());
+					}
+				}
+				if (!jobs.hasContent()) {
+					return null;
+				}
+
+				BulkExportJobEntity job = jobs.getContent().get(0);
+				job.setStatus(BulkJobStatusEnum.BUILDING);
+				job.setStatusTime(new Date());
+				job.setOwnerId(theOwnerId);
+				myBulkExportJobDao.save(job);
+				return job.getJobId();
+			});
+		} catch (ObjectOptimisticLockingFailureException e) {
+			ourLog.info("Bulk export job was claimed by another process, will not process it here");
+			return null;
+		}
+	}
+
+	private void processJob(String theJobId, String theOwnerId) {
+		StopWatch sw = new StopWatch();
+		ourLog.info("Bulk export starting generation for job: {}", theJobId);
+
+		try {
+			ExportJobDetails jobDetails = myTxTemplate.execute(t -> {
+				BulkExportJobEntity job = myBulkExportJobDao.findByJobId(theJobId).orElseThrow(() -> new IllegalStateException("Unknown job: " + theJobId));
+				Long groupPid = null;
+				if (job.getExportStyle() == BulkExportStyleEnum.GROUP) {
+					groupPid = myIdHelperService.translateForcedIdToPid("Group", job.getGroupId(), null);
+				}
+				List<Long> collectionPids = job
+					.getCollections()
+					.stream()
+					.map(BulkExportCollectionEntity::getId)
+					.sorted()
+					.collect(Collectors.toList());
+				return new ExportJobDetails(job.getJobId(), theOwnerId, job.getExportStyle(), job.getOutputFormat(), groupPid, job.getSince(), collectionPids);
+			});
+			assert jobDetails != null;
+
+			int resourceCount = 0;
+			for (Long nextCollectionPid : jobDetails.getCollectionPids()) {
+				resourceCount += exportCollection(jobDetails, nextCollectionPid);
+			}
+
+			myTxTemplate.execute(t -> {
+				Date expiry = new Date(System.currentTimeMillis() + myDaoConfig.getBulkExportFileRetentionPeriodMillis());
+				int updated = myBulkExportJobDao.updateStatusIfOwnedBy(theJobId, theOwnerId, BulkJobStatusEnum.BUILDING, BulkJobStatusEnum.COMPLETE, new Date(), expiry, null);
+				if (updated == 0) {
+					throw new JobClaimLostException(theJobId);
+				}
+				return null;
+			});
+
+			ourLog.info("Bulk export completed job {} - Exported {} resources in {} ({} resources/sec)", theJobId, resourceCount, sw.toString(), sw.formatThroughput(resourceCount, TimeUnit.SECONDS));
+
+		} catch (JobClaimLostException e) {
+			ourLog.warn("Bulk export job {} was reclaimed by another process, abandoning it here", theJobId);
+		} catch (Exception e) {
+			ourLog.error("Failure while generating bulk export job " + theJobId, e);
+			myTxTemplate.execute(t -> {
+				String message = left(e.getMessage(), BulkExportJobEntity.STATUS_MESSAGE_LEN);
+				myBulkExportJobDao.updateStatusIfOwnedBy(theJobId, theOwnerId, BulkJobStatusEnum.BUILDING, BulkJobStatusEnum.ERROR, new Date(), null, message);
+				return null;
+			});
+		}
+	}
+
+	/**
+	 * Refreshes the status time of the job so that it is not considered
+	 * abandoned, and verifies that this server still holds the claim on it.
+	 * Must be called within the transaction that writes any progress.
+	 *
+	 * @throws JobClaimLostException If the job has been reclaimed by another server
+	 */
+	private void touchJobOrThrowClaimLost(ExportJobDetails theJob) {
+		int updated = myBulkExportJobDao.updateStatusTimeIfOwnedBy(theJob.getJobId(), theJob.getOwnerId(), BulkJobStatusEnum.BUILDING, new Date());
+		if (updated == 0) {
+			throw new JobClaimLostException(theJob.getJobId());
+		}
+	}
+
+	/**
+	 * Exports a single resource type, resuming after the last PID that was
+	 * previously written for this collection (if any)
+	 *
+	 * @return The number of resources exported
+	 */
+	private int exportCollection(ExportJobDetails theJob, Long theCollectionPid) throws IOException {
+		BulkExportCollectionEntity collection = myTxTemplate.execute(t -> myBulkExportCollectionDao.findById(theCollectionPid).orElseThrow(() -> new IllegalStateException("Unknown collection: " + theCollectionPid)));
+		assert collection != null;
+
+		String resourceType = collection.getResourceType();
+		RuntimeResourceDefinition def = myContext.getResourceDefinition(resourceType);
+		IFhirResourceDao<?> dao = myDaoRegistry.getResourceDao(resourceType);
+		ISearchBuilder sb = dao.newSearchBuilder();
+		sb.setType(def.getImplementingClass(), resourceType);
+
+		IParser parser = myContext.newJsonParser().setPrettyPrint(false);
+		Date since = theJob.getSince() != null ? theJob.getSince() : BEGINNING_OF_TIME;
+		int maxFileSize = myDaoConfig.getBulkExportFileMaximumSize();
+
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		Writer writer = new OutputStreamWriter(buffer, StandardCharsets.UTF_8);
+		int fileResourceCount = 0;
+		int totalResourceCount = 0;
+		long lastPid = collection.getLastPid() != null ? collection.getLastPid() : -1L;
+
+		ourLog.info("Bulk export job {} exporting resources of type {} after PID {}", theJob.getJobId(), resourceType, lastPid);
+
+		while (true) {
+			long afterPid = lastPid;
+			List<IBaseResource> resources = new ArrayList<>();
+			List<Long> pids = myTxTemplate.execute(t -> {
+				touchJobOrThrowClaimLost(theJob);
+				Slice<Long> page = fetchNextPidPage(theJob, resourceType, afterPid, since);
+				List<Long> retVal = new ArrayList<>(page.getContent());
+				if (!retVal.isEmpty()) {
+					sb.loadResourcesByPid(retVal, Collections.emptyList(), resources, false, null);
+				}
+				return retVal;
+			});
+			assert pids != null;
+			if (pids.isEmpty()) {
+				break;
+			}
+			lastPid = pids.get(pids.size() - 1);
+
+			for (IBaseResource next : resources) {
+				// Resources deleted between the PID query and the load are skipped
+				if (next != null) {
+					parser.encodeResourceToWriter(next, writer);
+					writer.append('\n');
+					fileResourceCount++;
+				}
+			}
+			writer.flush();
+
+			if (buffer.size() >= maxFileSize) {
+				flushFile(theJob, theCollectionPid, resourceType, buffer.toByteArray(), fileResourceCount, lastPid);
+				totalResourceCount += fileResourceCount;
+				buffer.reset();
+				fileResourceCount = 0;
+			}
+		}
+
+		if (fileResourceCount > 0) {
+			flushFile(theJob, theCollectionPid, resourceType, buffer.toByteArray(), fileResourceCount, lastPid);
+			totalResourceCount += fileResourceCount;
+		}
+
+		return totalResourceCount;
+	}
+
+	private Slice<Long> fetchNextPidPage(ExportJobDetails theJob, String theResourceType, long theAfterPid, Date theSince) {
+		PageRequest page = PageRequest.of(0, PID_PAGE_SIZE);
+		boolean isPatient = "Patient".equals(theResourceType);
+		switch (theJob.getExportStyle()) {
+			case PATIENT:
+				if (!isPatient) {
+					return myResourceTableDao.findIdsOfResourcesOfTypeLinkedToTargetTypeAfterPid(page, theResourceType, "Patient", theAfterPid, theSince);
+				}
+				break;
+			case GROUP:
+				if (isPatient) {
+					return myResourceTableDao.findIdsOfPatientsInGroupAfterPid(page, theJob.getGroupPid(), theAfterPid, theSince);
+				}
+				return myResourceTableDao.findIdsOfResourcesOfTypeLinkedToPatientsInGroupAfterPid(page, theResourceType, theJob.getGroupPid(), theAfterPid, theSince);
+			case SYSTEM:
+			default:
+				break;
+		}
+		return myResourceTableDao.findIdsOfResourcesOfTypeAfterPid(page, theResourceType, theAfterPid, theSince);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void flushFile(ExportJobDetails theJob, Long theCollectionPid, String theResourceType, byte[] theContents, int theResourceCount, long theLastPid) {
+		IBaseBinary binary = BinaryUtil.newBinary(myContext);
+		binary.setContentType(theJob.getOutputFormat());
+		binary.setContent(theContents);
+
+		myTxTemplate.execute(t -> {
+			IIdType createdId = getBinaryDao().create(binary).getId().toUnqualifiedVersionless();
+
+			BulkExportCollectionEntity collection = myBulkExportCollectionDao.getOne(theCollectionPid);
+			BulkExportCollectionFileEntity file = new BulkExportCollectionFileEntity();
+			file.setCollection(collection);
+			file.setResourceId(createdId.getIdPart());
+			file.setResourceCount(theResourceCount);
+			myBulkExportCollectionFileDao.save(file);
+			myBulkExportCollectionDao.updateLastPid(theCollectionPid, theLastPid);
+
+			// If the claim has been lost, this rolls back the file as well
+			touchJobOrThrowClaimLost(theJob);
+
+			ourLog.info("Bulk export job {} wrote file {} containing {} resources of type {} ({} bytes)", theJob.getJobId(), createdId.getValue(), theResourceCount, theResourceType, theContents.length);
+			return null;
+		});
+	}
+
+	@SuppressWarnings("unchecked")
+	private IFhirResourceDao<IBaseBinary> getBinaryDao() {
+		return myDaoRegistry.getResourceDao("Binary");
+	}
+
+	@Override
+	@Transactional(value = Transactional.TxType.NEVER)
+	public void purgeExpiredFiles() {
+		while (true) {
+			Optional<Long> jobPid = myTxTemplate.execute(t -> {
+				Slice<BulkExportJobEntity> expired = myBulkExportJobDao.findByExpiry(PageRequest.of(0, 1), new Date());
+				if (!expired.hasContent()) {
+					return Optional.empty();
+				}
+				return Optional.of(expired.getContent().get(0).getId());
+			});
+			assert jobPid != null;
+			if (!jobPid.isPresent()) {
+				break;
+			}
+			purgeJob(jobPid.get());
+		}
+	}
+
+	private void purgeJob(Long theJobPid) {
+		myTxTemplate.execute(t -> {
+			BulkExportJobEntity job = myBulkExportJobDao.getOne(theJobPid);
+			ourLog.info("Purging bulk export job: {}", job.getJobId());
+
+			for (BulkExportCollectionEntity nextCollection : job.getCollections()) {
+				for (BulkExportCollectionFileEntity nextFile : nextCollection.getFiles()) {
+					purgeBinary(nextFile.getResourceId());
+					myBulkExportCollectionFileDao.deleteByPid(nextFile.getId());
+				}
+				myBulkExportCollectionDao.deleteByPid(nextCollection.getId());
+			}
+
+			myBulkExportJobDao.delete(job);
+			return null;
+		});
+	}
+
+	/**
+	 * Deletes and then expunges all versions of an export file, so that the
+	 * exported data does not remain in the resource history (or in the binary
+	 * storage service, which is cleaned up by the expunge hooks). This is done
+	 * regardless of whether expunge is enabled on the server, since these
+	 * resources are owned by the export job.
+	 */
+	private void purgeBinary(String theBinaryIdPart) {
+		IIdType binaryId = myContext.getVersion().newIdType().setValue("Binary/" + theBinaryIdPart);
+		ourLog.debug("Purging bulk export binary: {}", binaryId.getValue());
+
+		Long binaryPid;
+		try {
+			binaryPid = myIdHelperService.translateForcedIdToPid("Binary", theBinaryIdPart, null);
+		} catch (ResourceNotFoundException e) {
+			ourLog.warn("Bulk export binary {} no longer exists", binaryId.getValue());
+			return;
+		}
+
+		getBinaryDao().delete(binaryId);
+
+		List<Long> binaryPids = Collections.singletonList(binaryPid);
+		AtomicInteger remainingCount = new AtomicInteger(Integer.MAX_VALUE);
+		myResourceExpungeService.deleteByResourceIdPartitions(binaryPids);
+		myResourceExpungeService.expungeHistoricalVersionsOfIds(null, binaryPids, remainingCount);
+		myResourceExpungeService.expungeCurrentVersionOfResources(null, binaryPids, remainingCount);
+	}
+
+	@Override
+	@Transactional
+	public JobInfo submitJob(String theOutputFormat, Set<String> theResourceTypes, Date theSince, BulkExportStyleEnum theExportStyle, IIdType theGroupId, String theRequest) {
+		String outputFormat = Constants.CT_FHIR_NDJSON;
+		if (!isBlank(theOutputFormat)) {
+			if (!VALID_OUTPUT_FORMATS.contains(theOutputFormat)) {
+				throw new InvalidRequestException("Invalid output format: " + theOutputFormat);
+			}
+			outputFormat = theOutputFormat;
+		}
+
+		String groupId = null;
+		if (theExportStyle == BulkExportStyleEnum.GROUP) {
+			if (theGroupId == null || !theGroupId.hasIdPart()) {
+				throw new InvalidRequestException("No Group ID specified for Group level export");
+			}
+			// Make sure the group actually exists
+			myDaoRegistry.getResourceDao("Group").read(theGroupId);
+			groupId = theGroupId.getIdPart();
+		}
+
+		Set<String> resourceTypes = determineResourceTypes(theResourceTypes, theExportStyle);
+
+		BulkExportJobEntity job = new BulkExportJobEntity();
+		job.setJobId(UUID.randomUUID().toString());
+		job.setStatus(BulkJobStatusEnum.SUBMITTED);
+		job.setCreated(new Date());
+		job.setExportStyle(theExportStyle);
+		job.setGroupId(groupId);
+		job.setSince(theSince);
+		job.setRequest(theRequest);
+		job.setOutputFormat(outputFormat);
+		myBulkExportJobDao.save(job);
+
+		for (String nextType : resourceTypes) {
+			BulkExportCollectionEntity collection = new BulkExportCollectionEntity();
+			collection.setJob(job);
+			collection.setResourceType(nextType);
+			job.getCollections().add(collection);
+			myBulkExportCollectionDao.save(collection);
+		}
+
+		ourLog.info("Bulk export job submitted: {} (types {})", job, resourceTypes);
+
+		return toJobInfo(job);
+	}
+
+	private Set<String> determineResourceTypes(Set<String> theResourceTypes, BulkExportStyleEnum theExportStyle) {
+		Set<String> retVal = new TreeSet<>();
+		if (theResourceTypes == null || theResourceTypes.isEmpty()) {
+			for (String next : myDaoRegistry.getRegisteredDaoTypes()) {
+				// Binary is excluded by default since export files are themselves Binary resources
+				if (!"Binary".equals(next) && isApplicableToExportStyle(next, theExportStyle)) {
+					retVal.add(next);
+				}
+			}
+		} else {
+			for (String next : theResourceTypes) {
+				if (!myDaoRegistry.isResourceTypeSupported(next)) {
+					throw new InvalidRequestException("Unknown or unsupported resource type: " + next);
+				}
+				if (!isApplicableToExportStyle(next, theExportStyle)) {
+					throw new InvalidRequestException("Resource type " + next + " is not a member of the Patient compartment and can not be exported at this level");
+				}
+				retVal.add(next);
+			}
+		}
+		return retVal;
+	}
+
+	private boolean isApplicableToExportStyle(String theResourceType, BulkExportStyleEnum theExportStyle) {
+		if (theExportStyle == BulkExportStyleEnum.SYSTEM || "Patient".equals(theResourceType)) {
+			return true;
+		}
+		RuntimeResourceDefinition def = myContext.getResourceDefinition(theResourceType);
+		return !def.getSearchParamsForCompartmentName("Patient").isEmpty();
+	}
+
+	@Override
+	@Transactional
+	public JobInfo getJobStatusOrThrowResourceNotFound(String theJobId) {
+		BulkExportJobEntity job = myBulkExportJobDao
+			.findByJobId(theJobId)
+			.orElseThrow(() -> new ResourceNotFoundException(theJobId));
+		return toJobInfo(job);
+	}
+
+	private JobInfo toJobInfo(BulkExportJobEntity theJob) {
+		JobInfo retVal = new JobInfo();
+		retVal.setJobId(theJob.getJobId());
+		retVal.setStatus(theJob.getStatus());
+		retVal.setStatusTime(theJob.getStatusTime());
+		retVal.setStatusMessage(theJob.getStatusMessage());
+		retVal.setRequest(theJob.getRequest());
+
+		if (theJob.getStatus() == BulkJobStatusEnum.COMPLETE) {
+			for (BulkExportCollectionEntity nextCollection : theJob.getCollections()) {
+				for (BulkExportCollectionFileEntity nextFile : nextCollection.getFiles()) {
+					retVal
+						.addFile()
+						.setResourceType(nextCollection.getResourceType())
+						.setResourceId(myContext.getVersion().newIdType().setValue("Binary/" + nextFile.getResourceId()))
+						.setResourceCount(nextFile.getResourceCount());
+				}
+			}
+		}
+
+		return retVal;
+	}
+
+	@Override
+	@Transactional
+	public void cancelAndPurgeAllJobs() {
+		myBulkExportCollectionFileDao.deleteAll();
+		myBulkExportCollectionDao.deleteAll();
+		myBulkExportJobDao.deleteAll();
+	}
+
+	/**
+	 * Thrown when a job that this server was building has been reclaimed by
+	 * another server
+	 */
+	private static class JobClaimLostException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		JobClaimLostException(String theJobId) {
+			super("Lost claim on bulk export job: " + theJobId);
+		}
+	}
+
+	private static class ExportJobDetails {
+		private final String myJobId;
+		private final String myOwnerId;
+		private final BulkExportStyleEnum myExportStyle;
+		private final String myOutputFormat;
+		private final Long myGroupPid;
+		private final Date mySince;
+		private final List<Long> myCollectionPids;
+
+		ExportJobDetails(String theJobId, String theOwnerId, BulkExportStyleEnum theExportStyle, String theOutputFormat, Long theGroupPid, Date theSince, List<Long> theCollectionPids) {
+			myJobId = theJobId;
+			myOwnerId = theOwnerId;
+			myExportStyle = theExportStyle;
+			myOutputFormat = theOutputFormat;
+			myGroupPid = theGroupPid;
+			mySince = theSince;
+			myCollectionPids = theCollectionPids;
+		}
+
+		String getJobId() {
+			return myJobId;
+		}
+
+		String getOwnerId() {
+			return myOwnerId;
+		}
+
+		BulkExportStyleEnum getExportStyle() {
+			return myExportStyle;
+		}
+
+		String getOutputFormat() {
+			return myOutputFormat;
+		}
+
+		Long getGroupPid() {
+			return myGroupPid;
+		}
+
+		Date getSince() {
+			return mySince;
+		}
+
+		List<Long> getCollectionPids() {
+			return myCollectionPids;
+		}
+	}
+
+}
@@ -0,0 +1,81 @@
+package ca.uhn.fhir.jpa.bulk;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.jpa.model.util.JpaConstants;
+import ca.uhn.fhir.rest.annotation.Operation;
+import ca.uhn.fhir.rest.annotation.OperationParam;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.util.ParametersUtil;
+import org.hl7.fhir.instance.model.api.IBaseParameters;
+import org.hl7.fhir.instance.model.api.IPrimitiveType;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+
+/**
+ * Provides the bulk data <code>$import</code> operation, which loads one or
+ * more NDJSON inputs into the repository.
+ */
+public class BulkDataImportProvider {
+
+	@Autowired
+	private IBulkDataImportSvc myBulkDataImportSvc;
+	@Autowired
+	private FhirContext myFhirContext;
+
+	/**
+	 * $import
+	 */
+	@Operation(name = JpaConstants.OPERATION_IMPORT, idempotent = false)
+	public IBaseParameters importNdJson(
+		@OperationParam(name = JpaConstants.PARAM_IMPORT_INPUT_FORMAT, min = 0, max = 1, typeName = "string") IPrimitiveType<String> theInputFormat,
+		@OperationParam(name = JpaConstants.PARAM_IMPORT_INPUT_URL, min = 1, max = OperationParam.MAX_UNLIMITED, typeName = "uri") List<IPrimitiveType<String>> theInputUrls,
+		RequestDetails theRequestDetails
+	) {
+		String inputFormat = theInputFormat != null ? theInputFormat.getValueAsString() : null;
+
+		List<String> urls = null;
+		if (theInputUrls != null) {
+			urls = theInputUrls
+				.stream()
+				.map(IPrimitiveType::getValueAsString)
+				.filter(t -> isNotBlank(t))
+				.collect(Collectors.toList());
+		}
+		if (urls == null || urls.isEmpty()) {
+			throw new InvalidRequestException("Missing parameter: " + JpaConstants.PARAM_IMPORT_INPUT_URL);
+		}
+
+		IBulkDataImportSvc.ImportOutcome outcome = myBulkDataImportSvc.importFromUrls(inputFormat, urls, theRequestDetails);
+
+		IBaseParameters retVal = ParametersUtil.newInstance(myFhirContext);
+		ParametersUtil.addParameterToParametersInteger(myFhirContext, retVal, "createdCount", outcome.getCreatedCount());
+		ParametersUtil.addParameterToParametersInteger(myFhirContext, retVal, "updatedCount", outcome.getUpdatedCount());
+		return retVal;
+	}
+
+}
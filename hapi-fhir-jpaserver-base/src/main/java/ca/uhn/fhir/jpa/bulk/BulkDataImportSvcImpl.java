@@ -0,0 +1,366 @@
+package ca.uhn.fhir.jpa.bulk;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.jpa.binstore.IBinaryStorageSvc;
+import ca.uhn.fhir.jpa.dao.DaoConfig;
+import ca.uhn.fhir.jpa.dao.DaoRegistry;
+import ca.uhn.fhir.jpa.dao.IFhirResourceDao;
+import ca.uhn.fhir.jpa.dao.data.IForcedIdDao;
+import ca.uhn.fhir.jpa.dao.index.IdHelperService;
+import ca.uhn.fhir.jpa.model.util.JpaConstants;
+import ca.uhn.fhir.parser.DataFormatException;
+import ca.uhn.fhir.parser.IParser;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.util.BinaryUtil;
+import ca.uhn.fhir.util.FhirTerser;
+import ca.uhn.fhir.util.StopWatch;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import org.hibernate.Session;
+import org.hl7.fhir.instance.model.api.IBaseBinary;
+import org.hl7.fhir.instance.model.api.IBaseExtension;
+import org.hl7.fhir.instance.model.api.IBaseHasExtensions;
+import org.hl7.fhir.instance.model.api.IBaseReference;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.instance.model.api.IPrimitiveType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceContextType;
+import java.io.*;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+/**
+ * Loads NDJSON content for bulk data <code>$import</code>.
+ * <p>
+ * Input is read a line at a time, so only the resources in the current batch
+ * are held in memory. Each batch is stored in its own transaction, with the
+ * Hibernate session configured to use the batch size as its JDBC batch size, so
+ * that the resource, history and index rows for the whole batch are sent to the
+ * database in a small number of round trips when the transaction is flushed.
+ * </p>
+ */
+public class BulkDataImportSvcImpl implements IBulkDataImportSvc {
+
+	private static final Logger ourLog = LoggerFactory.getLogger(BulkDataImportSvcImpl.class);
+	/**
+	 * Maximum number of IDs passed to a single <code>IN</code> clause when
+	 * checking whether resources already exist
+	 */
+	private static final int MAX_IDS_PER_EXISTENCE_QUERY = 500;
+	private static final Set<String> VALID_INPUT_FORMATS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+		Constants.CT_FHIR_NDJSON,
+		Constants.CT_APP_NDJSON,
+		Constants.CT_NDJSON
+	)));
+	@Autowired
+	private FhirContext myContext;
+	@Autowired
+	private DaoRegistry myDaoRegistry;
+	@Autowired
+	private DaoConfig myDaoConfig;
+	@Autowired
+	private IForcedIdDao myForcedIdDao;
+	@Autowired
+	private IdHelperService myIdHelperService;
+	@Autowired
+	private PlatformTransactionManager myTxManager;
+	@Autowired(required = false)
+	private IBinaryStorageSvc myBinaryStorageSvc;
+	@PersistenceContext(type = PersistenceContextType.TRANSACTION)
+	private EntityManager myEntityManager;
+	private TransactionTemplate myTxTemplate;
+
+	@PostConstruct
+	public void start() {
+		myTxTemplate = new TransactionTemplate(myTxManager);
+	}
+
+	@Override
+	public ImportOutcome importFromUrls(String theInputFormat, List<String> theUrls, RequestDetails theRequest) {
+		if (theInputFormat != null && !VALID_INPUT_FORMATS.contains(theInputFormat)) {
+			throw new InvalidRequestException("Invalid input format: " + theInputFormat);
+		}
+		if (theUrls == null || theUrls.isEmpty()) {
+			throw new InvalidRequestException("No input URLs specified for " + JpaConstants.OPERATION_IMPORT);
+		}
+
+		ImportOutcome retVal = new ImportOutcome();
+		for (String nextUrl : theUrls) {
+			ourLog.info("Importing NDJSON from: {}", nextUrl);
+			try (Reader reader = openInput(nextUrl)) {
+				retVal.add(importNdJson(reader, theRequest));
+			} catch (IOException e) {
+				throw new InternalErrorException("Failed to read input " + nextUrl + ": " + e.getMessage(), e);
+			}
+		}
+		return retVal;
+	}
+
+	@Override
+	public ImportOutcome importNdJson(Reader theReader, RequestDetails theRequest) {
+		int batchSize = myDaoConfig.getBulkImportBatchSize();
+		IParser parser = myContext.newJsonParser();
+		ImportOutcome retVal = new ImportOutcome();
+		StopWatch sw = new StopWatch();
+
+		BufferedReader reader = new BufferedReader(theReader);
+		List<IBaseResource> batch = new ArrayList<>(batchSize);
+		int lineNumber = 0;
+		try {
+			String nextLine;
+			while ((nextLine = reader.readLine()) != null) {
+				lineNumber++;
+				if (isBlank(nextLine)) {
+					continue;
+				}
+
+				try {
+					batch.add(parser.parseResource(nextLine));
+				} catch (DataFormatException e) {
+					throw new InvalidRequestException("Failed to parse resource on line " + lineNumber + ": " + e.getMessage());
+				}
+
+				if (batch.size() >= batchSize) {
+					storeBatch(batch, retVal, theRequest);
+					batch.clear();
+					int count = retVal.getCreatedCount() + retVal.getUpdatedCount();
+					ourLog.info("Have imported {} resources in {} - {}/sec", count, sw, sw.formatThroughput(count, TimeUnit.SECONDS));
+				}
+			}
+		} catch (IOException e) {
+			throw new InternalErrorException("Failed to read input on line " + lineNumber + ": " + e.getMessage(), e);
+		}
+
+		if (!batch.isEmpty()) {
+			storeBatch(batch, retVal, theRequest);
+		}
+
+		ourLog.info("Finished importing {} new and {} existing resources in {}", retVal.getCreatedCount(), retVal.getUpdatedCount(), sw);
+		return retVal;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void storeBatch(List<IBaseResource> theBatch, ImportOutcome theOutcome, RequestDetails theRequest) {
+		try {
+			myTxTemplate.execute(t -> {
+				myEntityManager.unwrap(Session.class).setJdbcBatchSize(myDaoConfig.getBulkImportBatchSize());
+
+				Set<String> existingIds = findExistingIds(theBatch);
+				preResolveReferenceTargets(theBatch, theRequest);
+				Date updateTime = new Date();
+				for (IBaseResource next : theBatch) {
+					String resourceType = myContext.getResourceDefinition(next).getName();
+					IFhirResourceDao dao = myDaoRegistry.getResourceDao(resourceType);
+
+					String key = toExistenceKey(resourceType, next.getIdElement());
+					if (key != null && !existingIds.add(key)) {
+						dao.update(next, theRequest);
+						theOutcome.addUpdated();
+					} else {
+						dao.importNewResource(next, updateTime, theRequest);
+						theOutcome.addCreated();
+					}
+				}
+				return null;
+			});
+		} finally {
+			/*
+			 * The pre-resolved IDs cover every reference target and every client assigned
+			 * ID seen so far, so drop them rather than letting them grow with the import
+			 */
+			myIdHelperService.clearPreResolvedForcedIds(theRequest);
+		}
+	}
+
+	/**
+	 * Returns the keys (see {@link #toExistenceKey(String, IIdType)}) of any resources in the
+	 * batch which already exist in the repository. Resources with no ID can not already exist,
+	 * and resources with an ID that is a PID are treated as existing so that they are handled
+	 * by a normal update.
+	 */
+	private Set<String> findExistingIds(List<IBaseResource> theBatch) {
+		Set<String> retVal = new HashSet<>();
+		ListMultimap<String, String> typeToForcedIds = ArrayListMultimap.create();
+		for (IBaseResource next : theBatch) {
+			String resourceType = myContext.getResourceDefinition(next).getName();
+			IIdType id = next.getIdElement();
+			String key = toExistenceKey(resourceType, id);
+			if (key == null) {
+				continue;
+			}
+			if (myDaoConfig.getResourceClientIdStrategy() != DaoConfig.ClientIdStrategyEnum.ANY && IdHelperService.isValidPid(id)) {
+				retVal.add(key);
+			} else {
+				typeToForcedIds.put(resourceType, id.getIdPart());
+			}
+		}
+
+		for (String nextResourceType : typeToForcedIds.keySet()) {
+			for (List<String> nextIds : Lists.partition(typeToForcedIds.get(nextResourceType), MAX_IDS_PER_EXISTENCE_QUERY)) {
+				for (String nextExisting : myForcedIdDao.findForcedIdsByTypeAndForcedId(nextResourceType, nextIds)) {
+					retVal.add(nextResourceType + "/" + nextExisting);
+				}
+			}
+		}
+
+		return retVal;
+	}
+
+	/**
+	 * Resolves the targets of all references in the batch using one query per resource type.
+	 * Otherwise each reference would be resolved by its own query as the resource containing
+	 * it is stored, and with the default flush mode Hibernate would flush everything persisted
+	 * so far before each of those queries, defeating the JDBC batching. Resources created by
+	 * the import are remembered by the DAO as they are stored, so references to them don't
+	 * need a query either.
+	 */
+	private void preResolveReferenceTargets(List<IBaseResource> theBatch, RequestDetails theRequest) {
+		if (theRequest == null) {
+			return;
+		}
+
+		FhirTerser terser = myContext.newTerser();
+		List<IIdType> targets = new ArrayList<>();
+		for (IBaseResource next : theBatch) {
+			for (IBaseReference nextRef : terser.getAllPopulatedChildElementsOfType(next, IBaseReference.class)) {
+				IIdType target = nextRef.getReferenceElement();
+				if (target.hasResourceType() && target.hasIdPart() && !target.hasBaseUrl() && !target.isLocal()) {
+					targets.add(target.toUnqualifiedVersionless());
+				}
+			}
+		}
+		myIdHelperService.preResolveForcedIds(targets, theRequest);
+	}
+
+	private Reader openInput(String theUrl) throws IOException {
+		if (theUrl.startsWith("file:")) {
+			return openLocalFile(theUrl);
+		}
+
+		IIdType binaryId = myContext.getVersion().newIdType().setValue(theUrl).toUnqualifiedVersionless();
+		if (!"Binary".equals(binaryId.getResourceType()) || !binaryId.hasIdPart()) {
+			throw new InvalidRequestException("Unsupported input URL (must be a file: URL or a Binary resource reference): " + theUrl);
+		}
+
+		IBaseBinary binary = (IBaseBinary) myDaoRegistry.getResourceDao("Binary").read(binaryId);
+		Optional<String> blobId = getExternalizedBlobId(binary);
+		if (blobId.isPresent() && myBinaryStorageSvc != null) {
+			// Copy the blob to a temporary file so that it can be streamed without holding it in memory
+			File tempFile = File.createTempFile("hapi-fhir-import-", ".ndjson");
+			try (OutputStream os = new FileOutputStream(tempFile)) {
+				myBinaryStorageSvc.writeBlob(binaryId, blobId.get(), os);
+			}
+			InputStream is = Files.newInputStream(tempFile.toPath(), StandardOpenOption.DELETE_ON_CLOSE);
+			return new InputStreamReader(is, StandardCharsets.UTF_8);
+		}
+
+		byte[] content = binary.getContent();
+		if (content == null) {
+			throw new InvalidRequestException("Binary resource " + binaryId.getValue() + " has no content");
+		}
+		return new InputStreamReader(new ByteArrayInputStream(content), StandardCharsets.UTF_8);
+	}
+
+	private Reader openLocalFile(String theUrl) throws IOException {
+		String allowedDirectory = myDaoConfig.getBulkImportLocalFileDirectory();
+		if (isBlank(allowedDirectory)) {
+			throw new InvalidRequestException("Importing from local files is not enabled on this server");
+		}
+
+		Path file;
+		try {
+			file = Paths.get(new URI(theUrl));
+		} catch (URISyntaxException | IllegalArgumentException e) {
+			throw new InvalidRequestException("Invalid file URL: " + theUrl);
+		}
+
+		/*
+		 * The same error is returned whether the file is outside of the permitted
+		 * directory or does not exist, so that the existence of files outside of
+		 * that directory can not be probed. The path is checked before anything
+		 * on the filesystem is touched, and then again once symlinks are resolved.
+		 */
+		String notPermittedMessage = "File does not exist or is not in the permitted import directory: " + theUrl;
+		Path allowedPath = Paths.get(allowedDirectory).toAbsolutePath().normalize();
+		Path allowedRealPath = allowedPath.toRealPath();
+		Path normalizedFile = file.toAbsolutePath().normalize();
+		if (!normalizedFile.startsWith(allowedPath) && !normalizedFile.startsWith(allowedRealPath)) {
+			throw new InvalidRequestException(notPermittedMessage);
+		}
+
+		Path realFile;
+		try {
+			realFile = normalizedFile.toRealPath();
+		} catch (IOException e) {
+			throw new InvalidRequestException(notPermittedMessage);
+		}
+		if (!realFile.startsWith(allowedRealPath) || !Files.isRegularFile(realFile)) {
+			throw new InvalidRequestException(notPermittedMessage);
+		}
+
+		return Files.newBufferedReader(realFile, StandardCharsets.UTF_8);
+	}
+
+	@SuppressWarnings("unchecked")
+	private Optional<String> getExternalizedBlobId(IBaseBinary theBinary) {
+		IBaseHasExtensions data = (IBaseHasExtensions) BinaryUtil.getOrCreateData(myContext, theBinary);
+		return data
+			.getExtension()
+			.stream()
+			.filter(t -> JpaConstants.EXT_EXTERNALIZED_BINARY_ID.equals(t.getUrl()))
+			.map(IBaseExtension::getValue)
+			.filter(t -> t instanceof IPrimitiveType)
+			.map(t -> ((IPrimitiveType<String>) t).getValueAsString())
+			.findFirst();
+	}
+
+	private static String toExistenceKey(String theResourceType, IIdType theId) {
+		if (theId == null || !theId.hasIdPart()) {
+			return null;
+		}
+		return theResourceType + "/" + theId.getIdPart();
+	}
+
+}
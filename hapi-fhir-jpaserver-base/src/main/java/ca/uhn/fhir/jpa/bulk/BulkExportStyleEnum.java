@@ -0,0 +1,46 @@
+package ca.uhn.fhir.jpa.bulk;
+
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * The level at which a bulk export was requested
+ */
+public enum BulkExportStyleEnum {
+
+	/**
+	 * <code>[base]/$export</code> - All resources of the requested types
+	 */
+	SYSTEM,
+
+	/**
+	 * <code>[base]/Patient/$export</code> - All Patient resources, as well as
+	 * resources of the requested types which reference a Patient
+	 */
+	PATIENT,
+
+	/**
+	 * <code>[base]/Group/[id]/$export</code> - All Patient resources which are
+	 * members of the given Group, as well as resources in their compartments
+	 */
+	GROUP
+
+}
@@ -0,0 +1,176 @@
+package ca.uhn.fhir.jpa.bulk;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.hl7.fhir.instance.model.api.IIdType;
+
+import javax.transaction.Transactional;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Service which handles FHIR Bulk Data <code>$export</code> jobs. Jobs are
+ * submitted synchronously and are then processed asynchronously by a
+ * scheduled task, which streams the matching resources into NDJSON files.
+ */
+public interface IBulkDataExportSvc {
+
+	/**
+	 * Process any jobs which are waiting to be built. This method is
+	 * invoked by the scheduler but may also be called directly (e.g. by
+	 * unit tests).
+	 */
+	@Transactional(value = Transactional.TxType.NEVER)
+	void buildExportFiles();
+
+	/**
+	 * Delete any jobs (and the files they produced) whose expiry time
+	 * has passed
+	 */
+	@Transactional(value = Transactional.TxType.NEVER)
+	void purgeExpiredFiles();
+
+	/**
+	 * Submit a new export job
+	 *
+	 * @param theOutputFormat  The requested output format, or <code>null</code> for the default (NDJSON)
+	 * @param theResourceTypes The resource types to export, or <code>null</code> for all applicable types
+	 * @param theSince         If specified, only resources updated at or after this time will be exported
+	 * @param theExportStyle   The level at which the export was requested
+	 * @param theGroupId       The Group being exported (only used if the style is {@link BulkExportStyleEnum#GROUP})
+	 * @param theRequest       The original request URL, which is echoed back in the export manifest
+	 */
+	JobInfo submitJob(String theOutputFormat, Set<String> theResourceTypes, Date theSince, BulkExportStyleEnum theExportStyle, IIdType theGroupId, String theRequest);
+
+	JobInfo getJobStatusOrThrowResourceNotFound(String theJobId);
+
+	/**
+	 * Cancel and delete all jobs, regardless of their status. This is
+	 * mostly intended for unit tests.
+	 */
+	void cancelAndPurgeAllJobs();
+
+	class JobInfo {
+		private String myJobId;
+		private BulkJobStatusEnum myStatus;
+		private Date myStatusTime;
+		private String myStatusMessage;
+		private String myRequest;
+		private List<FileEntry> myFiles;
+
+		public String getJobId() {
+			return myJobId;
+		}
+
+		public JobInfo setJobId(String theJobId) {
+			myJobId = theJobId;
+			return this;
+		}
+
+		public BulkJobStatusEnum getStatus() {
+			return myStatus;
+		}
+
+		public JobInfo setStatus(BulkJobStatusEnum theStatus) {
+			myStatus = theStatus;
+			return this;
+		}
+
+		public Date getStatusTime() {
+			return myStatusTime;
+		}
+
+		public JobInfo setStatusTime(Date theStatusTime) {
+			myStatusTime = theStatusTime;
+			return this;
+		}
+
+		public String getStatusMessage() {
+			return myStatusMessage;
+		}
+
+		public JobInfo setStatusMessage(String theStatusMessage) {
+			myStatusMessage = theStatusMessage;
+			return this;
+		}
+
+		public String getRequest() {
+			return myRequest;
+		}
+
+		public JobInfo setRequest(String theRequest) {
+			myRequest = theRequest;
+			return this;
+		}
+
+		public List<FileEntry> getFiles() {
+			if (myFiles == null) {
+				myFiles = new ArrayList<>();
+			}
+			return myFiles;
+		}
+
+		public FileEntry addFile() {
+			FileEntry retVal = new FileEntry();
+			getFiles().add(retVal);
+			return retVal;
+		}
+	}
+
+	class FileEntry {
+		private String myResourceType;
+		private IIdType myResourceId;
+		private int myResourceCount;
+
+		public String getResourceType() {
+			return myResourceType;
+		}
+
+		public FileEntry setResourceType(String theResourceType) {
+			myResourceType = theResourceType;
+			return this;
+		}
+
+		/**
+		 * The ID of the Binary resource containing the file contents
+		 */
+		public IIdType getResourceId() {
+			return myResourceId;
+		}
+
+		public FileEntry setResourceId(IIdType theResourceId) {
+			myResourceId = theResourceId;
+			return this;
+		}
+
+		public int getResourceCount() {
+			return myResourceCount;
+		}
+
+		public FileEntry setResourceCount(int theResourceCount) {
+			myResourceCount = theResourceCount;
+			return this;
+		}
+	}
+
+}
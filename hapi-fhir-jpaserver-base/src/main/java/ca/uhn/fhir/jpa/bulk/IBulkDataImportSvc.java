@@ -0,0 +1,87 @@
+package ca.uhn.fhir.jpa.bulk;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+
+import javax.transaction.Transactional;
+import java.io.Reader;
+import java.util.List;
+
+/**
+ * Service which loads NDJSON content into the repository as part of a
+ * bulk data <code>$import</code>. Resources are read one at a time and
+ * stored in batches, with one database transaction per batch.
+ * <p>
+ * Resources which do not already exist are stored using
+ * {@link ca.uhn.fhir.jpa.dao.IFhirResourceDao#importNewResource(org.hl7.fhir.instance.model.api.IBaseResource, java.util.Date, RequestDetails)},
+ * which skips the change detection and interceptor invocations performed by a
+ * normal create. Resources whose ID already exists are stored using a normal update.
+ * </p>
+ */
+public interface IBulkDataImportSvc {
+
+	/**
+	 * Import the NDJSON content found at each of the given URLs. Each URL must either be a
+	 * reference to a Binary resource (e.g. <code>Binary/123</code>) or a <code>file:</code>
+	 * URL within the directory configured using
+	 * {@link ca.uhn.fhir.jpa.dao.DaoConfig#setBulkImportLocalFileDirectory(String)}.
+	 *
+	 * @param theInputFormat The input format, or <code>null</code> for the default (NDJSON)
+	 * @param theUrls        The URLs to import from
+	 * @param theRequest     The request, used to remember reference targets which have already been resolved
+	 */
+	@Transactional(value = Transactional.TxType.NEVER)
+	ImportOutcome importFromUrls(String theInputFormat, List<String> theUrls, RequestDetails theRequest);
+
+	/**
+	 * Import NDJSON content from the given reader. The reader is not closed by this method.
+	 */
+	@Transactional(value = Transactional.TxType.NEVER)
+	ImportOutcome importNdJson(Reader theReader, RequestDetails theRequest);
+
+	class ImportOutcome {
+		private int myCreatedCount;
+		private int myUpdatedCount;
+
+		public int getCreatedCount() {
+			return myCreatedCount;
+		}
+
+		public int getUpdatedCount() {
+			return myUpdatedCount;
+		}
+
+		void addCreated() {
+			myCreatedCount++;
+		}
+
+		void addUpdated() {
+			myUpdatedCount++;
+		}
+
+		void add(ImportOutcome theOutcome) {
+			myCreatedCount += theOutcome.getCreatedCount();
+			myUpdatedCount += theOutcome.getUpdatedCount();
+		}
+	}
+
+}
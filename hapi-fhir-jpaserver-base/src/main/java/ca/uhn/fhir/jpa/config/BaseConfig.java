@@ -6,6 +6,12 @@ import ca.uhn.fhir.interceptor.api.IInterceptorService;
 import ca.uhn.fhir.interceptor.executor.InterceptorService;
 import ca.uhn.fhir.jpa.binstore.BinaryAccessProvider;
 import ca.uhn.fhir.jpa.binstore.BinaryStorageInterceptor;
+import ca.uhn.fhir.jpa.bulk.BulkDataExportProvider;
+import ca.uhn.fhir.jpa.bulk.BulkDataExportSvcImpl;
+import ca.uhn.fhir.jpa.bulk.BulkDataImportProvider;
+import ca.uhn.fhir.jpa.bulk.BulkDataImportSvcImpl;
+import ca.uhn.fhir.jpa.bulk.IBulkDataExportSvc;
+import ca.uhn.fhir.jpa.bulk.IBulkDataImportSvc;
 import ca.uhn.fhir.jpa.dao.DaoRegistry;
 import ca.uhn.fhir.jpa.graphql.JpaStorageServices;
 import ca.uhn.fhir.jpa.interceptor.JpaConsentContextServices;
@@ -143,6 +149,28 @@ public abstract class BaseConfig implements SchedulingConfigurer {
 		return new BinaryStorageInterceptor();
 	}
 
+	@Bean
+	public IBulkDataExportSvc bulkDataExportSvc() {
+		return new BulkDataExportSvcImpl();
+	}
+
+	@Bean
+	@Lazy
+	public BulkDataExportProvider bulkDataExportProvider() {
+		return new BulkDataExportProvider();
+	}
+
+	@Bean
+	public IBulkDataImportSvc bulkDataImportSvc() {
+		return new BulkDataImportSvcImpl();
+	}
+
+	@Bean
+	@Lazy
+	public BulkDataImportProvider bulkDataImportProvider() {
+		return new BulkDataImportProvider();
+	}
+
 	@Bean
 	public TaskScheduler taskScheduler() {
 		ConcurrentTaskScheduler retVal = new ConcurrentTaskScheduler();
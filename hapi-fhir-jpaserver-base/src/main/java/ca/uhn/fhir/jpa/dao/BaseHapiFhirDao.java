@@ -7,6 +7,7 @@ import ca.uhn.fhir.interceptor.api.Pointcut;
 import ca.uhn.fhir.jpa.dao.data.*;
 import ca.uhn.fhir.jpa.dao.expunge.ExpungeService;
 import ca.uhn.fhir.jpa.dao.index.DaoSearchParamSynchronizer;
+import ca.uhn.fhir.jpa.dao.index.DecodedResourceTextCache;
 import ca.uhn.fhir.jpa.dao.index.IdHelperService;
 import ca.uhn.fhir.jpa.dao.index.SearchParamWithInlineReferencesExtractor;
 import ca.uhn.fhir.jpa.delete.DeleteConflictService;
@@ -120,6 +121,11 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao,
 	private static final Logger ourLog = LoggerFactory.getLogger(BaseHapiFhirDao.class);
 	private static final Map<FhirVersionEnum, FhirContext> ourRetrievalContexts = new HashMap<>();
 	private static final String PROCESSING_SUB_REQUEST = "BaseHapiFhirDao.processingSubRequest";
+	/**
+	 * Resource user data key for the stored JSON text which a resource was parsed from, when
+	 * the resource was loaded for {@link DaoConfig#isStoredJsonPassthroughEnabled() stored JSON passthrough}
+	 */
+	static final String STORED_JSON_TEXT_USERDATA_KEY = BaseHapiFhirDao.class.getName() + "_STORED_JSON_TEXT";
 	private static boolean ourValidationDisabledForUnitTest;
 	private static boolean ourDisableIncrementOnUpdateForUnitTest = false;
 
@@ -128,6 +134,8 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao,
 	@Autowired
 	protected IdHelperService myIdHelperService;
 	@Autowired
+	protected DecodedResourceTextCache myDecodedResourceTextCache;
+	@Autowired
 	protected IForcedIdDao myForcedIdDao;
 	@Autowired
 	protected IResourceProvenanceDao myResourceProvenanceDao;
@@ -846,15 +854,25 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao,
 		return toResource(resourceType, theEntity, null, theForHistoryOperation);
 	}
 
-	@SuppressWarnings("unchecked")
 	@Override
 	public <R extends IBaseResource> R toResource(Class<R> theResourceType, IBaseResourceEntity theEntity, Collection<ResourceTag> theTagList, boolean theForHistoryOperation) {
+		return toResource(theResourceType, theEntity, theTagList, theForHistoryOperation, false);
+	}
+
+	/**
+	 * @param theKeepStoredJsonText If <code>true</code> and the stored text is JSON which contains the whole resource
+	 *                              apart from its ID and version specific meta elements, the stored text is kept in
+	 *                              the resource's user data under {@link #STORED_JSON_TEXT_USERDATA_KEY}
+	 */
+	@SuppressWarnings("unchecked")
+	protected <R extends IBaseResource> R toResource(Class<R> theResourceType, IBaseResourceEntity theEntity, Collection<ResourceTag> theTagList, boolean theForHistoryOperation, boolean theKeepStoredJsonText) {
 
 		// 1. get resource, it's encoding and the tags if any
 		byte[] resourceBytes;
 		ResourceEncodingEnum resourceEncoding;
 		Collection<? extends BaseTag> myTagList;
 		Long version;
+		Long resourcePid;
 		String provenanceSourceUri = null;
 		String provenanceRequestId = null;
 
@@ -864,6 +882,7 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao,
 			resourceEncoding = history.getEncoding();
 			myTagList = history.getTags();
 			version = history.getVersion();
+			resourcePid = history.getResourceId();
 			if (history.getProvenance() != null) {
 				provenanceRequestId = history.getProvenance().getRequestId();
 				provenanceSourceUri = history.getProvenance().getSourceUri();
@@ -886,6 +905,7 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao,
 			resourceEncoding = history.getEncoding();
 			myTagList = resource.getTags();
 			version = history.getVersion();
+			resourcePid = resource.getId();
 			if (history.getProvenance() != null) {
 				provenanceRequestId = history.getProvenance().getRequestId();
 				provenanceSourceUri = history.getProvenance().getSourceUri();
@@ -896,6 +916,7 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao,
 			resourceBytes = view.getResource();
 			resourceEncoding = view.getEncoding();
 			version = view.getVersion();
+			resourcePid = view.getResourceId();
 			provenanceRequestId = view.getProvenanceRequestId();
 			provenanceSourceUri = view.getProvenanceSourceUri();
 			if (theTagList == null)
@@ -908,7 +929,7 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao,
 		}
 
 		// 2. get The text
-		String resourceText = decodeResource(resourceBytes, resourceEncoding);
+		String resourceText = myDecodedResourceTextCache.decodeResource(resourcePid, version, resourceBytes, resourceEncoding);
 
 		// 3. Use the appropriate custom type if one is specified in the context
 		Class<R> resourceType = theResourceType;
@@ -928,29 +949,34 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao,
 			}
 		}
 
-		// 4. parse the text to FHIR
+		// 4. parse the text to FHIR, or copy the parsed resource if it is cached
 		R retVal;
 		if (resourceEncoding != ResourceEncodingEnum.DEL) {
-			IParser parser = resourceEncoding.newParser(getContext(theEntity.getFhirVersion()));
-			parser.setParserErrorHandler(new LenientErrorHandler(false).setErrorOnInvalidValue(false));
-
-			try {
-				retVal = parser.parseResource(resourceType, resourceText);
-			} catch (Exception e) {
-				StringBuilder b = new StringBuilder();
-				b.append("Failed to parse database resource[");
-				b.append(resourceType);
-				b.append("/");
-				b.append(theEntity.getIdDt().getIdPart());
-				b.append(" (pid ");
-				b.append(theEntity.getId());
-				b.append(", version ");
-				b.append(theEntity.getFhirVersion().name());
-				b.append("): ");
-				b.append(e.getMessage());
-				String msg = b.toString();
-				ourLog.error(msg, e);
-				throw new DataFormatException(msg, e);
+			FhirContext context = getContext(theEntity.getFhirVersion());
+			retVal = myDecodedResourceTextCache.getParsedResourceCopyOrNull(context, resourcePid, version, resourceType);
+			if (retVal == null) {
+				IParser parser = resourceEncoding.newParser(context);
+				parser.setParserErrorHandler(new LenientErrorHandler(false).setErrorOnInvalidValue(false));
+
+				try {
+					retVal = parser.parseResource(resourceType, resourceText);
+				} catch (Exception e) {
+					StringBuilder b = new StringBuilder();
+					b.append("Failed to parse database resource[");
+					b.append(resourceType);
+					b.append("/");
+					b.append(theEntity.getIdDt().getIdPart());
+					b.append(" (pid ");
+					b.append(theEntity.getId());
+					b.append(", version ");
+					b.append(theEntity.getFhirVersion().name());
+					b.append("): ");
+					b.append(e.getMessage());
+					String msg = b.toString();
+					ourLog.error(msg, e);
+					throw new DataFormatException(msg, e);
+				}
+				myDecodedResourceTextCache.putParsedResource(context, resourcePid, version, retVal);
 			}
 
 		} else {
@@ -985,6 +1011,16 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao,
 			}
 		}
 
+		// 7. Keep the stored text if it can be returned as-is
+		if (theKeepStoredJsonText && retVal instanceof IAnyResource && myTagList.isEmpty()) {
+			if (resourceEncoding == ResourceEncodingEnum.JSON || resourceEncoding == ResourceEncodingEnum.JSONC) {
+				// Before R4 the source is held in an extension, which is not spliced in with the other meta elements
+				if ((isBlank(provenanceRequestId) && isBlank(provenanceSourceUri)) || myContext.getVersion().getVersion().isEqualOrNewerThan(FhirVersionEnum.R4)) {
+					((IAnyResource) retVal).setUserData(STORED_JSON_TEXT_USERDATA_KEY, resourceText);
+				}
+			}
+		}
+
 		return retVal;
 	}
 
@@ -1122,46 +1158,7 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao,
 		 * Create history entry
 		 */
 		if (theCreateNewHistoryEntry) {
-			final ResourceHistoryTable historyEntry = theEntity.toHistory();
-			historyEntry.setEncoding(changed.getEncoding());
-			historyEntry.setResource(changed.getResource());
-
-			ourLog.debug("Saving history entry {}", historyEntry.getIdDt());
-			myResourceHistoryTableDao.save(historyEntry);
-
-			// Save resource source
-			String source = null;
-			String requestId = theRequest != null ? theRequest.getRequestId() : null;
-			if (theResource != null) {
-				if (myContext.getVersion().getVersion().isEqualOrNewerThan(FhirVersionEnum.R4)) {
-					IBaseMetaType meta = theResource.getMeta();
-					source = MetaUtil.getSource(myContext, meta);
-				}
-				if (myContext.getVersion().getVersion().equals(FhirVersionEnum.DSTU3)) {
-					source = ((IBaseHasExtensions) theResource.getMeta())
-						.getExtension()
-						.stream()
-						.filter(t -> JpaConstants.EXT_META_SOURCE.equals(t.getUrl()))
-						.filter(t -> t.getValue() instanceof IPrimitiveType)
-						.map(t -> ((IPrimitiveType) t.getValue()).getValueAsString())
-						.findFirst()
-						.orElse(null);
-				}
-			}
-			boolean haveSource = isNotBlank(source) && myConfig.getStoreMetaSourceInformation().isStoreSourceUri();
-			boolean haveRequestId = isNotBlank(requestId) && myConfig.getStoreMetaSourceInformation().isStoreRequestId();
-			if (haveSource || haveRequestId) {
-				ResourceHistoryProvenanceEntity provenance = new ResourceHistoryProvenanceEntity();
-				provenance.setResourceHistoryTable(historyEntry);
-				provenance.setResourceTable(theEntity);
-				if (haveRequestId) {
-					provenance.setRequestId(left(requestId, Constants.REQUEST_ID_LENGTH));
-				}
-				if (haveSource) {
-					provenance.setSourceUri(source);
-				}
-				myEntityManager.persist(provenance);
-			}
+			saveHistoryEntry(theRequest, theResource, theEntity, changed);
 		}
 
 		/*
@@ -1175,18 +1172,7 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao,
 		 * those by path and not by parameter name.
 		 */
 		if (thePerformIndexing && newParams != null) {
-			Map<String, Boolean> presentSearchParams = new HashMap<>();
-			for (String nextKey : newParams.getPopulatedResourceLinkParameters()) {
-				presentSearchParams.put(nextKey, Boolean.TRUE);
-			}
-			Set<Entry<String, RuntimeSearchParam>> activeSearchParams = mySearchParamRegistry.getActiveSearchParams(theEntity.getResourceType()).entrySet();
-			for (Entry<String, RuntimeSearchParam> nextSpEntry : activeSearchParams) {
-				if (nextSpEntry.getValue().getParamType() == RestSearchParameterTypeEnum.REFERENCE) {
-					if (!presentSearchParams.containsKey(nextSpEntry.getKey())) {
-						presentSearchParams.put(nextSpEntry.getKey(), Boolean.FALSE);
-					}
-				}
-			}
+			Map<String, Boolean> presentSearchParams = toSearchParamPresenceMap(theEntity, newParams);
 			AddRemoveCount presenceCount = mySearchParamPresenceSvc.updatePresence(theEntity, presentSearchParams);
 
 			// Interceptor broadcast: JPA_PERFTRACE_INFO
@@ -1241,6 +1227,118 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao,
 		return theEntity;
 	}
 
+	/**
+	 * Stores a brand new resource without any of the change detection that
+	 * {@link #updateEntity(RequestDetails, IBaseResource, ResourceTable, Date, boolean, boolean, Date, boolean, boolean)}
+	 * performs, and without invoking any interceptors. This is intended for bulk loading
+	 * resources which are known not to exist yet: the entity, its first history entry and all of
+	 * its index rows are simply persisted, so that they can be flushed to the database in JDBC
+	 * batches.
+	 */
+	@SuppressWarnings("unchecked")
+	protected ResourceTable insertEntityForBulkImport(IBaseResource theResource, ResourceTable theEntity, Date theUpdateTime, RequestDetails theRequest) {
+		Validate.notNull(theResource);
+		Validate.isTrue(theEntity.getId() == null, "Entity must not already be stored");
+
+		if (!ourValidationDisabledForUnitTest) {
+			validateResourceForStorage((T) theResource, theEntity);
+		}
+
+		theEntity.setPublished(theUpdateTime);
+		theEntity.setUpdated(theUpdateTime);
+		theEntity.setDeleted(null);
+		theEntity.setVersion(1);
+
+		ResourceIndexedSearchParams existingParams = new ResourceIndexedSearchParams();
+		ResourceIndexedSearchParams newParams = new ResourceIndexedSearchParams();
+		mySearchParamWithInlineReferencesExtractor.populateFromResource(newParams, this, theUpdateTime, theEntity, theResource, existingParams, theRequest);
+
+		EncodedResource encoded = populateResourceIntoEntity(null, theResource, theEntity, true);
+		if (theResource instanceof IResource) {
+			theEntity.setLanguage(((IResource) theResource).getLanguage().getValue());
+		} else {
+			theEntity.setLanguage(((IAnyResource) theResource).getLanguageElement().getValue());
+		}
+		newParams.setParamsOn(theEntity);
+		theEntity.setIndexStatus(INDEX_STATUS_INDEXED);
+		populateFullTextFields(myContext, theResource, theEntity);
+
+		myEntityManager.persist(theEntity);
+		if (theEntity.getForcedId() != null) {
+			myEntityManager.persist(theEntity.getForcedId());
+		}
+		postPersist(theEntity, (T) theResource);
+
+		saveHistoryEntry(null, theResource, theEntity, encoded);
+
+		mySearchParamPresenceSvc.addPresenceForNewResource(theEntity, toSearchParamPresenceMap(theEntity, newParams));
+		myDaoSearchParamSynchronizer.addSearchParamsForNewEntity(newParams, theEntity);
+		mySearchParamWithInlineReferencesExtractor.storeCompositeStringUniques(newParams, theEntity, existingParams);
+
+		updateResourceMetadata(theEntity, theResource);
+		return theEntity;
+	}
+
+	private void saveHistoryEntry(RequestDetails theRequest, IBaseResource theResource, ResourceTable theEntity, EncodedResource theChanged) {
+		ResourceHistoryTable historyEntry = theEntity.toHistory();
+		historyEntry.setEncoding(theChanged.getEncoding());
+		historyEntry.setResource(theChanged.getResource());
+		myDecodedResourceTextCache.invalidate(theEntity.getId());
+
+		ourLog.debug("Saving history entry {}", historyEntry.getIdDt());
+		myResourceHistoryTableDao.save(historyEntry);
+
+		// Save resource source
+		String source = null;
+		String requestId = theRequest != null ? theRequest.getRequestId() : null;
+		if (theResource != null) {
+			if (myContext.getVersion().getVersion().isEqualOrNewerThan(FhirVersionEnum.R4)) {
+				IBaseMetaType meta = theResource.getMeta();
+				source = MetaUtil.getSource(myContext, meta);
+			}
+			if (myContext.getVersion().getVersion().equals(FhirVersionEnum.DSTU3)) {
+				source = ((IBaseHasExtensions) theResource.getMeta())
+					.getExtension()
+					.stream()
+					.filter(t -> JpaConstants.EXT_META_SOURCE.equals(t.getUrl()))
+					.filter(t -> t.getValue() instanceof IPrimitiveType)
+					.map(t -> ((IPrimitiveType) t.getValue()).getValueAsString())
+					.findFirst()
+					.orElse(null);
+			}
+		}
+		boolean haveSource = isNotBlank(source) && myConfig.getStoreMetaSourceInformation().isStoreSourceUri();
+		boolean haveRequestId = isNotBlank(requestId) && myConfig.getStoreMetaSourceInformation().isStoreRequestId();
+		if (haveSource || haveRequestId) {
+			ResourceHistoryProvenanceEntity provenance = new ResourceHistoryProvenanceEntity();
+			provenance.setResourceHistoryTable(historyEntry);
+			provenance.setResourceTable(theEntity);
+			if (haveRequestId) {
+				provenance.setRequestId(left(requestId, Constants.REQUEST_ID_LENGTH));
+			}
+			if (haveSource) {
+				provenance.setSourceUri(source);
+			}
+			myEntityManager.persist(provenance);
+		}
+	}
+
+	private Map<String, Boolean> toSearchParamPresenceMap(ResourceTable theEntity, ResourceIndexedSearchParams theParams) {
+		Map<String, Boolean> retVal = new HashMap<>();
+		for (String nextKey : theParams.getPopulatedResourceLinkParameters()) {
+			retVal.put(nextKey, Boolean.TRUE);
+		}
+		Set<Entry<String, RuntimeSearchParam>> activeSearchParams = mySearchParamRegistry.getActiveSearchParams(theEntity.getResourceType()).entrySet();
+		for (Entry<String, RuntimeSearchParam> nextSpEntry : activeSearchParams) {
+			if (nextSpEntry.getValue().getParamType() == RestSearchParameterTypeEnum.REFERENCE) {
+				if (!retVal.containsKey(nextSpEntry.getKey())) {
+					retVal.put(nextSpEntry.getKey(), Boolean.FALSE);
+				}
+			}
+		}
+		return retVal;
+	}
+
 	public ResourceTable updateInternal(RequestDetails theRequestDetails, T theResource, boolean thePerformIndexing, boolean theForceUpdateVersion,
 													ResourceTable theEntity, IIdType theResourceId, IBaseResource theOldResource) {
 
@@ -36,6 +36,7 @@ import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
 import ca.uhn.fhir.jpa.util.ExpungeOptions;
 import ca.uhn.fhir.jpa.util.ExpungeOutcome;
 import ca.uhn.fhir.jpa.util.JpaInterceptorBroadcaster;
+import ca.uhn.fhir.jpa.util.LongSet;
 import ca.uhn.fhir.jpa.util.jsonpatch.JsonPatchUtils;
 import ca.uhn.fhir.jpa.util.xmlpatch.XmlPatchUtils;
 import ca.uhn.fhir.model.api.IQueryParameterAnd;
@@ -75,6 +76,8 @@ import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.util.*;
 
+import static org.apache.commons.lang3.StringUtils.defaultIfBlank;
+import static org.apache.commons.lang3.StringUtils.isBlank;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 
 @Transactional(propagation = Propagation.REQUIRED)
@@ -380,6 +383,50 @@ public abstract class BaseHapiFhirResourceDao<T extends IBaseResource> extends B
 		}
 	}
 
+	/**
+	 * If the resource has a client assigned ID, validates it against the configured
+	 * {@link DaoConfig#getResourceClientIdStrategy() client ID strategy} and creates
+	 * a forced ID for the entity if one is needed.
+	 *
+	 * @return Returns <code>true</code> if the resource has a client assigned ID
+	 */
+	private boolean assignClientIdIfPresent(T theResource, ResourceTable theEntity) {
+		if (isBlank(theResource.getIdElement().getIdPart())) {
+			return false;
+		}
+
+		switch (myDaoConfig.getResourceClientIdStrategy()) {
+			case NOT_ALLOWED:
+				throw new ResourceNotFoundException(
+					getContext().getLocalizer().getMessageSanitized(BaseHapiFhirResourceDao.class, "failedToCreateWithClientAssignedIdNotAllowed", theResource.getIdElement().getIdPart()));
+			case ALPHANUMERIC:
+				if (theResource.getIdElement().isIdPartValidLong()) {
+					throw new InvalidRequestException(
+						getContext().getLocalizer().getMessageSanitized(BaseHapiFhirResourceDao.class, "failedToCreateWithClientAssignedNumericId", theResource.getIdElement().getIdPart()));
+				}
+				createForcedIdIfNeeded(theEntity, theResource.getIdElement(), false);
+				break;
+			case ANY:
+				createForcedIdIfNeeded(theEntity, theResource.getIdElement(), true);
+				break;
+		}
+		return true;
+	}
+
+	private void createForcedIdForServerAssignedIdIfNeeded(T theResource, ResourceTable theEntity) {
+		switch (myDaoConfig.getResourceClientIdStrategy()) {
+			case NOT_ALLOWED:
+			case ALPHANUMERIC:
+				break;
+			case ANY:
+				ForcedId forcedId = createForcedIdIfNeeded(theEntity, theResource.getIdElement(), true);
+				if (forcedId != null) {
+					myForcedIdDao.save(forcedId);
+				}
+				break;
+		}
+	}
+
 	private DaoMethodOutcome doCreate(T theResource, String theIfNoneExist, boolean thePerformIndexing, Date theUpdateTime, RequestDetails theRequest) {
 		StopWatch w = new StopWatch();
 
@@ -402,27 +449,7 @@ public abstract class BaseHapiFhirResourceDao<T extends IBaseResource> extends B
 			}
 		}
 
-		boolean serverAssignedId;
-		if (isNotBlank(theResource.getIdElement().getIdPart())) {
-			switch (myDaoConfig.getResourceClientIdStrategy()) {
-				case NOT_ALLOWED:
-					throw new ResourceNotFoundException(
-						getContext().getLocalizer().getMessageSanitized(BaseHapiFhirResourceDao.class, "failedToCreateWithClientAssignedIdNotAllowed", theResource.getIdElement().getIdPart()));
-				case ALPHANUMERIC:
-					if (theResource.getIdElement().isIdPartValidLong()) {
-						throw new InvalidRequestException(
-							getContext().getLocalizer().getMessageSanitized(BaseHapiFhirResourceDao.class, "failedToCreateWithClientAssignedNumericId", theResource.getIdElement().getIdPart()));
-					}
-					createForcedIdIfNeeded(entity, theResource.getIdElement(), false);
-					break;
-				case ANY:
-					createForcedIdIfNeeded(entity, theResource.getIdElement(), true);
-					break;
-			}
-			serverAssignedId = false;
-		} else {
-			serverAssignedId = true;
-		}
+		boolean serverAssignedId = !assignClientIdIfPresent(theResource, entity);
 
 		// Notify interceptors
 		if (theRequest != null) {
@@ -442,17 +469,7 @@ public abstract class BaseHapiFhirResourceDao<T extends IBaseResource> extends B
 
 		theResource.setId(entity.getIdDt());
 		if (serverAssignedId) {
-			switch (myDaoConfig.getResourceClientIdStrategy()) {
-				case NOT_ALLOWED:
-				case ALPHANUMERIC:
-					break;
-				case ANY:
-					ForcedId forcedId = createForcedIdIfNeeded(updatedEntity, theResource.getIdElement(), true);
-					if (forcedId != null) {
-						myForcedIdDao.save(forcedId);
-					}
-					break;
-			}
+			createForcedIdForServerAssignedIdIfNeeded(theResource, updatedEntity);
 		}
 
 		/*
@@ -920,7 +937,7 @@ public abstract class BaseHapiFhirResourceDao<T extends IBaseResource> extends B
 		BaseHasResource entity = readEntity(theId, theRequest);
 		validateResourceType(entity);
 
-		T retVal = toResource(myResourceType, entity, null, false);
+		T retVal = toResource(myResourceType, entity, null, false, myDaoConfig.isStoredJsonPassthroughEnabled());
 
 		if (theDeletedOk == false) {
 			if (entity.getDeleted() != null) {
@@ -957,6 +974,77 @@ public abstract class BaseHapiFhirResourceDao<T extends IBaseResource> extends B
 		return retVal;
 	}
 
+	@Override
+	public String readPreEncodedJsonOrNull(T theResource, RequestDetails theRequest) {
+		if (theRequest == null || !(theResource instanceof IAnyResource)) {
+			return null;
+		}
+
+		// This is only present if read() loaded the resource for passthrough
+		IAnyResource resource = (IAnyResource) theResource;
+		Object storedText = resource.getUserData(STORED_JSON_TEXT_USERDATA_KEY);
+		resource.setUserData(STORED_JSON_TEXT_USERDATA_KEY, null);
+		if (!(storedText instanceof String)) {
+			return null;
+		}
+		String resourceText = (String) storedText;
+
+		// Interceptors may have modified the resource after it was loaded
+		if (JpaInterceptorBroadcaster.hasHooks(Pointcut.STORAGE_PRESHOW_RESOURCES, myInterceptorBroadcaster, theRequest)) {
+			return null;
+		}
+
+		IIdType id = theResource.getIdElement();
+		if (!id.hasIdPart() || !id.hasVersionIdPart()) {
+			return null;
+		}
+		IPrimitiveType<?> lastUpdated = getContext().newTerser().getSingleValueOrNull(theResource, "meta.lastUpdated", IPrimitiveType.class);
+		if (lastUpdated == null || lastUpdated.isEmpty()) {
+			return null;
+		}
+		String source = null;
+		if (getContext().getVersion().getVersion().isEqualOrNewerThan(FhirVersionEnum.R4)) {
+			source = defaultIfBlank(MetaUtil.getSource(getContext(), resource.getMeta()), null);
+			if (source != null && !isSafeToSpliceIntoJson(source)) {
+				return null;
+			}
+		}
+
+		String prefix = "{\"resourceType\":\"" + getResourceName() + "\"";
+		if (!resourceText.startsWith(prefix) || resourceText.length() == prefix.length()) {
+			return null;
+		}
+		char next = resourceText.charAt(prefix.length());
+		if (next != ',' && next != '}') {
+			return null;
+		}
+
+		StringBuilder b = new StringBuilder(resourceText.length() + 150);
+		b.append(prefix);
+		b.append(",\"id\":\"").append(id.getIdPart()).append('"');
+		b.append(",\"meta\":{\"versionId\":\"").append(id.getVersionIdPart()).append('"');
+		b.append(",\"lastUpdated\":\"").append(lastUpdated.getValueAsString()).append('"');
+		if (source != null) {
+			b.append(",\"source\":\"").append(source).append('"');
+		}
+		b.append('}');
+		b.append(resourceText, prefix.length(), resourceText.length());
+		return b.toString();
+	}
+
+	/**
+	 * Returns <code>true</code> if the string is written to JSON as-is, without any characters being escaped
+	 */
+	private static boolean isSafeToSpliceIntoJson(String theString) {
+		for (int i = 0; i < theString.length(); i++) {
+			char next = theString.charAt(i);
+			if (next < 0x20 || next > 0x7E || next == '"' || next == '\\' || next == '<' || next == '>' || next == '&' || next == '=' || next == '\'') {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	@Override
 	public BaseHasResource readEntity(IIdType theId, RequestDetails theRequest) {
 
@@ -1015,6 +1103,27 @@ public abstract class BaseHapiFhirResourceDao<T extends IBaseResource> extends B
 		return entity;
 	}
 
+	@Override
+	public ResourceTable importNewResource(T theResource, Date theUpdateTime, RequestDetails theRequest) {
+		preProcessResourceForStorage(theResource);
+
+		ResourceTable entity = new ResourceTable();
+		entity.setResourceType(toResourceName(theResource));
+		boolean serverAssignedId = !assignClientIdIfPresent(theResource, entity);
+
+		insertEntityForBulkImport(theResource, entity, theUpdateTime, theRequest);
+
+		theResource.setId(entity.getIdDt());
+		if (serverAssignedId) {
+			createForcedIdForServerAssignedIdIfNeeded(theResource, entity);
+		} else if (entity.getForcedId() != null) {
+			// Later resources in the same import may refer to this one
+			myIdHelperService.addPreResolvedForcedId(theRequest, entity.getResourceType(), entity.getForcedId().getForcedId(), entity.getId());
+		}
+
+		return entity;
+	}
+
 	@Override
 	public void reindex(T theResource, ResourceTable theEntity) {
 		ourLog.debug("Indexing resource {} - PID {}", theEntity.getIdDt().getValue(), theEntity.getId());
@@ -1138,14 +1247,14 @@ public abstract class BaseHapiFhirResourceDao<T extends IBaseResource> extends B
 
 		// FIXME: fail if too many results
 
-		HashSet<Long> retVal = new HashSet<>();
+		LongSet retVal = new LongSet();
 
 		String uuid = UUID.randomUUID().toString();
 		SearchRuntimeDetails searchRuntimeDetails = new SearchRuntimeDetails(theRequest, uuid);
 
 		try (IResultIterator iter = builder.createQuery(theParams, searchRuntimeDetails, theRequest)) {
 			while (iter.hasNext()) {
-				retVal.add(iter.next());
+				retVal.add(iter.nextLong());
 			}
 		} catch (IOException e) {
 			ourLog.error("IO failure during database access", e);
@@ -74,6 +74,16 @@ public class DaoConfig {
 	)));
 	private static final Logger ourLog = LoggerFactory.getLogger(DaoConfig.class);
 	private static final int DEFAULT_EXPUNGE_BATCH_SIZE = 800;
+	/**
+	 * Default value for {@link #setBulkExportFileMaximumSize(int)}: 10 MB
+	 */
+	private static final int DEFAULT_BULK_EXPORT_FILE_MAXIMUM_SIZE = 10 * 1024 * 1024;
+	/**
+	 * Default value for {@link #setBulkImportBatchSize(int)}: 500
+	 */
+	private static final int DEFAULT_BULK_IMPORT_BATCH_SIZE = 500;
+	private static final int DEFAULT_INDEX_WRITE_BATCH_SIZE = 0;
+	private static final int DEFAULT_DECODED_RESOURCE_TEXT_CACHE_SIZE = 0;
 	private IndexEnabledEnum myIndexMissingFieldsEnabled = IndexEnabledEnum.DISABLED;
 
 	/**
@@ -164,6 +174,17 @@ public class DaoConfig {
 	 * EXPERIMENTAL - Do not use in production! Do not change default of {@code 1000}!
 	 */
 	private int myPreExpandValueSetsMaxCountExperimental = 1000;
+	private long myBulkExportFileRetentionPeriodMillis = 2 * DateUtils.MILLIS_PER_HOUR;
+	private int myBulkExportFileMaximumSize = DEFAULT_BULK_EXPORT_FILE_MAXIMUM_SIZE;
+	private int myBulkImportBatchSize = DEFAULT_BULK_IMPORT_BATCH_SIZE;
+	private String myBulkImportLocalFileDirectory;
+	private SearchResultStorageEnum mySearchResultStorage = SearchResultStorageEnum.ONE_ROW_PER_RESULT;
+	private int mySearchPartitionCount = 1;
+	private int mySearchPartitionThreadCount;
+	private boolean myClusteredReindexingEnabled;
+	private int myIndexWriteBatchSize = DEFAULT_INDEX_WRITE_BATCH_SIZE;
+	private int myDecodedResourceTextCacheSize = DEFAULT_DECODED_RESOURCE_TEXT_CACHE_SIZE;
+	private boolean myStoredJsonPassthroughEnabled = false;
 
 	/**
 	 * Constructor
@@ -175,6 +196,7 @@ public class DaoConfig {
 		setMarkResourcesForReindexingUponSearchParameterChange(true);
 		setReindexThreadCount(Runtime.getRuntime().availableProcessors());
 		setExpungeThreadCount(Runtime.getRuntime().availableProcessors());
+		setSearchPartitionThreadCount(Runtime.getRuntime().availableProcessors());
 		setBundleTypesAllowedForStorage(DEFAULT_BUNDLE_TYPES_ALLOWED_FOR_STORAGE);
 
 		if ("true".equalsIgnoreCase(System.getProperty(DISABLE_STATUS_BASED_REINDEX))) {
@@ -1115,6 +1137,109 @@ public class DaoConfig {
 		myExpungeBatchSize = theExpungeBatchSize;
 	}
 
+	/**
+	 * This setting controls how long the files produced by a bulk data
+	 * <code>$export</code> job are retained after the job completes. Once
+	 * this period has elapsed the job and its files are purged.
+	 * <p>
+	 * The default value is two hours.
+	 * </p>
+	 */
+	public long getBulkExportFileRetentionPeriodMillis() {
+		return myBulkExportFileRetentionPeriodMillis;
+	}
+
+	/**
+	 * This setting controls how long the files produced by a bulk data
+	 * <code>$export</code> job are retained after the job completes. Once
+	 * this period has elapsed the job and its files are purged.
+	 * <p>
+	 * The default value is two hours.
+	 * </p>
+	 */
+	public void setBulkExportFileRetentionPeriodMillis(long theBulkExportFileRetentionPeriodMillis) {
+		Validate.isTrue(theBulkExportFileRetentionPeriodMillis > 0, "theBulkExportFileRetentionPeriodMillis must be positive");
+		myBulkExportFileRetentionPeriodMillis = theBulkExportFileRetentionPeriodMillis;
+	}
+
+	/**
+	 * This setting controls the approximate maximum size (in bytes) of a single
+	 * NDJSON file produced by a bulk data <code>$export</code> job. Once a file
+	 * reaches this size it is stored, and subsequent resources are written to a
+	 * new file. This also bounds the amount of memory used by an export job.
+	 * <p>
+	 * The default value is 10 MB.
+	 * </p>
+	 */
+	public int getBulkExportFileMaximumSize() {
+		return myBulkExportFileMaximumSize;
+	}
+
+	/**
+	 * This setting controls the approximate maximum size (in bytes) of a single
+	 * NDJSON file produced by a bulk data <code>$export</code> job. Once a file
+	 * reaches this size it is stored, and subsequent resources are written to a
+	 * new file. This also bounds the amount of memory used by an export job.
+	 * <p>
+	 * The default value is 10 MB.
+	 * </p>
+	 */
+	public void setBulkExportFileMaximumSize(int theBulkExportFileMaximumSize) {
+		Validate.isTrue(theBulkExportFileMaximumSize > 0, "theBulkExportFileMaximumSize must be positive");
+		myBulkExportFileMaximumSize = theBulkExportFileMaximumSize;
+	}
+
+	/**
+	 * This setting controls the number of resources that a bulk data <code>$import</code>
+	 * stores in a single database transaction. This is also used as the JDBC batch size
+	 * for the inserts generated by each transaction, so that the resource, history and
+	 * index rows are written in a small number of round trips. Note that Hibernate can
+	 * only group inserts for different tables into separate batches if the
+	 * <code>hibernate.order_inserts</code> property is enabled.
+	 * <p>
+	 * The default value is 500.
+	 * </p>
+	 */
+	public int getBulkImportBatchSize() {
+		return myBulkImportBatchSize;
+	}
+
+	/**
+	 * This setting controls the number of resources that a bulk data <code>$import</code>
+	 * stores in a single database transaction. This is also used as the JDBC batch size
+	 * for the inserts generated by each transaction, so that the resource, history and
+	 * index rows are written in a small number of round trips. Note that Hibernate can
+	 * only group inserts for different tables into separate batches if the
+	 * <code>hibernate.order_inserts</code> property is enabled.
+	 * <p>
+	 * The default value is 500.
+	 * </p>
+	 */
+	public void setBulkImportBatchSize(int theBulkImportBatchSize) {
+		Validate.isTrue(theBulkImportBatchSize > 0, "theBulkImportBatchSize must be positive");
+		myBulkImportBatchSize = theBulkImportBatchSize;
+	}
+
+	/**
+	 * If set, a bulk data <code>$import</code> may read NDJSON input from
+	 * <code>file:</code> URLs which point to files within this directory (or its
+	 * subdirectories). If not set (which is the default), importing from local files
+	 * is not permitted and input must be supplied as Binary resources.
+	 */
+	public String getBulkImportLocalFileDirectory() {
+		return myBulkImportLocalFileDirectory;
+	}
+
+	/**
+	 * If set, a bulk data <code>$import</code> may read NDJSON input from
+	 * <code>file:</code> URLs which point to files within this directory (or its
+	 * subdirectories). If not set (which is the default), importing from local files
+	 * is not permitted and input must be supplied as Binary resources.
+	 */
+	public void setBulkImportLocalFileDirectory(String theBulkImportLocalFileDirectory) {
+		myBulkImportLocalFileDirectory = theBulkImportLocalFileDirectory;
+	}
+
 	/**
 	 * Should contained IDs be indexed the same way that non-contained IDs are (default is
 	 * <code>true</code>)
@@ -1799,6 +1924,264 @@ public class DaoConfig {
 		setPreExpandValueSetsDefaultCountExperimental(Math.min(getPreExpandValueSetsDefaultCountExperimental(), getPreExpandValueSetsMaxCountExperimental()));
 	}
 
+	/**
+	 * Controls how the resource IDs matched by a search are stored in the database while
+	 * the search is being paged through.
+	 * <p>
+	 * Default is {@link SearchResultStorageEnum#ONE_ROW_PER_RESULT}
+	 * </p>
+	 *
+	 * @since 4.1.0
+	 */
+	public SearchResultStorageEnum getSearchResultStorage() {
+		return mySearchResultStorage;
+	}
+
+	/**
+	 * Controls how the resource IDs matched by a search are stored in the database while
+	 * the search is being paged through. The storage mode is recorded on each search when it
+	 * is created, so changing this setting does not affect searches which are already cached.
+	 * <p>
+	 * Default is {@link SearchResultStorageEnum#ONE_ROW_PER_RESULT}
+	 * </p>
+	 *
+	 * @since 4.1.0
+	 */
+	public void setSearchResultStorage(SearchResultStorageEnum theSearchResultStorage) {
+		Validate.notNull(theSearchResultStorage, "theSearchResultStorage must not be null");
+		mySearchResultStorage = theSearchResultStorage;
+	}
+
+	/**
+	 * If set to a value greater than 1, large unsorted searches are split into this many
+	 * partitions by resource PID, and the partitions are queried in parallel. The matching
+	 * PIDs are merged into the same search as they are found, so the first page is still
+	 * returned as soon as enough results are available. Sorted searches and
+	 * <code>$everything</code> operations are never partitioned.
+	 * <p>
+	 * The default value is <code>1</code>, meaning that searches are not partitioned.
+	 * </p>
+	 *
+	 * @since 4.1.0
+	 */
+	public int getSearchPartitionCount() {
+		return mySearchPartitionCount;
+	}
+
+	/**
+	 * If set to a value greater than 1, large unsorted searches are split into this many
+	 * partitions by resource PID, and the partitions are queried in parallel. The matching
+	 * PIDs are merged into the same search as they are found, so the first page is still
+	 * returned as soon as enough results are available. Sorted searches and
+	 * <code>$everything</code> operations are never partitioned.
+	 * <p>
+	 * The default value is <code>1</code>, meaning that searches are not partitioned.
+	 * </p>
+	 *
+	 * @since 4.1.0
+	 */
+	public void setSearchPartitionCount(int theSearchPartitionCount) {
+		mySearchPartitionCount = Math.max(theSearchPartitionCount, 1); // Minimum of 1
+	}
+
+	/**
+	 * This setting controls the number of threads shared by all searches for loading
+	 * partitions in parallel (see {@link #setSearchPartitionCount(int)}). It is read when
+	 * the first partitioned search is performed.
+	 * <p>
+	 * The default value is set to the number of available processors
+	 * (via <code>Runtime.getRuntime().availableProcessors()</code>). Value
+	 * for this setting must be a positive integer.
+	 * </p>
+	 *
+	 * @since 4.1.0
+	 */
+	public int getSearchPartitionThreadCount() {
+		return mySearchPartitionThreadCount;
+	}
+
+	/**
+	 * This setting controls the number of threads shared by all searches for loading
+	 * partitions in parallel (see {@link #setSearchPartitionCount(int)}). It is read when
+	 * the first partitioned search is performed.
+	 * <p>
+	 * The default value is set to the number of available processors
+	 * (via <code>Runtime.getRuntime().availableProcessors()</code>). Value
+	 * for this setting must be a positive integer.
+	 * </p>
+	 *
+	 * @since 4.1.0
+	 */
+	public void setSearchPartitionThreadCount(int theSearchPartitionThreadCount) {
+		mySearchPartitionThreadCount = Math.max(theSearchPartitionThreadCount, 1); // Minimum of 1
+	}
+
+	/**
+	 * If set to <code>true</code>, reindexing jobs are split into ranges of resource PIDs
+	 * which are stored in the database. Every server in a cluster leases ranges from
+	 * the job and reindexes them in parallel, recording its progress within each range
+	 * as it goes. If a server stops part way through a range, its lease expires and
+	 * another server continues the range from where it stopped.
+	 * <p>
+	 * The default value is <code>false</code>, meaning that each server processes
+	 * the whole job in order of resource update time.
+	 * </p>
+	 *
+	 * @since 4.1.0
+	 */
+	public boolean isClusteredReindexingEnabled() {
+		return myClusteredReindexingEnabled;
+	}
+
+	/**
+	 * If set to <code>true</code>, reindexing jobs are split into ranges of resource PIDs
+	 * which are stored in the database. Every server in a cluster leases ranges from
+	 * the job and reindexes them in parallel, recording its progress within each range
+	 * as it goes. If a server stops part way through a range, its lease expires and
+	 * another server continues the range from where it stopped.
+	 * <p>
+	 * The default value is <code>false</code>, meaning that each server processes
+	 * the whole job in order of resource update time.
+	 * </p>
+	 *
+	 * @since 4.1.0
+	 */
+	public void setClusteredReindexingEnabled(boolean theClusteredReindexingEnabled) {
+		myClusteredReindexingEnabled = theClusteredReindexingEnabled;
+	}
+
+	/**
+	 * If set to a value greater than <code>0</code>, the JDBC batch size of the Hibernate session
+	 * is raised to at least this value when search parameter index rows are written, so that
+	 * the rows for each index table are sent to the database in a small number of round trips
+	 * instead of one statement at a time. If Hibernate is already configured with a larger
+	 * <code>hibernate.jdbc.batch_size</code>, that value is used instead.
+	 * <p>
+	 * Note that Hibernate applies the batch size when the session is flushed, so once it has
+	 * been raised it stays in effect for every statement written by that session for the rest of
+	 * the transaction, not just for the index rows. Hibernate can also only group the rows for
+	 * different index tables into separate batches across several resources if the
+	 * <code>hibernate.order_inserts</code> and <code>hibernate.order_updates</code>
+	 * properties are enabled. A value of 50 matches the allocation size of the index row ID sequences.
+	 * </p>
+	 * <p>
+	 * The default value is <code>0</code>, which leaves the batch size entirely up to the
+	 * Hibernate configuration.
+	 * </p>
+	 *
+	 * @since 4.1.0
+	 */
+	public int getIndexWriteBatchSize() {
+		return myIndexWriteBatchSize;
+	}
+
+	/**
+	 * If set to a value greater than <code>0</code>, the JDBC batch size of the Hibernate session
+	 * is raised to at least this value when search parameter index rows are written, so that
+	 * the rows for each index table are sent to the database in a small number of round trips
+	 * instead of one statement at a time. If Hibernate is already configured with a larger
+	 * <code>hibernate.jdbc.batch_size</code>, that value is used instead.
+	 * <p>
+	 * Note that Hibernate applies the batch size when the session is flushed, so once it has
+	 * been raised it stays in effect for every statement written by that session for the rest of
+	 * the transaction, not just for the index rows. Hibernate can also only group the rows for
+	 * different index tables into separate batches across several resources if the
+	 * <code>hibernate.order_inserts</code> and <code>hibernate.order_updates</code>
+	 * properties are enabled. A value of 50 matches the allocation size of the index row ID sequences.
+	 * </p>
+	 * <p>
+	 * The default value is <code>0</code>, which leaves the batch size entirely up to the
+	 * Hibernate configuration.
+	 * </p>
+	 *
+	 * @since 4.1.0
+	 */
+	public void setIndexWriteBatchSize(int theIndexWriteBatchSize) {
+		Validate.isTrue(theIndexWriteBatchSize >= 0, "theIndexWriteBatchSize must not be negative");
+		myIndexWriteBatchSize = theIndexWriteBatchSize;
+	}
+
+	/**
+	 * If set to a value greater than <code>0</code>, up to this many stored resources (one
+	 * version per resource) are kept in memory so that resources which are read very frequently
+	 * (e.g. a small set of Practitioner or Organization resources referenced by everything else)
+	 * do not need to be decompressed and parsed every time they are returned. The decompressed
+	 * text is kept from the first read, and the parsed resource from the second read onwards
+	 * (each read then gets its own copy of it). Each entry is keyed by the resource ID and
+	 * version, and is discarded when the resource is updated or expunged.
+	 * <p>
+	 * The default value is <code>0</code>, meaning that nothing is cached.
+	 * </p>
+	 *
+	 * @since 4.1.0
+	 */
+	public int getDecodedResourceTextCacheSize() {
+		return myDecodedResourceTextCacheSize;
+	}
+
+	/**
+	 * If set to a value greater than <code>0</code>, up to this many stored resources (one
+	 * version per resource) are kept in memory so that resources which are read very frequently
+	 * (e.g. a small set of Practitioner or Organization resources referenced by everything else)
+	 * do not need to be decompressed and parsed every time they are returned. The decompressed
+	 * text is kept from the first read, and the parsed resource from the second read onwards
+	 * (each read then gets its own copy of it). Each entry is keyed by the resource ID and
+	 * version, and is discarded when the resource is updated or expunged.
+	 * <p>
+	 * The default value is <code>0</code>, meaning that nothing is cached.
+	 * </p>
+	 *
+	 * @since 4.1.0
+	 */
+	public void setDecodedResourceTextCacheSize(int theDecodedResourceTextCacheSize) {
+		Validate.isTrue(theDecodedResourceTextCacheSize >= 0, "theDecodedResourceTextCacheSize must not be negative");
+		myDecodedResourceTextCacheSize = theDecodedResourceTextCacheSize;
+	}
+
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>), a read or vread of a resource
+	 * which has no tags, profiles or security labels is answered with the stored JSON text, with
+	 * only the ID and the <code>meta.versionId</code>, <code>meta.lastUpdated</code> and
+	 * <code>meta.source</code> elements spliced in, whenever the client has asked for a plain JSON response (no
+	 * <code>_summary</code>, <code>_elements</code> or pretty printing). This skips encoding
+	 * the resource again. It is not used if any interceptors are registered which could modify
+	 * the resource before it is returned. On DSTU3 servers it is also not used for resources
+	 * with a stored source (see {@link #getStoreMetaSourceInformation()}), since the source is
+	 * held in an extension there.
+	 * <p>
+	 * Note that the stored text is returned exactly as it was stored, so absolute references to
+	 * this server's base URL are not converted into relative references as they would be when
+	 * the resource is encoded.
+	 * </p>
+	 *
+	 * @since 4.1.0
+	 */
+	public boolean isStoredJsonPassthroughEnabled() {
+		return myStoredJsonPassthroughEnabled;
+	}
+
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>), a read or vread of a resource
+	 * which has no tags, profiles or security labels is answered with the stored JSON text, with
+	 * only the ID and the <code>meta.versionId</code>, <code>meta.lastUpdated</code> and
+	 * <code>meta.source</code> elements spliced in, whenever the client has asked for a plain JSON response (no
+	 * <code>_summary</code>, <code>_elements</code> or pretty printing). This skips encoding
+	 * the resource again. It is not used if any interceptors are registered which could modify
+	 * the resource before it is returned. On DSTU3 servers it is also not used for resources
+	 * with a stored source (see {@link #getStoreMetaSourceInformation()}), since the source is
+	 * held in an extension there.
+	 * <p>
+	 * Note that the stored text is returned exactly as it was stored, so absolute references to
+	 * this server's base URL are not converted into relative references as they would be when
+	 * the resource is encoded.
+	 * </p>
+	 *
+	 * @since 4.1.0
+	 */
+	public void setStoredJsonPassthroughEnabled(boolean theStoredJsonPassthroughEnabled) {
+		myStoredJsonPassthroughEnabled = theStoredJsonPassthroughEnabled;
+	}
+
 	public enum IndexEnabledEnum {
 		ENABLED,
 		DISABLED
@@ -1845,4 +2228,20 @@ public class DaoConfig {
 		 */
 		ANY
 	}
+
+	public enum SearchResultStorageEnum {
+		/**
+		 * Each matching resource ID is stored as a separate row in the
+		 * <code>HFJ_SEARCH_RESULT</code> table. This is the default setting.
+		 */
+		ONE_ROW_PER_RESULT,
+
+		/**
+		 * Matching resource IDs are stored as compressed blocks in the
+		 * <code>HFJ_SEARCH_RESULT_BLOCK</code> table, with one block for each
+		 * batch of results saved by the search. This greatly reduces the number
+		 * of rows written and deleted for large searches.
+		 */
+		COMPRESSED_BLOCKS
+	}
 }
@@ -175,6 +175,16 @@ public interface IFhirResourceDao<T extends IBaseResource> extends IDao {
 	 */
 	T read(IIdType theId, RequestDetails theRequestDetails, boolean theDeletedOk);
 
+	/**
+	 * Returns the stored JSON text of a resource returned by {@link #read(IIdType, RequestDetails)}, with
+	 * its ID and version specific meta elements spliced in, or <code>null</code> if the stored text is
+	 * not exactly what would be returned to the client. Implementations which do not store JSON
+	 * return <code>null</code>.
+	 */
+	default String readPreEncodedJsonOrNull(T theResource, RequestDetails theRequest) {
+		return null;
+	}
+
 	BaseHasResource readEntity(IIdType theId, RequestDetails theRequest);
 
 	/**
@@ -183,6 +193,20 @@ public interface IFhirResourceDao<T extends IBaseResource> extends IDao {
 	 */
 	BaseHasResource readEntity(IIdType theId, boolean theCheckForForcedId, RequestDetails theRequest);
 
+	/**
+	 * Stores a resource which is known not to exist yet as part of a bulk import. Unlike
+	 * {@link #create(IBaseResource)} this method performs no comparison against any
+	 * existing version and does not invoke any interceptors, so it must not be used
+	 * for resources which may already be present in the repository.
+	 *
+	 * @param theResource   The resource to store. If it has an ID, the ID will be used as a client assigned ID
+	 * @param theUpdateTime The last updated time to apply to the resource
+	 * @param theRequest    The request, used to resolve references against any IDs pre-resolved
+	 *                      using {@link ca.uhn.fhir.jpa.dao.index.IdHelperService#preResolveForcedIds(java.util.Collection, RequestDetails)}
+	 * @return The newly persisted entity
+	 */
+	ResourceTable importNewResource(T theResource, Date theUpdateTime, RequestDetails theRequest);
+
 	/**
 	 * Updates index tables associated with the given resource. Does not create a new
 	 * version or update the resource's update time.
@@ -21,9 +21,13 @@ package ca.uhn.fhir.jpa.dao;
  */
 
 import java.io.Closeable;
-import java.util.Iterator;
+import java.util.PrimitiveIterator;
 
-public interface IResultIterator extends Iterator<Long>, Closeable {
+/**
+ * Iterates over the resource PIDs matched by a search. Callers should use
+ * {@link #nextLong()} in order to avoid boxing each PID.
+ */
+public interface IResultIterator extends PrimitiveIterator.OfLong, Closeable {
 
 	int getSkippedCount();
 
@@ -45,6 +45,10 @@ public interface ISearchBuilder {
 
 	void loadResourcesByPid(Collection<Long> thePids, Collection<Long> theIncludedPids, List<IBaseResource> theResourceListToPopulate, boolean theForHistoryOperation, RequestDetails theDetails);
 
+	/**
+	 * @return Returns the PIDs of the included resources. Implementations should return a {@link ca.uhn.fhir.jpa.util.LongSet}
+	 * so that callers can work with the PIDs without boxing them.
+	 */
 	Set<Long> loadIncludes(FhirContext theContext, EntityManager theEntityManager, Collection<Long> theMatches, Set<Include> theRevIncludes, boolean theReverseMode,
 								  DateRangeParam theLastUpdated, String theSearchIdOrDescription, RequestDetails theRequest);
 
@@ -57,4 +61,13 @@ public interface ISearchBuilder {
 
 	void setPreviouslyAddedResourcePids(List<Long> thePreviouslyAddedResourcePids);
 
+	/**
+	 * Restricts the query to resources with a PID in the given range. This is used to
+	 * split a large search into partitions which can be loaded in parallel.
+	 *
+	 * @param theLowInclusive  The lowest PID to include, or <code>null</code> for no lower bound
+	 * @param theHighExclusive The PID after the highest PID to include, or <code>null</code> for no upper bound
+	 */
+	void setResourcePidRange(Long theLowInclusive, Long theHighExclusive);
+
 }
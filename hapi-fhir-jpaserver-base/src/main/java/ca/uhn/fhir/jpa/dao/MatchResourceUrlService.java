@@ -22,29 +22,47 @@ package ca.uhn.fhir.jpa.dao;
 
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.context.RuntimeResourceDefinition;
+import ca.uhn.fhir.context.RuntimeSearchParam;
 import ca.uhn.fhir.interceptor.api.HookParams;
 import ca.uhn.fhir.interceptor.api.IInterceptorBroadcaster;
 import ca.uhn.fhir.interceptor.api.Pointcut;
 import ca.uhn.fhir.jpa.dao.DaoRegistry;
 import ca.uhn.fhir.jpa.dao.IFhirResourceDao;
+import ca.uhn.fhir.jpa.dao.data.IResourceIndexedSearchParamTokenDao;
+import ca.uhn.fhir.jpa.model.entity.BaseResourceIndexedSearchParam;
+import ca.uhn.fhir.jpa.model.entity.ResourceIndexedSearchParamToken;
+import ca.uhn.fhir.jpa.model.entity.ResourceTable;
 import ca.uhn.fhir.jpa.model.search.StorageProcessingMessage;
 import ca.uhn.fhir.jpa.searchparam.MatchUrlService;
 import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.jpa.searchparam.extractor.ISearchParamExtractor;
+import ca.uhn.fhir.jpa.searchparam.registry.ISearchParamRegistry;
 import ca.uhn.fhir.jpa.util.JpaInterceptorBroadcaster;
+import ca.uhn.fhir.model.api.IQueryParameterType;
+import ca.uhn.fhir.parser.DataFormatException;
+import ca.uhn.fhir.rest.api.RestSearchParameterTypeEnum;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.param.TokenParam;
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
 import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
 import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
 import ca.uhn.fhir.util.StopWatch;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.MultimapBuilder;
 import org.hl7.fhir.instance.model.api.IBaseResource;
-import org.hl7.fhir.r4.model.Request;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.util.Set;
+import java.util.*;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
 
 @Service
 public class MatchResourceUrlService {
+	private static final int MAX_HASHES_PER_QUERY = 500;
+	private static final String PRE_RESOLVED_MATCH_URLS = MatchResourceUrlService.class.getName() + "_PRE_RESOLVED_MATCH_URLS";
 	@Autowired
 	private DaoRegistry myDaoRegistry;
 	@Autowired
@@ -53,25 +71,39 @@ public class MatchResourceUrlService {
 	private MatchUrlService myMatchUrlService;
 	@Autowired
 	private IInterceptorBroadcaster myInterceptorBroadcaster;
+	@Autowired
+	private DaoConfig myDaoConfig;
+	@Autowired
+	private ISearchParamRegistry mySearchParamRegistry;
+	@Autowired
+	private ISearchParamExtractor mySearchParamExtractor;
+	@Autowired
+	private IResourceIndexedSearchParamTokenDao myResourceIndexedSearchParamTokenDao;
 
 	public <R extends IBaseResource> Set<Long> processMatchUrl(String theMatchUrl, Class<R> theResourceType, RequestDetails theRequest) {
 		StopWatch sw = new StopWatch();
 
 		RuntimeResourceDefinition resourceDef = myContext.getResourceDefinition(theResourceType);
 
-		SearchParameterMap paramMap = myMatchUrlService.translateMatchUrl(theMatchUrl, resourceDef);
-		paramMap.setLoadSynchronous(true);
+		Set<Long> retVal;
+		PreResolvedMatchUrl preResolved = getPreResolvedMatchUrls(theRequest).get(toKey(resourceDef.getName(), theMatchUrl));
+		if (preResolved != null) {
+			retVal = new HashSet<>(preResolved.getPids());
+		} else {
+			SearchParameterMap paramMap = myMatchUrlService.translateMatchUrl(theMatchUrl, resourceDef);
+			paramMap.setLoadSynchronous(true);
 
-		if (paramMap.isEmpty() && paramMap.getLastUpdated() == null) {
-			throw new InvalidRequestException("Invalid match URL[" + theMatchUrl + "] - URL has no search parameters");
-		}
+			if (paramMap.isEmpty() && paramMap.getLastUpdated() == null) {
+				throw new InvalidRequestException("Invalid match URL[" + theMatchUrl + "] - URL has no search parameters");
+			}
 
-		IFhirResourceDao<R> dao = myDaoRegistry.getResourceDao(theResourceType);
-		if (dao == null) {
-			throw new InternalErrorException("No DAO for resource type: " + theResourceType.getName());
-		}
+			IFhirResourceDao<R> dao = myDaoRegistry.getResourceDao(theResourceType);
+			if (dao == null) {
+				throw new InternalErrorException("No DAO for resource type: " + theResourceType.getName());
+			}
 
-		Set<Long> retVal = dao.searchForIds(paramMap, theRequest);
+			retVal = dao.searchForIds(paramMap, theRequest);
+		}
 
 		// Interceptor broadcast: JPA_PERFTRACE_INFO
 		if (JpaInterceptorBroadcaster.hasHooks(Pointcut.JPA_PERFTRACE_INFO, myInterceptorBroadcaster, theRequest)) {
@@ -87,5 +119,183 @@ public class MatchResourceUrlService {
 		return retVal;
 	}
 
+	/**
+	 * Resolves a batch of match URLs up front (e.g. every conditional create, update and delete in a
+	 * transaction Bundle) so that subsequent calls to {@link #processMatchUrl(String, Class, RequestDetails)}
+	 * with the same URL and request do not need to search. Only URLs consisting of a single token
+	 * parameter with a single value (e.g. <code>Patient?identifier=http://foo|123</code>), which
+	 * is by far the most common form, are resolved this way. All of them are resolved using one
+	 * query per batch of token hashes. Any other URL is searched normally when it is processed.
+	 * <p>
+	 * The results are only valid until the request writes something, so
+	 * {@link #invalidatePreResolvedMatchUrls(ResourceTable, IBaseResource, RequestDetails)} must
+	 * be called after each write.
+	 * </p>
+	 */
+	public void preResolveMatchUrls(Map<String, Class<? extends IBaseResource>> theMatchUrls, RequestDetails theRequest) {
+		if (theRequest == null || theMatchUrls.isEmpty() || myDaoConfig.getDisableHashBasedSearches()) {
+			return;
+		}
+
+		Map<String, PreResolvedMatchUrl> preResolved = new HashMap<>();
+		ListMultimap<Long, PreResolvedMatchUrl> systemAndValueHashes = MultimapBuilder.hashKeys().arrayListValues().build();
+		ListMultimap<Long, PreResolvedMatchUrl> valueHashes = MultimapBuilder.hashKeys().arrayListValues().build();
+		for (Map.Entry<String, Class<? extends IBaseResource>> nextEntry : theMatchUrls.entrySet()) {
+			String resourceName = myContext.getResourceDefinition(nextEntry.getValue()).getName();
+			PreResolvedMatchUrl next = toPreResolvedMatchUrl(nextEntry.getKey(), resourceName);
+			if (next == null) {
+				continue;
+			}
+			preResolved.put(toKey(resourceName, nextEntry.getKey()), next);
+			if (next.isSystemAndValue()) {
+				systemAndValueHashes.put(next.getHash(), next);
+			} else {
+				valueHashes.put(next.getHash(), next);
+			}
+		}
+
+		for (List<Long> nextHashes : Lists.partition(new ArrayList<>(systemAndValueHashes.keySet()), MAX_HASHES_PER_QUERY)) {
+			for (Object[] next : myResourceIndexedSearchParamTokenDao.findResourcePidsByHashSystemAndValue(nextHashes)) {
+				systemAndValueHashes.get((Long) next[0]).forEach(t -> t.getPids().add((Long) next[1]));
+			}
+		}
+		for (List<Long> nextHashes : Lists.partition(new ArrayList<>(valueHashes.keySet()), MAX_HASHES_PER_QUERY)) {
+			for (Object[] next : myResourceIndexedSearchParamTokenDao.findResourcePidsByHashValue(nextHashes)) {
+				valueHashes.get((Long) next[0]).forEach(t -> t.getPids().add((Long) next[1]));
+			}
+		}
+
+		theRequest.getUserData().put(PRE_RESOLVED_MATCH_URLS, preResolved);
+	}
+
+	/**
+	 * Discards any match URLs resolved by {@link #preResolveMatchUrls(Map, RequestDetails)} whose
+	 * results could have been changed by writing the given resource
+	 *
+	 * @param theResource The resource as it was written, or <code>null</code> if it was deleted
+	 */
+	public void invalidatePreResolvedMatchUrls(ResourceTable theEntity, IBaseResource theResource, RequestDetails theRequest) {
+		Map<String, PreResolvedMatchUrl> preResolved = getPreResolvedMatchUrls(theRequest);
+		if (preResolved.isEmpty() || theEntity == null) {
+			return;
+		}
+
+		// Anything the resource matched before the write
+		preResolved.values().removeIf(t -> t.getPids().contains(theEntity.getId()));
+
+		// Anything the resource matches after the write
+		String resourceName = theEntity.getResourceType();
+		if (theResource != null && preResolved.values().stream().anyMatch(t -> t.getResourceName().equals(resourceName))) {
+			Set<Long> systemAndValueHashes = new HashSet<>();
+			Set<Long> valueHashes = new HashSet<>();
+			for (BaseResourceIndexedSearchParam next : mySearchParamExtractor.extractSearchParamTokens(theEntity, theResource)) {
+				if (next instanceof ResourceIndexedSearchParamToken) {
+					ResourceIndexedSearchParamToken token = (ResourceIndexedSearchParamToken) next;
+					systemAndValueHashes.add(ResourceIndexedSearchParamToken.calculateHashSystemAndValue(resourceName, token.getParamName(), token.getSystem(), token.getValue()));
+					valueHashes.add(ResourceIndexedSearchParamToken.calculateHashValue(resourceName, token.getParamName(), token.getValue()));
+				}
+			}
+			preResolved.values().removeIf(t -> t.isSystemAndValue() ? systemAndValueHashes.contains(t.getHash()) : valueHashes.contains(t.getHash()));
+		}
+	}
+
+	/**
+	 * Discards any match URLs resolved by {@link #preResolveMatchUrls(Map, RequestDetails)}
+	 */
+	public void clearPreResolvedMatchUrls(RequestDetails theRequest) {
+		if (theRequest != null) {
+			theRequest.getUserData().remove(PRE_RESOLVED_MATCH_URLS);
+		}
+	}
+
+	/**
+	 * @return Returns <code>null</code> if the URL is not a single token search that can be resolved by hash
+	 */
+	private PreResolvedMatchUrl toPreResolvedMatchUrl(String theMatchUrl, String theResourceName) {
+		SearchParameterMap paramMap;
+		try {
+			paramMap = myMatchUrlService.translateMatchUrl(theMatchUrl, myContext.getResourceDefinition(theResourceName));
+		} catch (BaseServerResponseException | DataFormatException e) {
+			// This will be reported when the URL is actually processed
+			return null;
+		}
+
+		if (paramMap.keySet().size() != 1 || paramMap.getLastUpdated() != null || !paramMap.getIncludes().isEmpty() || !paramMap.getRevIncludes().isEmpty() || paramMap.getSort() != null) {
+			return null;
+		}
+
+		String paramName = paramMap.keySet().iterator().next();
+		RuntimeSearchParam searchParam = mySearchParamRegistry.getActiveSearchParam(theResourceName, paramName);
+		if (paramName.startsWith("_") || searchParam == null || searchParam.getParamType() != RestSearchParameterTypeEnum.TOKEN) {
+			return null;
+		}
+
+		List<List<IQueryParameterType>> andList = paramMap.get(paramName);
+		if (andList.size() != 1 || andList.get(0).size() != 1 || !(andList.get(0).get(0) instanceof TokenParam)) {
+			return null;
+		}
+
+		TokenParam token = (TokenParam) andList.get(0).get(0);
+		if (token.getModifier() != null || token.getMissing() != null || isBlank(token.getValue())) {
+			return null;
+		}
+		if (token.getValue().length() > ResourceIndexedSearchParamToken.MAX_LENGTH || (token.getSystem() != null && token.getSystem().length() > ResourceIndexedSearchParamToken.MAX_LENGTH)) {
+			return null;
+		}
+
+		/*
+		 * A null system means "match any system", but an empty-string
+		 * system means "match values that explicitly have no system".
+		 */
+		if (token.getSystem() == null) {
+			return new PreResolvedMatchUrl(theResourceName, false, ResourceIndexedSearchParamToken.calculateHashValue(theResourceName, paramName, token.getValue()));
+		}
+		return new PreResolvedMatchUrl(theResourceName, true, ResourceIndexedSearchParamToken.calculateHashSystemAndValue(theResourceName, paramName, token.getSystem(), token.getValue()));
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map<String, PreResolvedMatchUrl> getPreResolvedMatchUrls(RequestDetails theRequest) {
+		if (theRequest == null) {
+			return Collections.emptyMap();
+		}
+		Map<String, PreResolvedMatchUrl> retVal = (Map<String, PreResolvedMatchUrl>) theRequest.getUserData().get(PRE_RESOLVED_MATCH_URLS);
+		if (retVal == null) {
+			return Collections.emptyMap();
+		}
+		return retVal;
+	}
+
+	private static String toKey(String theResourceName, String theMatchUrl) {
+		return theResourceName + ' ' + theMatchUrl;
+	}
+
+	private static class PreResolvedMatchUrl {
+		private final String myResourceName;
+		private final boolean mySystemAndValue;
+		private final long myHash;
+		private final Set<Long> myPids = new HashSet<>();
+
+		PreResolvedMatchUrl(String theResourceName, boolean theSystemAndValue, long theHash) {
+			myResourceName = theResourceName;
+			mySystemAndValue = theSystemAndValue;
+			myHash = theHash;
+		}
+
+		String getResourceName() {
+			return myResourceName;
+		}
+
+		boolean isSystemAndValue() {
+			return mySystemAndValue;
+		}
+
+		long getHash() {
+			return myHash;
+		}
+
+		Set<Long> getPids() {
+			return myPids;
+		}
+	}
 
 }
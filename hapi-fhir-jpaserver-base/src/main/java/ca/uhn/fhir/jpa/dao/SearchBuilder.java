@@ -29,6 +29,7 @@ import ca.uhn.fhir.jpa.dao.data.IResourceSearchViewDao;
 import ca.uhn.fhir.jpa.dao.data.IResourceTagDao;
 import ca.uhn.fhir.jpa.dao.index.IdHelperService;
 import ca.uhn.fhir.jpa.entity.ResourceSearchView;
+import ca.uhn.fhir.jpa.entity.TermValueSetConcept;
 import ca.uhn.fhir.jpa.interceptor.JpaPreResourceAccessDetails;
 import ca.uhn.fhir.jpa.model.entity.*;
 import ca.uhn.fhir.jpa.model.search.SearchRuntimeDetails;
@@ -105,14 +106,13 @@ import static org.apache.commons.lang3.StringUtils.*;
 @Scope("prototype")
 public class SearchBuilder implements ISearchBuilder {
 
-	private static final List<Long> EMPTY_LONG_LIST = Collections.unmodifiableList(new ArrayList<>());
 	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(SearchBuilder.class);
 	/**
 	 * See loadResourcesByPid
 	 * for an explanation of why we use the constant 800
 	 */
 	private static final int MAXIMUM_PAGE_SIZE = 800;
-	private static Long NO_MORE = -1L;
+	private static final long NO_MORE = -1L;
 	private final boolean myDontUseHashesForSearch;
 	private final DaoConfig myDaoConfig;
 	@Autowired
@@ -137,7 +137,7 @@ public class SearchBuilder implements ISearchBuilder {
 	private IHapiTerminologySvc myTerminologySvc;
 	@Autowired
 	private MatchUrlService myMatchUrlService;
-	private List<Long> myAlsoIncludePids;
+	private LongList myAlsoIncludePids;
 	private CriteriaBuilder myBuilder;
 	private BaseHapiFhirDao<?> myCallingDao;
 	private Map<JoinKey, Join<?, ?>> myIndexJoins = Maps.newHashMap();
@@ -150,7 +150,9 @@ public class SearchBuilder implements ISearchBuilder {
 	private String mySearchUuid;
 	private int myFetchSize;
 	private Integer myMaxResultsToFetch;
-	private Set<Long> myPidSet;
+	private Long myResourcePidRangeLow;
+	private Long myResourcePidRangeHigh;
+	private LongSet myPidSet;
 	private boolean myHaveIndexJoins = false;
 
 	/**
@@ -1791,6 +1793,7 @@ public class SearchBuilder implements ISearchBuilder {
 																		From<?, ResourceIndexedSearchParamToken> theFrom,
 																		SearchFilterParser.CompareOperation operation) {
 		final List<VersionIndependentConcept> codes = new ArrayList<>();
+		final List<Predicate> preExpandedValueSetPredicates = new ArrayList<>();
 
 		TokenParamModifier modifier = null;
 		for (IQueryParameterType nextParameter : theParameters) {
@@ -1832,8 +1835,14 @@ public class SearchBuilder implements ISearchBuilder {
 			 * Process token modifiers (:in, :below, :above)
 			 */
 
-			if (modifier == TokenParamModifier.IN) {
-				codes.addAll(myTerminologySvc.expandValueSet(code));
+			if (modifier == TokenParamModifier.IN || modifier == TokenParamModifier.NOT_IN) {
+				Optional<Long> preExpandedValueSetPid = myTerminologySvc.findPreExpandedValueSetPid(code);
+				if (preExpandedValueSetPid.isPresent()) {
+					boolean negate = modifier == TokenParamModifier.NOT_IN;
+					preExpandedValueSetPredicates.add(createPredicateTokenInPreExpandedValueSet(theResourceName, theParamName, theFrom, preExpandedValueSetPid.get(), negate));
+				} else {
+					codes.addAll(myTerminologySvc.expandValueSet(code));
+				}
 			} else if (modifier == TokenParamModifier.ABOVE) {
 				system = determineSystemIfMissing(theParamName, code, system);
 				codes.addAll(myTerminologySvc.findCodesAbove(system, code));
@@ -1846,6 +1855,11 @@ public class SearchBuilder implements ISearchBuilder {
 
 		}
 
+		// Codes from an expanded ValueSet are excluded in the same way as with :not
+		if (modifier == TokenParamModifier.NOT_IN) {
+			modifier = TokenParamModifier.NOT;
+		}
+
 		List<VersionIndependentConcept> sortedCodesList = codes
 			.stream()
 			.filter(t -> t.getCode() != null || t.getSystem() != null)
@@ -1854,11 +1868,14 @@ public class SearchBuilder implements ISearchBuilder {
 			.collect(Collectors.toList());
 
 		if (codes.isEmpty()) {
+			if (!preExpandedValueSetPredicates.isEmpty()) {
+				return preExpandedValueSetPredicates;
+			}
 			// This will never match anything
 			return Collections.singletonList(new BooleanStaticAssertionPredicate((CriteriaBuilderImpl) theBuilder, false));
 		}
 
-		List<Predicate> retVal = new ArrayList<>();
+		List<Predicate> retVal = new ArrayList<>(preExpandedValueSetPredicates);
 
 		// System only
 		List<VersionIndependentConcept> systemOnlyCodes = sortedCodesList.stream().filter(t -> isBlank(t.getCode())).collect(Collectors.toList());
@@ -1881,6 +1898,28 @@ public class SearchBuilder implements ISearchBuilder {
 		return retVal;
 	}
 
+	/**
+	 * Rather than expanding the ValueSet and adding every code in it to the query
+	 * as a parameter, this joins to the concepts in the stored pre-expansion of the
+	 * ValueSet, so the size of the query doesn't depend on the size of the ValueSet
+	 */
+	private Predicate createPredicateTokenInPreExpandedValueSet(String theResourceName, String theParamName, From<?, ResourceIndexedSearchParamToken> theFrom, Long theTermValueSetPid, boolean theNegate) {
+		Subquery<Long> subQ = myResourceTableQuery.subquery(Long.class);
+		Root<TermValueSetConcept> conceptRoot = subQ.from(TermValueSetConcept.class);
+		subQ.select(conceptRoot.get("myId").as(Long.class));
+		subQ.where(
+			myBuilder.equal(conceptRoot.get("myValueSet").get("myId"), theTermValueSetPid),
+			myBuilder.equal(conceptRoot.get("mySystem"), theFrom.get("mySystem")),
+			myBuilder.equal(conceptRoot.get("myCode"), theFrom.get("myValue"))
+		);
+
+		Predicate predicate = myBuilder.exists(subQ);
+		if (theNegate) {
+			predicate = myBuilder.not(predicate);
+		}
+		return combineParamIndexPredicateWithParamNamePredicate(theResourceName, theParamName, theFrom, predicate);
+	}
+
 	private Predicate addPredicateToken(String theResourceName, String theParamName, CriteriaBuilder theBuilder, From<?, ResourceIndexedSearchParamToken> theFrom, List<VersionIndependentConcept> theTokens, TokenParamModifier theModifier, TokenModeEnum theTokenMode) {
 		if (myDontUseHashesForSearch) {
 			final Path<String> systemExpression = theFrom.get("mySystem");
@@ -1980,7 +2019,13 @@ public class SearchBuilder implements ISearchBuilder {
 	 */
 	@Override
 	public void setPreviouslyAddedResourcePids(@Nullable List<Long> thePidSet) {
-		myPidSet = new HashSet<>(thePidSet);
+		myPidSet = new LongSet(thePidSet);
+	}
+
+	@Override
+	public void setResourcePidRange(@Nullable Long theLowInclusive, @Nullable Long theHighExclusive) {
+		myResourcePidRangeLow = theLowInclusive;
+		myResourcePidRangeHigh = theHighExclusive;
 	}
 
 	@Override
@@ -1990,7 +2035,7 @@ public class SearchBuilder implements ISearchBuilder {
 		mySearchUuid = theSearchRuntimeDetails.getSearchUuid();
 
 		if (myPidSet == null) {
-			myPidSet = new HashSet<>();
+			myPidSet = new LongSet();
 		}
 
 		return new QueryIterator(theSearchRuntimeDetails, theRequest);
@@ -2046,7 +2091,7 @@ public class SearchBuilder implements ISearchBuilder {
 				StringParam idParm = (StringParam) myParams.get(IAnyResource.SP_RES_ID).get(0).get(0);
 				Long pid = myIdHelperService.translateForcedIdToPid(myResourceName, idParm.getValue(), theRequest);
 				if (myAlsoIncludePids == null) {
-					myAlsoIncludePids = new ArrayList<>(1);
+					myAlsoIncludePids = new LongList(1);
 				}
 				myAlsoIncludePids.add(pid);
 				myPredicates.add(myBuilder.equal(join.get("myTargetResourcePid").as(Long.class), pid));
@@ -2106,6 +2151,14 @@ public class SearchBuilder implements ISearchBuilder {
 		List<Predicate> lastUpdatedPredicates = createLastUpdatedPredicates(lu, myBuilder, myResourceTableRoot);
 		myPredicates.addAll(lastUpdatedPredicates);
 
+		// PID range (for partitioned searches)
+		if (myResourcePidRangeLow != null) {
+			myPredicates.add(myBuilder.ge(myResourceTableRoot.get("myId").as(Long.class), myResourcePidRangeLow));
+		}
+		if (myResourcePidRangeHigh != null) {
+			myPredicates.add(myBuilder.lt(myResourceTableRoot.get("myId").as(Long.class), myResourcePidRangeHigh));
+		}
+
 		myResourceTableQuery.where(myBuilder.and(SearchBuilder.toArray(myPredicates)));
 
 		/*
@@ -2370,7 +2423,7 @@ public class SearchBuilder implements ISearchBuilder {
 
 		// Dupes will cause a crash later anyhow, but this is expensive so only do it
 		// when running asserts
-		assert new HashSet<>(thePids).size() == thePids.size() : "PID list contains duplicates: " + thePids;
+		assert new LongSet(thePids).size() == thePids.size() : "PID list contains duplicates: " + thePids;
 
 		Map<Long, Integer> position = new HashMap<>();
 		for (Long next : thePids) {
@@ -2384,34 +2437,34 @@ public class SearchBuilder implements ISearchBuilder {
 		 * if it's lots of IDs. I suppose maybe we should be doing this as a join anyhow
 		 * but this should work too. Sigh.
 		 */
-		List<Long> pids = new ArrayList<>(thePids);
+		LongList pids = new LongList(thePids);
 		for (int i = 0; i < pids.size(); i += MAXIMUM_PAGE_SIZE) {
 			int to = i + MAXIMUM_PAGE_SIZE;
 			to = Math.min(to, pids.size());
-			List<Long> pidsSubList = pids.subList(i, to);
+			LongList pidsSubList = pids.copyOfRange(i, to);
 			doLoadPids(pidsSubList, theIncludedPids, theResourceListToPopulate, theForHistoryOperation, position, theDetails);
 		}
 
 	}
 
 	/**
-	 * THIS SHOULD RETURN HASHSET and not just Set because we add to it later
+	 * THIS SHOULD RETURN A MUTABLE SET and not just Set because we add to it later
 	 * so it can't be Collections.emptySet() or some such thing
 	 */
 	@Override
-	public HashSet<Long> loadIncludes(FhirContext theContext, EntityManager theEntityManager, Collection<Long> theMatches, Set<Include> theRevIncludes,
-												 boolean theReverseMode, DateRangeParam theLastUpdated, String theSearchIdOrDescription, RequestDetails theRequest) {
+	public LongSet loadIncludes(FhirContext theContext, EntityManager theEntityManager, Collection<Long> theMatches, Set<Include> theRevIncludes,
+										 boolean theReverseMode, DateRangeParam theLastUpdated, String theSearchIdOrDescription, RequestDetails theRequest) {
 		if (theMatches.size() == 0) {
-			return new HashSet<>();
+			return new LongSet();
 		}
 		if (theRevIncludes == null || theRevIncludes.isEmpty()) {
-			return new HashSet<>();
+			return new LongSet();
 		}
 		String searchFieldName = theReverseMode ? "myTargetResourcePid" : "mySourceResourcePid";
 
 		Collection<Long> nextRoundMatches = theMatches;
-		HashSet<Long> allAdded = new HashSet<>();
-		HashSet<Long> original = new HashSet<>(theMatches);
+		LongSet allAdded = new LongSet();
+		LongSet original = new LongSet(theMatches);
 		ArrayList<Include> includes = new ArrayList<>(theRevIncludes);
 
 		int roundCounts = 0;
@@ -2421,7 +2474,7 @@ public class SearchBuilder implements ISearchBuilder {
 		do {
 			roundCounts++;
 
-			HashSet<Long> pidsToInclude = new HashSet<>();
+			LongSet pidsToInclude = new LongSet();
 
 			for (Iterator<Include> iter = includes.iterator(); iter.hasNext(); ) {
 				Include nextInclude = iter.next();
@@ -2439,10 +2492,9 @@ public class SearchBuilder implements ISearchBuilder {
 						q.setParameter("target_pids", nextPartition);
 						List<ResourceLink> results = q.getResultList();
 						for (ResourceLink resourceLink : results) {
-							if (theReverseMode) {
-								pidsToInclude.add(resourceLink.getSourceResourcePid());
-							} else {
-								pidsToInclude.add(resourceLink.getTargetResourcePid());
+							Long pid = theReverseMode ? resourceLink.getSourceResourcePid() : resourceLink.getTargetResourcePid();
+							if (pid != null) {
+								pidsToInclude.add(pid.longValue());
 							}
 						}
 					}
@@ -2517,10 +2569,11 @@ public class SearchBuilder implements ISearchBuilder {
 
 			if (theReverseMode) {
 				if (theLastUpdated != null && (theLastUpdated.getLowerBoundAsInstant() != null || theLastUpdated.getUpperBoundAsInstant() != null)) {
-					pidsToInclude = new HashSet<>(filterResourceIdsByLastUpdated(theEntityManager, theLastUpdated, pidsToInclude));
+					pidsToInclude = new LongSet(filterResourceIdsByLastUpdated(theEntityManager, theLastUpdated, pidsToInclude));
 				}
 			}
-			for (Long next : pidsToInclude) {
+			for (PrimitiveIterator.OfLong iter = pidsToInclude.longIterator(); iter.hasNext(); ) {
+				long next = iter.nextLong();
 				if (original.contains(next) == false && allAdded.contains(next) == false) {
 					theMatches.add(next);
 				}
@@ -2536,7 +2589,7 @@ public class SearchBuilder implements ISearchBuilder {
 		// This can be used to remove results from the search result details before
 		// the user has a chance to know that they were in the results
 		if (allAdded.size() > 0) {
-			List<Long> includedPidList = new ArrayList<>(allAdded);
+			LongList includedPidList = allAdded.toLongList();
 			JpaPreResourceAccessDetails accessDetails = new JpaPreResourceAccessDetails(includedPidList, () -> this);
 			HookParams params = new HookParams()
 				.add(IPreResourceAccessDetails.class, accessDetails)
@@ -2544,16 +2597,22 @@ public class SearchBuilder implements ISearchBuilder {
 				.addIfMatchesType(ServletRequestDetails.class, theRequest);
 			JpaInterceptorBroadcaster.doCallHooks(myInterceptorBroadcaster, theRequest, Pointcut.STORAGE_PREACCESS_RESOURCES, params);
 
-			for (int i = includedPidList.size() - 1; i >= 0; i--) {
+			boolean removedSome = false;
+			for (int i = 0; i < includedPidList.size(); i++) {
 				if (accessDetails.isDontReturnResourceAtIndex(i)) {
-					Long value = includedPidList.remove(i);
-					if (value != null) {
-						theMatches.remove(value);
-					}
+					theMatches.remove(includedPidList.getLong(i));
+					removedSome = true;
 				}
 			}
 
-			allAdded = new HashSet<>(includedPidList);
+			if (removedSome) {
+				allAdded = new LongSet(includedPidList.size());
+				for (int i = 0; i < includedPidList.size(); i++) {
+					if (!accessDetails.isDontReturnResourceAtIndex(i)) {
+						allAdded.add(includedPidList.getLong(i));
+					}
+				}
+			}
 		}
 
 		return allAdded;
@@ -2565,14 +2624,14 @@ public class SearchBuilder implements ISearchBuilder {
 		} else {
 
 			List<Collection<Long>> retVal = new ArrayList<>();
-			Collection<Long> current = null;
-			for (Long next : theNextRoundMatches) {
+			LongList current = null;
+			for (PrimitiveIterator.OfLong iter = LongList.longIteratorOf(theNextRoundMatches); iter.hasNext(); ) {
 				if (current == null) {
-					current = new ArrayList<>(theMaxLoad);
+					current = new LongList(theMaxLoad);
 					retVal.add(current);
 				}
 
-				current.add(next);
+				current.add(iter.nextLong());
 
 				if (current.size() >= theMaxLoad) {
 					current = null;
@@ -3043,27 +3102,29 @@ public class SearchBuilder implements ISearchBuilder {
 
 	}
 
-	public class IncludesIterator extends BaseIterator<Long> implements Iterator<Long> {
+	public class IncludesIterator extends BaseIterator<Long> implements PrimitiveIterator.OfLong {
 
 		private final RequestDetails myRequest;
-		private Iterator<Long> myCurrentIterator;
+		private PrimitiveIterator.OfLong myCurrentIterator;
 		private int myCurrentOffset;
-		private ArrayList<Long> myCurrentPids;
-		private Long myNext;
+		private LongList myCurrentPids;
+		private boolean myHaveNext;
+		private long myNext;
 		private int myPageSize = myDaoConfig.getEverythingIncludesFetchPageSize();
 
-		IncludesIterator(Set<Long> thePidSet, RequestDetails theRequest) {
-			myCurrentPids = new ArrayList<>(thePidSet);
-			myCurrentIterator = EMPTY_LONG_LIST.iterator();
+		IncludesIterator(LongSet thePidSet, RequestDetails theRequest) {
+			myCurrentPids = thePidSet.toLongList();
+			myCurrentIterator = new LongList().longIterator();
 			myCurrentOffset = 0;
 			myRequest = theRequest;
 		}
 
 		private void fetchNext() {
-			while (myNext == null) {
+			while (!myHaveNext) {
 
 				if (myCurrentIterator.hasNext()) {
-					myNext = myCurrentIterator.next();
+					myNext = myCurrentIterator.nextLong();
+					myHaveNext = true;
 					break;
 				}
 
@@ -3074,13 +3135,14 @@ public class SearchBuilder implements ISearchBuilder {
 				}
 				if (end - start <= 0) {
 					myNext = NO_MORE;
+					myHaveNext = true;
 					break;
 				}
 				myCurrentOffset = end;
-				Collection<Long> pidsToScan = myCurrentPids.subList(start, end);
+				Collection<Long> pidsToScan = myCurrentPids.copyOfRange(start, end);
 				Set<Include> includes = Collections.singleton(new Include("*", true));
-				Set<Long> newPids = loadIncludes(myContext, myEntityManager, pidsToScan, includes, false, myParams.getLastUpdated(), mySearchUuid, myRequest);
-				myCurrentIterator = newPids.iterator();
+				LongSet newPids = loadIncludes(myContext, myEntityManager, pidsToScan, includes, false, myParams.getLastUpdated(), mySearchUuid, myRequest);
+				myCurrentIterator = newPids.longIterator();
 
 			}
 		}
@@ -3088,14 +3150,14 @@ public class SearchBuilder implements ISearchBuilder {
 		@Override
 		public boolean hasNext() {
 			fetchNext();
-			return !NO_MORE.equals(myNext);
+			return myNext != NO_MORE;
 		}
 
 		@Override
-		public Long next() {
+		public long nextLong() {
 			fetchNext();
-			Long retVal = myNext;
-			myNext = null;
+			long retVal = myNext;
+			myHaveNext = false;
 			return retVal;
 		}
 
@@ -3107,8 +3169,9 @@ public class SearchBuilder implements ISearchBuilder {
 		private final RequestDetails myRequest;
 		private boolean myFirst = true;
 		private IncludesIterator myIncludesIterator;
-		private Long myNext;
-		private Iterator<Long> myPreResultsIterator;
+		private boolean myHaveNext;
+		private long myNext;
+		private PrimitiveIterator.OfLong myPreResultsIterator;
 		private ScrollableResultsIterator<Long> myResultsIterator;
 		private SortSpec mySort;
 		private boolean myStillNeedToFetchIncludes;
@@ -3150,29 +3213,28 @@ public class SearchBuilder implements ISearchBuilder {
 
 					// If the query resulted in extra results being requested
 					if (myAlsoIncludePids != null) {
-						myPreResultsIterator = myAlsoIncludePids.iterator();
+						myPreResultsIterator = myAlsoIncludePids.longIterator();
 					}
 				}
 
-				if (myNext == null) {
+				if (!myHaveNext) {
 
 					if (myPreResultsIterator != null && myPreResultsIterator.hasNext()) {
 						while (myPreResultsIterator.hasNext()) {
-							Long next = myPreResultsIterator.next();
-							if (next != null)
-								if (myPidSet.add(next)) {
-									myNext = next;
-									break;
-								}
+							long next = myPreResultsIterator.nextLong();
+							if (myPidSet.add(next)) {
+								setNext(next);
+								break;
+							}
 						}
 					}
 
-					if (myNext == null) {
+					if (!myHaveNext) {
 						while (myResultsIterator.hasNext()) {
 							Long next = myResultsIterator.next();
 							if (next != null) {
-								if (myPidSet.add(next)) {
-									myNext = next;
+								if (myPidSet.add(next.longValue())) {
+									setNext(next);
 									break;
 								} else {
 									mySkipCount++;
@@ -3181,25 +3243,24 @@ public class SearchBuilder implements ISearchBuilder {
 						}
 					}
 
-					if (myNext == null) {
+					if (!myHaveNext) {
 						if (myStillNeedToFetchIncludes) {
 							myIncludesIterator = new IncludesIterator(myPidSet, myRequest);
 							myStillNeedToFetchIncludes = false;
 						}
 						if (myIncludesIterator != null) {
 							while (myIncludesIterator.hasNext()) {
-								Long next = myIncludesIterator.next();
-								if (next != null)
-									if (myPidSet.add(next)) {
-										myNext = next;
-										break;
-									}
+								long next = myIncludesIterator.nextLong();
+								if (myPidSet.add(next)) {
+									setNext(next);
+									break;
+								}
 							}
-							if (myNext == null) {
-								myNext = NO_MORE;
+							if (!myHaveNext) {
+								setNext(NO_MORE);
 							}
 						} else {
-							myNext = NO_MORE;
+							setNext(NO_MORE);
 						}
 					}
 
@@ -3227,7 +3288,7 @@ public class SearchBuilder implements ISearchBuilder {
 				myFirst = false;
 			}
 
-			if (NO_MORE.equals(myNext)) {
+			if (myNext == NO_MORE) {
 				HookParams params = new HookParams()
 					.add(RequestDetails.class, myRequest)
 					.addIfMatchesType(ServletRequestDetails.class, myRequest)
@@ -3237,20 +3298,25 @@ public class SearchBuilder implements ISearchBuilder {
 
 		}
 
+		private void setNext(long theNext) {
+			myNext = theNext;
+			myHaveNext = true;
+		}
+
 		@Override
 		public boolean hasNext() {
-			if (myNext == null) {
+			if (!myHaveNext) {
 				fetchNext();
 			}
-			return !NO_MORE.equals(myNext);
+			return myNext != NO_MORE;
 		}
 
 		@Override
-		public Long next() {
+		public long nextLong() {
 			fetchNext();
-			Long retVal = myNext;
-			myNext = null;
-			Validate.isTrue(!NO_MORE.equals(retVal), "No more elements");
+			long retVal = myNext;
+			myHaveNext = false;
+			Validate.isTrue(retVal != NO_MORE, "No more elements");
 			return retVal;
 		}
 
@@ -26,6 +26,8 @@ import ca.uhn.fhir.interceptor.api.HookParams;
 import ca.uhn.fhir.interceptor.api.IInterceptorBroadcaster;
 import ca.uhn.fhir.interceptor.api.Pointcut;
 import ca.uhn.fhir.jpa.config.HapiFhirHibernateJpaDialect;
+import ca.uhn.fhir.jpa.dao.data.IResourceTableDao;
+import ca.uhn.fhir.jpa.dao.index.IdHelperService;
 import ca.uhn.fhir.jpa.delete.DeleteConflictList;
 import ca.uhn.fhir.jpa.delete.DeleteConflictService;
 import ca.uhn.fhir.jpa.model.entity.ResourceTable;
@@ -52,6 +54,7 @@ import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
 import ca.uhn.fhir.util.*;
 import com.google.common.base.Charsets;
 import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Lists;
 import org.apache.commons.lang3.Validate;
 import org.apache.http.NameValuePair;
 import org.hibernate.Session;
@@ -80,6 +83,7 @@ public class TransactionProcessor<BUNDLE extends IBaseBundle, BUNDLEENTRY> {
 
 	public static final String URN_PREFIX = "urn:";
 	private static final Logger ourLog = LoggerFactory.getLogger(TransactionProcessor.class);
+	private static final int MAX_PIDS_PER_PRELOAD_QUERY = 500;
 	private BaseHapiFhirDao myDao;
 	@Autowired
 	private PlatformTransactionManager myTxManager;
@@ -99,6 +103,12 @@ public class TransactionProcessor<BUNDLE extends IBaseBundle, BUNDLEENTRY> {
 	private DeleteConflictService myDeleteConflictService;
 	@Autowired
 	private IInterceptorBroadcaster myInterceptorBroadcaster;
+	@Autowired
+	private IdHelperService myIdHelperService;
+	@Autowired
+	private MatchResourceUrlService myMatchResourceUrlService;
+	@Autowired
+	private IResourceTableDao myResourceTableDao;
 
 	public BUNDLE transaction(RequestDetails theRequestDetails, BUNDLE theRequest) {
 		if (theRequestDetails != null) {
@@ -317,7 +327,7 @@ public class TransactionProcessor<BUNDLE extends IBaseBundle, BUNDLEENTRY> {
 
 		final Set<IIdType> allIds = new LinkedHashSet<>();
 		final Map<IIdType, IIdType> idSubstitutions = new HashMap<>();
-		final Map<IIdType, DaoMethodOutcome> idToPersistedOutcome = new HashMap<>();
+		final Map<IIdType, DaoMethodOutcome> idToPersistedOutcome = new LinkedHashMap<>();
 		List<BUNDLEENTRY> requestEntries = myVersionAdapter.getEntries(theRequest);
 
 		// Do all entries have a verb?
@@ -599,6 +609,13 @@ public class TransactionProcessor<BUNDLE extends IBaseBundle, BUNDLEENTRY> {
 			}
 
 
+			/*
+			 * Resolve the references and conditional URLs in the whole Bundle up front
+			 */
+			theTransactionStopWatch.startTask("Pre-resolve references and conditional URLs");
+			preResolveReferencesAndMatchUrls(theRequest, theEntries);
+			theTransactionStopWatch.endCurrentTask();
+
 			/*
 			 * Loop through the request and process any entries of type
 			 * PUT, POST or DELETE
@@ -672,6 +689,7 @@ public class TransactionProcessor<BUNDLE extends IBaseBundle, BUNDLEENTRY> {
 						if (outcome.getCreated() == false) {
 							nonUpdatedEntities.add(outcome.getEntity());
 						} else {
+							myMatchResourceUrlService.invalidatePreResolvedMatchUrls(outcome.getEntity(), res, theRequest);
 							if (isNotBlank(matchUrl)) {
 								conditionalRequestUrls.put(matchUrl, res.getClass());
 							}
@@ -692,6 +710,7 @@ public class TransactionProcessor<BUNDLE extends IBaseBundle, BUNDLEENTRY> {
 								if (outcome.getEntity() != null) {
 									deletedResources.add(deleteId.getValueAsString());
 									entriesToProcess.put(nextRespEntry, outcome.getEntity());
+									myMatchResourceUrlService.invalidatePreResolvedMatchUrls(outcome.getEntity(), null, theRequest);
 								}
 							}
 						} else {
@@ -701,6 +720,7 @@ public class TransactionProcessor<BUNDLE extends IBaseBundle, BUNDLEENTRY> {
 							List<ResourceTable> allDeleted = deleteOutcome.getDeletedEntities();
 							for (ResourceTable deleted : allDeleted) {
 								deletedResources.add(deleted.getIdDt().toUnqualifiedVersionless().getValueAsString());
+								myMatchResourceUrlService.invalidatePreResolvedMatchUrls(deleted, null, theRequest);
 							}
 							if (allDeleted.isEmpty()) {
 								status = Constants.STATUS_HTTP_204_NO_CONTENT;
@@ -744,6 +764,7 @@ public class TransactionProcessor<BUNDLE extends IBaseBundle, BUNDLEENTRY> {
 								conditionalRequestUrls.put(matchUrl, res.getClass());
 							}
 						}
+						myMatchResourceUrlService.invalidatePreResolvedMatchUrls(outcome.getEntity(), res, theRequest);
 
 						if (outcome.getCreated() == Boolean.FALSE
 							|| (outcome.getCreated() == Boolean.TRUE && outcome.getId().getVersionIdPartAsLong() > 1)) {
@@ -790,6 +811,7 @@ public class TransactionProcessor<BUNDLE extends IBaseBundle, BUNDLEENTRY> {
 						PatchTypeEnum patchType = PatchTypeEnum.forContentTypeOrThrowInvalidRequestException(contentType);
 						IIdType patchId = myContext.getVersion().newIdType().setValue(parts.getResourceId());
 						DaoMethodOutcome outcome = dao.patch(patchId, matchUrl, patchType, patchBody, theRequest);
+						myMatchResourceUrlService.invalidatePreResolvedMatchUrls(outcome.getEntity(), outcome.getResource(), theRequest);
 						updatedEntities.add(outcome.getEntity());
 						if (outcome.getResource() != null) {
 							updatedResources.add(outcome.getResource());
@@ -807,6 +829,12 @@ public class TransactionProcessor<BUNDLE extends IBaseBundle, BUNDLEENTRY> {
 				theTransactionStopWatch.endCurrentTask();
 			}
 
+			/*
+			 * Anything written from here on (e.g. automatically created placeholder
+			 * reference targets) is not tracked, so stop using the pre-resolved results
+			 */
+			myIdHelperService.clearPreResolvedForcedIds(theRequest);
+			myMatchResourceUrlService.clearPreResolvedMatchUrls(theRequest);
 
 			/*
 			 * Make sure that there are no conflicts from deletions. E.g. we can't delete something
@@ -964,12 +992,80 @@ public class TransactionProcessor<BUNDLE extends IBaseBundle, BUNDLEENTRY> {
 			return entriesToProcess;
 
 		} finally {
+			myIdHelperService.clearPreResolvedForcedIds(theRequest);
+			myMatchResourceUrlService.clearPreResolvedMatchUrls(theRequest);
 			if (theRequest != null) {
 				theRequest.stopDeferredRequestOperationCallbackAndRunDeferredItems();
 			}
 		}
 	}
 
+	/**
+	 * Collects every reference target and conditional URL in the Bundle and resolves them
+	 * using a handful of batched queries, instead of resolving each one with its own query
+	 * as the entries are processed. The referenced resources are loaded into the persistence
+	 * context at the same time, so that they don't need to be loaded one by one either.
+	 */
+	private void preResolveReferencesAndMatchUrls(RequestDetails theRequest, List<BUNDLEENTRY> theEntries) {
+		if (theRequest == null) {
+			return;
+		}
+
+		Map<String, IIdType> ids = new HashMap<>();
+		Map<String, Class<? extends IBaseResource>> matchUrls = new HashMap<>();
+		FhirTerser terser = myContext.newTerser();
+		for (BUNDLEENTRY nextEntry : theEntries) {
+			String verb = myVersionAdapter.getEntryRequestVerb(nextEntry);
+			IBaseResource resource = myVersionAdapter.getResource(nextEntry);
+
+			if ("POST".equals(verb)) {
+				String ifNoneExist = myVersionAdapter.getEntryRequestIfNoneExist(nextEntry);
+				if (resource != null && isNotBlank(ifNoneExist)) {
+					matchUrls.put(ifNoneExist, resource.getClass());
+				}
+			} else if ("PUT".equals(verb) || "DELETE".equals(verb) || "PATCH".equals(verb)) {
+				String url = myVersionAdapter.getEntryRequestUrl(nextEntry);
+				if (isNotBlank(url)) {
+					UrlUtil.UrlParts parts = UrlUtil.parseUrl(url);
+					IFhirResourceDao<?> dao = myDaoRegistry.getResourceDaoIfExists(parts.getResourceType());
+					if (dao != null) {
+						if (isNotBlank(parts.getResourceId())) {
+							IIdType id = newIdType(parts.getResourceType(), parts.getResourceId());
+							ids.put(id.getValue(), id);
+						} else if (isNotBlank(parts.getParams()) && !"PATCH".equals(verb)) {
+							matchUrls.put(parts.getResourceType() + '?' + parts.getParams(), dao.getResourceType());
+						}
+					}
+				}
+			}
+
+			if (resource != null) {
+				for (ResourceReferenceInfo nextRef : terser.getAllResourceReferences(resource)) {
+					IIdType nextId = nextRef.getResourceReference().getReferenceElement();
+					String nextIdText = nextId.getValue();
+					if (isBlank(nextIdText) || nextId.isLocal() || nextId.isAbsolute() || isPlaceholder(nextId)) {
+						continue;
+					}
+					// Conditional references are only resolved once the entries have been written,
+					// after the pre-resolved results have been discarded, so they aren't collected here
+					if (nextIdText.indexOf('?') == -1 && nextId.hasResourceType() && nextId.hasIdPart()) {
+						IIdType id = nextId.toUnqualifiedVersionless();
+						ids.put(id.getValue(), id);
+					}
+				}
+			}
+		}
+
+		Set<Long> pids = myIdHelperService.preResolveForcedIds(ids.values(), theRequest);
+		for (List<Long> nextPids : Lists.partition(new ArrayList<>(pids), MAX_PIDS_PER_PRELOAD_QUERY)) {
+			myResourceTableDao.findAllById(nextPids);
+		}
+
+		myMatchResourceUrlService.preResolveMatchUrls(matchUrls, theRequest);
+
+		ourLog.debug("Pre-resolved {} references and {} conditional URLs in transaction", ids.size(), matchUrls.size());
+	}
+
 	private void validateResourcePresent(IBaseResource theResource, Integer theOrder, String theVerb) {
 		if (theResource == null) {
 			String msg = myContext.getLocalizer().getMessage(TransactionProcessor.class, "missingMandatoryResource", theVerb, theOrder);
@@ -0,0 +1,39 @@
+package ca.uhn.fhir.jpa.dao.data;
+
+import ca.uhn.fhir.jpa.entity.BulkExportCollectionEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+public interface IBulkExportCollectionDao extends JpaRepository<BulkExportCollectionEntity, Long> {
+
+	@Modifying
+	@Query("UPDATE BulkExportCollectionEntity c SET c.myLastPid = :lastpid WHERE c.myId = :pid")
+	void updateLastPid(@Param("pid") Long theCollectionPid, @Param("lastpid") Long theLastPid);
+
+	@Modifying
+	@Query("DELETE FROM BulkExportCollectionEntity c WHERE c.myId = :pid")
+	void deleteByPid(@Param("pid") Long theCollectionPid);
+
+}
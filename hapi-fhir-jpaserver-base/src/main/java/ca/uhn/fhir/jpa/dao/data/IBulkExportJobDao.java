@@ -0,0 +1,69 @@
+package ca.uhn.fhir.jpa.dao.data;
+
+import ca.uhn.fhir.jpa.bulk.BulkJobStatusEnum;
+import ca.uhn.fhir.jpa.entity.BulkExportJobEntity;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Date;
+import java.util.Optional;
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+public interface IBulkExportJobDao extends JpaRepository<BulkExportJobEntity, Long> {
+
+	@Query("SELECT j FROM BulkExportJobEntity j WHERE j.myJobId = :jobid")
+	Optional<BulkExportJobEntity> findByJobId(@Param("jobid") String theUuid);
+
+	@Query("SELECT j FROM BulkExportJobEntity j WHERE j.myStatus = :status ORDER BY j.myCreated ASC")
+	Slice<BulkExportJobEntity> findByStatus(Pageable thePage, @Param("status") BulkJobStatusEnum theSubmitted);
+
+	@Query("SELECT j FROM BulkExportJobEntity j WHERE j.myStatus = :status AND j.myStatusTime < :cutoff ORDER BY j.myStatusTime ASC")
+	Slice<BulkExportJobEntity> findByStatusWithStatusTimeBefore(Pageable thePage, @Param("status") BulkJobStatusEnum theStatus, @Param("cutoff") Date theCutoff);
+
+	@Query("SELECT j FROM BulkExportJobEntity j WHERE j.myExpiry < :cutoff")
+	Slice<BulkExportJobEntity> findByExpiry(Pageable thePage, @Param("cutoff") Date theCutoff);
+
+	/**
+	 * Refreshes the status time of a job, but only if it is still in the given
+	 * status and owned by the given claim
+	 *
+	 * @return The number of rows updated (0 if the claim has been lost)
+	 */
+	@Modifying
+	@Query("UPDATE BulkExportJobEntity j SET j.myStatusTime = :now, j.myVersion = j.myVersion + 1 WHERE j.myJobId = :jobid AND j.myOwnerId = :owner AND j.myStatus = :status")
+	int updateStatusTimeIfOwnedBy(@Param("jobid") String theJobId, @Param("owner") String theOwnerId, @Param("status") BulkJobStatusEnum theStatus, @Param("now") Date theNow);
+
+	/**
+	 * Moves a job to a new status, but only if it is still in the given
+	 * status and owned by the given claim
+	 *
+	 * @return The number of rows updated (0 if the claim has been lost)
+	 */
+	@Modifying
+	@Query("UPDATE BulkExportJobEntity j SET j.myStatus = :newstatus, j.myStatusTime = :now, j.myExpiry = :expiry, j.myStatusMessage = :message, j.myVersion = j.myVersion + 1 WHERE j.myJobId = :jobid AND j.myOwnerId = :owner AND j.myStatus = :status")
+	int updateStatusIfOwnedBy(@Param("jobid") String theJobId, @Param("owner") String theOwnerId, @Param("status") BulkJobStatusEnum theStatus, @Param("newstatus") BulkJobStatusEnum theNewStatus, @Param("now") Date theNow, @Param("expiry") Date theExpiry, @Param("message") String theStatusMessage);
+
+}
@@ -26,6 +26,8 @@ import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
+
 public interface IResourceIndexedSearchParamTokenDao extends JpaRepository<ResourceIndexedSearchParamToken, Long> {
 
 	@Query("select count(*) from ResourceIndexedSearchParamToken t WHERE t.myResourcePid = :resid")
@@ -34,4 +36,16 @@ public interface IResourceIndexedSearchParamTokenDao extends JpaRepository<Resou
 	@Modifying
 	@Query("delete from ResourceIndexedSearchParamToken t WHERE t.myResourcePid = :resid")
 	void deleteByResourceId(@Param("resid") Long theResourcePid);
+
+	/**
+	 * @return Pairs of [hashSystemAndValue, resourcePid] for any non-deleted resources with a matching token
+	 */
+	@Query("SELECT t.myHashSystemAndValue, t.myResourcePid FROM ResourceIndexedSearchParamToken t, ResourceTable r WHERE r.myId = t.myResourcePid AND r.myDeleted IS NULL AND t.myHashSystemAndValue IN (:hashes)")
+	Collection<Object[]> findResourcePidsByHashSystemAndValue(@Param("hashes") Collection<Long> theHashes);
+
+	/**
+	 * @return Pairs of [hashValue, resourcePid] for any non-deleted resources with a matching token
+	 */
+	@Query("SELECT t.myHashValue, t.myResourcePid FROM ResourceIndexedSearchParamToken t, ResourceTable r WHERE r.myId = t.myResourcePid AND r.myDeleted IS NULL AND t.myHashValue IN (:hashes)")
+	Collection<Object[]> findResourcePidsByHashValue(@Param("hashes") Collection<Long> theHashes);
 }
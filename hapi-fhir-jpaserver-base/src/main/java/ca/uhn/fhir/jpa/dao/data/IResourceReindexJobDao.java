@@ -64,4 +64,26 @@ public interface IResourceReindexJobDao extends JpaRepository<ResourceReindexJob
 	@Modifying
 	void setReindexCount(@Param("id") Long theId, @Param("newCount") int theNewCount);
 
+	@Query("UPDATE ResourceReindexJobEntity j SET j.myReindexCount = COALESCE(j.myReindexCount, 0) + :count WHERE j.myId = :id")
+	@Modifying
+	void incrementReindexCount(@Param("id") Long theId, @Param("count") int theCount);
+
+	/**
+	 * Sets the range high PID, as long as it has not already been set by another server
+	 *
+	 * @return The number of updated jobs
+	 */
+	@Modifying
+	@Query("UPDATE ResourceReindexJobEntity j SET j.myRangePidHigh = :high WHERE j.myId = :id AND j.myRangePidHigh IS NULL")
+	int initializeRangePidHigh(@Param("id") Long theId, @Param("high") Long theHigh);
+
+	/**
+	 * Changes the range high PID, as long as it has not been changed by another server
+	 *
+	 * @return The number of updated jobs
+	 */
+	@Modifying
+	@Query("UPDATE ResourceReindexJobEntity j SET j.myRangePidHigh = :high WHERE j.myId = :id AND j.myRangePidHigh = :previous")
+	int updateRangePidHigh(@Param("id") Long theId, @Param("previous") Long thePreviousHigh, @Param("high") Long theHigh);
+
 }
@@ -0,0 +1,75 @@
+package ca.uhn.fhir.jpa.dao.data;
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import ca.uhn.fhir.jpa.entity.ResourceReindexJobRangeEntity;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Date;
+import java.util.List;
+
+public interface IResourceReindexJobRangeDao extends JpaRepository<ResourceReindexJobRangeEntity, Long> {
+
+	/**
+	 * Returns the IDs of incomplete ranges for the given job which are not currently leased
+	 */
+	@Query("SELECT r.myId FROM ResourceReindexJobRangeEntity r WHERE r.myJobPid = :job AND r.myComplete = false AND (r.myLeaseExpires IS NULL OR r.myLeaseExpires < :now) ORDER BY r.myPidLow ASC")
+	List<Long> findUnleasedIds(Pageable thePage, @Param("job") Long theJobPid, @Param("now") Date theNow);
+
+	/**
+	 * Leases a range, as long as it is not complete and not already leased by someone else
+	 *
+	 * @return The number of updated ranges (1 if the lease was obtained, 0 otherwise)
+	 */
+	@Modifying
+	@Query("UPDATE ResourceReindexJobRangeEntity r SET r.myLeaseOwner = :owner, r.myLeaseExpires = :expires WHERE r.myId = :id AND r.myComplete = false AND (r.myLeaseExpires IS NULL OR r.myLeaseExpires < :now)")
+	int lease(@Param("id") Long theId, @Param("owner") String theOwner, @Param("now") Date theNow, @Param("expires") Date theExpires);
+
+	/**
+	 * Records progress within a range and extends the lease, as long as the range is
+	 * still leased by the given owner
+	 *
+	 * @return The number of updated ranges (0 if the lease has been taken by someone else)
+	 */
+	@Modifying
+	@Query("UPDATE ResourceReindexJobRangeEntity r SET r.myPidNext = :next, r.myReindexCount = r.myReindexCount + :count, r.myLeaseExpires = :expires WHERE r.myId = :id AND r.myLeaseOwner = :owner")
+	int updateProgress(@Param("id") Long theId, @Param("owner") String theOwner, @Param("next") long theNextPid, @Param("count") int theCount, @Param("expires") Date theExpires);
+
+	@Modifying
+	@Query("UPDATE ResourceReindexJobRangeEntity r SET r.myComplete = true, r.myLeaseOwner = null, r.myLeaseExpires = null WHERE r.myId = :id AND r.myLeaseOwner = :owner")
+	int markComplete(@Param("id") Long theId, @Param("owner") String theOwner);
+
+	@Query("SELECT COUNT(r) FROM ResourceReindexJobRangeEntity r WHERE r.myJobPid = :job")
+	long countForJob(@Param("job") Long theJobPid);
+
+	@Query("SELECT COUNT(r) FROM ResourceReindexJobRangeEntity r WHERE r.myJobPid = :job AND r.myComplete = false")
+	long countIncompleteForJob(@Param("job") Long theJobPid);
+
+	@Modifying
+	@Query("DELETE FROM ResourceReindexJobRangeEntity r WHERE r.myJobPid = :job")
+	void deleteForJob(@Param("job") Long theJobPid);
+
+}
@@ -43,6 +43,27 @@ public interface IResourceTableDao extends JpaRepository<ResourceTable, Long> {
 	@Query("SELECT t.myId FROM ResourceTable t WHERE t.myId = :resid AND t.myResourceType = :restype AND t.myDeleted IS NOT NULL")
 	Slice<Long> findIdsOfDeletedResourcesOfType(Pageable thePageable, @Param("resid") Long theResourceId, @Param("restype") String theResourceName);
 
+	@Query("SELECT MIN(t.myId) FROM ResourceTable t WHERE t.myResourceType = :restype")
+	Long findLowestPidOfType(@Param("restype") String theResourceType);
+
+	@Query("SELECT MAX(t.myId) FROM ResourceTable t WHERE t.myResourceType = :restype")
+	Long findHighestPidOfType(@Param("restype") String theResourceType);
+
+	@Query("SELECT MIN(t.myId) FROM ResourceTable t")
+	Long findLowestPid();
+
+	@Query("SELECT MAX(t.myId) FROM ResourceTable t WHERE t.myUpdated <= :high")
+	Long findHighestPidUpdatedBefore(@Param("high") Date theHigh);
+
+	@Query("SELECT MAX(t.myId) FROM ResourceTable t WHERE t.myUpdated <= :high AND t.myResourceType = :restype")
+	Long findHighestPidOfTypeUpdatedBefore(@Param("restype") String theResourceType, @Param("high") Date theHigh);
+
+	@Query("SELECT t.myId FROM ResourceTable t WHERE t.myId >= :lowpid AND t.myId < :highpid AND t.myUpdated >= :low AND t.myUpdated <= :high ORDER BY t.myId ASC")
+	Slice<Long> findIdsOfResourcesWithinPidAndUpdatedRange(Pageable thePage, @Param("lowpid") Long theLowPid, @Param("highpid") Long theHighPid, @Param("low") Date theLow, @Param("high") Date theHigh);
+
+	@Query("SELECT t.myId FROM ResourceTable t WHERE t.myId >= :lowpid AND t.myId < :highpid AND t.myUpdated >= :low AND t.myUpdated <= :high AND t.myResourceType = :restype ORDER BY t.myId ASC")
+	Slice<Long> findIdsOfResourcesWithinPidAndUpdatedRange(Pageable thePage, @Param("restype") String theResourceType, @Param("lowpid") Long theLowPid, @Param("highpid") Long theHighPid, @Param("low") Date theLow, @Param("high") Date theHigh);
+
 	@Query("SELECT t.myResourceType as type, COUNT(t.myResourceType) as count FROM ResourceTable t GROUP BY t.myResourceType")
 	List<Map<?, ?>> getResourceCounts();
 
@@ -55,6 +76,18 @@ public interface IResourceTableDao extends JpaRepository<ResourceTable, Long> {
 	@Query("SELECT t.myId FROM ResourceTable t WHERE t.myUpdated >= :low AND t.myUpdated <= :high AND t.myResourceType = :restype ORDER BY t.myUpdated ASC")
 	Slice<Long> findIdsOfResourcesWithinUpdatedRangeOrderedFromOldest(Pageable thePage, @Param("restype") String theResourceType, @Param("low") Date theLow, @Param("high") Date theHigh);
 
+	@Query("SELECT t.myId FROM ResourceTable t WHERE t.myResourceType = :restype AND t.myId > :lastpid AND t.myUpdated >= :low AND t.myDeleted IS NULL ORDER BY t.myId ASC")
+	Slice<Long> findIdsOfResourcesOfTypeAfterPid(Pageable thePage, @Param("restype") String theResourceType, @Param("lastpid") Long theLastPid, @Param("low") Date theLow);
+
+	@Query("SELECT DISTINCT t.myId FROM ResourceTable t JOIN t.myResourceLinks l WHERE t.myResourceType = :restype AND l.myTargetResourceType = :targettype AND t.myId > :lastpid AND t.myUpdated >= :low AND t.myDeleted IS NULL ORDER BY t.myId ASC")
+	Slice<Long> findIdsOfResourcesOfTypeLinkedToTargetTypeAfterPid(Pageable thePage, @Param("restype") String theResourceType, @Param("targettype") String theTargetResourceType, @Param("lastpid") Long theLastPid, @Param("low") Date theLow);
+
+	@Query("SELECT t.myId FROM ResourceTable t WHERE t.myResourceType = 'Patient' AND t.myId IN (SELECT gl.myTargetResourcePid FROM ResourceLink gl WHERE gl.mySourceResourcePid = :grouppid AND gl.myTargetResourceType = 'Patient') AND t.myId > :lastpid AND t.myUpdated >= :low AND t.myDeleted IS NULL ORDER BY t.myId ASC")
+	Slice<Long> findIdsOfPatientsInGroupAfterPid(Pageable thePage, @Param("grouppid") Long theGroupPid, @Param("lastpid") Long theLastPid, @Param("low") Date theLow);
+
+	@Query("SELECT DISTINCT t.myId FROM ResourceTable t JOIN t.myResourceLinks l WHERE t.myResourceType = :restype AND l.myTargetResourcePid IN (SELECT gl.myTargetResourcePid FROM ResourceLink gl WHERE gl.mySourceResourcePid = :grouppid AND gl.myTargetResourceType = 'Patient') AND t.myId > :lastpid AND t.myUpdated >= :low AND t.myDeleted IS NULL ORDER BY t.myId ASC")
+	Slice<Long> findIdsOfResourcesOfTypeLinkedToPatientsInGroupAfterPid(Pageable thePage, @Param("restype") String theResourceType, @Param("grouppid") Long theGroupPid, @Param("lastpid") Long theLastPid, @Param("low") Date theLow);
+
 	@Modifying
 	@Query("UPDATE ResourceTable t SET t.myIndexStatus = :status WHERE t.myId = :id")
 	void updateIndexStatus(@Param("id") Long theId, @Param("status") Long theIndexStatus);
@@ -0,0 +1,46 @@
+package ca.uhn.fhir.jpa.dao.data;
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.entity.SearchResultBlock;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+public interface ISearchResultBlockDao extends JpaRepository<SearchResultBlock, Long> {
+
+	/**
+	 * Returns the blocks containing any results with an index between <code>theFrom</code> (inclusive)
+	 * and <code>theTo</code> (exclusive), in order
+	 */
+	@Query(value = "SELECT b FROM SearchResultBlock b WHERE b.mySearchPid = :search AND b.myFirstIndex < :to AND (b.myFirstIndex + b.myResultCount) > :from ORDER BY b.myFirstIndex ASC")
+	List<SearchResultBlock> findForSearchInRange(@Param("search") Long theSearchPid, @Param("from") int theFrom, @Param("to") int theTo);
+
+	@Query(value = "SELECT b FROM SearchResultBlock b WHERE b.mySearchPid = :search ORDER BY b.myFirstIndex ASC")
+	List<SearchResultBlock> findForSearch(@Param("search") Long theSearchPid);
+
+	@Modifying
+	@Query(value = "DELETE FROM SearchResultBlock b WHERE b.mySearchPid = :search")
+	void deleteForSearch(@Param("search") Long theSearchPid);
+}
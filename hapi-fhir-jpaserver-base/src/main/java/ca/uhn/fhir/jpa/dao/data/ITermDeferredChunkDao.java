@@ -0,0 +1,62 @@
+package ca.uhn.fhir.jpa.dao.data;
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import ca.uhn.fhir.jpa.entity.TermDeferredChunk;
+import ca.uhn.fhir.jpa.entity.TermDeferredChunkTypeEnum;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Date;
+import java.util.List;
+
+public interface ITermDeferredChunkDao extends JpaRepository<TermDeferredChunk, Long> {
+
+	/**
+	 * Returns the IDs of the oldest chunks of the given type which are not currently leased
+	 */
+	@Query("SELECT c.myId FROM TermDeferredChunk c WHERE c.myType = :type AND (c.myLeaseExpires IS NULL OR c.myLeaseExpires < :now) ORDER BY c.myId ASC")
+	List<Long> findUnleasedIds(Pageable thePage, @Param("type") TermDeferredChunkTypeEnum theType, @Param("now") Date theNow);
+
+	/**
+	 * Leases a chunk, as long as it is not already leased by someone else
+	 *
+	 * @return The number of updated chunks (1 if the lease was obtained, 0 otherwise)
+	 */
+	@Modifying
+	@Query("UPDATE TermDeferredChunk c SET c.myLeaseOwner = :owner, c.myLeaseExpires = :expires WHERE c.myId = :id AND (c.myLeaseExpires IS NULL OR c.myLeaseExpires < :now)")
+	int lease(@Param("id") Long theId, @Param("owner") String theOwner, @Param("now") Date theNow, @Param("expires") Date theExpires);
+
+	@Query("SELECT COUNT(c) FROM TermDeferredChunk c WHERE c.myType = :type")
+	long countByType(@Param("type") TermDeferredChunkTypeEnum theType);
+
+	@Query("SELECT COALESCE(SUM(c.myItemCount), 0) FROM TermDeferredChunk c WHERE c.myType = :type")
+	long countItemsByType(@Param("type") TermDeferredChunkTypeEnum theType);
+
+	@Modifying
+	@Query("DELETE FROM TermDeferredChunk c WHERE c.myCodeSystemVersionPid = :csv_pid")
+	int deleteForCodeSystemVersion(@Param("csv_pid") Long theCodeSystemVersionPid);
+
+}
@@ -398,6 +398,9 @@ public class FhirResourceDaoValueSetDstu3 extends FhirResourceDaoDstu3<ValueSet>
 													 boolean theUpdateVersion, Date theUpdateTime, boolean theForceUpdate, boolean theCreateNewHistoryEntry) {
 		ResourceTable retVal = super.updateEntity(theRequestDetails, theResource, theEntity, theDeletedTimestampOrNull, thePerformIndexing, theUpdateVersion, theUpdateTime, theForceUpdate, theCreateNewHistoryEntry);
 
+		// Cached expansions of other ValueSets may include this one
+		myHapiTerminologySvc.clearValueSetExpansionCache();
+
 		if (myDaoConfig.isPreExpandValueSetsExperimental()) {
 			if (retVal.getDeleted() == null) {
 				try {
@@ -23,6 +23,8 @@ package ca.uhn.fhir.jpa.dao.expunge;
 import ca.uhn.fhir.interceptor.api.HookParams;
 import ca.uhn.fhir.interceptor.api.IInterceptorBroadcaster;
 import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.jpa.dao.index.DecodedResourceTextCache;
+import ca.uhn.fhir.jpa.dao.index.IdHelperService;
 import ca.uhn.fhir.jpa.entity.*;
 import ca.uhn.fhir.jpa.model.entity.*;
 import ca.uhn.fhir.jpa.util.JpaInterceptorBroadcaster;
@@ -56,6 +58,10 @@ public class ExpungeEverythingService {
 	private PlatformTransactionManager myPlatformTransactionManager;
 	@Autowired
 	protected IInterceptorBroadcaster myInterceptorBroadcaster;
+	@Autowired
+	private IdHelperService myIdHelperService;
+	@Autowired
+	private DecodedResourceTextCache myDecodedResourceTextCache;
 
 	private TransactionTemplate myTxTemplate;
 
@@ -95,10 +101,12 @@ public class ExpungeEverythingService {
 		counter.addAndGet(expungeEverythingByType(ResourceIndexedCompositeStringUnique.class));
 		counter.addAndGet(expungeEverythingByType(ResourceLink.class));
 		counter.addAndGet(expungeEverythingByType(SearchResult.class));
+		counter.addAndGet(expungeEverythingByType(SearchResultBlock.class));
 		counter.addAndGet(expungeEverythingByType(SearchInclude.class));
 		counter.addAndGet(expungeEverythingByType(TermValueSetConceptDesignation.class));
 		counter.addAndGet(expungeEverythingByType(TermValueSetConcept.class));
 		counter.addAndGet(expungeEverythingByType(TermValueSet.class));
+		counter.addAndGet(expungeEverythingByType(TermDeferredChunk.class));
 		counter.addAndGet(expungeEverythingByType(TermConceptParentChildLink.class));
 		counter.addAndGet(expungeEverythingByType(TermConceptMapGroupElementTarget.class));
 		counter.addAndGet(expungeEverythingByType(TermConceptMapGroupElement.class));
@@ -128,6 +136,9 @@ public class ExpungeEverythingService {
 			return null;
 		});
 
+		myIdHelperService.clearCache();
+		myDecodedResourceTextCache.clearCache();
+
 		ourLog.info("COMPLETED GLOBAL $expunge - Deleted {} rows", counter.get());
 	}
 
@@ -26,6 +26,7 @@ import ca.uhn.fhir.interceptor.api.Pointcut;
 import ca.uhn.fhir.jpa.dao.DaoRegistry;
 import ca.uhn.fhir.jpa.dao.IFhirResourceDao;
 import ca.uhn.fhir.jpa.dao.data.*;
+import ca.uhn.fhir.jpa.dao.index.DecodedResourceTextCache;
 import ca.uhn.fhir.jpa.dao.index.IdHelperService;
 import ca.uhn.fhir.jpa.model.entity.ForcedId;
 import ca.uhn.fhir.jpa.model.entity.ResourceHistoryTable;
@@ -82,6 +83,8 @@ class ResourceExpungeService implements IResourceExpungeService {
 	@Autowired
 	private IdHelperService myIdHelperService;
 	@Autowired
+	private DecodedResourceTextCache myDecodedResourceTextCache;
+	@Autowired
 	private IResourceHistoryTagDao myResourceHistoryTagDao;
 	@Autowired
 	private IInterceptorBroadcaster myInterceptorBroadcaster;
@@ -154,6 +157,7 @@ class ResourceExpungeService implements IResourceExpungeService {
 		
 		myResourceHistoryTagDao.deleteAll(version.getTags());
 		myResourceHistoryTableDao.delete(version);
+		myDecodedResourceTextCache.invalidate(version.getResourceId());
 
 		theRemainingCount.decrementAndGet();
 	}
@@ -24,6 +24,8 @@ import ca.uhn.fhir.jpa.dao.DaoConfig;
 import ca.uhn.fhir.jpa.model.entity.*;
 import ca.uhn.fhir.jpa.searchparam.extractor.ResourceIndexedSearchParams;
 import ca.uhn.fhir.jpa.util.AddRemoveCount;
+import com.google.common.annotations.VisibleForTesting;
+import org.hibernate.Session;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -44,6 +46,7 @@ public class DaoSearchParamSynchronizer {
 
 	public AddRemoveCount synchronizeSearchParamsToDatabase(ResourceIndexedSearchParams theParams, ResourceTable theEntity, ResourceIndexedSearchParams existingParams) {
 		AddRemoveCount retVal = new AddRemoveCount();
+		enableJdbcBatching();
 
 		synchronize(theParams, theEntity, retVal, theParams.myStringParams, existingParams.myStringParams);
 		synchronize(theParams, theEntity, retVal, theParams.myTokenParams, existingParams.myTokenParams);
@@ -60,6 +63,43 @@ public class DaoSearchParamSynchronizer {
 		return retVal;
 	}
 
+	/**
+	 * Stores all of the index rows for an entity which is being created and
+	 * therefore can not have any existing rows. No comparison against existing
+	 * rows is performed, and each row is simply persisted so that the inserts can be
+	 * batched when the session is flushed.
+	 */
+	public AddRemoveCount addSearchParamsForNewEntity(ResourceIndexedSearchParams theParams, ResourceTable theEntity) {
+		AddRemoveCount retVal = new AddRemoveCount();
+		enableJdbcBatching();
+
+		persistAll(theParams, retVal, theParams.myStringParams);
+		persistAll(theParams, retVal, theParams.myTokenParams);
+		persistAll(theParams, retVal, theParams.myNumberParams);
+		persistAll(theParams, retVal, theParams.myQuantityParams);
+		persistAll(theParams, retVal, theParams.myDateParams);
+		persistAll(theParams, retVal, theParams.myUriParams);
+		persistAll(theParams, retVal, theParams.myCoordsParams);
+		persistAll(theParams, retVal, theParams.myLinks);
+
+		// make sure links are indexed
+		theEntity.setResourceLinks(theParams.myLinks);
+
+		return retVal;
+	}
+
+	private <T extends BaseResourceIndex> void persistAll(ResourceIndexedSearchParams theParams, AddRemoveCount theAddRemoveCount, Collection<T> theNewParams) {
+		theParams.calculateHashes(theNewParams);
+		for (T next : theNewParams) {
+			myEntityManager.persist(next);
+		}
+		theAddRemoveCount.addToAddCount(theNewParams.size());
+	}
+
+	/**
+	 * Rows are removed and added one index table at a time, so that the resulting
+	 * statements for each table are consecutive and can be sent as JDBC batches.
+	 */
 	private <T extends BaseResourceIndex> void synchronize(ResourceIndexedSearchParams theParams, ResourceTable theEntity, AddRemoveCount theAddRemoveCount, Collection<T> theNewParms, Collection<T> theExistingParms) {
 		theParams.calculateHashes(theNewParms);
 		List<T> quantitiesToRemove = subtract(theExistingParms, theNewParms);
@@ -70,7 +110,13 @@ public class DaoSearchParamSynchronizer {
 			theEntity.getParamsQuantity().remove(next);
 		}
 		for (T next : quantitiesToAdd) {
-			myEntityManager.merge(next);
+			if (next.getId() == null) {
+				// A brand new row, so there is nothing to merge with
+				myEntityManager.persist(next);
+			} else {
+				// A row which is reusing the ID of one that would otherwise have been removed
+				myEntityManager.merge(next);
+			}
 		}
 
 		theAddRemoveCount.addToAddCount(quantitiesToAdd.size());
@@ -106,8 +152,37 @@ public class DaoSearchParamSynchronizer {
 		}
 	}
 
+	/**
+	 * Makes sure the session uses a JDBC batch size of at least {@link DaoConfig#getIndexWriteBatchSize()},
+	 * unless a larger one is already in use. Hibernate only applies the batch size when the session
+	 * is flushed, so it can't be put back once the rows have been queued and stays in effect for the
+	 * rest of the session.
+	 */
+	private void enableJdbcBatching() {
+		int batchSize = myDaoConfig.getIndexWriteBatchSize();
+		if (batchSize <= 0) {
+			return;
+		}
 
+		Session session = myEntityManager.unwrap(Session.class);
+		Integer currentBatchSize = session.getJdbcBatchSize();
+		if (currentBatchSize == null) {
+			currentBatchSize = session.getSessionFactory().getSessionFactoryOptions().getJdbcBatchSize();
+		}
+		if (currentBatchSize < batchSize) {
+			session.setJdbcBatchSize(batchSize);
+		}
+	}
 
+	@VisibleForTesting
+	void setDaoConfigForUnitTest(DaoConfig theDaoConfig) {
+		myDaoConfig = theDaoConfig;
+	}
+
+	@VisibleForTesting
+	void setEntityManagerForUnitTest(EntityManager theEntityManager) {
+		myEntityManager = theEntityManager;
+	}
 
 	<T> List<T> subtract(Collection<T> theSubtractFrom, Collection<T> theToSubtract) {
 		assert theSubtractFrom != theToSubtract;
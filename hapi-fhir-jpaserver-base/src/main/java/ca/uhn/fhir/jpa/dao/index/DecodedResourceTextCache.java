@@ -0,0 +1,246 @@
+package ca.uhn.fhir.jpa.dao.index;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.jpa.dao.BaseHapiFhirDao;
+import ca.uhn.fhir.jpa.dao.DaoConfig;
+import ca.uhn.fhir.jpa.model.entity.ResourceEncodingEnum;
+import ca.uhn.fhir.parser.IParser;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.annotations.VisibleForTesting;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps recently read resources in memory, so that resources which are returned very
+ * frequently are not decompressed and parsed on every read.
+ * <p>
+ * Only the most recently read version of each resource is kept, keyed by the resource PID. A
+ * stored version is never modified, so an entry can only become stale when its resource is
+ * updated (in which case the version no longer matches) or expunged. Both cases are also
+ * invalidated explicitly.
+ * </p>
+ * <p>
+ * Each entry holds the decoded text of {@link ResourceEncodingEnum#JSONC compressed} versions
+ * (decoding uncompressed text is no more expensive than a cache lookup) and, once the version
+ * has been read a second time, the parsed resource. Parsed resources are mutable, so the
+ * cached resource is never handed out: each read gets a copy made with
+ * {@link ca.uhn.fhir.util.FhirTerser#cloneInto(org.hl7.fhir.instance.model.api.IBase, org.hl7.fhir.instance.model.api.IBase, boolean)}.
+ * </p>
+ * <p>
+ * The cache is disabled unless {@link DaoConfig#getDecodedResourceTextCacheSize()} is set.
+ * </p>
+ */
+@Service
+public class DecodedResourceTextCache {
+
+	private static final Logger ourLog = LoggerFactory.getLogger(DecodedResourceTextCache.class);
+	private final AtomicLong myParsedResourceHitCount = new AtomicLong();
+	@Autowired
+	private DaoConfig myDaoConfig;
+	private volatile Cache<Long, CachedResource> myCache;
+	private volatile int myCacheSize;
+
+	/**
+	 * Returns the decoded text of a stored resource version, using the cached copy if there is one
+	 */
+	public String decodeResource(Long theResourcePid, long theVersion, byte[] theResourceBytes, ResourceEncodingEnum theResourceEncoding) {
+		Cache<Long, CachedResource> cache = getCache();
+		if (cache == null || theResourcePid == null || theResourceEncoding == ResourceEncodingEnum.DEL) {
+			return BaseHapiFhirDao.decodeResource(theResourceBytes, theResourceEncoding);
+		}
+
+		CachedResource cached = cache.getIfPresent(theResourcePid);
+		if (cached != null && cached.getVersion() == theVersion) {
+			cached.markSeenAgain();
+			if (cached.getText() != null) {
+				return cached.getText();
+			}
+		}
+
+		String retVal = BaseHapiFhirDao.decodeResource(theResourceBytes, theResourceEncoding);
+		String textToCache = theResourceEncoding == ResourceEncodingEnum.JSONC ? retVal : null;
+		if (cached != null && cached.getVersion() == theVersion) {
+			cached.setText(textToCache);
+		} else {
+			cache.put(theResourcePid, new CachedResource(theVersion, textToCache));
+		}
+		return retVal;
+	}
+
+	/**
+	 * Returns a new copy of the cached parsed resource for the given version, or <code>null</code>
+	 * if it is not cached as the given type
+	 */
+	@SuppressWarnings("unchecked")
+	public <R extends IBaseResource> R getParsedResourceCopyOrNull(FhirContext theContext, Long theResourcePid, long theVersion, Class<R> theResourceType) {
+		Cache<Long, CachedResource> cache = getCache();
+		if (cache == null || theResourcePid == null) {
+			return null;
+		}
+
+		CachedResource cached = cache.getIfPresent(theResourcePid);
+		if (cached == null || cached.getVersion() != theVersion) {
+			return null;
+		}
+		IBaseResource parsed = cached.getParsed();
+		if (parsed == null || !parsed.getClass().equals(theResourceType) || parsed.getStructureFhirVersionEnum() != theContext.getVersion().getVersion()) {
+			return null;
+		}
+
+		R retVal = (R) theContext.getResourceDefinition(theResourceType).newInstance();
+		theContext.newTerser().cloneInto(parsed, retVal, false);
+		myParsedResourceHitCount.incrementAndGet();
+		return retVal;
+	}
+
+	/**
+	 * Caches a copy of a resource which has just been parsed from the given version. This is only
+	 * done if the version has been read before, so that resources which are only read once don't pay
+	 * for the copy. The given resource itself is not kept, since the caller goes on to modify it.
+	 */
+	public void putParsedResource(FhirContext theContext, Long theResourcePid, long theVersion, IBaseResource theResource) {
+		Cache<Long, CachedResource> cache = getCache();
+		if (cache == null || theResourcePid == null || theResource == null) {
+			return;
+		}
+
+		CachedResource cached = cache.getIfPresent(theResourcePid);
+		if (cached == null || cached.getVersion() != theVersion || !cached.isSeenAgain() || cached.getParsed() != null) {
+			return;
+		}
+
+		/*
+		 * The copy is only cached if it encodes exactly like the original, since cloneInto
+		 * only copies what the model definitions declare (e.g. it doesn't copy the extensions
+		 * on primitive values). This check happens once per version.
+		 */
+		IBaseResource copy = theContext.getResourceDefinition(theResource).newInstance();
+		try {
+			theContext.newTerser().cloneInto(theResource, copy, false);
+			IParser parser = theContext.newJsonParser();
+			if (!parser.encodeResourceToString(theResource).equals(parser.encodeResourceToString(copy))) {
+				ourLog.debug("Not caching parsed resource with PID {} as it can't be copied exactly", theResourcePid);
+				return;
+			}
+		} catch (RuntimeException e) {
+			ourLog.debug("Not caching parsed resource with PID {}: {}", theResourcePid, e.toString());
+			return;
+		}
+
+		cached.setParsed(copy);
+	}
+
+	/**
+	 * Discards any cached text for the given resource. Called whenever the resource is written or expunged.
+	 */
+	public void invalidate(Long theResourcePid) {
+		Cache<Long, CachedResource> cache = myCache;
+		if (cache != null && theResourcePid != null) {
+			cache.invalidate(theResourcePid);
+		}
+	}
+
+	/**
+	 * Discards all cached text. Called when everything is expunged.
+	 */
+	public void clearCache() {
+		Cache<Long, CachedResource> cache = myCache;
+		if (cache != null) {
+			cache.invalidateAll();
+		}
+	}
+
+	private Cache<Long, CachedResource> getCache() {
+		int cacheSize = myDaoConfig.getDecodedResourceTextCacheSize();
+		if (cacheSize != myCacheSize) {
+			synchronized (this) {
+				if (cacheSize != myCacheSize) {
+					myCache = cacheSize > 0 ? Caffeine.newBuilder().maximumSize(cacheSize).<Long, CachedResource>build() : null;
+					myCacheSize = cacheSize;
+				}
+			}
+		}
+		return myCache;
+	}
+
+	@VisibleForTesting
+	void setDaoConfigForUnitTest(DaoConfig theDaoConfig) {
+		myDaoConfig = theDaoConfig;
+	}
+
+	/**
+	 * Returns the number of reads which were answered with a copy of a cached parsed resource
+	 */
+	@VisibleForTesting
+	public long getParsedResourceHitCountForUnitTest() {
+		return myParsedResourceHitCount.get();
+	}
+
+	private static class CachedResource {
+		private final long myVersion;
+		private volatile String myText;
+		private volatile IBaseResource myParsed;
+		private volatile boolean mySeenAgain;
+
+		CachedResource(long theVersion, String theText) {
+			myVersion = theVersion;
+			myText = theText;
+		}
+
+		long getVersion() {
+			return myVersion;
+		}
+
+		String getText() {
+			return myText;
+		}
+
+		void setText(String theText) {
+			myText = theText;
+		}
+
+		IBaseResource getParsed() {
+			return myParsed;
+		}
+
+		void setParsed(IBaseResource theParsed) {
+			myParsed = theParsed;
+		}
+
+		boolean isSeenAgain() {
+			return mySeenAgain;
+		}
+
+		void markSeenAgain() {
+			mySeenAgain = true;
+		}
+	}
+
+}
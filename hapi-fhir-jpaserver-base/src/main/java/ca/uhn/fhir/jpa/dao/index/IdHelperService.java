@@ -32,29 +32,165 @@ import ca.uhn.fhir.model.primitive.IdDt;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
 import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.MultimapBuilder;
 import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.time.DateUtils;
 import org.hl7.fhir.instance.model.api.IIdType;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.annotation.Nonnull;
+import javax.annotation.PostConstruct;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 import static org.apache.commons.lang3.StringUtils.isBlank;
 
+/**
+ * Translates between client assigned (forced) resource IDs and resource PIDs.
+ * <p>
+ * Translations are cached in both directions. A forced ID is only ever removed from the
+ * database by an expunge, so when expunging is disabled the mappings can never change and
+ * cached entries are kept until they are evicted by size. When expunging is enabled, another
+ * server in the cluster could expunge a resource and reuse its ID, so cached entries are only
+ * trusted for {@link #CACHE_EXPIRY_WHEN_EXPUNGE_ENABLED_MILLIS}. This also applies to entries
+ * which were cached before expunging was enabled. Expunges performed by this server are removed
+ * from the cache immediately.
+ * </p>
+ */
 @Service
 public class IdHelperService {
+	static final long CACHE_EXPIRY_WHEN_EXPUNGE_ENABLED_MILLIS = DateUtils.MILLIS_PER_MINUTE;
+	private static final int CACHE_SIZE = 100000;
+	private static final int MAX_IDS_PER_QUERY = 500;
+	private static final String PRE_RESOLVED_FORCED_IDS = IdHelperService.class.getName() + "_PRE_RESOLVED_FORCED_IDS";
 	@Autowired
 	protected IForcedIdDao myForcedIdDao;
 	@Autowired(required = true)
 	private DaoConfig myDaoConfig;
 	@Autowired
 	private IInterceptorBroadcaster myInterceptorBroadcaster;
+	private Cache<String, Long> myForcedIdToPidCache;
+	private Cache<Long, Optional<String>> myPidToForcedIdCache;
+	private Ticker myTicker = Ticker.systemTicker();
+
+	@PostConstruct
+	public void start() {
+		myForcedIdToPidCache = Caffeine.newBuilder()
+			.maximumSize(CACHE_SIZE)
+			.expireAfter(new ExpungeAwareExpiry<String, Long>())
+			.ticker(myTicker)
+			.build();
+		myPidToForcedIdCache = Caffeine.newBuilder()
+			.maximumSize(CACHE_SIZE)
+			.expireAfter(new ExpungeAwareExpiry<Long, Optional<String>>())
+			.ticker(myTicker)
+			.build();
+	}
 
 	public void delete(ForcedId forcedId) {
 		myForcedIdDao.delete(forcedId);
+		myForcedIdToPidCache.invalidate(toCacheKey(forcedId.getResourceType(), forcedId.getForcedId()));
+		myPidToForcedIdCache.invalidate(forcedId.getResourcePid());
+	}
+
+	/**
+	 * Discards all cached translations. Called when everything is expunged.
+	 */
+	public void clearCache() {
+		myForcedIdToPidCache.invalidateAll();
+		myPidToForcedIdCache.invalidateAll();
+	}
+
+	/**
+	 * Resolves a batch of IDs up front (e.g. every reference target in a transaction Bundle) using
+	 * one query per resource type, so that subsequent calls to {@link #translateForcedIdToPid(String, String, RequestDetails)}
+	 * for the same request do not need to hit the database. IDs which can not be found are not
+	 * remembered, since they may be created later in the same request.
+	 *
+	 * @return The PIDs of any resources which were found
+	 */
+	public Set<Long> preResolveForcedIds(Collection<IIdType> theIds, RequestDetails theRequest) {
+		Set<Long> retVal = new HashSet<>();
+		Map<String, Long> preResolved = getPreResolvedForcedIds(theRequest);
+
+		ListMultimap<String, String> typeToIds = MultimapBuilder.hashKeys().arrayListValues().build();
+		for (IIdType nextId : theIds) {
+			if (!nextId.hasResourceType() || !nextId.hasIdPart()) {
+				continue;
+			}
+			if (myDaoConfig.getResourceClientIdStrategy() != DaoConfig.ClientIdStrategyEnum.ANY && isValidPid(nextId)) {
+				retVal.add(nextId.getIdPartAsLong());
+				continue;
+			}
+			String cacheKey = toCacheKey(nextId.getResourceType(), nextId.getIdPart());
+			Long pid = myForcedIdToPidCache.getIfPresent(cacheKey);
+			if (pid == null && preResolved != null) {
+				pid = preResolved.get(cacheKey);
+			}
+			if (pid != null) {
+				retVal.add(pid);
+			} else if (!typeToIds.containsEntry(nextId.getResourceType(), nextId.getIdPart())) {
+				typeToIds.put(nextId.getResourceType(), nextId.getIdPart());
+			}
+		}
+
+		Map<String, Long> found = new HashMap<>();
+		for (Map.Entry<String, Collection<String>> nextEntry : typeToIds.asMap().entrySet()) {
+			String nextResourceType = nextEntry.getKey();
+			for (List<String> nextIds : Lists.partition(new ArrayList<>(nextEntry.getValue()), MAX_IDS_PER_QUERY)) {
+				for (Object[] next : myForcedIdDao.findForcedIdAndPidByTypeAndForcedId(nextResourceType, nextIds)) {
+					Long pid = (Long) next[1];
+					found.put(toCacheKey(nextResourceType, (String) next[0]), pid);
+					retVal.add(pid);
+				}
+			}
+		}
+
+		if (theRequest != null && !found.isEmpty()) {
+			if (preResolved == null) {
+				preResolved = new HashMap<>();
+				theRequest.getUserData().put(PRE_RESOLVED_FORCED_IDS, preResolved);
+			}
+			preResolved.putAll(found);
+		}
+		afterCommit(() -> myForcedIdToPidCache.putAll(found));
+
+		return retVal;
+	}
+
+	/**
+	 * Remembers the PID of a resource created with a client assigned ID during the current request,
+	 * so that later references to it in the same request can be resolved without a query
+	 */
+	public void addPreResolvedForcedId(RequestDetails theRequest, String theResourceType, String theForcedId, Long thePid) {
+		if (theRequest == null) {
+			return;
+		}
+		Map<String, Long> preResolved = getPreResolvedForcedIds(theRequest);
+		if (preResolved == null) {
+			preResolved = new HashMap<>();
+			theRequest.getUserData().put(PRE_RESOLVED_FORCED_IDS, preResolved);
+		}
+		preResolved.put(toCacheKey(theResourceType, theForcedId), thePid);
+	}
+
+	/**
+	 * Discards any IDs that were resolved by {@link #preResolveForcedIds(Collection, RequestDetails)}
+	 */
+	public void clearPreResolvedForcedIds(RequestDetails theRequest) {
+		if (theRequest != null) {
+			theRequest.getUserData().remove(PRE_RESOLVED_FORCED_IDS);
+		}
 	}
 
 	/**
@@ -72,7 +208,7 @@ public class IdHelperService {
 	public Long translateForcedIdToPid(String theResourceName, String theResourceId, RequestDetails theRequestDetails) throws ResourceNotFoundException {
 		// We only pass 1 input in so only 0..1 will come back
 		IdDt id = new IdDt(theResourceName, theResourceId);
-		List<Long> matches = translateForcedIdToPids(myDaoConfig, myInterceptorBroadcaster, theRequestDetails, myForcedIdDao, Collections.singletonList(id));
+		List<Long> matches = translateForcedIdToPids(Collections.singletonList(id), theRequestDetails);
 		assert matches.size() <= 1;
 		if (matches.isEmpty()) {
 			throw new ResourceNotFoundException(id);
@@ -80,11 +216,7 @@ public class IdHelperService {
 		return matches.get(0);
 	}
 
-	public List<Long> translateForcedIdToPids(Collection<IIdType> theId, RequestDetails theRequestDetails) {
-		return IdHelperService.translateForcedIdToPids(myDaoConfig, myInterceptorBroadcaster, theRequestDetails, myForcedIdDao, theId);
-	}
-
-	private static List<Long> translateForcedIdToPids(DaoConfig theDaoConfig, IInterceptorBroadcaster theInterceptorBroadcaster, RequestDetails theRequest, IForcedIdDao theForcedIdDao, Collection<IIdType> theId) {
+	public List<Long> translateForcedIdToPids(Collection<IIdType> theId, RequestDetails theRequest) {
 		theId.forEach(id -> Validate.isTrue(id.hasIdPart()));
 
 		if (theId.isEmpty()) {
@@ -94,12 +226,25 @@ public class IdHelperService {
 		List<Long> retVal = new ArrayList<>();
 
 		ListMultimap<String, String> typeToIds = MultimapBuilder.hashKeys().arrayListValues().build();
+		Set<String> cacheHits = new HashSet<>();
+		Map<String, Long> preResolved = getPreResolvedForcedIds(theRequest);
 		for (IIdType nextId : theId) {
-			if (theDaoConfig.getResourceClientIdStrategy() != DaoConfig.ClientIdStrategyEnum.ANY && isValidPid(nextId)) {
+			if (myDaoConfig.getResourceClientIdStrategy() != DaoConfig.ClientIdStrategyEnum.ANY && isValidPid(nextId)) {
 				retVal.add(nextId.getIdPartAsLong());
 			} else {
 				if (nextId.hasResourceType()) {
-					typeToIds.put(nextId.getResourceType(), nextId.getIdPart());
+					String cacheKey = toCacheKey(nextId.getResourceType(), nextId.getIdPart());
+					Long cachedPid = myForcedIdToPidCache.getIfPresent(cacheKey);
+					if (cachedPid == null && preResolved != null) {
+						cachedPid = preResolved.get(cacheKey);
+					}
+					if (cachedPid != null) {
+						if (cacheHits.add(cacheKey)) {
+							retVal.add(cachedPid);
+						}
+					} else {
+						typeToIds.put(nextId.getResourceType(), nextId.getIdPart());
+					}
 				} else {
 					typeToIds.put("", nextId.getIdPart());
 				}
@@ -117,27 +262,88 @@ public class IdHelperService {
 					.add(RequestDetails.class, theRequest)
 					.addIfMatchesType(ServletRequestDetails.class, theRequest)
 					.add(StorageProcessingMessage.class, msg);
-				JpaInterceptorBroadcaster.doCallHooks(theInterceptorBroadcaster, theRequest, Pointcut.JPA_PERFTRACE_WARNING, params);
+				JpaInterceptorBroadcaster.doCallHooks(myInterceptorBroadcaster, theRequest, Pointcut.JPA_PERFTRACE_WARNING, params);
 
-				retVal.addAll(theForcedIdDao.findByForcedId(nextIds));
+				retVal.addAll(myForcedIdDao.findByForcedId(nextIds));
 
 			} else {
-				retVal.addAll(theForcedIdDao.findByTypeAndForcedId(nextResourceType, nextIds));
+				Map<String, Long> found = new HashMap<>();
+				for (Object[] next : myForcedIdDao.findForcedIdAndPidByTypeAndForcedId(nextResourceType, nextIds)) {
+					String forcedId = (String) next[0];
+					Long pid = (Long) next[1];
+					retVal.add(pid);
+					found.put(toCacheKey(nextResourceType, forcedId), pid);
+				}
+				afterCommit(() -> myForcedIdToPidCache.putAll(found));
 			}
 		}
 
-			return retVal;
+		return retVal;
 	}
 
 	String translatePidIdToForcedId(String theResourceType, Long theId) {
-		ForcedId forcedId = myForcedIdDao.findByResourcePid(theId);
-		if (forcedId != null) {
-			return forcedId.getResourceType() + '/' + forcedId.getForcedId();
+		Optional<String> forcedId = myPidToForcedIdCache.getIfPresent(theId);
+		if (forcedId == null) {
+			ForcedId forcedIdEntity = myForcedIdDao.findByResourcePid(theId);
+			if (forcedIdEntity != null) {
+				forcedId = Optional.of(forcedIdEntity.getResourceType() + '/' + forcedIdEntity.getForcedId());
+			} else {
+				forcedId = Optional.empty();
+			}
+			Optional<String> toCache = forcedId;
+			afterCommit(() -> myPidToForcedIdCache.put(theId, toCache));
+		}
+
+		return forcedId.orElse(theResourceType + '/' + theId.toString());
+	}
+
+	@VisibleForTesting
+	void setDaoConfigForUnitTest(DaoConfig theDaoConfig) {
+		myDaoConfig = theDaoConfig;
+	}
+
+	@VisibleForTesting
+	void setForcedIdDaoForUnitTest(IForcedIdDao theForcedIdDao) {
+		myForcedIdDao = theForcedIdDao;
+	}
+
+	/**
+	 * Must be called before {@link #start()}
+	 */
+	@VisibleForTesting
+	void setTickerForUnitTest(Ticker theTicker) {
+		myTicker = theTicker;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map<String, Long> getPreResolvedForcedIds(RequestDetails theRequest) {
+		if (theRequest == null) {
+			return null;
+		}
+		return (Map<String, Long>) theRequest.getUserData().get(PRE_RESOLVED_FORCED_IDS);
+	}
+
+	/**
+	 * Translations which were read inside a transaction are only cached once the transaction
+	 * commits, since they may refer to resources created by that transaction
+	 */
+	private static void afterCommit(Runnable theRunnable) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					theRunnable.run();
+				}
+			});
 		} else {
-			return theResourceType + '/' + theId.toString();
+			theRunnable.run();
 		}
 	}
 
+	private static String toCacheKey(String theResourceType, String theForcedId) {
+		return theResourceType + '/' + theForcedId;
+	}
+
 	public static boolean isValidPid(IIdType theId) {
 		if (theId == null || theId.getIdPart() == null) {
 			return false;
@@ -151,4 +357,29 @@ public class IdHelperService {
 		}
 		return true;
 	}
+
+	private class ExpungeAwareExpiry<K, V> implements Expiry<K, V> {
+
+		@Override
+		public long expireAfterCreate(@Nonnull K theKey, @Nonnull V theValue, long theCurrentTime) {
+			if (myDaoConfig.isExpungeEnabled()) {
+				return TimeUnit.MILLISECONDS.toNanos(CACHE_EXPIRY_WHEN_EXPUNGE_ENABLED_MILLIS);
+			}
+			return Long.MAX_VALUE;
+		}
+
+		@Override
+		public long expireAfterUpdate(@Nonnull K theKey, @Nonnull V theValue, long theCurrentTime, long theCurrentDuration) {
+			return expireAfterCreate(theKey, theValue, theCurrentTime);
+		}
+
+		/**
+		 * An entry which was cached while expunging was disabled would otherwise never
+		 * expire, so its lifetime is shortened the next time it is read
+		 */
+		@Override
+		public long expireAfterRead(@Nonnull K theKey, @Nonnull V theValue, long theCurrentTime, long theCurrentDuration) {
+			return Math.min(theCurrentDuration, expireAfterCreate(theKey, theValue, theCurrentTime));
+		}
+	}
 }
@@ -0,0 +1,108 @@
+package ca.uhn.fhir.jpa.entity;
+
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.rest.api.Constants;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * A single resource type being exported as a part of a {@link BulkExportJobEntity}
+ */
+@Entity
+@Table(name = "HFJ_BLK_EXPORT_COLLECTION")
+public class BulkExportCollectionEntity implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.AUTO, generator = "SEQ_BLKEXCOL_PID")
+	@SequenceGenerator(name = "SEQ_BLKEXCOL_PID", sequenceName = "SEQ_BLKEXCOL_PID")
+	@Column(name = "PID")
+	private Long myId;
+	@ManyToOne
+	@JoinColumn(name = "JOB_PID", referencedColumnName = "PID", nullable = false, foreignKey = @ForeignKey(name = "FK_BLKEXCOL_JOB"))
+	private BulkExportJobEntity myJob;
+	@Column(name = "RES_TYPE", length = Constants.MAX_RESOURCE_NAME_LENGTH, nullable = false)
+	private String myResourceType;
+	/**
+	 * The highest resource PID that has already been written to a file for this
+	 * collection. Resources are exported in ascending PID order, so this
+	 * allows an interrupted export to resume where it left off.
+	 */
+	@Column(name = "LAST_PID", nullable = true)
+	private Long myLastPid;
+	@OneToMany(fetch = FetchType.LAZY, mappedBy = "myCollection")
+	private Collection<BulkExportCollectionFileEntity> myFiles;
+	@Version
+	@Column(name = "OPTLOCK", nullable = false)
+	private int myVersion;
+
+	public Long getId() {
+		return myId;
+	}
+
+	public BulkExportJobEntity getJob() {
+		return myJob;
+	}
+
+	public void setJob(BulkExportJobEntity theJob) {
+		myJob = theJob;
+	}
+
+	public String getResourceType() {
+		return myResourceType;
+	}
+
+	public void setResourceType(String theResourceType) {
+		myResourceType = theResourceType;
+	}
+
+	public Long getLastPid() {
+		return myLastPid;
+	}
+
+	public void setLastPid(Long theLastPid) {
+		myLastPid = theLastPid;
+	}
+
+	public Collection<BulkExportCollectionFileEntity> getFiles() {
+		if (myFiles == null) {
+			myFiles = new ArrayList<>();
+		}
+		return myFiles;
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+			.append("id", myId)
+			.append("resourceType", myResourceType)
+			.append("lastPid", myLastPid)
+			.toString();
+	}
+}
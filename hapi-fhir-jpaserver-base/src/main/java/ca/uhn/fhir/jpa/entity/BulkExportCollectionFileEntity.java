@@ -0,0 +1,84 @@
+package ca.uhn.fhir.jpa.entity;
+
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import javax.persistence.*;
+import java.io.Serializable;
+
+/**
+ * A single NDJSON file produced for a {@link BulkExportCollectionEntity}. The
+ * file contents are stored as a Binary resource.
+ */
+@Entity
+@Table(name = "HFJ_BLK_EXPORT_COLFILE")
+public class BulkExportCollectionFileEntity implements Serializable {
+
+	public static final int RESOURCE_ID_LENGTH = 100;
+	private static final long serialVersionUID = 1L;
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.AUTO, generator = "SEQ_BLKEXCOLFILE_PID")
+	@SequenceGenerator(name = "SEQ_BLKEXCOLFILE_PID", sequenceName = "SEQ_BLKEXCOLFILE_PID")
+	@Column(name = "PID")
+	private Long myId;
+	@ManyToOne(fetch = FetchType.LAZY)
+	@JoinColumn(name = "COLLECTION_PID", referencedColumnName = "PID", nullable = false, foreignKey = @ForeignKey(name = "FK_BLKEXCOLFILE_COLLECT"))
+	private BulkExportCollectionEntity myCollection;
+	@Column(name = "RES_ID", length = RESOURCE_ID_LENGTH, nullable = false)
+	private String myResourceId;
+	@Column(name = "RES_COUNT", nullable = false)
+	private int myResourceCount;
+
+	public Long getId() {
+		return myId;
+	}
+
+	public BulkExportCollectionEntity getCollection() {
+		return myCollection;
+	}
+
+	public void setCollection(BulkExportCollectionEntity theCollection) {
+		myCollection = theCollection;
+	}
+
+	/**
+	 * The ID of the Binary resource holding the file contents
+	 */
+	public String getResourceId() {
+		return myResourceId;
+	}
+
+	/**
+	 * The ID of the Binary resource holding the file contents
+	 */
+	public void setResourceId(String theResourceId) {
+		myResourceId = theResourceId;
+	}
+
+	public int getResourceCount() {
+		return myResourceCount;
+	}
+
+	public void setResourceCount(int theResourceCount) {
+		myResourceCount = theResourceCount;
+	}
+}
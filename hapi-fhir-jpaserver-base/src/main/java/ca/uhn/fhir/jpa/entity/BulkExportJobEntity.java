@@ -0,0 +1,244 @@
+package ca.uhn.fhir.jpa.entity;
+
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.bulk.BulkExportStyleEnum;
+import ca.uhn.fhir.jpa.bulk.BulkJobStatusEnum;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+import org.hl7.fhir.r4.model.InstantType;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+import static org.apache.commons.lang3.StringUtils.left;
+
+@Entity
+@Table(name = "HFJ_BLK_EXPORT_JOB", uniqueConstraints = {
+	@UniqueConstraint(name = "IDX_BLKEX_JOB_ID", columnNames = "JOB_ID")
+}, indexes = {
+	@Index(name = "IDX_BLKEX_EXPTIME", columnList = "EXP_TIME"),
+	@Index(name = "IDX_BLKEX_STATUS", columnList = "JOB_STATUS")
+})
+public class BulkExportJobEntity implements Serializable {
+
+	public static final int REQUEST_LENGTH = 500;
+	public static final int STATUS_MESSAGE_LEN = 500;
+	public static final int GROUP_ID_LENGTH = 200;
+	public static final int OUTPUT_FORMAT_LENGTH = 50;
+	private static final long serialVersionUID = 1L;
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.AUTO, generator = "SEQ_BLKEXJOB_PID")
+	@SequenceGenerator(name = "SEQ_BLKEXJOB_PID", sequenceName = "SEQ_BLKEXJOB_PID")
+	@Column(name = "PID")
+	private Long myId;
+	@Column(name = "JOB_ID", length = Search.UUID_COLUMN_LENGTH, nullable = false, updatable = false)
+	private String myJobId;
+	@Enumerated(EnumType.STRING)
+	@Column(name = "JOB_STATUS", length = 10, nullable = false)
+	private BulkJobStatusEnum myStatus;
+	@Enumerated(EnumType.STRING)
+	@Column(name = "EXP_STYLE", length = 10, nullable = false, updatable = false)
+	private BulkExportStyleEnum myExportStyle;
+	@Column(name = "GROUP_ID", length = GROUP_ID_LENGTH, nullable = true, updatable = false)
+	private String myGroupId;
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(name = "CREATED_TIME", nullable = false, updatable = false)
+	private Date myCreated;
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(name = "STATUS_TIME", nullable = false)
+	private Date myStatusTime;
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(name = "EXP_TIME", nullable = true)
+	private Date myExpiry;
+	@Column(name = "REQUEST", nullable = false, length = REQUEST_LENGTH)
+	private String myRequest;
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(name = "EXP_SINCE", nullable = true)
+	private Date mySince;
+	@Column(name = "STATUS_MESSAGE", nullable = true, length = STATUS_MESSAGE_LEN)
+	private String myStatusMessage;
+	@Column(name = "OUTPUT_FORMAT", nullable = false, length = OUTPUT_FORMAT_LENGTH, updatable = false)
+	private String myOutputFormat;
+	/**
+	 * Identifies the claim under which the job is currently being built. A new
+	 * value is assigned each time a server claims (or reclaims) the job, and
+	 * all progress updates are conditional on it, so a server whose claim has
+	 * been taken over can no longer modify the job.
+	 */
+	@Column(name = "OWNER_ID", nullable = true, length = Search.UUID_COLUMN_LENGTH)
+	private String myOwnerId;
+	@OneToMany(fetch = FetchType.LAZY, mappedBy = "myJob")
+	private Collection<BulkExportCollectionEntity> myCollections;
+	@Version
+	@Column(name = "OPTLOCK", nullable = false)
+	private int myVersion;
+
+	public Long getId() {
+		return myId;
+	}
+
+	public String getJobId() {
+		return myJobId;
+	}
+
+	public void setJobId(String theJobId) {
+		myJobId = theJobId;
+	}
+
+	public BulkJobStatusEnum getStatus() {
+		return myStatus;
+	}
+
+	/**
+	 * Sets the status, and updates the status time to the current time
+	 */
+	public void setStatus(BulkJobStatusEnum theStatus) {
+		if (myStatus != theStatus) {
+			myStatusTime = new Date();
+			myStatus = theStatus;
+		}
+	}
+
+	public BulkExportStyleEnum getExportStyle() {
+		return myExportStyle;
+	}
+
+	public void setExportStyle(BulkExportStyleEnum theExportStyle) {
+		myExportStyle = theExportStyle;
+	}
+
+	public String getGroupId() {
+		return myGroupId;
+	}
+
+	public void setGroupId(String theGroupId) {
+		myGroupId = theGroupId;
+	}
+
+	public Date getCreated() {
+		return myCreated;
+	}
+
+	public void setCreated(Date theCreated) {
+		myCreated = theCreated;
+	}
+
+	public Date getStatusTime() {
+		return myStatusTime;
+	}
+
+	public void setStatusTime(Date theStatusTime) {
+		myStatusTime = theStatusTime;
+	}
+
+	public Date getExpiry() {
+		return myExpiry;
+	}
+
+	public void setExpiry(Date theExpiry) {
+		myExpiry = theExpiry;
+	}
+
+	public String getRequest() {
+		return myRequest;
+	}
+
+	public void setRequest(String theRequest) {
+		myRequest = left(theRequest, REQUEST_LENGTH);
+	}
+
+	public Date getSince() {
+		if (mySince != null) {
+			return new Date(mySince.getTime());
+		}
+		return null;
+	}
+
+	public void setSince(Date theSince) {
+		mySince = theSince;
+	}
+
+	public String getStatusMessage() {
+		return myStatusMessage;
+	}
+
+	public void setStatusMessage(String theStatusMessage) {
+		myStatusMessage = left(theStatusMessage, STATUS_MESSAGE_LEN);
+	}
+
+	public String getOutputFormat() {
+		return myOutputFormat;
+	}
+
+	public void setOutputFormat(String theOutputFormat) {
+		myOutputFormat = theOutputFormat;
+	}
+
+	public String getOwnerId() {
+		return myOwnerId;
+	}
+
+	public void setOwnerId(String theOwnerId) {
+		myOwnerId = theOwnerId;
+	}
+
+	public Collection<BulkExportCollectionEntity> getCollections() {
+		if (myCollections == null) {
+			myCollections = new ArrayList<>();
+		}
+		return myCollections;
+	}
+
+	public int getVersion() {
+		return myVersion;
+	}
+
+	@Override
+	public String toString() {
+		ToStringBuilder b = new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE);
+		if (isNotBlank(myJobId)) {
+			b.append("jobId", myJobId);
+		}
+		if (myStatus != null) {
+			b.append("status", myStatus + " " + new InstantType(myStatusTime).getValueAsString());
+		}
+		b.append("style", myExportStyle);
+		if (myGroupId != null) {
+			b.append("groupId", myGroupId);
+		}
+		b.append("created", new InstantType(myCreated).getValueAsString());
+		b.append("expiry", myExpiry);
+		b.append("request", myRequest);
+		b.append("since", mySince);
+		b.append("outputFormat", myOutputFormat);
+		if (isNotBlank(myStatusMessage)) {
+			b.append("statusMessage", myStatusMessage);
+		}
+		return b.toString();
+	}
+}
@@ -58,6 +58,23 @@ public class ResourceReindexJobEntity implements Serializable {
 	private Date mySuspendedUntil;
 	@Column(name = "REINDEX_COUNT", nullable = true)
 	private Integer myReindexCount;
+	/**
+	 * Exclusive - Only used when clustered reindexing is enabled
+	 */
+	@Column(name = "RANGE_PID_HIGH", nullable = true)
+	private Long myRangePidHigh;
+
+	/**
+	 * The resource PID (exclusive) up to which {@link ResourceReindexJobRangeEntity ranges}
+	 * have been created for this job, or <code>null</code> if no ranges have been created yet
+	 */
+	public Long getRangePidHigh() {
+		return myRangePidHigh;
+	}
+
+	public void setRangePidHigh(Long theRangePidHigh) {
+		myRangePidHigh = theRangePidHigh;
+	}
 
 	public Integer getReindexCount() {
 		return myReindexCount;
@@ -128,6 +145,10 @@ public class ResourceReindexJobEntity implements Serializable {
 		myId = theId;
 	}
 
+	public boolean isDeleted() {
+		return myDeleted;
+	}
+
 	public void setDeleted(boolean theDeleted) {
 		myDeleted = theDeleted;
 	}
@@ -139,6 +160,9 @@ public class ResourceReindexJobEntity implements Serializable {
 			.append("resourceType", myResourceType)
 			.append("thresholdLow", myThresholdLow)
 			.append("thresholdHigh", myThresholdHigh);
+		if (myRangePidHigh != null) {
+			b.append("rangePidHigh", myRangePidHigh);
+		}
 		if (myDeleted) {
 			b.append("deleted", myDeleted);
 		}
@@ -0,0 +1,159 @@
+package ca.uhn.fhir.jpa.entity;
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * A range of resource PIDs belonging to a {@link ResourceReindexJobEntity reindex job}.
+ * Ranges are leased by one server at a time, and record how far through the range
+ * reindexing has progressed so that the range can be continued by another
+ * server if the lease expires.
+ */
+@Entity
+@Table(name = "HFJ_RES_REINDEX_RANGE", indexes = {
+	@Index(name = "IDX_REINDEXRANGE_JOB", columnList = "JOB_PID")
+})
+public class ResourceReindexJobRangeEntity implements Serializable {
+
+	public static final int MAX_LEASE_OWNER_LENGTH = 200;
+	private static final long serialVersionUID = 1L;
+
+	@Id
+	@SequenceGenerator(name = "SEQ_RES_REINDEX_RANGE", sequenceName = "SEQ_RES_REINDEX_RANGE")
+	@GeneratedValue(strategy = GenerationType.AUTO, generator = "SEQ_RES_REINDEX_RANGE")
+	@Column(name = "PID")
+	private Long myId;
+	@ManyToOne
+	@JoinColumn(name = "JOB_PID", referencedColumnName = "PID", nullable = false, foreignKey = @ForeignKey(name = "FK_REINDEXRANGE_JOB"))
+	private ResourceReindexJobEntity myJob;
+	@Column(name = "JOB_PID", insertable = false, updatable = false)
+	private Long myJobPid;
+	/**
+	 * Inclusive
+	 */
+	@Column(name = "PID_LOW", nullable = false)
+	private long myPidLow;
+	/**
+	 * Exclusive
+	 */
+	@Column(name = "PID_HIGH", nullable = false)
+	private long myPidHigh;
+	/**
+	 * Inclusive - Everything below this PID in the range has been reindexed
+	 */
+	@Column(name = "PID_NEXT", nullable = false)
+	private long myPidNext;
+	@Column(name = "RANGE_COMPLETE", nullable = false)
+	private boolean myComplete;
+	@Column(name = "REINDEX_COUNT", nullable = false)
+	private int myReindexCount;
+	@Column(name = "LEASE_OWNER", nullable = true, length = MAX_LEASE_OWNER_LENGTH)
+	private String myLeaseOwner;
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(name = "LEASE_EXPIRES", nullable = true)
+	private Date myLeaseExpires;
+
+	/**
+	 * Constructor
+	 */
+	public ResourceReindexJobRangeEntity() {
+		// nothing
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param thePidLow  The lowest PID in the range (inclusive)
+	 * @param thePidHigh The highest PID in the range (exclusive)
+	 */
+	public ResourceReindexJobRangeEntity(ResourceReindexJobEntity theJob, long thePidLow, long thePidHigh) {
+		myJob = theJob;
+		myJobPid = theJob.getId();
+		myPidLow = thePidLow;
+		myPidHigh = thePidHigh;
+		myPidNext = thePidLow;
+	}
+
+	public Long getId() {
+		return myId;
+	}
+
+	public Long getJobPid() {
+		return myJobPid;
+	}
+
+	public Date getLeaseExpires() {
+		return myLeaseExpires;
+	}
+
+	public String getLeaseOwner() {
+		return myLeaseOwner;
+	}
+
+	/**
+	 * Exclusive
+	 */
+	public long getPidHigh() {
+		return myPidHigh;
+	}
+
+	/**
+	 * Inclusive
+	 */
+	public long getPidLow() {
+		return myPidLow;
+	}
+
+	/**
+	 * The next PID to be reindexed (inclusive)
+	 */
+	public long getPidNext() {
+		return myPidNext;
+	}
+
+	public int getReindexCount() {
+		return myReindexCount;
+	}
+
+	public boolean isComplete() {
+		return myComplete;
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+			.append("id", myId)
+			.append("job", myJobPid)
+			.append("pidLow", myPidLow)
+			.append("pidHigh", myPidHigh)
+			.append("pidNext", myPidNext)
+			.append("complete", myComplete)
+			.append("leaseOwner", myLeaseOwner)
+			.toString();
+	}
+}
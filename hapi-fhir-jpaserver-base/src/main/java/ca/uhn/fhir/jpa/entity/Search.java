@@ -82,6 +82,8 @@ public class Search implements ICachedSearchDetails, Serializable {
 	private String myResourceType;
 	@OneToMany(mappedBy = "mySearch", fetch = FetchType.LAZY)
 	private Collection<SearchResult> myResults;
+	@Column(name = "RESULTS_IN_BLOCKS", nullable = true, updatable = false)
+	private Boolean myResultsInBlocks;
 	@NotNull
 	@Temporal(TemporalType.TIMESTAMP)
 	@Column(name = "SEARCH_LAST_RETURNED", nullable = false, updatable = false)
@@ -219,6 +221,18 @@ public class Search implements ICachedSearchDetails, Serializable {
 		myResourceType = theResourceType;
 	}
 
+	/**
+	 * Returns <code>true</code> if the results for this search are stored as compressed
+	 * {@link SearchResultBlock blocks} instead of as individual {@link SearchResult} rows
+	 */
+	public boolean isResultsInBlocks() {
+		return Boolean.TRUE.equals(myResultsInBlocks);
+	}
+
+	public void setResultsInBlocks(boolean theResultsInBlocks) {
+		myResultsInBlocks = theResultsInBlocks;
+	}
+
 	public Date getSearchLastReturned() {
 		return mySearchLastReturned;
 	}
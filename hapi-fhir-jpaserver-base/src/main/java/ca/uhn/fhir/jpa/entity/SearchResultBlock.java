@@ -0,0 +1,111 @@
+package ca.uhn.fhir.jpa.entity;
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.util.LongList;
+import ca.uhn.fhir.jpa.util.PidBlockCodec;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import javax.persistence.*;
+import java.io.Serializable;
+
+/**
+ * Stores a contiguous range of the results for a {@link Search} as a single
+ * compressed block (see {@link PidBlockCodec}), as an alternative to storing
+ * one {@link SearchResult} row per result. This is used when
+ * {@link ca.uhn.fhir.jpa.dao.DaoConfig#getSearchResultStorage()} is set to
+ * {@link ca.uhn.fhir.jpa.dao.DaoConfig.SearchResultStorageEnum#COMPRESSED_BLOCKS}.
+ * <p>
+ * The block holds the results with indexes <code>FIRST_INDEX</code> (inclusive)
+ * to <code>FIRST_INDEX + RESULT_COUNT</code> (exclusive) in the search.
+ * </p>
+ */
+@Entity
+@Table(name = "HFJ_SEARCH_RESULT_BLOCK", uniqueConstraints = {
+	@UniqueConstraint(name = "IDX_SEARCHRESBLK_FIRST", columnNames = {"SEARCH_PID", "FIRST_INDEX"})
+})
+public class SearchResultBlock implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	@GeneratedValue(strategy = GenerationType.AUTO, generator = "SEQ_SEARCH_RES_BLOCK")
+	@SequenceGenerator(name = "SEQ_SEARCH_RES_BLOCK", sequenceName = "SEQ_SEARCH_RES_BLOCK")
+	@Id
+	@Column(name = "PID")
+	private Long myId;
+	@ManyToOne
+	@JoinColumn(name = "SEARCH_PID", referencedColumnName = "PID", foreignKey = @ForeignKey(name = "FK_SEARCHRESBLK_SEARCH"))
+	private Search mySearch;
+	@Column(name = "SEARCH_PID", insertable = false, updatable = false, nullable = false)
+	private Long mySearchPid;
+	@Column(name = "FIRST_INDEX", nullable = false)
+	private int myFirstIndex;
+	@Column(name = "RESULT_COUNT", nullable = false)
+	private int myResultCount;
+	@Lob
+	@Column(name = "BLOCK_DATA", nullable = false)
+	private byte[] myBlockData;
+
+	/**
+	 * Constructor
+	 */
+	public SearchResultBlock() {
+		// nothing
+	}
+
+	/**
+	 * Constructor
+	 */
+	public SearchResultBlock(Search theSearch, int theFirstIndex, LongList theResourcePids) {
+		mySearch = theSearch;
+		myFirstIndex = theFirstIndex;
+		setResourcePids(theResourcePids);
+	}
+
+	public int getFirstIndex() {
+		return myFirstIndex;
+	}
+
+	public int getResultCount() {
+		return myResultCount;
+	}
+
+	/**
+	 * Decodes and returns the resource PIDs stored in this block
+	 */
+	public LongList getResourcePids() {
+		return PidBlockCodec.decode(myBlockData);
+	}
+
+	public void setResourcePids(LongList theResourcePids) {
+		myResultCount = theResourcePids.size();
+		myBlockData = PidBlockCodec.encode(theResourcePids);
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this)
+			.append("search", mySearchPid)
+			.append("firstIndex", myFirstIndex)
+			.append("resultCount", myResultCount)
+			.toString();
+	}
+}
@@ -0,0 +1,132 @@
+package ca.uhn.fhir.jpa.entity;
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * A chunk of terminology work (e.g. concepts from a very large CodeSystem) which
+ * has been deferred so that it can be stored in the background. Chunks are
+ * claimed by a server by setting a lease, and are deleted in the same
+ * transaction that stores their contents. If a server stops while processing
+ * a chunk, the lease expires and the chunk is picked up again.
+ */
+@Entity
+@Table(name = "TRM_DEFERRED_CHUNK", indexes = {
+	@Index(name = "IDX_TRM_DEFCHUNK_TYPE", columnList = "CHUNK_TYPE"),
+	@Index(name = "IDX_TRM_DEFCHUNK_CSV", columnList = "CODESYSTEM_VER_PID")
+})
+public class TermDeferredChunk implements Serializable {
+
+	public static final int MAX_LEASE_OWNER_LENGTH = 200;
+	private static final long serialVersionUID = 1L;
+
+	@GeneratedValue(strategy = GenerationType.AUTO, generator = "SEQ_TRM_DEFERRED_CHUNK")
+	@SequenceGenerator(name = "SEQ_TRM_DEFERRED_CHUNK", sequenceName = "SEQ_TRM_DEFERRED_CHUNK")
+	@Id
+	@Column(name = "PID")
+	private Long myId;
+	@Enumerated(EnumType.STRING)
+	@Column(name = "CHUNK_TYPE", nullable = false, length = 20)
+	private TermDeferredChunkTypeEnum myType;
+	@Column(name = "CODESYSTEM_VER_PID", nullable = true)
+	private Long myCodeSystemVersionPid;
+	@Column(name = "ITEM_COUNT", nullable = false)
+	private int myItemCount;
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(name = "CREATED", nullable = false)
+	private Date myCreated;
+	@Column(name = "LEASE_OWNER", nullable = true, length = MAX_LEASE_OWNER_LENGTH)
+	private String myLeaseOwner;
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(name = "LEASE_EXPIRES", nullable = true)
+	private Date myLeaseExpires;
+	@Lob
+	@Column(name = "CHUNK_DATA", nullable = false)
+	private byte[] myData;
+
+	/**
+	 * Constructor
+	 */
+	public TermDeferredChunk() {
+		// nothing
+	}
+
+	/**
+	 * Constructor
+	 */
+	public TermDeferredChunk(TermDeferredChunkTypeEnum theType, Long theCodeSystemVersionPid, int theItemCount, byte[] theData) {
+		myType = theType;
+		myCodeSystemVersionPid = theCodeSystemVersionPid;
+		myItemCount = theItemCount;
+		myData = theData;
+		myCreated = new Date();
+	}
+
+	public Long getCodeSystemVersionPid() {
+		return myCodeSystemVersionPid;
+	}
+
+	public Date getCreated() {
+		return myCreated;
+	}
+
+	public byte[] getData() {
+		return myData;
+	}
+
+	public Long getId() {
+		return myId;
+	}
+
+	public int getItemCount() {
+		return myItemCount;
+	}
+
+	public Date getLeaseExpires() {
+		return myLeaseExpires;
+	}
+
+	public String getLeaseOwner() {
+		return myLeaseOwner;
+	}
+
+	public TermDeferredChunkTypeEnum getType() {
+		return myType;
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this)
+			.append("id", myId)
+			.append("type", myType)
+			.append("codeSystemVersion", myCodeSystemVersionPid)
+			.append("itemCount", myItemCount)
+			.append("leaseOwner", myLeaseOwner)
+			.append("leaseExpires", myLeaseExpires)
+			.toString();
+	}
+}
@@ -0,0 +1,50 @@
+package ca.uhn.fhir.jpa.entity;
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+/**
+ * The kind of deferred terminology work stored in a {@link TermDeferredChunk}
+ */
+public enum TermDeferredChunkTypeEnum {
+	/*
+	 * VALUES SHOULD BE <= 20 CHARS LONG!
+	 *
+	 * We store this in a DB column of that length
+	 */
+
+	/**
+	 * Concepts (along with their properties and designations) which have not yet been saved
+	 */
+	CONCEPTS,
+	/**
+	 * Parent/child links between concepts, which are saved once all deferred concepts are saved
+	 */
+	CONCEPT_LINKS,
+	/**
+	 * A ValueSet resource to be created or updated
+	 */
+	VALUESET,
+	/**
+	 * A ConceptMap resource to be created or updated
+	 */
+	CONCEPTMAP
+}
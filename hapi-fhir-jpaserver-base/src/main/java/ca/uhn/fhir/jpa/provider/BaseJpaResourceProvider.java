@@ -30,7 +30,9 @@ import ca.uhn.fhir.rest.api.server.IBundleProvider;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.param.DateRangeParam;
 import ca.uhn.fhir.rest.server.IResourceProvider;
+import ca.uhn.fhir.rest.server.RestfulServerUtils;
 import ca.uhn.fhir.util.CoverageIgnore;
+import org.hl7.fhir.instance.model.api.IAnyResource;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.IIdType;
 import org.hl7.fhir.instance.model.api.IPrimitiveType;
@@ -128,7 +130,14 @@ public abstract class BaseJpaResourceProvider<T extends IBaseResource> extends B
 	public T read(HttpServletRequest theRequest, @IdParam IIdType theId, RequestDetails theRequestDetails) {
 		startRequest(theRequest);
 		try {
-			return myDao.read(theId, theRequestDetails);
+			T retVal = myDao.read(theId, theRequestDetails);
+			if (myDaoConfig.isStoredJsonPassthroughEnabled() && retVal instanceof IAnyResource) {
+				String preEncodedJson = myDao.readPreEncodedJsonOrNull(retVal, theRequestDetails);
+				if (preEncodedJson != null) {
+					((IAnyResource) retVal).setUserData(RestfulServerUtils.PRE_ENCODED_JSON_USERDATA_KEY, preEncodedJson);
+				}
+			}
+			return retVal;
 		} finally {
 			endRequest(theRequest);
 		}
@@ -0,0 +1,234 @@
+package ca.uhn.fhir.jpa.search;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.dao.IResultIterator;
+import ca.uhn.fhir.jpa.util.LongList;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import org.apache.commons.lang3.Validate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+
+/**
+ * Loads the PIDs for a search by splitting it into several PID ranges, and
+ * running the query for each range concurrently. PIDs are returned in the order
+ * in which they are found, so the caller can start saving results as soon as
+ * any partition has returned some.
+ * <p>
+ * Each partition is queried in its own transaction on a thread from the supplied
+ * executor. The ranges do not overlap so a PID can not be returned twice.
+ * </p>
+ */
+class PartitionedResultIterator implements IResultIterator {
+
+	/**
+	 * Partitions smaller than this aren't worth the overhead of a separate query
+	 */
+	static final long MINIMUM_PARTITION_SIZE = 10000;
+	static final int CHUNK_SIZE = 100;
+	private static final long MAX_MILLIS_BEFORE_PUBLISHING_CHUNK = 100;
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(PartitionedResultIterator.class);
+	private static final LongList END_OF_PARTITION = new LongList(0);
+
+	private final BlockingQueue<LongList> myQueue;
+	private final List<Future<?>> myFutures = new ArrayList<>();
+	private final AtomicInteger mySkippedCount = new AtomicInteger(0);
+	private final AtomicReference<Throwable> myFailure = new AtomicReference<>();
+	private final TransactionTemplate myTxTemplate;
+	private final BiFunction<Long, Long, IResultIterator> myQueryFactory;
+	private final Integer myMaxResults;
+	private volatile boolean myClosed;
+	private int myPartitionsRemaining;
+	private LongList myChunk;
+	private int myChunkIndex;
+	private int myReturnedCount;
+
+	/**
+	 * Constructor
+	 *
+	 * @param theExecutor     The executor used to run the partition queries
+	 * @param theTxTemplate   The transaction template used to open a transaction for each partition
+	 * @param theBoundaries   The partition boundaries, as returned by {@link #calculateBoundaries(long, long, int, long)}
+	 * @param theQueryFactory Creates the query for a partition, given its lowest PID (inclusive) and highest PID (exclusive)
+	 * @param theMaxResults   The maximum number of PIDs to return across all partitions, or <code>null</code>
+	 */
+	PartitionedResultIterator(ExecutorService theExecutor, TransactionTemplate theTxTemplate, long[] theBoundaries, BiFunction<Long, Long, IResultIterator> theQueryFactory, Integer theMaxResults) {
+		Validate.isTrue(theBoundaries.length >= 2, "Must have at least one partition");
+		myTxTemplate = theTxTemplate;
+		myQueryFactory = theQueryFactory;
+		myMaxResults = theMaxResults;
+
+		int partitionCount = theBoundaries.length - 1;
+		myPartitionsRemaining = partitionCount;
+		myQueue = new ArrayBlockingQueue<>(partitionCount * 4);
+
+		for (int i = 0; i < partitionCount; i++) {
+			long low = theBoundaries[i];
+			long high = theBoundaries[i + 1];
+			myFutures.add(theExecutor.submit(() -> loadPartition(low, high)));
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (myMaxResults != null && myReturnedCount >= myMaxResults) {
+			return false;
+		}
+
+		while (myChunk == null || myChunkIndex >= myChunk.size()) {
+			if (myPartitionsRemaining == 0) {
+				return false;
+			}
+
+			LongList next;
+			try {
+				next = myQueue.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InternalErrorException(e);
+			}
+
+			if (next == END_OF_PARTITION) {
+				myPartitionsRemaining--;
+				throwIfPartitionFailed();
+			} else {
+				myChunk = next;
+				myChunkIndex = 0;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public long nextLong() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		myReturnedCount++;
+		return myChunk.getLong(myChunkIndex++);
+	}
+
+	/**
+	 * Note that this count is only complete once {@link #hasNext()} has returned <code>false</code>
+	 */
+	@Override
+	public int getSkippedCount() {
+		return mySkippedCount.get();
+	}
+
+	@Override
+	public void close() {
+		myClosed = true;
+		for (Future<?> next : myFutures) {
+			next.cancel(false);
+		}
+		myQueue.clear();
+	}
+
+	private void throwIfPartitionFailed() {
+		Throwable failure = myFailure.get();
+		if (failure != null) {
+			close();
+			if (failure instanceof RuntimeException) {
+				throw (RuntimeException) failure;
+			}
+			throw new InternalErrorException(failure);
+		}
+	}
+
+	private void loadPartition(long theLow, long theHigh) {
+		try {
+			myTxTemplate.execute(t -> {
+				ourLog.trace("Loading partition with PIDs {} - {}", theLow, theHigh);
+				try (IResultIterator iter = myQueryFactory.apply(theLow, theHigh)) {
+					LongList chunk = new LongList(CHUNK_SIZE);
+					long lastPublished = System.currentTimeMillis();
+					while (!myClosed && iter.hasNext()) {
+						chunk.add(iter.nextLong());
+						if (chunk.size() >= CHUNK_SIZE || System.currentTimeMillis() - lastPublished >= MAX_MILLIS_BEFORE_PUBLISHING_CHUNK) {
+							publish(chunk);
+							chunk = new LongList(CHUNK_SIZE);
+							lastPublished = System.currentTimeMillis();
+						}
+					}
+					if (!chunk.isEmpty()) {
+						publish(chunk);
+					}
+					mySkippedCount.addAndGet(iter.getSkippedCount());
+				} catch (IOException e) {
+					throw new InternalErrorException(e);
+				}
+				return null;
+			});
+		} catch (Throwable e) {
+			if (!myClosed) {
+				ourLog.error("Failure loading search partition with PIDs {} - {}", theLow, theHigh, e);
+			}
+			myFailure.compareAndSet(null, e);
+		} finally {
+			publish(END_OF_PARTITION);
+		}
+	}
+
+	private void publish(LongList theChunk) {
+		try {
+			while (!myQueue.offer(theChunk, 100, TimeUnit.MILLISECONDS)) {
+				if (myClosed) {
+					return;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InternalErrorException(e);
+		}
+	}
+
+	/**
+	 * Splits the range of PIDs between <code>theLowInclusive</code> and <code>theHighExclusive</code>
+	 * into up to <code>thePartitionCount</code> equally sized partitions, none of which will be
+	 * smaller than <code>theMinimumPartitionSize</code>.
+	 *
+	 * @return The boundaries between the partitions. The first element is <code>theLowInclusive</code>,
+	 * the last element is <code>theHighExclusive</code>, and the length is the number of partitions plus one.
+	 */
+	static long[] calculateBoundaries(long theLowInclusive, long theHighExclusive, int thePartitionCount, long theMinimumPartitionSize) {
+		Validate.isTrue(theHighExclusive > theLowInclusive, "Range must not be empty");
+		long span = theHighExclusive - theLowInclusive;
+		long maxPartitions = Math.max(1, span / Math.max(1, theMinimumPartitionSize));
+		int partitionCount = (int) Math.min(Math.max(1, thePartitionCount), maxPartitions);
+
+		long[] retVal = new long[partitionCount + 1];
+		for (int i = 0; i < partitionCount; i++) {
+			retVal[i] = theLowInclusive + (span / partitionCount) * i;
+		}
+		retVal[partitionCount] = theHighExclusive;
+		return retVal;
+	}
+
+}
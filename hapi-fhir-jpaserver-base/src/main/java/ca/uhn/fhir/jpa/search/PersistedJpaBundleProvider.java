@@ -32,6 +32,8 @@ import ca.uhn.fhir.jpa.entity.SearchTypeEnum;
 import ca.uhn.fhir.jpa.model.entity.BaseHasResource;
 import ca.uhn.fhir.jpa.model.entity.ResourceHistoryTable;
 import ca.uhn.fhir.jpa.util.JpaInterceptorBroadcaster;
+import ca.uhn.fhir.jpa.util.LongList;
+import ca.uhn.fhir.jpa.util.LongSet;
 import ca.uhn.fhir.model.primitive.InstantDt;
 import ca.uhn.fhir.rest.api.server.*;
 import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
@@ -172,7 +174,7 @@ public class PersistedJpaBundleProvider implements IBundleProvider {
 		Class<? extends IBaseResource> resourceType = myContext.getResourceDefinition(resourceName).getImplementingClass();
 		sb.setType(resourceType, resourceName);
 
-		final List<Long> pidsSubList = mySearchCoordinatorSvc.getResources(myUuid, theFromIndex, theToIndex, myRequest);
+		final LongList pidsSubList = mySearchCoordinatorSvc.getResources(myUuid, theFromIndex, theToIndex, myRequest);
 
 		TransactionTemplate template = new TransactionTemplate(myPlatformTransactionManager);
 		template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRED);
@@ -317,18 +319,16 @@ public class PersistedJpaBundleProvider implements IBundleProvider {
 	// Note: Leave as protected, HSPC depends on this
 	@SuppressWarnings("WeakerAccess")
 	protected List<IBaseResource> toResourceList(ISearchBuilder theSearchBuilder, List<Long> thePids) {
-		Set<Long> includedPids = new HashSet<>();
+		LongSet includedPids = new LongSet();
 
 		if (mySearchEntity.getSearchType() == SearchTypeEnum.SEARCH) {
 			includedPids.addAll(theSearchBuilder.loadIncludes(myContext, myEntityManager, thePids, mySearchEntity.toRevIncludesList(), true, mySearchEntity.getLastUpdated(), myUuid, myRequest));
 			includedPids.addAll(theSearchBuilder.loadIncludes(myContext, myEntityManager, thePids, mySearchEntity.toIncludesList(), false, mySearchEntity.getLastUpdated(), myUuid, myRequest));
 		}
 
-		List<Long> includedPidList = new ArrayList<>(includedPids);
-
 		// Execute the query and make sure we return distinct results
 		List<IBaseResource> resources = new ArrayList<>();
-		theSearchBuilder.loadResourcesByPid(thePids, includedPidList, resources, false, myRequest);
+		theSearchBuilder.loadResourcesByPid(thePids, includedPids, resources, false, myRequest);
 
 		// Interceptor call: STORAGE_PRESHOW_RESOURCE
 		// This can be used to remove results from the search result details before
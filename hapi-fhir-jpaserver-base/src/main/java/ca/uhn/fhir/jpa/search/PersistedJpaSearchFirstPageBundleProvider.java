@@ -24,6 +24,7 @@ import ca.uhn.fhir.jpa.dao.IDao;
 import ca.uhn.fhir.jpa.dao.ISearchBuilder;
 import ca.uhn.fhir.jpa.entity.Search;
 import ca.uhn.fhir.jpa.model.search.SearchStatusEnum;
+import ca.uhn.fhir.jpa.util.LongList;
 import ca.uhn.fhir.jpa.search.SearchCoordinatorSvcImpl.SearchTask;
 import ca.uhn.fhir.model.api.IResource;
 import ca.uhn.fhir.model.api.ResourceMetadataKeyEnum;
@@ -63,7 +64,7 @@ public class PersistedJpaSearchFirstPageBundleProvider extends PersistedJpaBundl
 		SearchCoordinatorSvcImpl.verifySearchHasntFailedOrThrowInternalErrorException(mySearch);
 
 		ourLog.trace("Fetching search resource PIDs from task: {}", mySearchTask.getClass());
-		final List<Long> pids = mySearchTask.getResourcePids(theFromIndex, theToIndex);
+		final LongList pids = mySearchTask.getResourcePids(theFromIndex, theToIndex);
 		ourLog.trace("Done fetching search resource PIDs");
 
 		TransactionTemplate txTemplate = new TransactionTemplate(myTxManager);
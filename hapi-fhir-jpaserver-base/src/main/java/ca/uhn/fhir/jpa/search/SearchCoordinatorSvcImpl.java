@@ -21,22 +21,29 @@ package ca.uhn.fhir.jpa.search;
  */
 
 import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.RuntimeResourceDefinition;
 import ca.uhn.fhir.interceptor.api.HookParams;
 import ca.uhn.fhir.interceptor.api.IInterceptorBroadcaster;
 import ca.uhn.fhir.interceptor.api.Pointcut;
 import ca.uhn.fhir.jpa.dao.*;
+import ca.uhn.fhir.jpa.dao.data.IResourceTableDao;
 import ca.uhn.fhir.jpa.dao.data.ISearchDao;
 import ca.uhn.fhir.jpa.dao.data.ISearchIncludeDao;
+import ca.uhn.fhir.jpa.dao.data.ISearchResultBlockDao;
 import ca.uhn.fhir.jpa.dao.data.ISearchResultDao;
 import ca.uhn.fhir.jpa.entity.Search;
 import ca.uhn.fhir.jpa.entity.SearchInclude;
 import ca.uhn.fhir.jpa.entity.SearchResult;
+import ca.uhn.fhir.jpa.entity.SearchResultBlock;
 import ca.uhn.fhir.jpa.entity.SearchTypeEnum;
 import ca.uhn.fhir.jpa.interceptor.JpaPreResourceAccessDetails;
 import ca.uhn.fhir.jpa.model.search.SearchRuntimeDetails;
 import ca.uhn.fhir.jpa.model.search.SearchStatusEnum;
+import ca.uhn.fhir.jpa.searchparam.MatchUrlService;
 import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
 import ca.uhn.fhir.jpa.util.JpaInterceptorBroadcaster;
+import ca.uhn.fhir.jpa.util.LongList;
+import ca.uhn.fhir.jpa.util.LongSet;
 import ca.uhn.fhir.model.api.Include;
 import ca.uhn.fhir.rest.api.CacheControlDirective;
 import ca.uhn.fhir.rest.api.Constants;
@@ -82,6 +89,7 @@ import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.annotation.Nullable;
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.persistence.EntityManager;
 import java.io.IOException;
 import java.util.*;
@@ -102,16 +110,25 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 	@Autowired
 	private EntityManager myEntityManager;
 	private ExecutorService myExecutor;
+	/**
+	 * Created by {@link #getOrCreatePartitionExecutor()} when the first partitioned search is performed
+	 */
+	private ExecutorService myPartitionExecutor;
 	private Integer myLoadingThrottleForUnitTests = null;
+	private long myMinimumPartitionSize = PartitionedResultIterator.MINIMUM_PARTITION_SIZE;
 	private long myMaxMillisToWaitForRemoteResults = DateUtils.MILLIS_PER_MINUTE;
 	private boolean myNeverUseLocalSearchForUnitTests;
 	@Autowired
+	private IResourceTableDao myResourceTableDao;
+	@Autowired
 	private ISearchDao mySearchDao;
 	@Autowired
 	private ISearchIncludeDao mySearchIncludeDao;
 	@Autowired
 	private ISearchResultDao mySearchResultDao;
 	@Autowired
+	private ISearchResultBlockDao mySearchResultBlockDao;
+	@Autowired
 	private IInterceptorBroadcaster myInterceptorBroadcaster;
 	@Autowired
 	private PlatformTransactionManager myManagedTxManager;
@@ -119,6 +136,8 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 	private DaoRegistry myDaoRegistry;
 	@Autowired
 	private IPagingProvider myPagingProvider;
+	@Autowired
+	private MatchUrlService myMatchUrlService;
 
 	private int mySyncSize = DEFAULT_SYNC_SIZE;
 	/**
@@ -147,6 +166,28 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 		}
 	}
 
+	@PreDestroy
+	public synchronized void stop() {
+		if (myPartitionExecutor != null) {
+			myPartitionExecutor.shutdownNow();
+		}
+	}
+
+	/**
+	 * The executor is only created once it is needed, since partitioned searches can be
+	 * enabled at any time using {@link DaoConfig#setSearchPartitionCount(int)}
+	 */
+	private synchronized ExecutorService getOrCreatePartitionExecutor() {
+		if (myPartitionExecutor == null) {
+			int threadCount = myDaoConfig.getSearchPartitionThreadCount();
+			CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("search_part_");
+			ThreadPoolExecutor partitionExecutor = new ThreadPoolExecutor(threadCount, threadCount, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(), threadFactory);
+			partitionExecutor.allowCoreThreadTimeOut(true);
+			myPartitionExecutor = partitionExecutor;
+		}
+		return myPartitionExecutor;
+	}
+
 	@Override
 	public void cancelAllActiveSearches() {
 		for (BaseTask next : myIdToSearchTask.values()) {
@@ -165,7 +206,7 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 	 */
 	@Override
 	@Transactional(propagation = Propagation.NEVER)
-	public List<Long> getResources(final String theUuid, int theFrom, int theTo, @Nullable RequestDetails theRequestDetails) {
+	public LongList getResources(final String theUuid, int theFrom, int theTo, @Nullable RequestDetails theRequestDetails) {
 		TransactionTemplate txTemplate = new TransactionTemplate(myManagedTxManager);
 		txTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRED);
 
@@ -177,7 +218,7 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 				BaseTask task = myIdToSearchTask.get(theUuid);
 				if (task != null) {
 					ourLog.trace("Local search found");
-					List<Long> resourcePids = task.getResourcePids(theFrom, theTo);
+					LongList resourcePids = task.getResourcePids(theFrom, theTo);
 					if (resourcePids != null) {
 						return resourcePids;
 					}
@@ -231,23 +272,39 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 
 		final Pageable page = toPage(theFrom, theTo);
 		if (page == null) {
-			return Collections.emptyList();
+			return new LongList();
 		}
 
 		final Search foundSearch = search;
 
 		ourLog.trace("Loading stored search");
-		List<Long> retVal = txTemplate.execute(theStatus -> {
-			final List<Long> resultPids = new ArrayList<>();
+		LongList retVal = txTemplate.execute(theStatus -> {
+			if (foundSearch.isResultsInBlocks()) {
+				return loadResourcePidsFromBlocks(foundSearch, theFrom, theTo);
+			}
 			Page<Long> searchResultPids = mySearchResultDao.findWithSearchUuid(foundSearch, page);
+			final LongList resultPids = new LongList(searchResultPids.getNumberOfElements());
 			for (Long next : searchResultPids) {
-				resultPids.add(next);
+				resultPids.add(next.longValue());
 			}
 			return resultPids;
 		});
 		return retVal;
 	}
 
+	private LongList loadResourcePidsFromBlocks(Search theSearch, int theFrom, int theTo) {
+		LongList retVal = new LongList();
+		for (SearchResultBlock nextBlock : mySearchResultBlockDao.findForSearchInRange(theSearch.getId(), theFrom, theTo)) {
+			LongList blockPids = nextBlock.getResourcePids();
+			int from = Math.max(theFrom - nextBlock.getFirstIndex(), 0);
+			int to = Math.min(theTo - nextBlock.getFirstIndex(), blockPids.size());
+			if (from < to) {
+				retVal.addAll(blockPids.copyOfRange(from, to));
+			}
+		}
+		return retVal;
+	}
+
 	private Optional<Search> tryToMarkSearchAsInProgress(Search theSearch) {
 		ourLog.trace("Going to try to change search status from {} to {}", theSearch.getStatus(), SearchStatusEnum.LOADING);
 		try {
@@ -318,11 +375,11 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 			return txTemplate.execute(t -> {
 
 				// Load the results synchronously
-				final List<Long> pids = new ArrayList<>();
+				final LongList pids = new LongList();
 
 				try (IResultIterator resultIter = sb.createQuery(theParams, searchRuntimeDetails, theRequestDetails)) {
 					while (resultIter.hasNext()) {
-						pids.add(resultIter.next());
+						pids.add(resultIter.nextLong());
 						if (loadSynchronousUpTo != null && pids.size() >= loadSynchronousUpTo) {
 							break;
 						}
@@ -357,13 +414,12 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 				 * On the other hand for async queries we load includes/revincludes
 				 * individually for pages as we return them to clients
 				 */
-				final Set<Long> includedPids = new HashSet<>();
+				final LongSet includedPids = new LongSet();
 				includedPids.addAll(sb.loadIncludes(myContext, myEntityManager, pids, theParams.getRevIncludes(), true, theParams.getLastUpdated(), "(synchronous)", theRequestDetails));
 				includedPids.addAll(sb.loadIncludes(myContext, myEntityManager, pids, theParams.getIncludes(), false, theParams.getLastUpdated(), "(synchronous)", theRequestDetails));
-				List<Long> includedPidsList = new ArrayList<>(includedPids);
 
 				List<IBaseResource> resources = new ArrayList<>();
-				sb.loadResourcesByPid(pids, includedPidsList, resources, false, theRequestDetails);
+				sb.loadResourcesByPid(pids, includedPids, resources, false, theRequestDetails);
 				return new SimpleBundleProvider(resources);
 			});
 		}
@@ -439,6 +495,7 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 
 		Search search = new Search();
 		populateSearchEntity(theParams, theResourceType, searchUuid, queryString, search);
+		search.setResultsInBlocks(myDaoConfig.getSearchResultStorage() == DaoConfig.SearchResultStorageEnum.COMPRESSED_BLOCKS);
 
 		// Interceptor call: STORAGE_PRESEARCH_REGISTERED
 		HookParams params = new HookParams()
@@ -495,6 +552,11 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 		myLoadingThrottleForUnitTests = theLoadingThrottleForUnitTests;
 	}
 
+	@VisibleForTesting
+	public void setMinimumPartitionSizeForUnitTests(Long theMinimumPartitionSize) {
+		myMinimumPartitionSize = defaultIfNull(theMinimumPartitionSize, PartitionedResultIterator.MINIMUM_PARTITION_SIZE);
+	}
+
 	@VisibleForTesting
 	public void setNeverUseLocalSearchForUnitTests(boolean theNeverUseLocalSearchForUnitTests) {
 		myNeverUseLocalSearchForUnitTests = theNeverUseLocalSearchForUnitTests;
@@ -515,6 +577,16 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 		mySearchResultDao = theSearchResultDao;
 	}
 
+	@VisibleForTesting
+	void setResourceTableDaoForUnitTest(IResourceTableDao theResourceTableDao) {
+		myResourceTableDao = theResourceTableDao;
+	}
+
+	@VisibleForTesting
+	void setSearchResultBlockDaoForUnitTest(ISearchResultBlockDao theSearchResultBlockDao) {
+		mySearchResultBlockDao = theSearchResultBlockDao;
+	}
+
 	@VisibleForTesting
 	public void setSyncSizeForUnitTests(int theSyncSize) {
 		mySyncSize = theSyncSize;
@@ -539,18 +611,19 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 		private final SearchParameterMap myParams;
 		private final IDao myCallingDao;
 		private final String myResourceType;
-		private final ArrayList<Long> mySyncedPids = new ArrayList<>();
+		private final LongList mySyncedPids = new LongList();
 		private final CountDownLatch myInitialCollectionLatch = new CountDownLatch(1);
 		private final CountDownLatch myCompletionLatch;
-		private final ArrayList<Long> myUnsyncedPids = new ArrayList<>();
+		private final LongList myUnsyncedPids = new LongList();
 		private final RequestDetails myRequest;
 		private Search mySearch;
 		private boolean myAbortRequested;
 		private int myCountSavedTotal = 0;
 		private int myCountSavedThisPass = 0;
 		private int myCountBlockedThisPass = 0;
+		private int myCountStoredInBlocks = 0;
 		private boolean myAdditionalPrefetchThresholdsRemaining;
-		private List<Long> myPreviouslyAddedResourcePids;
+		private LongList myPreviouslyAddedResourcePids;
 		private Integer myMaxResultsToFetch;
 		private SearchRuntimeDetails mySearchRuntimeDetails;
 
@@ -577,8 +650,9 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 		}
 
 		void setPreviouslyAddedResourcePids(List<Long> thePreviouslyAddedResourcePids) {
-			myPreviouslyAddedResourcePids = thePreviouslyAddedResourcePids;
+			myPreviouslyAddedResourcePids = new LongList(thePreviouslyAddedResourcePids);
 			myCountSavedTotal = myPreviouslyAddedResourcePids.size();
+			myCountStoredInBlocks = myPreviouslyAddedResourcePids.size();
 		}
 
 		private ISearchBuilder newSearchBuilder() {
@@ -589,7 +663,7 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 			return sb;
 		}
 
-		public List<Long> getResourcePids(int theFromIndex, int theToIndex) {
+		public LongList getResourcePids(int theFromIndex, int theToIndex) {
 			ourLog.debug("Requesting search PIDs from {}-{}", theFromIndex, theToIndex);
 
 			boolean keepWaiting;
@@ -634,7 +708,7 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 
 			ourLog.debug("Proceeding, as we have {} results", mySyncedPids.size());
 
-			ArrayList<Long> retVal = new ArrayList<>();
+			LongList retVal;
 			synchronized (mySyncedPids) {
 				verifySearchHasntFailedOrThrowInternalErrorException(mySearch);
 
@@ -642,9 +716,7 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 				if (mySyncedPids.size() < toIndex) {
 					toIndex = mySyncedPids.size();
 				}
-				for (int i = theFromIndex; i < toIndex; i++) {
-					retVal.add(mySyncedPids.get(i));
-				}
+				retVal = mySyncedPids.copyOfRange(Math.min(theFromIndex, toIndex), toIndex);
 			}
 
 			ourLog.trace("Done syncing results - Wanted {}-{} and returning {} of {}", theFromIndex, theToIndex, retVal.size(), mySyncedPids.size());
@@ -674,7 +746,7 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 						doSaveSearch();
 					}
 
-					ArrayList<Long> unsyncedPids = myUnsyncedPids;
+					LongList unsyncedPids = myUnsyncedPids;
 
 					// Interceptor call: STORAGE_PREACCESS_RESOURCES
 					// This can be used to remove results from the search result details before
@@ -696,20 +768,31 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 						}
 					}
 
-					List<SearchResult> resultsToSave = Lists.newArrayList();
-					for (Long nextPid : unsyncedPids) {
-						SearchResult nextResult = new SearchResult(mySearch);
-						nextResult.setResourcePid(nextPid);
-						nextResult.setOrder(myCountSavedTotal);
-						resultsToSave.add(nextResult);
-						int order = nextResult.getOrder();
-						ourLog.trace("Saving ORDER[{}] Resource {}", order, nextResult.getResourcePid());
-
-						myCountSavedTotal++;
-						myCountSavedThisPass++;
-					}
+					if (mySearch.isResultsInBlocks()) {
+						if (unsyncedPids.isEmpty() == false) {
+							SearchResultBlock block = new SearchResultBlock(mySearch, myCountStoredInBlocks, unsyncedPids);
+							ourLog.trace("Saving block of {} results starting at index {}", unsyncedPids.size(), myCountStoredInBlocks);
+							mySearchResultBlockDao.save(block);
+							myCountStoredInBlocks += unsyncedPids.size();
+							myCountSavedTotal += unsyncedPids.size();
+							myCountSavedThisPass += unsyncedPids.size();
+						}
+					} else {
+						List<SearchResult> resultsToSave = Lists.newArrayList();
+						for (int i = 0; i < unsyncedPids.size(); i++) {
+							SearchResult nextResult = new SearchResult(mySearch);
+							nextResult.setResourcePid(unsyncedPids.getLong(i));
+							nextResult.setOrder(myCountSavedTotal);
+							resultsToSave.add(nextResult);
+							int order = nextResult.getOrder();
+							ourLog.trace("Saving ORDER[{}] Resource {}", order, nextResult.getResourcePid());
+
+							myCountSavedTotal++;
+							myCountSavedThisPass++;
+						}
 
-					mySearchResultDao.saveAll(resultsToSave);
+						mySearchResultDao.saveAll(resultsToSave);
+					}
 
 					synchronized (mySyncedPids) {
 						int numSyncedThisPass = unsyncedPids.size();
@@ -947,6 +1030,7 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 			 */
 			int currentlyLoaded = defaultIfNull(mySearch.getNumFound(), 0);
 			int minWanted = 0;
+			Integer maxResultsToFetch = null;
 			if (myParams.getCount() != null) {
 				minWanted = myParams.getCount();
 				minWanted = Math.max(minWanted, myPagingProvider.getMaximumPageSize());
@@ -960,11 +1044,12 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 				}
 
 				if (next == -1) {
-					sb.setMaxResultsToFetch(null);
+					maxResultsToFetch = null;
 				} else {
 					myMaxResultsToFetch = Math.max(next, minWanted);
-					sb.setMaxResultsToFetch(myMaxResultsToFetch);
+					maxResultsToFetch = myMaxResultsToFetch;
 				}
+				sb.setMaxResultsToFetch(maxResultsToFetch);
 
 				if (iter.hasNext()) {
 					myAdditionalPrefetchThresholdsRemaining = true;
@@ -992,7 +1077,7 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 			/*
 			 * Construct the SQL query we'll be sending to the database
 			 */
-			try (IResultIterator resultIterator = sb.createQuery(myParams, mySearchRuntimeDetails, myRequest)) {
+			try (IResultIterator resultIterator = createResultIterator(sb, maxResultsToFetch)) {
 				assert (resultIterator != null);
 
 				/*
@@ -1002,7 +1087,7 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 				 */
 				int syncSize = mySyncSize;
 				while (resultIterator.hasNext()) {
-					myUnsyncedPids.add(resultIterator.next());
+					myUnsyncedPids.add(resultIterator.nextLong());
 
 					boolean shouldSync = myUnsyncedPids.size() >= syncSize;
 
@@ -1043,6 +1128,79 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 				throw new InternalErrorException(e);
 			}
 		}
+
+		/**
+		 * Creates the iterator which loads the matching PIDs. If partitioned searches are enabled
+		 * and this search is big enough, the search is split into PID ranges which are queried
+		 * in parallel. Otherwise the query is performed by the given search builder.
+		 */
+		private IResultIterator createResultIterator(ISearchBuilder theSearchBuilder, Integer theMaxResultsToFetch) {
+			int partitionCount = myDaoConfig.getSearchPartitionCount();
+			if (partitionCount > 1 && myParams.getSort() == null && myParams.getEverythingMode() == null && copyParamsForPartition() != null) {
+				Long lowestPid = myResourceTableDao.findLowestPidOfType(myResourceType);
+				Long highestPid = myResourceTableDao.findHighestPidOfType(myResourceType);
+				if (lowestPid != null && highestPid != null) {
+					long[] boundaries = PartitionedResultIterator.calculateBoundaries(lowestPid, highestPid + 1, partitionCount, myMinimumPartitionSize);
+					if (boundaries.length > 2) {
+						ourLog.debug("Splitting search {} into {} partitions", mySearch.getUuid(), boundaries.length - 1);
+
+						TransactionTemplate txTemplate = new TransactionTemplate(myManagedTxManager);
+						txTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+						txTemplate.setReadOnly(true);
+						if (myCustomIsolationSupported) {
+							txTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+						}
+
+						/*
+						 * The partitions skip any PIDs added by an earlier pass, but an unpartitioned query
+						 * counts those against its limit, so only the remainder of the limit is returned here
+						 */
+						Integer maxResults = defaultIfNull(theMaxResultsToFetch, myDaoConfig.getFetchSizeDefaultMaximum());
+						if (maxResults != null && myPreviouslyAddedResourcePids != null) {
+							maxResults = Math.max(0, maxResults - myPreviouslyAddedResourcePids.size());
+						}
+						return new PartitionedResultIterator(getOrCreatePartitionExecutor(), txTemplate, boundaries, (theLow, theHigh) -> {
+							ISearchBuilder sb = newSearchBuilder();
+							sb.setMaxResultsToFetch(theMaxResultsToFetch);
+							sb.setResourcePidRange(theLow, theHigh);
+							if (myPreviouslyAddedResourcePids != null) {
+								sb.setPreviouslyAddedResourcePids(myPreviouslyAddedResourcePids);
+							}
+
+							// Each partition has its own runtime details since they are updated as the query runs
+							SearchRuntimeDetails runtimeDetails = new SearchRuntimeDetails(myRequest, mySearch.getUuid());
+							runtimeDetails.setQueryString(mySearchRuntimeDetails.getQueryString());
+							return sb.createQuery(copyParamsForPartition(), runtimeDetails, myRequest);
+						}, maxResults);
+					}
+				}
+			}
+
+			return theSearchBuilder.createQuery(myParams, mySearchRuntimeDetails, myRequest);
+		}
+
+		/**
+		 * Creates a copy of the search parameters for a single partition. The search builder
+		 * modifies the parameters it is given (e.g. removing the ones which are satisfied by a
+		 * unique index), so partitions which run at the same time can not share them. The copy
+		 * is created by translating the normalized query string, which was captured before any
+		 * query was performed.
+		 *
+		 * @return The copy, or <code>null</code> if the query string can not be translated back
+		 * into parameters (in which case the search is not partitioned)
+		 */
+		private SearchParameterMap copyParamsForPartition() {
+			try {
+				RuntimeResourceDefinition resourceDef = myContext.getResourceDefinition(myResourceType);
+				SearchParameterMap retVal = myMatchUrlService.translateMatchUrl(mySearchRuntimeDetails.getQueryString(), resourceDef);
+				retVal.setLoadSynchronous(myParams.isLoadSynchronous());
+				retVal.setLoadSynchronousUpTo(myParams.getLoadSynchronousUpTo());
+				return retVal;
+			} catch (InvalidRequestException e) {
+				ourLog.debug("Search {} will not be partitioned: {}", mySearch.getUuid(), e.getMessage());
+				return null;
+			}
+		}
 	}
 
 
@@ -1058,7 +1216,16 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 				TransactionTemplate txTemplate = new TransactionTemplate(myManagedTxManager);
 				txTemplate.afterPropertiesSet();
 				txTemplate.execute(t -> {
-					List<Long> previouslyAddedResourcePids = mySearchResultDao.findWithSearchUuidOrderIndependent(getSearch());
+					List<Long> previouslyAddedResourcePids;
+					if (getSearch().isResultsInBlocks()) {
+						LongList blockPids = new LongList();
+						for (SearchResultBlock nextBlock : mySearchResultBlockDao.findForSearch(getSearch().getId())) {
+							blockPids.addAll(nextBlock.getResourcePids());
+						}
+						previouslyAddedResourcePids = blockPids;
+					} else {
+						previouslyAddedResourcePids = mySearchResultDao.findWithSearchUuidOrderIndependent(getSearch());
+					}
 					ourLog.debug("Have {} previously added IDs in search: {}", previouslyAddedResourcePids.size(), getSearch().getUuid());
 					setPreviouslyAddedResourcePids(previouslyAddedResourcePids);
 					return null;
@@ -1076,7 +1243,7 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 		}
 
 		@Override
-		public List<Long> getResourcePids(int theFromIndex, int theToIndex) {
+		public LongList getResourcePids(int theFromIndex, int theToIndex) {
 			return super.getResourcePids(theFromIndex, theToIndex);
 		}
 	}
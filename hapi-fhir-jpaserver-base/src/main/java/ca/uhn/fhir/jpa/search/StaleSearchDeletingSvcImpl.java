@@ -23,6 +23,7 @@ package ca.uhn.fhir.jpa.search;
 import ca.uhn.fhir.jpa.dao.DaoConfig;
 import ca.uhn.fhir.jpa.dao.data.ISearchDao;
 import ca.uhn.fhir.jpa.dao.data.ISearchIncludeDao;
+import ca.uhn.fhir.jpa.dao.data.ISearchResultBlockDao;
 import ca.uhn.fhir.jpa.dao.data.ISearchResultDao;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Lists;
@@ -76,11 +77,16 @@ public class StaleSearchDeletingSvcImpl implements IStaleSearchDeletingSvc {
 	@Autowired
 	private ISearchResultDao mySearchResultDao;
 	@Autowired
+	private ISearchResultBlockDao mySearchResultBlockDao;
+	@Autowired
 	private PlatformTransactionManager myTransactionManager;
 
 	private void deleteSearch(final Long theSearchPid) {
 		mySearchDao.findById(theSearchPid).ifPresent(searchToDelete -> {
 			mySearchIncludeDao.deleteForSearch(searchToDelete.getId());
+			if (searchToDelete.isResultsInBlocks()) {
+				mySearchResultBlockDao.deleteForSearch(searchToDelete.getId());
+			}
 
 			/*
 			 * Note, we're only deleting up to 500 results in an individual search here. This
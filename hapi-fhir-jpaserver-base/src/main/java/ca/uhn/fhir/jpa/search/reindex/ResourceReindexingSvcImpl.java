@@ -29,8 +29,10 @@ import ca.uhn.fhir.jpa.dao.IFhirResourceDao;
 import ca.uhn.fhir.jpa.dao.data.IForcedIdDao;
 import ca.uhn.fhir.jpa.dao.data.IResourceHistoryTableDao;
 import ca.uhn.fhir.jpa.dao.data.IResourceReindexJobDao;
+import ca.uhn.fhir.jpa.dao.data.IResourceReindexJobRangeDao;
 import ca.uhn.fhir.jpa.dao.data.IResourceTableDao;
 import ca.uhn.fhir.jpa.entity.ResourceReindexJobEntity;
+import ca.uhn.fhir.jpa.entity.ResourceReindexJobRangeEntity;
 import ca.uhn.fhir.jpa.model.entity.ForcedId;
 import ca.uhn.fhir.jpa.model.entity.ResourceTable;
 import ca.uhn.fhir.jpa.searchparam.registry.ISearchParamRegistry;
@@ -61,9 +63,12 @@ import javax.persistence.PersistenceContext;
 import javax.persistence.PersistenceContextType;
 import javax.persistence.Query;
 import javax.transaction.Transactional;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
@@ -77,10 +82,17 @@ public class ResourceReindexingSvcImpl implements IResourceReindexingSvc {
 	private static final Date BEGINNING_OF_TIME = new Date(0);
 	private static final Logger ourLog = LoggerFactory.getLogger(ResourceReindexingSvcImpl.class);
 	private static final int PASS_SIZE = 25000;
+	private static final int RANGE_SIZE = 10000;
+	private static final int RANGE_PAGE_SIZE = 1000;
+	private static final long RANGE_LEASE_MILLIS = 5 * DateUtils.MILLIS_PER_MINUTE;
+	private final String myRangeLeaseOwner = UUID.randomUUID().toString();
+	private final Set<Long> myJobsWithRefreshedSearchParams = ConcurrentHashMap.newKeySet();
 	private final ReentrantLock myIndexingLock = new ReentrantLock();
 	@Autowired
 	private IResourceReindexJobDao myReindexJobDao;
 	@Autowired
+	private IResourceReindexJobRangeDao myReindexJobRangeDao;
+	@Autowired
 	private DaoConfig myDaoConfig;
 	@Autowired
 	private PlatformTransactionManager myTxManager;
@@ -107,6 +119,11 @@ public class ResourceReindexingSvcImpl implements IResourceReindexingSvc {
 		myReindexJobDao = theReindexJobDao;
 	}
 
+	@VisibleForTesting
+	void setReindexJobRangeDaoForUnitTest(IResourceReindexJobRangeDao theReindexJobRangeDao) {
+		myReindexJobRangeDao = theReindexJobRangeDao;
+	}
+
 	@VisibleForTesting
 	void setDaoConfigForUnitTest(DaoConfig theDaoConfig) {
 		myDaoConfig = theDaoConfig;
@@ -252,7 +269,11 @@ public class ResourceReindexingSvcImpl implements IResourceReindexingSvc {
 				continue;
 			}
 
-			count += runReindexJob(next);
+			if (myDaoConfig.isClusteredReindexingEnabled()) {
+				count += runClusteredReindexJob(next);
+			} else {
+				count += runReindexJob(next);
+			}
 		}
 		return count;
 	}
@@ -381,11 +402,208 @@ public class ResourceReindexingSvcImpl implements IResourceReindexingSvc {
 		return counter.get();
 	}
 
+	/**
+	 * Processes a job by splitting the PIDs it covers into fixed ranges which are
+	 * leased by individual servers, so that several servers sharing a database can
+	 * work on the same job without duplicating work. A range whose lease expires
+	 * (e.g. because the server working on it died) is picked up by another server,
+	 * resuming from the last PID it recorded.
+	 */
+	private int runClusteredReindexJob(ResourceReindexJobEntity theJob) {
+		if (theJob.getSuspendedUntil() != null) {
+			if (theJob.getSuspendedUntil().getTime() > System.currentTimeMillis()) {
+				return 0;
+			}
+		}
+
+		// See the comment in runReindexJob - each server refreshes once per job
+		if (myJobsWithRefreshedSearchParams.add(theJob.getId())) {
+			mySearchParamRegistry.forceRefresh();
+		}
+
+		int count = 0;
+		while (true) {
+			ResourceReindexJobRangeEntity range = leaseNextRange(theJob);
+			if (range == null) {
+				if (createRanges(theJob.getId())) {
+					continue;
+				}
+				break;
+			}
+
+			Integer rangeCount = reindexRange(theJob, range);
+			if (rangeCount == null) {
+				break;
+			}
+			count += rangeCount;
+		}
+		return count;
+	}
+
+	private ResourceReindexJobRangeEntity leaseNextRange(ResourceReindexJobEntity theJob) {
+		TransactionTemplate txTemplate = new TransactionTemplate(myTxManager);
+		txTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		return txTemplate.execute(t -> {
+			Date now = new Date();
+			Date expires = new Date(now.getTime() + RANGE_LEASE_MILLIS);
+			List<Long> candidates = myReindexJobRangeDao.findUnleasedIds(PageRequest.of(0, 10), theJob.getId(), now);
+			for (Long next : candidates) {
+				if (myReindexJobRangeDao.lease(next, myRangeLeaseOwner, now, expires) == 1) {
+					return myReindexJobRangeDao.findById(next).orElse(null);
+				}
+			}
+			return null;
+		});
+	}
+
+	/**
+	 * Creates ranges for any resources which have not yet been covered by a range of the given job,
+	 * or marks the job as deleted if all of its ranges are complete and there is nothing left
+	 * to cover.
+	 *
+	 * @return Returns <code>true</code> if there may be new ranges to lease
+	 */
+	private boolean createRanges(Long theJobId) {
+		Boolean retVal = myTxTemplate.execute(t -> {
+			if (myReindexJobRangeDao.countIncompleteForJob(theJobId) > 0) {
+				// Other servers are still working on this job
+				return false;
+			}
+
+			ResourceReindexJobEntity job = myReindexJobDao.findById(theJobId).orElse(null);
+			if (job == null || job.isDeleted()) {
+				return false;
+			}
+
+			String type = job.getResourceType();
+			Long highestPid;
+			Long lowPid = job.getRangePidHigh();
+			if (isNotBlank(type)) {
+				highestPid = myResourceTableDao.findHighestPidOfTypeUpdatedBefore(type, job.getThresholdHigh());
+				if (lowPid == null) {
+					lowPid = myResourceTableDao.findLowestPidOfType(type);
+				}
+			} else {
+				highestPid = myResourceTableDao.findHighestPidUpdatedBefore(job.getThresholdHigh());
+				if (lowPid == null) {
+					lowPid = myResourceTableDao.findLowestPid();
+				}
+			}
+
+			if (highestPid == null || lowPid == null || highestPid < lowPid) {
+				ourLog.info("Completed reindex JOB[{}] - Indexed {} resources", theJobId, job.getReindexCount());
+				myReindexJobDao.markAsDeletedById(theJobId);
+				return false;
+			}
+
+			long newRangePidHigh = highestPid + 1;
+			int updated;
+			if (job.getRangePidHigh() == null) {
+				updated = myReindexJobDao.initializeRangePidHigh(theJobId, newRangePidHigh);
+			} else {
+				updated = myReindexJobDao.updateRangePidHigh(theJobId, job.getRangePidHigh(), newRangePidHigh);
+			}
+			if (updated == 0) {
+				// Another server created the ranges first
+				return true;
+			}
+
+			List<ResourceReindexJobRangeEntity> ranges = new ArrayList<>();
+			for (long next = lowPid; next < newRangePidHigh; next += RANGE_SIZE) {
+				ranges.add(new ResourceReindexJobRangeEntity(job, next, Math.min(next + RANGE_SIZE, newRangePidHigh)));
+			}
+			myReindexJobRangeDao.saveAll(ranges);
+
+			ourLog.info("Created {} ranges for reindex JOB[{}] covering PIDs {} to {}", ranges.size(), theJobId, lowPid, highestPid);
+			return true;
+		});
+		return Boolean.TRUE.equals(retVal);
+	}
+
+	/**
+	 * @return The number of resources reindexed, or <code>null</code> if the job has been suspended
+	 */
+	private Integer reindexRange(ResourceReindexJobEntity theJob, ResourceReindexJobRangeEntity theRange) {
+		StopWatch sw = new StopWatch();
+		Date low = theJob.getThresholdLow() != null ? theJob.getThresholdLow() : BEGINNING_OF_TIME;
+		Date high = theJob.getThresholdHigh();
+		long nextPid = theRange.getPidNext();
+		int count = 0;
+
+		while (true) {
+			long pageLowPid = nextPid;
+			Slice<Long> page = myTxTemplate.execute(t -> {
+				PageRequest pageRequest = PageRequest.of(0, RANGE_PAGE_SIZE);
+				if (isNotBlank(theJob.getResourceType())) {
+					return myResourceTableDao.findIdsOfResourcesWithinPidAndUpdatedRange(pageRequest, theJob.getResourceType(), pageLowPid, theRange.getPidHigh(), low, high);
+				} else {
+					return myResourceTableDao.findIdsOfResourcesWithinPidAndUpdatedRange(pageRequest, pageLowPid, theRange.getPidHigh(), low, high);
+				}
+			});
+			Validate.notNull(page);
+
+			AtomicInteger counter = new AtomicInteger();
+			List<Future<Date>> futures = page
+				.stream()
+				.map(t -> myTaskExecutor.submit(new ResourceReindexingTask(t, counter)))
+				.collect(Collectors.toList());
+
+			for (Future<Date> next : futures) {
+				try {
+					next.get();
+				} catch (Exception e) {
+					ourLog.error("Failure reindexing", e);
+					Date suspendedUntil = DateUtils.addMinutes(new Date(), 1);
+					myTxTemplate.execute(t -> {
+						myReindexJobDao.setSuspendedUntil(suspendedUntil);
+						return null;
+					});
+					// The range stays leased, so it will be retried once the lease expires
+					return null;
+				}
+			}
+
+			boolean finished = !page.hasNext();
+			if (page.hasContent()) {
+				nextPid = page.getContent().get(page.getNumberOfElements() - 1) + 1;
+			}
+			long newNextPid = finished ? theRange.getPidHigh() : nextPid;
+			int pageCount = counter.get();
+			count += pageCount;
+
+			Boolean stillLeased = myTxTemplate.execute(t -> {
+				Date expires = new Date(System.currentTimeMillis() + RANGE_LEASE_MILLIS);
+				if (myReindexJobRangeDao.updateProgress(theRange.getId(), myRangeLeaseOwner, newNextPid, pageCount, expires) == 0) {
+					return false;
+				}
+				myReindexJobDao.incrementReindexCount(theJob.getId(), pageCount);
+				if (finished) {
+					myReindexJobRangeDao.markComplete(theRange.getId(), myRangeLeaseOwner);
+				}
+				return true;
+			});
+
+			if (!Boolean.TRUE.equals(stillLeased)) {
+				ourLog.warn("Lost lease on range {}-{} of reindex JOB[{}], abandoning it", theRange.getPidLow(), theRange.getPidHigh(), theJob.getId());
+				break;
+			}
+			if (finished) {
+				break;
+			}
+		}
+
+		long remaining = myTxTemplate.execute(t -> myReindexJobRangeDao.countIncompleteForJob(theJob.getId()));
+		long total = myTxTemplate.execute(t -> myReindexJobRangeDao.countForJob(theJob.getId()));
+		ourLog.info("Completed range {}-{} of reindex JOB[{}] - Indexed {} resources in {} ({} / sec) - {}/{} ranges remaining", theRange.getPidLow(), theRange.getPidHigh(), theJob.getId(), count, sw.toString(), sw.formatThroughput(count, TimeUnit.SECONDS), remaining, total);
+		return count;
+	}
+
 	private void expungeJobsMarkedAsDeleted() {
 		myTxTemplate.execute(t -> {
 			Collection<ResourceReindexJobEntity> toDelete = myReindexJobDao.findAll(PageRequest.of(0, 10), true);
 			toDelete.forEach(job -> {
 				ourLog.info("Purging deleted job[{}]", job.getId());
+				myReindexJobRangeDao.deleteForJob(job.getId());
 				myReindexJobDao.deleteById(job.getId());
 			});
 			return null;
@@ -29,4 +29,10 @@ public interface ISearchParamPresenceSvc {
 
 	AddRemoveCount updatePresence(ResourceTable theResource, Map<String, Boolean> theParamNameToPresence);
 
+	/**
+	 * Like {@link #updatePresence(ResourceTable, Map)} but for a resource which is being
+	 * created, so no lookup of existing presence rows is required
+	 */
+	AddRemoveCount addPresenceForNewResource(ResourceTable theResource, Map<String, Boolean> theParamNameToPresence);
+
 }
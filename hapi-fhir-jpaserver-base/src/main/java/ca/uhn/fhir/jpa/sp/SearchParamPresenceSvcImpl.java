@@ -58,18 +58,7 @@ public class SearchParamPresenceSvcImpl implements ISearchParamPresenceSvc {
 		}
 
 		// Find newly wanted set of entries
-		Map<Long, SearchParamPresent> newHashToPresence = new HashMap<>();
-		for (Entry<String, Boolean> next : presenceMap.entrySet()) {
-			String paramName = next.getKey();
-
-			SearchParamPresent present = new SearchParamPresent();
-			present.setResource(theResource);
-			present.setParamName(paramName);
-			present.setPresent(next.getValue());
-			present.calculateHashes();
-
-			newHashToPresence.put(present.getHashPresence(), present);
-		}
+		Map<Long, SearchParamPresent> newHashToPresence = toPresenceEntities(theResource, presenceMap);
 
 		// Delete any that should be deleted
 		List<SearchParamPresent> toDelete = new ArrayList<>();
@@ -94,4 +83,34 @@ public class SearchParamPresenceSvcImpl implements ISearchParamPresenceSvc {
 		return retVal;
 	}
 
+	@Override
+	public AddRemoveCount addPresenceForNewResource(ResourceTable theResource, Map<String, Boolean> theParamNameToPresence) {
+		AddRemoveCount retVal = new AddRemoveCount();
+		if (myDaoConfig.getIndexMissingFields() == DaoConfig.IndexEnabledEnum.DISABLED) {
+			return retVal;
+		}
+
+		Collection<SearchParamPresent> toAdd = toPresenceEntities(theResource, theParamNameToPresence).values();
+		mySearchParamPresentDao.saveAll(toAdd);
+		retVal.addToAddCount(toAdd.size());
+
+		return retVal;
+	}
+
+	private Map<Long, SearchParamPresent> toPresenceEntities(ResourceTable theResource, Map<String, Boolean> theParamNameToPresence) {
+		Map<Long, SearchParamPresent> retVal = new HashMap<>();
+		for (Entry<String, Boolean> next : theParamNameToPresence.entrySet()) {
+			String paramName = next.getKey();
+
+			SearchParamPresent present = new SearchParamPresent();
+			present.setResource(theResource);
+			present.setParamName(paramName);
+			present.setPresent(next.getValue());
+			present.calculateHashes();
+
+			retVal.put(present.getHashPresence(), present);
+		}
+		return retVal;
+	}
+
 }
@@ -21,6 +21,7 @@ package ca.uhn.fhir.jpa.term;
  */
 
 import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.FhirVersionEnum;
 import ca.uhn.fhir.context.support.IContextValidationSupport;
 import ca.uhn.fhir.jpa.dao.*;
 import ca.uhn.fhir.jpa.dao.IFhirResourceDaoValueSet.ValidateCodeResult;
@@ -55,6 +56,7 @@ import org.hibernate.search.query.dsl.BooleanJunction;
 import org.hibernate.search.query.dsl.QueryBuilder;
 import org.hl7.fhir.exceptions.FHIRException;
 import org.hl7.fhir.instance.model.api.IBaseCoding;
+import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.IIdType;
 import org.hl7.fhir.instance.model.api.IPrimitiveType;
 import org.hl7.fhir.r4.model.*;
@@ -75,6 +77,8 @@ import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.annotation.Nonnull;
@@ -95,6 +99,11 @@ import static org.apache.commons.lang3.StringUtils.*;
 
 public abstract class BaseHapiTerminologySvcImpl implements IHapiTerminologySvc, ApplicationContextAware {
 	public static final int DEFAULT_FETCH_SIZE = 250;
+	/**
+	 * The maximum number of deferred concepts or parent/child links stored in a single chunk
+	 */
+	static final int DEFERRED_CHUNK_SIZE = 1000;
+	private static final long DEFERRED_CHUNK_LEASE_MILLIS = 10 * DateUtils.MILLIS_PER_MINUTE;
 
 	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(BaseHapiTerminologySvcImpl.class);
 	private static final Object PLACEHOLDER_OBJECT = new Object();
@@ -132,12 +141,19 @@ public abstract class BaseHapiTerminologySvcImpl implements IHapiTerminologySvc,
 	private ArrayListMultimap<Long, Long> myChildToParentPidCache;
 	@Autowired
 	private ITermCodeSystemVersionDao myCodeSystemVersionDao;
-	private List<TermConceptParentChildLink> myConceptLinksToSaveLater = new ArrayList<>();
 	@Autowired
 	private ITermConceptParentChildLinkDao myConceptParentChildLinkDao;
-	private List<TermConcept> myDeferredConcepts = Collections.synchronizedList(new ArrayList<>());
-	private List<ValueSet> myDeferredValueSets = Collections.synchronizedList(new ArrayList<>());
-	private List<ConceptMap> myDeferredConceptMaps = Collections.synchronizedList(new ArrayList<>());
+	@Autowired
+	private ITermDeferredChunkDao myDeferredChunkDao;
+	private final String myDeferredChunkLeaseOwner = UUID.randomUUID().toString();
+	private FhirContext myDeferredResourceContext;
+	/**
+	 * ValueSets which were found on a read path (e.g. <code>$expand</code> or code validation)
+	 * not to be in the terminology tables yet. Storing them is only an optimization, so they are
+	 * kept in memory rather than as deferred chunks, and are keyed by resource PID (or URL) so that
+	 * a frequently used ValueSet is only queued once.
+	 */
+	private final Map<String, ValueSet> myValueSetsToStoreLater = Collections.synchronizedMap(new LinkedHashMap<>());
 	@Autowired
 	private DaoConfig myDaoConfig;
 	private long myNextReindexPass;
@@ -148,6 +164,7 @@ public abstract class BaseHapiTerminologySvcImpl implements IHapiTerminologySvc,
 	private IFhirResourceDaoValueSet<?, ?, ?> myValueSetResourceDao;
 	private Cache<TranslationQuery, List<TermConceptMapGroupElementTarget>> myTranslationCache;
 	private Cache<TranslationQuery, List<TermConceptMapGroupElement>> myTranslationWithReverseCache;
+	private Cache<String, List<VersionIndependentConcept>> myValueSetExpansionCache;
 	private int myFetchSize = DEFAULT_FETCH_SIZE;
 	private ApplicationContext myApplicationContext;
 	private TransactionTemplate myTxTemplate;
@@ -236,6 +253,17 @@ public abstract class BaseHapiTerminologySvcImpl implements IHapiTerminologySvc,
 				.maximumSize(10000)
 				.expireAfterWrite(timeout, TimeUnit.MINUTES)
 				.build();
+
+		/*
+		 * Expansions are keyed by ValueSet version, but may still change if the
+		 * CodeSystems or ValueSets they include are changed. Changes made on this server clear the
+		 * cache, and changes made elsewhere are picked up when the entries expire.
+		 */
+		myValueSetExpansionCache =
+			Caffeine.newBuilder()
+				.maximumSize(1000)
+				.expireAfterWrite(timeout, TimeUnit.MINUTES)
+				.build();
 	}
 
 	/**
@@ -243,9 +271,8 @@ public abstract class BaseHapiTerminologySvcImpl implements IHapiTerminologySvc,
 	 */
 	@VisibleForTesting
 	public void clearDeferred() {
-		myDeferredValueSets.clear();
-		myDeferredConceptMaps.clear();
-		myDeferredConcepts.clear();
+		myDeferredChunkDao.deleteAllInBatch();
+		myValueSetsToStoreLater.clear();
 	}
 
 	/**
@@ -256,6 +283,26 @@ public abstract class BaseHapiTerminologySvcImpl implements IHapiTerminologySvc,
 		myTranslationCache.invalidateAll();
 	}
 
+	/**
+	 * Discards all cached ValueSet expansions. Expansions may include concepts from any
+	 * CodeSystem and any other ValueSet, so this is called whenever a CodeSystem version is
+	 * stored, changed or deleted, and whenever a ValueSet resource is stored or deleted.
+	 * If a transaction is active, the cache is cleared again once it commits, in case an
+	 * expansion made in the meantime cached the old concepts.
+	 */
+	@Override
+	public void clearValueSetExpansionCache() {
+		myValueSetExpansionCache.invalidateAll();
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					myValueSetExpansionCache.invalidateAll();
+				}
+			});
+		}
+	}
+
 	/**
 	 * This method is present only for unit tests, do not call from client code
 	 */
@@ -296,9 +343,18 @@ public abstract class BaseHapiTerminologySvcImpl implements IHapiTerminologySvc,
 
 	public void deleteCodeSystemVersion(final Long theCodeSystemVersionPid) {
 		ourLog.info(" * Deleting code system version {}", theCodeSystemVersionPid);
+		clearValueSetExpansionCache();
 
 		PageRequest page1000 = PageRequest.of(0, 1000);
 
+		// Deferred concepts and links which have not been stored yet
+		{
+			int deleted = myDeferredChunkDao.deleteForCodeSystemVersion(theCodeSystemVersionPid);
+			if (deleted > 0) {
+				ourLog.info(" * Deleted {} deferred chunks", deleted);
+			}
+		}
+
 		// Parent/Child links
 		{
 			String descriptor = "parent/child links";
@@ -497,7 +553,7 @@ public abstract class BaseHapiTerminologySvcImpl implements IHapiTerminologySvc,
 
 		if (!optionalTermValueSet.isPresent()) {
 			ourLog.warn("ValueSet is not present in terminology tables. Will perform in-memory expansion without parameters. Will schedule this ValueSet for pre-expansion. {}", getValueSetInfo(theValueSetToExpand));
-			myDeferredValueSets.add(theValueSetToExpand);
+			scheduleValueSetForStorage(theValueSetToExpand);
 			return expandValueSet(theValueSetToExpand); // In-memory expansion.
 		}
 
@@ -690,7 +746,20 @@ public abstract class BaseHapiTerminologySvcImpl implements IHapiTerminologySvc,
 		return sb.toString();
 	}
 
+	/**
+	 * Expansions of stored ValueSets are cached by ValueSet version, so that searches
+	 * using the <code>:in</code> and <code>:not-in</code> modifiers with the same ValueSet
+	 * don't expand it every time
+	 */
 	protected List<VersionIndependentConcept> expandValueSetAndReturnVersionIndependentConcepts(org.hl7.fhir.r4.model.ValueSet theValueSetToExpandR4) {
+		String cacheKey = toValueSetExpansionCacheKey(theValueSetToExpandR4);
+		if (cacheKey == null) {
+			return doExpandValueSetAndReturnVersionIndependentConcepts(theValueSetToExpandR4);
+		}
+		return myValueSetExpansionCache.get(cacheKey, t -> doExpandValueSetAndReturnVersionIndependentConcepts(theValueSetToExpandR4));
+	}
+
+	private List<VersionIndependentConcept> doExpandValueSetAndReturnVersionIndependentConcepts(org.hl7.fhir.r4.model.ValueSet theValueSetToExpandR4) {
 		org.hl7.fhir.r4.model.ValueSet.ValueSetExpansionComponent expandedR4 = expandValueSet(theValueSetToExpandR4).getExpansion();
 
 		ArrayList<VersionIndependentConcept> retVal = new ArrayList<>();
@@ -698,7 +767,31 @@ public abstract class BaseHapiTerminologySvcImpl implements IHapiTerminologySvc,
 			retVal.add(
 				new VersionIndependentConcept(nextContains.getSystem(), nextContains.getCode()));
 		}
-		return retVal;
+		return Collections.unmodifiableList(retVal);
+	}
+
+	/**
+	 * @return Returns <code>null</code> if the ValueSet has no version, e.g. because it is not a stored resource
+	 */
+	private static String toValueSetExpansionCacheKey(org.hl7.fhir.r4.model.ValueSet theValueSet) {
+		IIdType id = theValueSet.getIdElement();
+		Date lastUpdated = theValueSet.getMeta().getLastUpdated();
+		if (!id.hasIdPart() || !id.hasVersionIdPart() || lastUpdated == null) {
+			return null;
+		}
+		// The timestamp guards against IDs being reused after an expunge
+		return theValueSet.getUrl() + "|" + id.toUnqualified().getValue() + "|" + lastUpdated.getTime();
+	}
+
+	@Override
+	public Optional<Long> findPreExpandedValueSetPid(String theValueSetUrl) {
+		if (!myDaoConfig.isPreExpandValueSetsExperimental() || isBlank(theValueSetUrl)) {
+			return Optional.empty();
+		}
+		return myValueSetDao
+			.findByUrl(theValueSetUrl)
+			.filter(t -> t.getExpansionStatus() == TermValueSetPreExpansionStatusEnum.EXPANDED)
+			.map(TermValueSet::getId);
 	}
 
 	/**
@@ -961,7 +1054,7 @@ public abstract class BaseHapiTerminologySvcImpl implements IHapiTerminologySvc,
 
 		if (!optionalTermValueSet.isPresent()) {
 			ourLog.warn("ValueSet is not present in terminology tables. Will perform in-memory code validation. Will schedule this ValueSet for pre-expansion. {}", getValueSetInfo(theValueSet));
-			myDeferredValueSets.add(theValueSet);
+			scheduleValueSetForStorage(theValueSet);
 			return false;
 		}
 
@@ -1158,7 +1251,7 @@ public abstract class BaseHapiTerminologySvcImpl implements IHapiTerminologySvc,
 
 	protected abstract CodeSystem getCodeSystemFromContext(String theSystem);
 
-	private void persistChildren(TermConcept theConcept, TermCodeSystemVersion theCodeSystem, IdentityHashMap<TermConcept, Object> theConceptsStack, int theTotalConcepts) {
+	private void persistChildren(TermConcept theConcept, TermCodeSystemVersion theCodeSystem, IdentityHashMap<TermConcept, Object> theConceptsStack, int theTotalConcepts, DeferredConceptWriter theDeferredWriter) {
 		if (theConceptsStack.put(theConcept, PLACEHOLDER_OBJECT) != null) {
 			return;
 		}
@@ -1174,18 +1267,18 @@ public abstract class BaseHapiTerminologySvcImpl implements IHapiTerminologySvc,
 		if (theConceptsStack.size() <= myDaoConfig.getDeferIndexingForCodesystemsOfSize()) {
 			saveConcept(theConcept);
 		} else {
-			myDeferredConcepts.add(theConcept);
+			theDeferredWriter.addConcept(theConcept);
 		}
 
 		for (TermConceptParentChildLink next : theConcept.getChildren()) {
-			persistChildren(next.getChild(), theCodeSystem, theConceptsStack, theTotalConcepts);
+			persistChildren(next.getChild(), theCodeSystem, theConceptsStack, theTotalConcepts, theDeferredWriter);
 		}
 
 		for (TermConceptParentChildLink next : theConcept.getChildren()) {
 			if (theConceptsStack.size() <= myDaoConfig.getDeferIndexingForCodesystemsOfSize()) {
 				saveConceptLink(next);
 			} else {
-				myConceptLinksToSaveLater.add(next);
+				theDeferredWriter.addLink(next);
 			}
 		}
 
@@ -1201,66 +1294,161 @@ public abstract class BaseHapiTerminologySvcImpl implements IHapiTerminologySvc,
 		}
 	}
 
-	private void processDeferredConceptMaps() {
-		int count = Math.min(myDeferredConceptMaps.size(), 20);
-		for (ConceptMap nextConceptMap : new ArrayList<>(myDeferredConceptMaps.subList(0, count))) {
-			ourLog.info("Creating ConceptMap: {}", nextConceptMap.getId());
-			createOrUpdateConceptMap(nextConceptMap);
-			myDeferredConceptMaps.remove(nextConceptMap);
+	/**
+	 * Leases and processes chunks of the given type, until at least <code>theMaxItems</code>
+	 * items have been processed or there are no more chunks available to this server.
+	 *
+	 * @return The number of items processed
+	 */
+	private int processDeferredChunks(TermDeferredChunkTypeEnum theType, int theMaxItems) {
+		int retVal = 0;
+		while (retVal < theMaxItems) {
+			Optional<Long> nextChunk = leaseNextDeferredChunk(theType);
+			if (!nextChunk.isPresent()) {
+				break;
+			}
+
+			TransactionTemplate tt = new TransactionTemplate(myTransactionMgr);
+			tt.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+			try {
+				Integer processed = tt.execute(t -> processDeferredChunk(nextChunk.get()));
+				retVal += processed != null ? processed : 0;
+			} catch (Exception e) {
+				// The lease will expire and the chunk will be retried
+				ourLog.error("Failed to process deferred terminology chunk " + nextChunk.get() + ": " + e.getMessage(), e);
+				break;
+			}
 		}
-		ourLog.info("Saved {} deferred ConceptMap resources, have {} remaining", count, myDeferredConceptMaps.size());
+		return retVal;
 	}
 
-	private void processDeferredConcepts() {
-		int codeCount = 0, relCount = 0;
-		StopWatch stopwatch = new StopWatch();
+	private Optional<Long> leaseNextDeferredChunk(TermDeferredChunkTypeEnum theType) {
+		TransactionTemplate tt = new TransactionTemplate(myTransactionMgr);
+		tt.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		return tt.execute(t -> {
+			Date now = new Date();
+			Date expires = new Date(now.getTime() + DEFERRED_CHUNK_LEASE_MILLIS);
+			for (Long next : myDeferredChunkDao.findUnleasedIds(PageRequest.of(0, 10), theType, now)) {
+				// Another server may have leased the chunk since we looked
+				if (myDeferredChunkDao.lease(next, myDeferredChunkLeaseOwner, now, expires) == 1) {
+					return Optional.of(next);
+				}
+			}
+			return Optional.empty();
+		});
+	}
 
-		int count = Math.min(myDaoConfig.getDeferIndexingForCodesystemsOfSize(), myDeferredConcepts.size());
-		ourLog.info("Saving {} deferred concepts...", count);
-		while (codeCount < count && myDeferredConcepts.size() > 0) {
-			TermConcept next = myDeferredConcepts.remove(0);
-			codeCount += saveConcept(next);
+	/**
+	 * Stores the contents of a chunk and deletes it, in the same transaction
+	 *
+	 * @return The number of items processed
+	 */
+	private int processDeferredChunk(Long theChunkPid) {
+		Optional<TermDeferredChunk> chunkOpt = myDeferredChunkDao.findById(theChunkPid);
+		if (!chunkOpt.isPresent()) {
+			// Already processed by another server after our lease expired
+			return 0;
+		}
+		TermDeferredChunk chunk = chunkOpt.get();
+		myDeferredChunkDao.delete(chunk);
+
+		switch (chunk.getType()) {
+			case CONCEPTS:
+			case CONCEPT_LINKS: {
+				Optional<TermCodeSystemVersion> csv = myCodeSystemVersionDao.findById(chunk.getCodeSystemVersionPid());
+				if (!csv.isPresent()) {
+					ourLog.warn("Discarding deferred chunk {} because CodeSystemVersion[{}] appears to have been deleted", chunk.getId(), chunk.getCodeSystemVersionPid());
+				} else if (chunk.getType() == TermDeferredChunkTypeEnum.CONCEPTS) {
+					processDeferredConcepts(csv.get(), TermDeferredChunkCodec.decodeConcepts(chunk.getData()));
+				} else {
+					processDeferredConceptLinks(csv.get(), TermDeferredChunkCodec.decodeLinks(chunk.getData()));
+				}
+				break;
+			}
+			case VALUESET: {
+				ValueSet valueSet = TermDeferredChunkCodec.decodeResource(myDeferredResourceContext, ValueSet.class, chunk.getData());
+				ourLog.info("Creating ValueSet: {}", valueSet.getId());
+				createOrUpdateValueSet(valueSet);
+				break;
+			}
+			case CONCEPTMAP: {
+				ConceptMap conceptMap = TermDeferredChunkCodec.decodeResource(myDeferredResourceContext, ConceptMap.class, chunk.getData());
+				ourLog.info("Creating ConceptMap: {}", conceptMap.getId());
+				createOrUpdateConceptMap(conceptMap);
+				break;
+			}
 		}
 
-		if (codeCount > 0) {
-			ourLog.info("Saved {} deferred concepts ({} codes remain and {} relationships remain) in {}ms ({}ms / code)",
-				codeCount, myDeferredConcepts.size(), myConceptLinksToSaveLater.size(), stopwatch.getMillis(), stopwatch.getMillisPerOperation(codeCount));
+		return chunk.getItemCount();
+	}
+
+	private void processDeferredConcepts(TermCodeSystemVersion theCodeSystemVersion, List<TermConcept> theConcepts) {
+		for (TermConcept next : theConcepts) {
+			next.setCodeSystemVersion(theCodeSystemVersion);
+			for (TermConceptProperty nextProperty : next.getProperties()) {
+				nextProperty.setCodeSystemVersion(theCodeSystemVersion);
+			}
+			for (TermConceptDesignation nextDesignation : next.getDesignations()) {
+				nextDesignation.setCodeSystemVersion(theCodeSystemVersion);
+			}
+			saveConcept(next);
 		}
 
-		if (codeCount == 0) {
-			count = Math.min(myDaoConfig.getDeferIndexingForCodesystemsOfSize(), myConceptLinksToSaveLater.size());
-			ourLog.info("Saving {} deferred concept relationships...", count);
-			while (relCount < count && myConceptLinksToSaveLater.size() > 0) {
-				TermConceptParentChildLink next = myConceptLinksToSaveLater.remove(0);
+		// Keep the session small, since a code system can have millions of concepts
+		myEntityManager.flush();
+		myEntityManager.clear();
+	}
 
-				if (!myConceptDao.findById(next.getChild().getId()).isPresent() || !myConceptDao.findById(next.getParent().getId()).isPresent()) {
-					ourLog.warn("Not inserting link from child {} to parent {} because it appears to have been deleted", next.getParent().getCode(), next.getChild().getCode());
-					continue;
-				}
+	private void processDeferredConceptLinks(TermCodeSystemVersion theCodeSystemVersion, List<TermDeferredChunkCodec.ConceptLink> theLinks) {
+		Set<String> codes = new HashSet<>();
+		for (TermDeferredChunkCodec.ConceptLink next : theLinks) {
+			codes.add(next.getParentCode());
+			codes.add(next.getChildCode());
+		}
 
-				saveConceptLink(next);
-				relCount++;
+		Map<String, TermConcept> codeToConcept = new HashMap<>();
+		List<String> codeList = new ArrayList<>(codes);
+		for (int i = 0; i < codeList.size(); i += 500) {
+			List<String> nextCodes = codeList.subList(i, Math.min(i + 500, codeList.size()));
+			for (TermConcept next : myConceptDao.findByCodeSystemAndCodes(theCodeSystemVersion, nextCodes)) {
+				codeToConcept.put(next.getCode(), next);
 			}
 		}
 
-		if (relCount > 0) {
-			ourLog.info("Saved {} deferred relationships ({} remain) in {}ms ({}ms / entry)",
-				relCount, myConceptLinksToSaveLater.size(), stopwatch.getMillis(), stopwatch.getMillisPerOperation(relCount));
-		}
+		for (TermDeferredChunkCodec.ConceptLink next : theLinks) {
+			TermConcept parent = codeToConcept.get(next.getParentCode());
+			TermConcept child = codeToConcept.get(next.getChildCode());
+			if (parent == null || child == null) {
+				ourLog.warn("Not inserting link from child {} to parent {} because it appears to have been deleted", next.getChildCode(), next.getParentCode());
+				continue;
+			}
 
-		if ((myDeferredConcepts.size() + myConceptLinksToSaveLater.size()) == 0) {
-			ourLog.info("All deferred concepts and relationships have now been synchronized to the database");
+			TermConceptParentChildLink link = new TermConceptParentChildLink();
+			link.setParent(parent);
+			link.setChild(child);
+			link.setCodeSystem(theCodeSystemVersion);
+			link.setRelationshipType(next.getRelationshipType());
+			saveConceptLink(link);
+
+			// The parent PIDs were calculated before this link existed, so have the reindexer recalculate them
+			child.setParentPids("");
+			child.setIndexStatus(null);
 		}
+
+		myEntityManager.flush();
+		myEntityManager.clear();
 	}
 
-	private void processDeferredValueSets() {
-		int count = Math.min(myDeferredValueSets.size(), 20);
-		for (ValueSet nextValueSet : new ArrayList<>(myDeferredValueSets.subList(0, count))) {
-			ourLog.info("Creating ValueSet: {}", nextValueSet.getId());
-			createOrUpdateValueSet(nextValueSet);
-			myDeferredValueSets.remove(nextValueSet);
+	private void logDeferredProgress(String theDescriptor, int theCount, StopWatch theStopwatch) {
+		if (theCount > 0) {
+			long conceptsRemaining = myDeferredChunkDao.countItemsByType(TermDeferredChunkTypeEnum.CONCEPTS);
+			long linksRemaining = myDeferredChunkDao.countItemsByType(TermDeferredChunkTypeEnum.CONCEPT_LINKS);
+			ourLog.info("Saved {} deferred {} in {}ms ({}/sec) - {} concepts and {} relationships remain",
+				theCount, theDescriptor, theStopwatch.getMillis(), theStopwatch.formatThroughput(theCount, TimeUnit.SECONDS), conceptsRemaining, linksRemaining);
+			if (conceptsRemaining + linksRemaining == 0) {
+				ourLog.info("All deferred concepts and relationships have now been synchronized to the database");
+			}
 		}
-		ourLog.info("Saved {} deferred ValueSet resources, have {} remaining", count, myDeferredValueSets.size());
 	}
 
 	private void processReindexing() {
@@ -1414,68 +1602,123 @@ public abstract class BaseHapiTerminologySvcImpl implements IHapiTerminologySvc,
 	public synchronized void saveDeferred() {
 		if (isProcessDeferredPaused()) {
 			return;
-		} else if (isNoDeferredConceptsAndNoConceptLinksToSaveLater()) {
-			processReindexing();
 		}
 
-		TransactionTemplate tt = new TransactionTemplate(myTransactionMgr);
-		tt.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
-		if (isDeferredConceptsOrConceptLinksToSaveLater()) {
-			tt.execute(t -> {
-				processDeferredConcepts();
-				return null;
-			});
+		int maxItems = myDaoConfig.getDeferIndexingForCodesystemsOfSize();
+
+		StopWatch stopwatch = new StopWatch();
+		int count = processDeferredChunks(TermDeferredChunkTypeEnum.CONCEPTS, maxItems);
+		logDeferredProgress("concepts", count, stopwatch);
+		boolean codeSystemsChanged = count > 0;
+
+		/*
+		 * Links refer to concepts by code, so they can only be stored once
+		 * every deferred concept has been stored (possibly by another server)
+		 */
+		if (count == 0 && isNoDeferredConcepts()) {
+			stopwatch.restart();
+			count = processDeferredChunks(TermDeferredChunkTypeEnum.CONCEPT_LINKS, maxItems);
+			logDeferredProgress("relationships", count, stopwatch);
+			codeSystemsChanged |= count > 0;
 		}
 
-		if (isDeferredValueSets()) {
-			tt.execute(t -> {
-				processDeferredValueSets();
-				return null;
-			});
+		// Each chunk is stored in its own transaction, which has committed by now
+		if (codeSystemsChanged) {
+			clearValueSetExpansionCache();
 		}
-		if (isDeferredConceptMaps()) {
-			tt.execute(t -> {
-				processDeferredConceptMaps();
-				return null;
-			});
+
+		if (isNoDeferredConceptsAndNoConceptLinksToSaveLater()) {
+			processReindexing();
 		}
 
-	}
+		count = processDeferredChunks(TermDeferredChunkTypeEnum.VALUESET, 20);
+		if (count > 0) {
+			ourLog.info("Saved {} deferred ValueSet resources, have {} remaining", count, myDeferredChunkDao.countItemsByType(TermDeferredChunkTypeEnum.VALUESET));
+		}
 
-	private boolean isProcessDeferredPaused() {
-		return !myProcessDeferred;
-	}
+		count = processValueSetsToStoreLater(20);
+		if (count > 0) {
+			ourLog.info("Saved {} ValueSet resources scheduled for pre-expansion, have {} remaining", count, myValueSetsToStoreLater.size());
+		}
 
-	private boolean isNoDeferredConceptsAndNoConceptLinksToSaveLater() {
-		return isNoDeferredConcepts() && isNoConceptLinksToSaveLater();
+		count = processDeferredChunks(TermDeferredChunkTypeEnum.CONCEPTMAP, 20);
+		if (count > 0) {
+			ourLog.info("Saved {} deferred ConceptMap resources, have {} remaining", count, myDeferredChunkDao.countItemsByType(TermDeferredChunkTypeEnum.CONCEPTMAP));
+		}
 	}
 
-	private boolean isDeferredConceptsOrConceptLinksToSaveLater() {
-		return isDeferredConcepts() || isConceptLinksToSaveLater();
+	/**
+	 * Stores up to <code>theMaxItems</code> of the ValueSets queued by {@link #scheduleValueSetForStorage(ValueSet)},
+	 * each in its own transaction
+	 *
+	 * @return The number of ValueSets processed
+	 */
+	private int processValueSetsToStoreLater(int theMaxItems) {
+		List<Map.Entry<String, ValueSet>> entries;
+		synchronized (myValueSetsToStoreLater) {
+			entries = myValueSetsToStoreLater
+				.entrySet()
+				.stream()
+				.limit(theMaxItems)
+				.map(t -> new AbstractMap.SimpleImmutableEntry<>(t.getKey(), t.getValue()))
+				.collect(Collectors.toList());
+		}
+
+		TransactionTemplate tt = new TransactionTemplate(myTransactionMgr);
+		tt.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		for (Map.Entry<String, ValueSet> next : entries) {
+			try {
+				ourLog.info("Creating ValueSet: {}", next.getValue().getId());
+				tt.execute(t -> {
+					createOrUpdateValueSet(next.getValue());
+					return null;
+				});
+			} catch (Exception e) {
+				// The ValueSet will be scheduled again the next time it is used
+				ourLog.error("Failed to store ValueSet " + next.getKey() + ": " + e.getMessage(), e);
+			}
+			myValueSetsToStoreLater.remove(next.getKey());
+		}
+		return entries.size();
 	}
 
-	private boolean isDeferredConcepts() {
-		return !myDeferredConcepts.isEmpty();
+	/**
+	 * Queues a ValueSet which is not yet in the terminology tables so that it will be
+	 * stored (and subsequently pre-expanded). Nothing is queued if the same ValueSet is
+	 * already waiting to be stored.
+	 */
+	private void scheduleValueSetForStorage(ValueSet theValueSet) {
+		String key;
+		Long resourcePid = IDao.RESOURCE_PID.get(theValueSet);
+		if (resourcePid != null) {
+			key = "pid:" + resourcePid;
+		} else if (theValueSet.hasUrl()) {
+			key = "url:" + theValueSet.getUrl();
+		} else {
+			return;
+		}
+		myValueSetsToStoreLater.putIfAbsent(key, theValueSet);
 	}
 
-	private boolean isNoDeferredConcepts() {
-		return myDeferredConcepts.isEmpty();
+	private void deferResource(TermDeferredChunkTypeEnum theType, IBaseResource theResource) {
+		byte[] data = TermDeferredChunkCodec.encodeResource(myDeferredResourceContext, theResource);
+		myDeferredChunkDao.save(new TermDeferredChunk(theType, null, 1, data));
 	}
 
-	private boolean isConceptLinksToSaveLater() {
-		return !myConceptLinksToSaveLater.isEmpty();
+	private boolean isProcessDeferredPaused() {
+		return !myProcessDeferred;
 	}
 
-	private boolean isNoConceptLinksToSaveLater() {
-		return myConceptLinksToSaveLater.isEmpty();
+	private boolean isNoDeferredConceptsAndNoConceptLinksToSaveLater() {
+		return isNoDeferredConcepts() && isNoConceptLinksToSaveLater();
 	}
 
-	private boolean isDeferredValueSets() {
-		return !myDeferredValueSets.isEmpty();
+	private boolean isNoDeferredConcepts() {
+		return myDeferredChunkDao.countByType(TermDeferredChunkTypeEnum.CONCEPTS) == 0;
 	}
 
-	private boolean isDeferredConceptMaps() {
-		return !myDeferredConceptMaps.isEmpty();
+	private boolean isNoConceptLinksToSaveLater() {
+		return myDeferredChunkDao.countByType(TermDeferredChunkTypeEnum.CONCEPT_LINKS) == 0;
 	}
 
 	@Override
@@ -1493,6 +1736,13 @@ public abstract class BaseHapiTerminologySvcImpl implements IHapiTerminologySvc,
 		myCodeSystemResourceDao = myApplicationContext.getBean(IFhirResourceDaoCodeSystem.class);
 		myValueSetResourceDao = myApplicationContext.getBean(IFhirResourceDaoValueSet.class);
 		myTxTemplate = new TransactionTemplate(myTransactionManager);
+
+		// Deferred ValueSets and ConceptMaps always use the R4 structures
+		if (myContext.getVersion().getVersion() == FhirVersionEnum.R4) {
+			myDeferredResourceContext = myContext;
+		} else {
+			myDeferredResourceContext = FhirContext.forR4();
+		}
 	}
 
 	@Override
@@ -1502,6 +1752,7 @@ public abstract class BaseHapiTerminologySvcImpl implements IHapiTerminologySvc,
 
 		ValidateUtil.isTrueOrThrowInvalidRequest(theCodeSystemVersion.getResource() != null, "No resource supplied");
 		ValidateUtil.isNotBlankOrThrowInvalidRequest(theSystemUri, "No system URI supplied");
+		clearValueSetExpansionCache();
 
 		// Grab the existing versions so we can delete them later
 		List<TermCodeSystemVersion> existing = myCodeSystemVersionDao.findByCodeSystemResource(theCodeSystemResourcePid);
@@ -1574,9 +1825,11 @@ public abstract class BaseHapiTerminologySvcImpl implements IHapiTerminologySvc,
 		ourLog.info("Saving {} concepts...", totalCodeCount);
 
 		IdentityHashMap<TermConcept, Object> conceptsStack2 = new IdentityHashMap<TermConcept, Object>();
+		DeferredConceptWriter deferredWriter = new DeferredConceptWriter(codeSystemVersion);
 		for (TermConcept next : theCodeSystemVersion.getConcepts()) {
-			persistChildren(next, codeSystemVersion, conceptsStack2, totalCodeCount);
+			persistChildren(next, codeSystemVersion, conceptsStack2, totalCodeCount, deferredWriter);
 		}
+		deferredWriter.flush();
 
 		ourLog.info("Done saving concepts, flushing to database");
 
@@ -1585,8 +1838,8 @@ public abstract class BaseHapiTerminologySvcImpl implements IHapiTerminologySvc,
 
 		ourLog.info("Done deleting old code system versions");
 
-		if (myDeferredConcepts.size() > 0 || myConceptLinksToSaveLater.size() > 0) {
-			ourLog.info("Note that some concept saving was deferred - still have {} concepts and {} relationships", myDeferredConcepts.size(), myConceptLinksToSaveLater.size());
+		if (deferredWriter.getConceptCount() > 0 || deferredWriter.getLinkCount() > 0) {
+			ourLog.info("Note that some concept saving was deferred - queued {} concepts and {} relationships", deferredWriter.getConceptCount(), deferredWriter.getLinkCount());
 		}
 	}
 
@@ -1606,8 +1859,12 @@ public abstract class BaseHapiTerminologySvcImpl implements IHapiTerminologySvc,
 
 		storeNewCodeSystemVersion(codeSystemResourcePid, theCodeSystemResource.getUrl(), theCodeSystemResource.getName(), theCodeSystemResource.getVersion(), theCodeSystemVersion);
 
-		myDeferredConceptMaps.addAll(theConceptMaps);
-		myDeferredValueSets.addAll(theValueSets);
+		for (ConceptMap next : theConceptMaps) {
+			deferResource(TermDeferredChunkTypeEnum.CONCEPTMAP, next);
+		}
+		for (ValueSet next : theValueSets) {
+			deferResource(TermDeferredChunkTypeEnum.VALUESET, next);
+		}
 
 		return csId;
 	}
@@ -1881,19 +2138,8 @@ public abstract class BaseHapiTerminologySvcImpl implements IHapiTerminologySvc,
 			return false;
 		}
 
-		if (isDeferredConcepts()) {
-			return false;
-		}
-
-		if (isConceptLinksToSaveLater()) {
-			return false;
-		}
-
-		if (isDeferredValueSets()) {
-			return false;
-		}
-
-		if (isDeferredConceptMaps()) {
+		// Any deferred concepts, relationships, ValueSets or ConceptMaps
+		if (myDeferredChunkDao.count() > 0 || !myValueSetsToStoreLater.isEmpty()) {
 			return false;
 		}
 
@@ -1986,6 +2232,7 @@ public abstract class BaseHapiTerminologySvcImpl implements IHapiTerminologySvc,
 	@Transactional
 	@Override
 	public AtomicInteger applyDeltaCodesystemsAdd(String theSystem, @Nullable String theParent, CodeSystem theValue) {
+		clearValueSetExpansionCache();
 		TermCodeSystem cs = getCodeSystem(theSystem);
 		if (cs == null) {
 			List<CodeSystem.ConceptDefinitionComponent> codes = theValue.getConcept();
@@ -2042,6 +2289,7 @@ public abstract class BaseHapiTerminologySvcImpl implements IHapiTerminologySvc,
 		if (cs == null) {
 			throw new InvalidRequestException("Unknown code system: " + theSystem);
 		}
+		clearValueSetExpansionCache();
 
 		AtomicInteger removeCounter = new AtomicInteger(0);
 
@@ -2416,5 +2664,66 @@ public abstract class BaseHapiTerminologySvcImpl implements IHapiTerminologySvc,
 		ourForceSaveDeferredAlwaysForUnitTest = theForceSaveDeferredAlwaysForUnitTest;
 	}
 
+	/**
+	 * Collects the concepts and parent/child links from a code system which are not
+	 * saved immediately, and stores them as {@link TermDeferredChunk deferred chunks}
+	 * of up to {@link #DEFERRED_CHUNK_SIZE} items each
+	 */
+	private class DeferredConceptWriter {
+		private final TermCodeSystemVersion myCodeSystemVersion;
+		private final List<TermConcept> myConcepts = new ArrayList<>();
+		private final List<TermConceptParentChildLink> myLinks = new ArrayList<>();
+		private int myConceptCount;
+		private int myLinkCount;
+
+		DeferredConceptWriter(TermCodeSystemVersion theCodeSystemVersion) {
+			myCodeSystemVersion = theCodeSystemVersion;
+		}
+
+		void addConcept(TermConcept theConcept) {
+			myConcepts.add(theConcept);
+			myConceptCount++;
+			if (myConcepts.size() >= DEFERRED_CHUNK_SIZE) {
+				flushConcepts();
+			}
+		}
+
+		void addLink(TermConceptParentChildLink theLink) {
+			myLinks.add(theLink);
+			myLinkCount++;
+			if (myLinks.size() >= DEFERRED_CHUNK_SIZE) {
+				flushLinks();
+			}
+		}
+
+		void flush() {
+			flushConcepts();
+			flushLinks();
+		}
+
+		int getConceptCount() {
+			return myConceptCount;
+		}
+
+		int getLinkCount() {
+			return myLinkCount;
+		}
+
+		private void flushConcepts() {
+			if (!myConcepts.isEmpty()) {
+				byte[] data = TermDeferredChunkCodec.encodeConcepts(myConcepts);
+				myDeferredChunkDao.save(new TermDeferredChunk(TermDeferredChunkTypeEnum.CONCEPTS, myCodeSystemVersion.getPid(), myConcepts.size(), data));
+				myConcepts.clear();
+			}
+		}
+
+		private void flushLinks() {
+			if (!myLinks.isEmpty()) {
+				byte[] data = TermDeferredChunkCodec.encodeLinks(myLinks);
+				myDeferredChunkDao.save(new TermDeferredChunk(TermDeferredChunkTypeEnum.CONCEPT_LINKS, myCodeSystemVersion.getPid(), myLinks.size(), data));
+				myLinks.clear();
+			}
+		}
+	}
 
 }
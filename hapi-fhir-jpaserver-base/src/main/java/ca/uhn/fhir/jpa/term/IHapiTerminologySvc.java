@@ -58,6 +58,13 @@ public interface IHapiTerminologySvc {
 
 	List<VersionIndependentConcept> expandValueSet(String theValueSet);
 
+	/**
+	 * Returns the PID of the pre-expansion (the {@link TermValueSet}) for the ValueSet with
+	 * the given canonical URL, if the ValueSet has been completely pre-expanded. The concepts in
+	 * the pre-expansion can then be joined to directly instead of expanding the ValueSet.
+	 */
+	Optional<Long> findPreExpandedValueSetPid(String theValueSetUrl);
+
 	Optional<TermConcept> findCode(String theCodeSystem, String theCode);
 
 	List<TermConcept> findCodes(String theSystem);
@@ -95,6 +102,12 @@ public interface IHapiTerminologySvc {
 
 	void deleteValueSetAndChildren(ResourceTable theResourceTable);
 
+	/**
+	 * Discards all cached ValueSet expansions. Called whenever a ValueSet resource is stored or
+	 * deleted, since an expansion may include other ValueSets.
+	 */
+	void clearValueSetExpansionCache();
+
 	void storeTermConceptMapAndChildren(ResourceTable theResourceTable, ConceptMap theConceptMap);
 
 	void storeTermValueSet(ResourceTable theResourceTable, ValueSet theValueSet);
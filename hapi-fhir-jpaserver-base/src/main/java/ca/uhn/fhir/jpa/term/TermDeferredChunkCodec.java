@@ -0,0 +1,255 @@
+package ca.uhn.fhir.jpa.term;
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.jpa.entity.*;
+import ca.uhn.fhir.jpa.entity.TermConceptParentChildLink.RelationshipTypeEnum;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Encodes deferred terminology work into the compressed binary form stored in
+ * a {@link TermDeferredChunk}, and decodes it again.
+ * <p>
+ * Concepts are stored with their properties and designations, but without any
+ * parent/child links. Links are stored separately, and refer to the parent and
+ * child concepts by code.
+ * </p>
+ */
+public class TermDeferredChunkCodec {
+
+	private static final byte FORMAT_VERSION = 1;
+
+	/**
+	 * Non instantiable
+	 */
+	private TermDeferredChunkCodec() {
+		// nothing
+	}
+
+	public static byte[] encodeConcepts(Collection<TermConcept> theConcepts) {
+		return encode(theOutput -> {
+			theOutput.writeInt(theConcepts.size());
+			for (TermConcept next : theConcepts) {
+				theOutput.writeUTF(next.getCode());
+				writeString(theOutput, next.getDisplay());
+				theOutput.writeBoolean(next.getSequence() != null);
+				if (next.getSequence() != null) {
+					theOutput.writeInt(next.getSequence());
+				}
+
+				theOutput.writeInt(next.getProperties().size());
+				for (TermConceptProperty nextProperty : next.getProperties()) {
+					theOutput.writeUTF(nextProperty.getType().name());
+					theOutput.writeUTF(nextProperty.getKey());
+					writeString(theOutput, nextProperty.getValue());
+					writeString(theOutput, nextProperty.getCodeSystem());
+					writeString(theOutput, nextProperty.getDisplay());
+				}
+
+				theOutput.writeInt(next.getDesignations().size());
+				for (TermConceptDesignation nextDesignation : next.getDesignations()) {
+					writeString(theOutput, nextDesignation.getLanguage());
+					writeString(theOutput, nextDesignation.getUseSystem());
+					writeString(theOutput, nextDesignation.getUseCode());
+					writeString(theOutput, nextDesignation.getUseDisplay());
+					writeString(theOutput, nextDesignation.getValue());
+				}
+			}
+		});
+	}
+
+	/**
+	 * Returns new (unsaved) concepts, with their properties and designations. The
+	 * code system version is not populated.
+	 */
+	public static List<TermConcept> decodeConcepts(byte[] theData) {
+		return decode(theData, theInput -> {
+			int count = theInput.readInt();
+			List<TermConcept> retVal = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				TermConcept concept = new TermConcept();
+				concept.setCode(theInput.readUTF());
+				concept.setDisplay(readString(theInput));
+				if (theInput.readBoolean()) {
+					concept.setSequence(theInput.readInt());
+				}
+
+				int propertyCount = theInput.readInt();
+				for (int j = 0; j < propertyCount; j++) {
+					TermConceptProperty property = new TermConceptProperty();
+					property.setConcept(concept);
+					property.setType(TermConceptPropertyTypeEnum.valueOf(theInput.readUTF()));
+					property.setKey(theInput.readUTF());
+					property.setValue(readString(theInput));
+					property.setCodeSystem(readString(theInput));
+					property.setDisplay(readString(theInput));
+					concept.getProperties().add(property);
+				}
+
+				int designationCount = theInput.readInt();
+				for (int j = 0; j < designationCount; j++) {
+					TermConceptDesignation designation = concept.addDesignation();
+					designation.setLanguage(readString(theInput));
+					designation.setUseSystem(readString(theInput));
+					designation.setUseCode(readString(theInput));
+					designation.setUseDisplay(readString(theInput));
+					designation.setValue(readString(theInput));
+				}
+
+				retVal.add(concept);
+			}
+			return retVal;
+		});
+	}
+
+	public static byte[] encodeLinks(Collection<TermConceptParentChildLink> theLinks) {
+		return encode(theOutput -> {
+			theOutput.writeInt(theLinks.size());
+			for (TermConceptParentChildLink next : theLinks) {
+				theOutput.writeUTF(next.getParent().getCode());
+				theOutput.writeUTF(next.getChild().getCode());
+				writeString(theOutput, next.getRelationshipType() != null ? next.getRelationshipType().name() : null);
+			}
+		});
+	}
+
+	public static List<ConceptLink> decodeLinks(byte[] theData) {
+		return decode(theData, theInput -> {
+			int count = theInput.readInt();
+			List<ConceptLink> retVal = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				String parentCode = theInput.readUTF();
+				String childCode = theInput.readUTF();
+				String relationshipType = readString(theInput);
+				retVal.add(new ConceptLink(parentCode, childCode, relationshipType != null ? RelationshipTypeEnum.valueOf(relationshipType) : null));
+			}
+			return retVal;
+		});
+	}
+
+	public static byte[] encodeResource(FhirContext theContext, IBaseResource theResource) {
+		byte[] encoded = theContext.newJsonParser().encodeResourceToString(theResource).getBytes(StandardCharsets.UTF_8);
+		return encode(theOutput -> {
+			theOutput.writeInt(encoded.length);
+			theOutput.write(encoded);
+		});
+	}
+
+	public static <T extends IBaseResource> T decodeResource(FhirContext theContext, Class<T> theType, byte[] theData) {
+		String encoded = decode(theData, theInput -> {
+			byte[] bytes = new byte[theInput.readInt()];
+			theInput.readFully(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		});
+		return theContext.newJsonParser().parseResource(theType, encoded);
+	}
+
+	private static byte[] encode(IWriter theWriter) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		bytes.write(FORMAT_VERSION);
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try (DataOutputStream output = new DataOutputStream(new DeflaterOutputStream(bytes, deflater))) {
+			theWriter.write(output);
+		} catch (IOException e) {
+			throw new InternalErrorException("Failed to encode deferred terminology chunk", e);
+		} finally {
+			deflater.end();
+		}
+		return bytes.toByteArray();
+	}
+
+	private static <T> T decode(byte[] theData, IReader<T> theReader) {
+		if (theData.length == 0 || theData[0] != FORMAT_VERSION) {
+			throw new InternalErrorException("Unknown deferred terminology chunk format");
+		}
+
+		ByteArrayInputStream bytes = new ByteArrayInputStream(theData, 1, theData.length - 1);
+		try (DataInputStream input = new DataInputStream(new InflaterInputStream(bytes))) {
+			return theReader.read(input);
+		} catch (IOException e) {
+			throw new InternalErrorException("Invalid deferred terminology chunk", e);
+		}
+	}
+
+	private static void writeString(DataOutputStream theOutput, String theValue) throws IOException {
+		theOutput.writeBoolean(theValue != null);
+		if (theValue != null) {
+			theOutput.writeUTF(theValue);
+		}
+	}
+
+	private static String readString(DataInputStream theInput) throws IOException {
+		if (theInput.readBoolean()) {
+			return theInput.readUTF();
+		}
+		return null;
+	}
+
+	@FunctionalInterface
+	private interface IWriter {
+		void write(DataOutputStream theOutput) throws IOException;
+	}
+
+	@FunctionalInterface
+	private interface IReader<T> {
+		T read(DataInputStream theInput) throws IOException;
+	}
+
+	/**
+	 * A parent/child link between two concepts in the same code system version
+	 */
+	public static class ConceptLink {
+		private final String myParentCode;
+		private final String myChildCode;
+		private final RelationshipTypeEnum myRelationshipType;
+
+		public ConceptLink(String theParentCode, String theChildCode, RelationshipTypeEnum theRelationshipType) {
+			myParentCode = theParentCode;
+			myChildCode = theChildCode;
+			myRelationshipType = theRelationshipType;
+		}
+
+		public String getChildCode() {
+			return myChildCode;
+		}
+
+		public String getParentCode() {
+			return myParentCode;
+		}
+
+		public RelationshipTypeEnum getRelationshipType() {
+			return myRelationshipType;
+		}
+	}
+
+}
@@ -0,0 +1,245 @@
+package ca.uhn.fhir.jpa.util;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.RandomAccess;
+
+/**
+ * A growable list of <code>long</code> values which is backed by a primitive
+ * array instead of boxed {@link Long} instances. This is used to hold resource
+ * PIDs for searches, which can contain millions of entries.
+ * <p>
+ * The class implements {@link java.util.List List&lt;Long&gt;} so that it can be passed
+ * to APIs expecting a regular collection, but callers on hot paths should prefer
+ * the primitive {@link #add(long)}, {@link #getLong(int)} and {@link #longIterator()}
+ * methods, which do not box.
+ * </p>
+ */
+public class LongList extends AbstractList<Long> implements RandomAccess {
+
+	private static final long[] EMPTY = new long[0];
+	private long[] myValues;
+	private int mySize;
+
+	/**
+	 * Constructor
+	 */
+	public LongList() {
+		myValues = EMPTY;
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param theInitialCapacity The number of values to allocate room for
+	 */
+	public LongList(int theInitialCapacity) {
+		myValues = theInitialCapacity > 0 ? new long[theInitialCapacity] : EMPTY;
+	}
+
+	/**
+	 * Constructor which copies the given values
+	 */
+	public LongList(Collection<Long> theValues) {
+		this(theValues.size());
+		addAll(theValues);
+	}
+
+	public void add(long theValue) {
+		ensureCapacity(mySize + 1);
+		myValues[mySize++] = theValue;
+	}
+
+	@Override
+	public boolean add(Long theValue) {
+		add(theValue.longValue());
+		return true;
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends Long> theValues) {
+		if (theValues instanceof LongList) {
+			addAll((LongList) theValues);
+		} else {
+			ensureCapacity(mySize + theValues.size());
+			for (Long next : theValues) {
+				myValues[mySize++] = next;
+			}
+		}
+		return !theValues.isEmpty();
+	}
+
+	public void addAll(LongList theValues) {
+		ensureCapacity(mySize + theValues.mySize);
+		System.arraycopy(theValues.myValues, 0, myValues, mySize, theValues.mySize);
+		mySize += theValues.mySize;
+	}
+
+	@Override
+	public void clear() {
+		mySize = 0;
+	}
+
+	@Override
+	public boolean contains(Object theValue) {
+		return theValue instanceof Long && contains(((Long) theValue).longValue());
+	}
+
+	public boolean contains(long theValue) {
+		for (int i = 0; i < mySize; i++) {
+			if (myValues[i] == theValue) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void ensureCapacity(int theCapacity) {
+		if (theCapacity > myValues.length) {
+			int newCapacity = Math.max(theCapacity, Math.max(10, myValues.length + (myValues.length >> 1)));
+			myValues = Arrays.copyOf(myValues, newCapacity);
+		}
+	}
+
+	@Override
+	public Long get(int theIndex) {
+		return getLong(theIndex);
+	}
+
+	public long getLong(int theIndex) {
+		if (theIndex < 0 || theIndex >= mySize) {
+			throw new IndexOutOfBoundsException("Index: " + theIndex + ", Size: " + mySize);
+		}
+		return myValues[theIndex];
+	}
+
+	@Override
+	public PrimitiveIterator.OfLong iterator() {
+		return longIterator();
+	}
+
+	/**
+	 * Returns an iterator over the values in this list which does not box
+	 */
+	public PrimitiveIterator.OfLong longIterator() {
+		return new PrimitiveIterator.OfLong() {
+			private int myIndex;
+
+			@Override
+			public boolean hasNext() {
+				return myIndex < mySize;
+			}
+
+			@Override
+			public long nextLong() {
+				if (myIndex >= mySize) {
+					throw new NoSuchElementException();
+				}
+				return myValues[myIndex++];
+			}
+		};
+	}
+
+	@Override
+	public Long remove(int theIndex) {
+		long retVal = getLong(theIndex);
+		System.arraycopy(myValues, theIndex + 1, myValues, theIndex, mySize - theIndex - 1);
+		mySize--;
+		return retVal;
+	}
+
+	@Override
+	public boolean remove(Object theValue) {
+		if (theValue instanceof Long) {
+			long value = (Long) theValue;
+			for (int i = 0; i < mySize; i++) {
+				if (myValues[i] == value) {
+					remove(i);
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public Long set(int theIndex, Long theValue) {
+		long retVal = getLong(theIndex);
+		myValues[theIndex] = theValue;
+		return retVal;
+	}
+
+	@Override
+	public int size() {
+		return mySize;
+	}
+
+	/**
+	 * Returns a new list containing a copy of the values between <code>theFromIndex</code> (inclusive)
+	 * and <code>theToIndex</code> (exclusive). Unlike {@link java.util.List#subList(int, int)}, the
+	 * returned list is not a view, so it is not affected by subsequent changes to this list.
+	 */
+	public LongList copyOfRange(int theFromIndex, int theToIndex) {
+		if (theFromIndex < 0 || theToIndex > mySize || theFromIndex > theToIndex) {
+			throw new IndexOutOfBoundsException("From: " + theFromIndex + ", To: " + theToIndex + ", Size: " + mySize);
+		}
+		LongList retVal = new LongList(theToIndex - theFromIndex);
+		System.arraycopy(myValues, theFromIndex, retVal.myValues, 0, theToIndex - theFromIndex);
+		retVal.mySize = theToIndex - theFromIndex;
+		return retVal;
+	}
+
+	public long[] toLongArray() {
+		return Arrays.copyOf(myValues, mySize);
+	}
+
+	/**
+	 * Returns an iterator over the given values, which does not box if the collection
+	 * is a {@link LongList} or a {@link LongSet}
+	 */
+	public static PrimitiveIterator.OfLong longIteratorOf(Collection<Long> theValues) {
+		if (theValues instanceof LongList) {
+			return ((LongList) theValues).longIterator();
+		}
+		if (theValues instanceof LongSet) {
+			return ((LongSet) theValues).longIterator();
+		}
+		Iterator<Long> iterator = theValues.iterator();
+		return new PrimitiveIterator.OfLong() {
+			@Override
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+
+			@Override
+			public long nextLong() {
+				return iterator.next();
+			}
+		};
+	}
+
+}
@@ -0,0 +1,282 @@
+package ca.uhn.fhir.jpa.util;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * A hash set of <code>long</code> values which uses open addressing over a
+ * primitive array instead of boxed {@link Long} instances and hash entries.
+ * This is used to track the resource PIDs already seen by a search, which can
+ * contain millions of entries.
+ * <p>
+ * The class implements {@link java.util.Set Set&lt;Long&gt;} so that it can be passed
+ * to APIs expecting a regular collection, but callers on hot paths should prefer
+ * the primitive {@link #add(long)}, {@link #contains(long)} and {@link #longIterator()}
+ * methods, which do not box.
+ * </p>
+ */
+public class LongSet extends AbstractSet<Long> {
+
+	/**
+	 * Marks an empty slot in the table. The value itself is tracked separately
+	 * by {@link #myContainsFree}.
+	 */
+	private static final long FREE = 0L;
+	private static final int MIN_CAPACITY = 16;
+	private long[] myTable;
+	private int mySize;
+	private boolean myContainsFree;
+
+	/**
+	 * Constructor
+	 */
+	public LongSet() {
+		this(MIN_CAPACITY);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param theExpectedSize The number of values to allocate room for
+	 */
+	public LongSet(int theExpectedSize) {
+		myTable = new long[tableSizeFor(theExpectedSize)];
+	}
+
+	/**
+	 * Constructor which copies the given values
+	 */
+	public LongSet(Collection<Long> theValues) {
+		this(theValues.size());
+		addAll(theValues);
+	}
+
+	/**
+	 * @return Returns <code>true</code> if the value was not already present in the set
+	 */
+	public boolean add(long theValue) {
+		if (theValue == FREE) {
+			if (myContainsFree) {
+				return false;
+			}
+			myContainsFree = true;
+			mySize++;
+			return true;
+		}
+
+		int mask = myTable.length - 1;
+		int index = hash(theValue) & mask;
+		while (myTable[index] != FREE) {
+			if (myTable[index] == theValue) {
+				return false;
+			}
+			index = (index + 1) & mask;
+		}
+		myTable[index] = theValue;
+		mySize++;
+
+		// Keep the load factor at or below 0.5
+		if (mySize * 2 > myTable.length) {
+			rehash(myTable.length * 2);
+		}
+		return true;
+	}
+
+	@Override
+	public boolean add(Long theValue) {
+		return add(theValue.longValue());
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends Long> theValues) {
+		boolean retVal = false;
+		@SuppressWarnings("unchecked")
+		PrimitiveIterator.OfLong iter = LongList.longIteratorOf((Collection<Long>) theValues);
+		while (iter.hasNext()) {
+			retVal |= add(iter.nextLong());
+		}
+		return retVal;
+	}
+
+	@Override
+	public void clear() {
+		myTable = new long[MIN_CAPACITY];
+		mySize = 0;
+		myContainsFree = false;
+	}
+
+	@Override
+	public boolean contains(Object theValue) {
+		return theValue instanceof Long && contains(((Long) theValue).longValue());
+	}
+
+	public boolean contains(long theValue) {
+		if (theValue == FREE) {
+			return myContainsFree;
+		}
+		int mask = myTable.length - 1;
+		int index = hash(theValue) & mask;
+		while (myTable[index] != FREE) {
+			if (myTable[index] == theValue) {
+				return true;
+			}
+			index = (index + 1) & mask;
+		}
+		return false;
+	}
+
+	@Override
+	public PrimitiveIterator.OfLong iterator() {
+		return longIterator();
+	}
+
+	/**
+	 * Returns an iterator over the values in this set which does not box. Iteration
+	 * order is not defined.
+	 */
+	public PrimitiveIterator.OfLong longIterator() {
+		return new PrimitiveIterator.OfLong() {
+			private final long[] myIteratorTable = myTable;
+			private boolean myFreeReturned = !myContainsFree;
+			private int myIndex = nextOccupied(0);
+
+			private int nextOccupied(int theStart) {
+				int index = theStart;
+				while (index < myIteratorTable.length && myIteratorTable[index] == FREE) {
+					index++;
+				}
+				return index;
+			}
+
+			@Override
+			public boolean hasNext() {
+				return !myFreeReturned || myIndex < myIteratorTable.length;
+			}
+
+			@Override
+			public long nextLong() {
+				if (!myFreeReturned) {
+					myFreeReturned = true;
+					return FREE;
+				}
+				if (myIndex >= myIteratorTable.length) {
+					throw new NoSuchElementException();
+				}
+				long retVal = myIteratorTable[myIndex];
+				myIndex = nextOccupied(myIndex + 1);
+				return retVal;
+			}
+		};
+	}
+
+	private void rehash(int theNewLength) {
+		long[] oldTable = myTable;
+		myTable = new long[theNewLength];
+		int mask = theNewLength - 1;
+		for (long next : oldTable) {
+			if (next != FREE) {
+				int index = hash(next) & mask;
+				while (myTable[index] != FREE) {
+					index = (index + 1) & mask;
+				}
+				myTable[index] = next;
+			}
+		}
+	}
+
+	@Override
+	public boolean remove(Object theValue) {
+		return theValue instanceof Long && remove(((Long) theValue).longValue());
+	}
+
+	/**
+	 * @return Returns <code>true</code> if the value was present in the set
+	 */
+	public boolean remove(long theValue) {
+		if (theValue == FREE) {
+			if (!myContainsFree) {
+				return false;
+			}
+			myContainsFree = false;
+			mySize--;
+			return true;
+		}
+
+		int mask = myTable.length - 1;
+		int gap = hash(theValue) & mask;
+		while (myTable[gap] != theValue) {
+			if (myTable[gap] == FREE) {
+				return false;
+			}
+			gap = (gap + 1) & mask;
+		}
+
+		// Shift back any following values which would no longer be reachable
+		int index = (gap + 1) & mask;
+		while (myTable[index] != FREE) {
+			int ideal = hash(myTable[index]) & mask;
+			if (((index - ideal) & mask) >= ((index - gap) & mask)) {
+				myTable[gap] = myTable[index];
+				gap = index;
+			}
+			index = (index + 1) & mask;
+		}
+		myTable[gap] = FREE;
+		mySize--;
+		return true;
+	}
+
+	@Override
+	public int size() {
+		return mySize;
+	}
+
+	/**
+	 * Copies the values in this set into a new {@link LongList}
+	 */
+	public LongList toLongList() {
+		LongList retVal = new LongList(mySize);
+		PrimitiveIterator.OfLong iter = longIterator();
+		while (iter.hasNext()) {
+			retVal.add(iter.nextLong());
+		}
+		return retVal;
+	}
+
+	private static int hash(long theValue) {
+		// Mix the bits, since PIDs are sequential
+		long h = theValue * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	private static int tableSizeFor(int theExpectedSize) {
+		int retVal = MIN_CAPACITY;
+		while (retVal < theExpectedSize * 2 && retVal < (1 << 30)) {
+			retVal <<= 1;
+		}
+		return retVal;
+	}
+
+}
@@ -0,0 +1,143 @@
+package ca.uhn.fhir.jpa.util;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Encodes a list of resource PIDs into a compact binary block, and decodes it again.
+ * <p>
+ * Each PID is stored as the difference from the previous one, zig-zag encoded
+ * as a variable length integer, and the result is deflated. Search results are
+ * frequently close together or ascending, so most PIDs take one or two bytes
+ * before compression.
+ * </p>
+ */
+public class PidBlockCodec {
+
+	private static final byte FORMAT_VERSION = 1;
+
+	/**
+	 * Non instantiable
+	 */
+	private PidBlockCodec() {
+		// nothing
+	}
+
+	public static byte[] encode(LongList thePids) {
+		byte[] raw = new byte[5 + (thePids.size() * 10)];
+		int pos = writeVarLong(raw, 0, thePids.size());
+		long previous = 0;
+		for (int i = 0; i < thePids.size(); i++) {
+			long next = thePids.getLong(i);
+			long delta = next - previous;
+			pos = writeVarLong(raw, pos, (delta << 1) ^ (delta >> 63));
+			previous = next;
+		}
+
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try {
+			deflater.setInput(raw, 0, pos);
+			deflater.finish();
+			ByteArrayOutputStream retVal = new ByteArrayOutputStream(pos / 2 + 16);
+			retVal.write(FORMAT_VERSION);
+			byte[] buffer = new byte[4096];
+			while (!deflater.finished()) {
+				int count = deflater.deflate(buffer);
+				retVal.write(buffer, 0, count);
+			}
+			return retVal.toByteArray();
+		} finally {
+			deflater.end();
+		}
+	}
+
+	public static LongList decode(byte[] theBlock) {
+		if (theBlock.length == 0 || theBlock[0] != FORMAT_VERSION) {
+			throw new InternalErrorException("Unknown search result block format");
+		}
+
+		byte[] raw;
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(theBlock, 1, theBlock.length - 1);
+			ByteArrayOutputStream output = new ByteArrayOutputStream(theBlock.length * 4);
+			byte[] buffer = new byte[4096];
+			while (!inflater.finished()) {
+				int count = inflater.inflate(buffer);
+				if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					throw new InternalErrorException("Truncated search result block");
+				}
+				output.write(buffer, 0, count);
+			}
+			raw = output.toByteArray();
+		} catch (DataFormatException e) {
+			throw new InternalErrorException("Invalid search result block", e);
+		} finally {
+			inflater.end();
+		}
+
+		int[] pos = new int[1];
+		int count = (int) readVarLong(raw, pos);
+		LongList retVal = new LongList(count);
+		long previous = 0;
+		for (int i = 0; i < count; i++) {
+			long encoded = readVarLong(raw, pos);
+			long delta = (encoded >>> 1) ^ -(encoded & 1);
+			previous = previous + delta;
+			retVal.add(previous);
+		}
+		return retVal;
+	}
+
+	private static int writeVarLong(byte[] theTarget, int thePos, long theValue) {
+		int pos = thePos;
+		long value = theValue;
+		while ((value & ~0x7FL) != 0) {
+			theTarget[pos++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		theTarget[pos++] = (byte) value;
+		return pos;
+	}
+
+	private static long readVarLong(byte[] theSource, int[] thePos) {
+		long retVal = 0;
+		int shift = 0;
+		while (true) {
+			if (thePos[0] >= theSource.length || shift > 63) {
+				throw new InternalErrorException("Truncated search result block");
+			}
+			byte next = theSource[thePos[0]++];
+			retVal |= (long) (next & 0x7F) << shift;
+			if ((next & 0x80) == 0) {
+				return retVal;
+			}
+			shift += 7;
+		}
+	}
+
+}
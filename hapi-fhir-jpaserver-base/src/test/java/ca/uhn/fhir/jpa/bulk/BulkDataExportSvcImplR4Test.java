@@ -0,0 +1,281 @@
+package ca.uhn.fhir.jpa.bulk;
+
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.jpa.dao.DaoConfig;
+import ca.uhn.fhir.jpa.dao.data.IBulkExportCollectionFileDao;
+import ca.uhn.fhir.jpa.dao.data.IBulkExportJobDao;
+import ca.uhn.fhir.jpa.dao.r4.BaseJpaR4Test;
+import ca.uhn.fhir.jpa.entity.BulkExportJobEntity;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import ca.uhn.fhir.util.TestUtil;
+import com.google.common.collect.Sets;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.r4.model.Binary;
+import org.hl7.fhir.r4.model.Group;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Reference;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.*;
+
+public class BulkDataExportSvcImplR4Test extends BaseJpaR4Test {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(BulkDataExportSvcImplR4Test.class);
+
+	@Autowired
+	private IBulkDataExportSvc myBulkDataExportSvc;
+	@Autowired
+	private IBulkExportJobDao myBulkExportJobDao;
+	@Autowired
+	private IBulkExportCollectionFileDao myBulkExportCollectionFileDao;
+
+	@Before
+	public void before() {
+		myBulkDataExportSvc.cancelAndPurgeAllJobs();
+	}
+
+	@After
+	public void after() {
+		myBulkDataExportSvc.cancelAndPurgeAllJobs();
+		myDaoConfig.setBulkExportFileMaximumSize(new DaoConfig().getBulkExportFileMaximumSize());
+	}
+
+	@Test
+	public void testSubmit_InvalidOutputFormat() {
+		try {
+			myBulkDataExportSvc.submitJob(Constants.CT_FHIR_JSON_NEW, Sets.newHashSet("Patient"), null, BulkExportStyleEnum.SYSTEM, null, "/$export");
+			fail();
+		} catch (InvalidRequestException e) {
+			assertThat(e.getMessage(), containsString("Invalid output format"));
+		}
+	}
+
+	@Test
+	public void testSubmit_InvalidResourceType() {
+		try {
+			myBulkDataExportSvc.submitJob(Constants.CT_FHIR_NDJSON, Sets.newHashSet("Patient", "FOO"), null, BulkExportStyleEnum.SYSTEM, null, "/$export");
+			fail();
+		} catch (InvalidRequestException e) {
+			assertThat(e.getMessage(), containsString("FOO"));
+		}
+	}
+
+	/**
+	 * Identical requests (which may come from different users) must never
+	 * share a job, since the output of one user's export must not be handed
+	 * out to another
+	 */
+	@Test
+	public void testSubmit_DoesNotReuseExistingJob() {
+		IBulkDataExportSvc.JobInfo job1 = myBulkDataExportSvc.submitJob(Constants.CT_FHIR_NDJSON, Sets.newHashSet("Patient"), null, BulkExportStyleEnum.SYSTEM, null, "/$export?_type=Patient");
+		IBulkDataExportSvc.JobInfo job2 = myBulkDataExportSvc.submitJob(Constants.CT_FHIR_NDJSON, Sets.newHashSet("Patient"), null, BulkExportStyleEnum.SYSTEM, null, "/$export?_type=Patient");
+		assertNotEquals(job1.getJobId(), job2.getJobId());
+	}
+
+	@Test
+	public void testGetStatus_UnknownJob() {
+		try {
+			myBulkDataExportSvc.getJobStatusOrThrowResourceNotFound("FOO");
+			fail();
+		} catch (ResourceNotFoundException e) {
+			// good
+		}
+	}
+
+	@Test
+	public void testSystemExport() {
+		createResources();
+
+		IBulkDataExportSvc.JobInfo jobDetails = myBulkDataExportSvc.submitJob(Constants.CT_FHIR_NDJSON, Sets.newHashSet("Patient", "Observation"), null, BulkExportStyleEnum.SYSTEM, null, "/$export?_type=Patient,Observation");
+		assertEquals(BulkJobStatusEnum.SUBMITTED, myBulkDataExportSvc.getJobStatusOrThrowResourceNotFound(jobDetails.getJobId()).getStatus());
+
+		myBulkDataExportSvc.buildExportFiles();
+
+		IBulkDataExportSvc.JobInfo status = myBulkDataExportSvc.getJobStatusOrThrowResourceNotFound(jobDetails.getJobId());
+		assertEquals(BulkJobStatusEnum.COMPLETE, status.getStatus());
+		assertEquals("/$export?_type=Patient,Observation", status.getRequest());
+		assertEquals(2, status.getFiles().size());
+
+		for (IBulkDataExportSvc.FileEntry next : status.getFiles()) {
+			String contents = readFile(next);
+			ourLog.info("Next contents for type {}:\n{}", next.getResourceType(), contents);
+			assertEquals(10, next.getResourceCount());
+			assertEquals(10, contents.split("\n").length);
+			if ("Patient".equals(next.getResourceType())) {
+				assertThat(contents, containsString("\"resourceType\":\"Patient\""));
+			} else {
+				assertEquals("Observation", next.getResourceType());
+				assertThat(contents, containsString("\"resourceType\":\"Observation\""));
+			}
+		}
+	}
+
+	@Test
+	public void testSystemExport_UsesRequestedOutputFormat() {
+		createResources();
+
+		IBulkDataExportSvc.JobInfo jobDetails = myBulkDataExportSvc.submitJob(Constants.CT_NDJSON, Sets.newHashSet("Patient"), null, BulkExportStyleEnum.SYSTEM, null, "/$export?_type=Patient&_outputFormat=ndjson");
+		myBulkDataExportSvc.buildExportFiles();
+
+		IBulkDataExportSvc.JobInfo status = myBulkDataExportSvc.getJobStatusOrThrowResourceNotFound(jobDetails.getJobId());
+		assertEquals(BulkJobStatusEnum.COMPLETE, status.getStatus());
+		assertEquals(1, status.getFiles().size());
+		Binary binary = myBinaryDao.read(status.getFiles().get(0).getResourceId());
+		assertEquals(Constants.CT_NDJSON, binary.getContentType());
+	}
+
+	@Test
+	public void testSystemExport_SplitsFiles() {
+		createResources();
+		myDaoConfig.setBulkExportFileMaximumSize(1);
+
+		IBulkDataExportSvc.JobInfo jobDetails = myBulkDataExportSvc.submitJob(null, Sets.newHashSet("Patient"), null, BulkExportStyleEnum.SYSTEM, null, "/$export?_type=Patient");
+		myBulkDataExportSvc.buildExportFiles();
+
+		IBulkDataExportSvc.JobInfo status = myBulkDataExportSvc.getJobStatusOrThrowResourceNotFound(jobDetails.getJobId());
+		assertEquals(BulkJobStatusEnum.COMPLETE, status.getStatus());
+		assertEquals(10, status.getFiles().size());
+		for (IBulkDataExportSvc.FileEntry next : status.getFiles()) {
+			assertEquals(1, next.getResourceCount());
+		}
+	}
+
+	@Test
+	public void testGroupExport() {
+		createResources();
+
+		Group group = new Group();
+		group.addMember().setEntity(new Reference("Patient/PAT0"));
+		group.addMember().setEntity(new Reference("Patient/PAT1"));
+		IdType groupId = myGroupDao.create(group).getId().toUnqualifiedVersionless();
+
+		IBulkDataExportSvc.JobInfo jobDetails = myBulkDataExportSvc.submitJob(Constants.CT_FHIR_NDJSON, Sets.newHashSet("Patient", "Observation"), null, BulkExportStyleEnum.GROUP, groupId, "/Group/" + groupId.getIdPart() + "/$export");
+		myBulkDataExportSvc.buildExportFiles();
+
+		IBulkDataExportSvc.JobInfo status = myBulkDataExportSvc.getJobStatusOrThrowResourceNotFound(jobDetails.getJobId());
+		assertEquals(BulkJobStatusEnum.COMPLETE, status.getStatus());
+		assertEquals(2, status.getFiles().size());
+		for (IBulkDataExportSvc.FileEntry next : status.getFiles()) {
+			String contents = readFile(next);
+			ourLog.info("Next contents for type {}:\n{}", next.getResourceType(), contents);
+			assertEquals(2, next.getResourceCount());
+		}
+	}
+
+	@Test
+	public void testPurgeExpiredFiles() {
+		createResources();
+
+		IBulkDataExportSvc.JobInfo jobDetails = myBulkDataExportSvc.submitJob(Constants.CT_FHIR_NDJSON, Sets.newHashSet("Patient"), null, BulkExportStyleEnum.SYSTEM, null, "/$export?_type=Patient");
+		myBulkDataExportSvc.buildExportFiles();
+
+		IBulkDataExportSvc.JobInfo status = myBulkDataExportSvc.getJobStatusOrThrowResourceNotFound(jobDetails.getJobId());
+		assertEquals(BulkJobStatusEnum.COMPLETE, status.getStatus());
+
+		// Not expired yet, so nothing should be purged
+		myBulkDataExportSvc.purgeExpiredFiles();
+		assertEquals(BulkJobStatusEnum.COMPLETE, myBulkDataExportSvc.getJobStatusOrThrowResourceNotFound(jobDetails.getJobId()).getStatus());
+
+		IIdType binaryId = status.getFiles().get(0).getResourceId();
+		Long binaryPid = Long.parseLong(binaryId.getIdPart());
+		assertTrue(runInTransaction(() -> myResourceHistoryTableDao.countForResourceInstance(binaryPid)) > 0);
+
+		// Now expire it
+		runInTransaction(() -> {
+			BulkExportJobEntity job = myBulkExportJobDao.findByJobId(jobDetails.getJobId()).orElseThrow(IllegalStateException::new);
+			job.setExpiry(new Date(System.currentTimeMillis() - 1000));
+			myBulkExportJobDao.save(job);
+		});
+		myBulkDataExportSvc.purgeExpiredFiles();
+
+		try {
+			myBulkDataExportSvc.getJobStatusOrThrowResourceNotFound(jobDetails.getJobId());
+			fail();
+		} catch (ResourceNotFoundException e) {
+			// good
+		}
+
+		// The binary must be expunged, not just deleted
+		try {
+			myBinaryDao.read(binaryId);
+			fail();
+		} catch (ResourceNotFoundException e) {
+			// good
+		}
+		runInTransaction(() -> {
+			assertFalse(myResourceTableDao.findById(binaryPid).isPresent());
+			assertEquals(0, myResourceHistoryTableDao.countForResourceInstance(binaryPid));
+		});
+	}
+
+	/**
+	 * If another server reclaims a job while it is being built here, this
+	 * server must stop without writing any further files and without
+	 * overwriting the job status
+	 */
+	@Test
+	public void testBuildExportFiles_ClaimLostToAnotherServer() {
+		createResources();
+
+		IBulkDataExportSvc.JobInfo jobDetails = myBulkDataExportSvc.submitJob(Constants.CT_FHIR_NDJSON, Sets.newHashSet("Patient"), null, BulkExportStyleEnum.SYSTEM, null, "/$export?_type=Patient");
+
+		// Simulate another server taking over the job just as the first file is written
+		AtomicBoolean reclaimed = new AtomicBoolean();
+		myInterceptorRegistry.registerAnonymousInterceptor(Pointcut.STORAGE_PRESTORAGE_RESOURCE_CREATED, (thePointcut, theArgs) -> {
+			if (theArgs.get(IBaseResource.class) instanceof Binary && reclaimed.compareAndSet(false, true)) {
+				runInTransaction(() -> {
+					BulkExportJobEntity job = myBulkExportJobDao.findByJobId(jobDetails.getJobId()).orElseThrow(IllegalStateException::new);
+					job.setOwnerId("another-server");
+					job.setStatusTime(new Date());
+					myBulkExportJobDao.save(job);
+				});
+			}
+		});
+
+		myBulkDataExportSvc.buildExportFiles();
+
+		assertTrue(reclaimed.get());
+		assertEquals(BulkJobStatusEnum.BUILDING, myBulkDataExportSvc.getJobStatusOrThrowResourceNotFound(jobDetails.getJobId()).getStatus());
+		assertEquals(0, myBulkExportCollectionFileDao.count());
+	}
+
+	private String readFile(IBulkDataExportSvc.FileEntry theFile) {
+		Binary binary = myBinaryDao.read(theFile.getResourceId());
+		assertEquals(Constants.CT_FHIR_NDJSON, binary.getContentType());
+		return new String(binary.getContent(), StandardCharsets.UTF_8);
+	}
+
+	private void createResources() {
+		for (int i = 0; i < 10; i++) {
+			Patient patient = new Patient();
+			patient.setId("PAT" + i);
+			patient.addIdentifier().setSystem("http://mrns").setValue("PAT" + i);
+			myPatientDao.update(patient).getId().toUnqualifiedVersionless();
+
+			Observation obs = new Observation();
+			obs.setStatus(Observation.ObservationStatus.FINAL);
+			obs.getSubject().setReference("Patient/PAT" + i);
+			myObservationDao.create(obs);
+		}
+	}
+
+	@AfterClass
+	public static void afterClassClearContext() {
+		TestUtil.clearAllStaticFieldsForUnitTest();
+	}
+
+}
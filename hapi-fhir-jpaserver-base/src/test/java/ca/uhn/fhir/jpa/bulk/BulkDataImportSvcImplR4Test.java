@@ -0,0 +1,230 @@
+package ca.uhn.fhir.jpa.bulk;
+
+import ca.uhn.fhir.jpa.dao.DaoConfig;
+import ca.uhn.fhir.jpa.dao.r4.BaseJpaR4Test;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.jpa.util.SqlQuery;
+import ca.uhn.fhir.parser.IParser;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.param.ReferenceParam;
+import ca.uhn.fhir.rest.param.TokenParam;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.util.TestUtil;
+import com.google.common.collect.Lists;
+import org.apache.commons.io.FileUtils;
+import org.hl7.fhir.r4.model.Binary;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.Assert.*;
+
+public class BulkDataImportSvcImplR4Test extends BaseJpaR4Test {
+
+	@Autowired
+	private IBulkDataImportSvc myBulkDataImportSvc;
+
+	@After
+	public void after() {
+		myDaoConfig.setBulkImportBatchSize(new DaoConfig().getBulkImportBatchSize());
+		myDaoConfig.setBulkImportLocalFileDirectory(new DaoConfig().getBulkImportLocalFileDirectory());
+	}
+
+	@Test
+	public void testImportNdJson() {
+		myDaoConfig.setBulkImportBatchSize(3);
+
+		IBulkDataImportSvc.ImportOutcome outcome = myBulkDataImportSvc.importNdJson(new StringReader(createNdJson(10)), mySrd);
+		assertEquals(20, outcome.getCreatedCount());
+		assertEquals(0, outcome.getUpdatedCount());
+
+		Patient patient = myPatientDao.read(new IdType("Patient/PAT3"));
+		assertEquals("PAT3", patient.getIdentifierFirstRep().getValue());
+		assertEquals("1", patient.getIdElement().getVersionIdPart());
+
+		// Index rows should have been written
+		SearchParameterMap map = SearchParameterMap.newSynchronous();
+		map.add(Patient.SP_IDENTIFIER, new TokenParam("http://mrns", "PAT3"));
+		assertEquals(1, myPatientDao.search(map).size().intValue());
+
+		map = SearchParameterMap.newSynchronous();
+		map.add(Observation.SP_SUBJECT, new ReferenceParam("Patient/PAT3"));
+		assertEquals(1, myObservationDao.search(map).size().intValue());
+
+		// History should have been written
+		assertEquals(1, myPatientDao.history(new IdType("Patient/PAT3"), null, null, mySrd).size().intValue());
+	}
+
+	@Test
+	public void testImportNdJson_PreResolvedIdsAreNotRetained() {
+		myDaoConfig.setBulkImportBatchSize(3);
+
+		IBulkDataImportSvc.ImportOutcome outcome = myBulkDataImportSvc.importNdJson(new StringReader(createNdJson(10)), mySrd);
+		assertEquals(20, outcome.getCreatedCount());
+
+		// Each batch discards the IDs it resolved, so nothing accumulates in the request
+		assertTrue(mySrd.getUserData().keySet().toString(), mySrd.getUserData().keySet().stream().noneMatch(t -> t.toString().contains("PRE_RESOLVED")));
+	}
+
+	@Test
+	public void testImportNdJson_ExistingResourcesAreUpdated() {
+		Patient patient = new Patient();
+		patient.setId("PAT1");
+		patient.setActive(false);
+		myPatientDao.update(patient);
+
+		IBulkDataImportSvc.ImportOutcome outcome = myBulkDataImportSvc.importNdJson(new StringReader(createNdJson(3)), mySrd);
+		assertEquals(5, outcome.getCreatedCount());
+		assertEquals(1, outcome.getUpdatedCount());
+
+		patient = myPatientDao.read(new IdType("Patient/PAT1"));
+		assertEquals("2", patient.getIdElement().getVersionIdPart());
+		assertEquals("PAT1", patient.getIdentifierFirstRep().getValue());
+	}
+
+	@Test
+	public void testImportNdJson_ReferencesDontCauseFlushes() {
+		Patient existing = new Patient();
+		existing.setId("EXISTING");
+		myPatientDao.update(existing);
+
+		IParser parser = myFhirCtx.newJsonParser();
+		StringBuilder ndJson = new StringBuilder(createNdJson(10));
+		for (int i = 0; i < 10; i++) {
+			Observation obs = new Observation();
+			obs.setStatus(Observation.ObservationStatus.FINAL);
+			obs.getSubject().setReference("Patient/EXISTING");
+			ndJson.append(parser.encodeResourceToString(obs)).append("\n");
+		}
+
+		myCaptureQueriesListener.clear();
+		IBulkDataImportSvc.ImportOutcome outcome = myBulkDataImportSvc.importNdJson(new StringReader(ndJson.toString()), mySrd);
+		assertEquals(30, outcome.getCreatedCount());
+
+		// One query checks which resources already exist, and one resolves every reference target
+		List<SqlQuery> queries = myCaptureQueriesListener.getAllQueriesForCurrentThread();
+		List<String> sql = queries.stream().map(t -> t.getSql(false, false).toLowerCase()).collect(Collectors.toList());
+		assertEquals(2, sql.stream().filter(t -> t.startsWith("select") && t.contains("from hfj_forced_id")).count());
+
+		// Nothing is flushed until the transaction commits, so every insert comes after every select
+		int lastSelect = -1;
+		int firstInsert = -1;
+		for (int i = 0; i < sql.size(); i++) {
+			if (sql.get(i).startsWith("select")) {
+				lastSelect = i;
+			} else if (sql.get(i).startsWith("insert") && firstInsert == -1) {
+				firstInsert = i;
+			}
+		}
+		myCaptureQueriesListener.logAllQueriesForCurrentThread();
+		assertThat(firstInsert, greaterThan(lastSelect));
+		assertEquals(30, queries.stream().filter(t -> t.getSql(false, false).toLowerCase().startsWith("insert into hfj_resource ")).mapToInt(SqlQuery::getSize).sum());
+
+		SearchParameterMap map = SearchParameterMap.newSynchronous();
+		map.add(Observation.SP_SUBJECT, new ReferenceParam("Patient/EXISTING"));
+		assertEquals(10, myObservationDao.search(map).size().intValue());
+		map = SearchParameterMap.newSynchronous();
+		map.add(Observation.SP_SUBJECT, new ReferenceParam("Patient/PAT3"));
+		assertEquals(1, myObservationDao.search(map).size().intValue());
+	}
+
+	@Test
+	public void testImportFromBinary() {
+		Binary binary = new Binary();
+		binary.setContentType(Constants.CT_FHIR_NDJSON);
+		binary.setContent(createNdJson(2).getBytes(StandardCharsets.UTF_8));
+		IdType binaryId = myBinaryDao.create(binary).getId().toUnqualifiedVersionless();
+
+		IBulkDataImportSvc.ImportOutcome outcome = myBulkDataImportSvc.importFromUrls(Constants.CT_FHIR_NDJSON, Lists.newArrayList(binaryId.getValue()), mySrd);
+		assertEquals(4, outcome.getCreatedCount());
+	}
+
+	@Test
+	public void testImportFromLocalFile_NotEnabled() {
+		try {
+			myBulkDataImportSvc.importFromUrls(null, Lists.newArrayList("file:///etc/passwd"), mySrd);
+			fail();
+		} catch (InvalidRequestException e) {
+			assertEquals("Importing from local files is not enabled on this server", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testImportFromLocalFile() throws IOException {
+		Path directory = Files.createTempDirectory("bulkimport");
+		try {
+			myDaoConfig.setBulkImportLocalFileDirectory(directory.toString());
+			Path file = directory.resolve("patients.ndjson");
+			Files.write(file, createNdJson(2).getBytes(StandardCharsets.UTF_8));
+
+			IBulkDataImportSvc.ImportOutcome outcome = myBulkDataImportSvc.importFromUrls(null, Lists.newArrayList(file.toUri().toString()), mySrd);
+			assertEquals(4, outcome.getCreatedCount());
+
+			// Files outside of the directory get the same error whether or not they exist
+			List<String> urls = Lists.newArrayList(
+				Paths.get("/etc/passwd").toUri().toString(),
+				Paths.get("/nonexistent/patients.ndjson").toUri().toString(),
+				directory.resolve("../../etc/passwd").toUri().toString(),
+				directory.resolve("missing.ndjson").toUri().toString());
+			for (String next : urls) {
+				try {
+					myBulkDataImportSvc.importFromUrls(null, Lists.newArrayList(next), mySrd);
+					fail(next);
+				} catch (InvalidRequestException e) {
+					assertEquals("File does not exist or is not in the permitted import directory: " + next, e.getMessage());
+				}
+			}
+		} finally {
+			FileUtils.deleteDirectory(directory.toFile());
+		}
+	}
+
+	@Test
+	public void testImportNdJson_InvalidLine() {
+		try {
+			myBulkDataImportSvc.importNdJson(new StringReader("{\"resourceType\":\"Patient\"}\nFOO\n"), mySrd);
+			fail();
+		} catch (InvalidRequestException e) {
+			assertThat(e.getMessage(), containsString("line 2"));
+		}
+	}
+
+	private String createNdJson(int theCount) {
+		IParser parser = myFhirCtx.newJsonParser();
+		StringBuilder b = new StringBuilder();
+		for (int i = 0; i < theCount; i++) {
+			Patient patient = new Patient();
+			patient.setId("PAT" + i);
+			patient.addIdentifier().setSystem("http://mrns").setValue("PAT" + i);
+			b.append(parser.encodeResourceToString(patient)).append("\n");
+		}
+		for (int i = 0; i < theCount; i++) {
+			Observation obs = new Observation();
+			obs.setStatus(Observation.ObservationStatus.FINAL);
+			obs.getSubject().setReference("Patient/PAT" + i);
+			b.append(parser.encodeResourceToString(obs)).append("\n");
+		}
+		return b.toString();
+	}
+
+	@AfterClass
+	public static void afterClassClearContext() {
+		TestUtil.clearAllStaticFieldsForUnitTest();
+	}
+
+}
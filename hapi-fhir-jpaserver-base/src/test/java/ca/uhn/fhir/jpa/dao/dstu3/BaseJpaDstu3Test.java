@@ -276,6 +276,7 @@ public abstract class BaseJpaDstu3Test extends BaseJpaTest {
 	public void afterClearTerminologyCaches() {
 		BaseHapiTerminologySvcImpl baseHapiTerminologySvc = AopTestUtils.getTargetObject(myTermSvc);
 		baseHapiTerminologySvc.clearTranslationCache();
+		baseHapiTerminologySvc.clearValueSetExpansionCache();
 		baseHapiTerminologySvc.clearTranslationWithReverseCache();
 		baseHapiTerminologySvc.clearDeferred();
 		BaseHapiTerminologySvcImpl.clearOurLastResultsFromTranslationCache();
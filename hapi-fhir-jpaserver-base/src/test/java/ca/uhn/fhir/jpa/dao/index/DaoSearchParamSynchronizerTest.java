@@ -0,0 +1,120 @@
+package ca.uhn.fhir.jpa.dao.index;
+
+import ca.uhn.fhir.jpa.dao.DaoConfig;
+import ca.uhn.fhir.jpa.model.entity.ResourceIndexedSearchParamToken;
+import ca.uhn.fhir.jpa.model.entity.ResourceTable;
+import ca.uhn.fhir.jpa.searchparam.extractor.ResourceIndexedSearchParams;
+import ca.uhn.fhir.jpa.util.AddRemoveCount;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.spi.SessionFactoryOptions;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.persistence.EntityManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class DaoSearchParamSynchronizerTest {
+
+	private DaoSearchParamSynchronizer mySvc;
+	private DaoConfig myDaoConfig;
+	private EntityManager myEntityManager;
+	private Session mySession;
+	private SessionFactoryOptions mySessionFactoryOptions;
+	private ResourceTable myEntity;
+
+	@Before
+	public void before() {
+		mySessionFactoryOptions = mock(SessionFactoryOptions.class);
+		SessionFactory sessionFactory = mock(SessionFactory.class);
+		when(sessionFactory.getSessionFactoryOptions()).thenReturn(mySessionFactoryOptions);
+		mySession = mock(Session.class);
+		when(mySession.getSessionFactory()).thenReturn(sessionFactory);
+		myEntityManager = mock(EntityManager.class);
+		when(myEntityManager.unwrap(eq(Session.class))).thenReturn(mySession);
+
+		myDaoConfig = new DaoConfig();
+		mySvc = new DaoSearchParamSynchronizer();
+		mySvc.setDaoConfigForUnitTest(myDaoConfig);
+		mySvc.setEntityManagerForUnitTest(myEntityManager);
+
+		myEntity = new ResourceTable();
+		myEntity.setResourceType("Patient");
+	}
+
+	@Test
+	public void testSynchronizePersistsNewRowsAndReusesRemovedRows() {
+		myDaoConfig.setIndexWriteBatchSize(50);
+
+		ResourceIndexedSearchParams existing = new ResourceIndexedSearchParams();
+		existing.myTokenParams.add(token("A", 10L));
+		existing.myTokenParams.add(token("B", 11L));
+
+		ResourceIndexedSearchParams params = new ResourceIndexedSearchParams();
+		params.myTokenParams.add(token("B", null));
+		params.myTokenParams.add(token("C", null));
+		params.myTokenParams.add(token("D", null));
+
+		AddRemoveCount count = mySvc.synchronizeSearchParamsToDatabase(params, myEntity, existing);
+		assertEquals(2, count.getAddCount());
+		assertEquals(0, count.getRemoveCount());
+
+		// The row for A is reused for one of the new rows, and the other one is simply inserted
+		verify(myEntityManager, never()).remove(any());
+		verify(myEntityManager, times(1)).merge(any(ResourceIndexedSearchParamToken.class));
+		verify(myEntityManager, times(1)).persist(any(ResourceIndexedSearchParamToken.class));
+		verify(mySession, times(1)).setJdbcBatchSize(eq(50));
+	}
+
+	@Test
+	public void testAddForNewEntityPersistsEveryRow() {
+		ResourceIndexedSearchParams params = new ResourceIndexedSearchParams();
+		params.myTokenParams.add(token("A", null));
+		params.myTokenParams.add(token("B", null));
+
+		AddRemoveCount count = mySvc.addSearchParamsForNewEntity(params, myEntity);
+		assertEquals(2, count.getAddCount());
+		verify(myEntityManager, times(2)).persist(any(ResourceIndexedSearchParamToken.class));
+		verify(myEntityManager, never()).merge(any());
+	}
+
+	@Test
+	public void testBatchSizeNotChangedByDefault() {
+		ResourceIndexedSearchParams params = new ResourceIndexedSearchParams();
+		params.myTokenParams.add(token("A", null));
+		mySvc.addSearchParamsForNewEntity(params, myEntity);
+
+		verify(mySession, never()).setJdbcBatchSize(anyInt());
+	}
+
+	@Test
+	public void testLargerConfiguredBatchSizeIsKept() {
+		myDaoConfig.setIndexWriteBatchSize(50);
+		when(mySessionFactoryOptions.getJdbcBatchSize()).thenReturn(100);
+		mySvc.addSearchParamsForNewEntity(new ResourceIndexedSearchParams(), myEntity);
+
+		when(mySession.getJdbcBatchSize()).thenReturn(500);
+		mySvc.addSearchParamsForNewEntity(new ResourceIndexedSearchParams(), myEntity);
+
+		myDaoConfig.setIndexWriteBatchSize(0);
+		when(mySession.getJdbcBatchSize()).thenReturn(null);
+		when(mySessionFactoryOptions.getJdbcBatchSize()).thenReturn(0);
+		mySvc.addSearchParamsForNewEntity(new ResourceIndexedSearchParams(), myEntity);
+
+		verify(mySession, never()).setJdbcBatchSize(anyInt());
+	}
+
+	private ResourceIndexedSearchParamToken token(String theValue, Long theId) {
+		ResourceIndexedSearchParamToken retVal = new ResourceIndexedSearchParamToken("identifier", "http://foo", theValue);
+		retVal.setResource(myEntity);
+		retVal.setId(theId);
+		retVal.calculateHashes();
+		return retVal;
+	}
+
+}
@@ -0,0 +1,69 @@
+package ca.uhn.fhir.jpa.dao.index;
+
+import ca.uhn.fhir.jpa.dao.DaoConfig;
+import ca.uhn.fhir.jpa.dao.GZipUtil;
+import ca.uhn.fhir.jpa.model.entity.ResourceEncodingEnum;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class DecodedResourceTextCacheTest {
+
+	private DecodedResourceTextCache mySvc;
+	private DaoConfig myDaoConfig;
+
+	@Before
+	public void before() {
+		myDaoConfig = new DaoConfig();
+		myDaoConfig.setDecodedResourceTextCacheSize(10);
+		mySvc = new DecodedResourceTextCache();
+		mySvc.setDaoConfigForUnitTest(myDaoConfig);
+	}
+
+	@Test
+	public void testCachedByPidAndVersion() {
+		byte[] bytesV1 = GZipUtil.compress("{\"resourceType\":\"Patient\",\"active\":true}");
+		String textV1 = mySvc.decodeResource(1L, 1L, bytesV1, ResourceEncodingEnum.JSONC);
+		assertEquals("{\"resourceType\":\"Patient\",\"active\":true}", textV1);
+		assertSame(textV1, mySvc.decodeResource(1L, 1L, bytesV1, ResourceEncodingEnum.JSONC));
+
+		// A new version replaces the cached text
+		byte[] bytesV2 = GZipUtil.compress("{\"resourceType\":\"Patient\",\"active\":false}");
+		String textV2 = mySvc.decodeResource(1L, 2L, bytesV2, ResourceEncodingEnum.JSONC);
+		assertEquals("{\"resourceType\":\"Patient\",\"active\":false}", textV2);
+		assertSame(textV2, mySvc.decodeResource(1L, 2L, bytesV2, ResourceEncodingEnum.JSONC));
+		assertNotSame(textV1, mySvc.decodeResource(1L, 1L, bytesV1, ResourceEncodingEnum.JSONC));
+
+		mySvc.invalidate(1L);
+		assertNotSame(textV2, mySvc.decodeResource(1L, 2L, bytesV2, ResourceEncodingEnum.JSONC));
+	}
+
+	@Test
+	public void testUncompressedNotCached() {
+		byte[] bytes = "{\"resourceType\":\"Patient\"}".getBytes(StandardCharsets.UTF_8);
+		String text = mySvc.decodeResource(1L, 1L, bytes, ResourceEncodingEnum.JSON);
+		assertEquals("{\"resourceType\":\"Patient\"}", text);
+		assertNotSame(text, mySvc.decodeResource(1L, 1L, bytes, ResourceEncodingEnum.JSON));
+
+		assertNull(mySvc.decodeResource(1L, 1L, new byte[0], ResourceEncodingEnum.DEL));
+	}
+
+	@Test
+	public void testDisabled() {
+		byte[] bytes = GZipUtil.compress("{\"resourceType\":\"Patient\"}");
+		String text = mySvc.decodeResource(1L, 1L, bytes, ResourceEncodingEnum.JSONC);
+		assertSame(text, mySvc.decodeResource(1L, 1L, bytes, ResourceEncodingEnum.JSONC));
+
+		myDaoConfig.setDecodedResourceTextCacheSize(0);
+		assertNotSame(text, mySvc.decodeResource(1L, 1L, bytes, ResourceEncodingEnum.JSONC));
+		assertNotSame(text, mySvc.decodeResource(1L, 1L, bytes, ResourceEncodingEnum.JSONC));
+
+		// Invalidating while disabled is harmless
+		mySvc.invalidate(1L);
+		mySvc.clearCache();
+	}
+
+}
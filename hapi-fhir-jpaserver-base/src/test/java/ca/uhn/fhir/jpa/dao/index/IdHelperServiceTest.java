@@ -0,0 +1,171 @@
+package ca.uhn.fhir.jpa.dao.index;
+
+import ca.uhn.fhir.jpa.dao.DaoConfig;
+import ca.uhn.fhir.jpa.dao.data.IForcedIdDao;
+import ca.uhn.fhir.jpa.model.entity.ForcedId;
+import ca.uhn.fhir.model.primitive.IdDt;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class IdHelperServiceTest {
+
+	private IdHelperService mySvc;
+	private IForcedIdDao myForcedIdDao;
+	private Map<String, Long> myForcedIds;
+	private DaoConfig myDaoConfig;
+	private AtomicLong myTime;
+
+	@Before
+	public void before() {
+		myForcedIds = new HashMap<>();
+		myForcedIds.put("A", 1L);
+		myForcedIds.put("B", 2L);
+		myForcedIds.put("C", 3L);
+
+		myForcedIdDao = mock(IForcedIdDao.class);
+		when(myForcedIdDao.findForcedIdAndPidByTypeAndForcedId(eq("Patient"), any())).thenAnswer(t -> {
+			Collection<String> forcedIds = t.getArgument(1);
+			List<Object[]> retVal = new ArrayList<>();
+			for (String next : forcedIds) {
+				if (myForcedIds.containsKey(next)) {
+					retVal.add(new Object[]{next, myForcedIds.get(next)});
+				}
+			}
+			return retVal;
+		});
+
+		myDaoConfig = new DaoConfig();
+		myTime = new AtomicLong();
+		mySvc = new IdHelperService();
+		mySvc.setDaoConfigForUnitTest(myDaoConfig);
+		mySvc.setForcedIdDaoForUnitTest(myForcedIdDao);
+		mySvc.setTickerForUnitTest(myTime::get);
+		mySvc.start();
+	}
+
+	@Test
+	public void testTranslateOnlyQueriesForMisses() {
+		List<Long> pids = mySvc.translateForcedIdToPids(ids("Patient/A", "Patient/B"), null);
+		assertThat(pids, containsInAnyOrder(1L, 2L));
+		verify(myForcedIdDao, times(1)).findForcedIdAndPidByTypeAndForcedId(eq("Patient"), eq(Arrays.asList("A", "B")));
+
+		pids = mySvc.translateForcedIdToPids(ids("Patient/A", "Patient/C", "Patient/A"), null);
+		assertThat(pids, containsInAnyOrder(1L, 3L));
+		verify(myForcedIdDao, times(1)).findForcedIdAndPidByTypeAndForcedId(eq("Patient"), eq(Collections.singletonList("C")));
+
+		assertEquals(2L, mySvc.translateForcedIdToPid("Patient", "B", null).longValue());
+		verifyNoMoreInteractions(myForcedIdDao);
+	}
+
+	@Test
+	public void testMissesAreNotCached() {
+		try {
+			mySvc.translateForcedIdToPid("Patient", "D", null);
+			fail();
+		} catch (ResourceNotFoundException e) {
+			// good
+		}
+
+		myForcedIds.put("D", 4L);
+		assertEquals(4L, mySvc.translateForcedIdToPid("Patient", "D", null).longValue());
+	}
+
+	@Test
+	public void testDeleteInvalidatesCache() {
+		assertThat(mySvc.translateForcedIdToPids(ids("Patient/A"), null), contains(1L));
+
+		ForcedId forcedId = new ForcedId();
+		forcedId.setResourceType("Patient");
+		forcedId.setForcedId("A");
+		forcedId.setResourcePid(1L);
+		mySvc.delete(forcedId);
+		verify(myForcedIdDao, times(1)).delete(same(forcedId));
+
+		// The ID is reused by a new resource
+		myForcedIds.put("A", 5L);
+		assertThat(mySvc.translateForcedIdToPids(ids("Patient/A"), null), contains(5L));
+	}
+
+	@Test
+	public void testCachedEntriesExpireOnceExpungeIsEnabled() {
+		myDaoConfig.setExpungeEnabled(false);
+		assertEquals(1L, mySvc.translateForcedIdToPid("Patient", "A", null).longValue());
+		myTime.addAndGet(TimeUnit.HOURS.toNanos(1));
+		assertEquals(1L, mySvc.translateForcedIdToPid("Patient", "A", null).longValue());
+		verify(myForcedIdDao, times(1)).findForcedIdAndPidByTypeAndForcedId(eq("Patient"), any());
+
+		// The entry was cached while expunging was disabled, so it would otherwise never expire
+		myDaoConfig.setExpungeEnabled(true);
+		assertEquals(1L, mySvc.translateForcedIdToPid("Patient", "A", null).longValue());
+		verify(myForcedIdDao, times(1)).findForcedIdAndPidByTypeAndForcedId(eq("Patient"), any());
+
+		// Another server expunges the resource and reuses its ID
+		myForcedIds.put("A", 5L);
+		myTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(IdHelperService.CACHE_EXPIRY_WHEN_EXPUNGE_ENABLED_MILLIS + 1));
+		assertEquals(5L, mySvc.translateForcedIdToPid("Patient", "A", null).longValue());
+		verify(myForcedIdDao, times(2)).findForcedIdAndPidByTypeAndForcedId(eq("Patient"), any());
+	}
+
+	@Test
+	public void testPreResolveForcedIds() {
+		RequestDetails requestDetails = mock(RequestDetails.class);
+		Map<Object, Object> userData = new HashMap<>();
+		when(requestDetails.getUserData()).thenReturn(userData);
+
+		Set<Long> pids = mySvc.preResolveForcedIds(ids("Patient/A", "Patient/B", "Patient/A", "Patient/D", "Patient/123"), requestDetails);
+		assertThat(pids, containsInAnyOrder(1L, 2L, 123L));
+		verify(myForcedIdDao, times(1)).findForcedIdAndPidByTypeAndForcedId(eq("Patient"), eq(Arrays.asList("A", "B", "D")));
+
+		// Pre-resolved IDs are used even if nothing is cached
+		mySvc.clearCache();
+		assertEquals(1L, mySvc.translateForcedIdToPid("Patient", "A", requestDetails).longValue());
+		assertEquals(2L, mySvc.translateForcedIdToPid("Patient", "B", requestDetails).longValue());
+		verifyNoMoreInteractions(myForcedIdDao);
+
+		// IDs which weren't found may be created later in the request
+		myForcedIds.put("D", 4L);
+		assertEquals(4L, mySvc.translateForcedIdToPid("Patient", "D", requestDetails).longValue());
+
+		mySvc.clearPreResolvedForcedIds(requestDetails);
+		assertTrue(userData.isEmpty());
+	}
+
+	@Test
+	public void testTranslatePidToForcedIdIsCached() {
+		ForcedId forcedId = new ForcedId();
+		forcedId.setResourceType("Patient");
+		forcedId.setForcedId("A");
+		when(myForcedIdDao.findByResourcePid(eq(1L))).thenReturn(forcedId);
+
+		assertEquals("Patient/A", mySvc.translatePidIdToForcedId("Patient", 1L));
+		assertEquals("Patient/A", mySvc.translatePidIdToForcedId("Patient", 1L));
+		assertEquals("Patient/9", mySvc.translatePidIdToForcedId("Patient", 9L));
+		assertEquals("Patient/9", mySvc.translatePidIdToForcedId("Patient", 9L));
+
+		verify(myForcedIdDao, times(1)).findByResourcePid(eq(1L));
+		verify(myForcedIdDao, times(1)).findByResourcePid(eq(9L));
+	}
+
+	private static List<IIdType> ids(String... theIds) {
+		List<IIdType> retVal = new ArrayList<>();
+		for (String next : theIds) {
+			retVal.add(new IdDt(next));
+		}
+		return retVal;
+	}
+
+}
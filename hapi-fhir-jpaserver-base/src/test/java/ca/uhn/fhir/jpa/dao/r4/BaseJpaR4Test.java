@@ -346,6 +346,7 @@ public abstract class BaseJpaR4Test extends BaseJpaTest {
 	public void afterClearTerminologyCaches() {
 		BaseHapiTerminologySvcImpl baseHapiTerminologySvc = AopTestUtils.getTargetObject(myTermSvc);
 		baseHapiTerminologySvc.clearTranslationCache();
+		baseHapiTerminologySvc.clearValueSetExpansionCache();
 		baseHapiTerminologySvc.clearTranslationWithReverseCache();
 		baseHapiTerminologySvc.clearDeferred();
 		BaseHapiTerminologySvcImpl.clearOurLastResultsFromTranslationCache();
@@ -0,0 +1,96 @@
+package ca.uhn.fhir.jpa.dao.r4;
+
+import ca.uhn.fhir.jpa.dao.DaoConfig;
+import ca.uhn.fhir.jpa.dao.index.DecodedResourceTextCache;
+import ca.uhn.fhir.util.TestUtil;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.r4.model.BooleanType;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.StringType;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import static org.junit.Assert.*;
+
+public class FhirResourceDaoR4DecodedResourceCacheTest extends BaseJpaR4Test {
+
+	@Autowired
+	private DecodedResourceTextCache myDecodedResourceTextCache;
+
+	@Before
+	public void beforeEnableCache() {
+		myDaoConfig.setDecodedResourceTextCacheSize(100);
+	}
+
+	@After
+	public void afterResetDao() {
+		myDaoConfig.setDecodedResourceTextCacheSize(new DaoConfig().getDecodedResourceTextCacheSize());
+	}
+
+	@Test
+	public void testRepeatedReadDoesNotReparse() {
+		Patient p = new Patient();
+		p.setActive(true);
+		p.addName().setFamily("FAMILY").addGiven("GIVEN");
+		IIdType id = myPatientDao.create(p).getId().toUnqualifiedVersionless();
+
+		// The first two reads parse the stored text, the second one also caches the parsed resource
+		long hits = myDecodedResourceTextCache.getParsedResourceHitCountForUnitTest();
+		Patient read = myPatientDao.read(id);
+		assertEquals("FAMILY", read.getNameFirstRep().getFamily());
+		read = myPatientDao.read(id);
+		assertEquals("FAMILY", read.getNameFirstRep().getFamily());
+		assertEquals(hits, myDecodedResourceTextCache.getParsedResourceHitCountForUnitTest());
+
+		// Later reads get copies of the cached resource
+		read = myPatientDao.read(id);
+		assertEquals(hits + 1, myDecodedResourceTextCache.getParsedResourceHitCountForUnitTest());
+		assertEquals("FAMILY", read.getNameFirstRep().getFamily());
+		assertEquals("GIVEN", read.getNameFirstRep().getGivenAsSingleString());
+		assertTrue(read.getActive());
+		assertEquals("1", read.getIdElement().getVersionIdPart());
+		assertNotNull(read.getMeta().getLastUpdated());
+
+		// Modifying a returned copy doesn't affect the cached resource
+		read.getNameFirstRep().setFamily("MODIFIED");
+		read.setActive(false);
+		read = myPatientDao.read(id);
+		assertEquals(hits + 2, myDecodedResourceTextCache.getParsedResourceHitCountForUnitTest());
+		assertEquals("FAMILY", read.getNameFirstRep().getFamily());
+		assertTrue(read.getActive());
+
+		// An update makes the cached resource stale
+		read.getNameFirstRep().setFamily("UPDATED");
+		myPatientDao.update(read);
+		read = myPatientDao.read(id);
+		assertEquals("UPDATED", read.getNameFirstRep().getFamily());
+		assertEquals("2", read.getIdElement().getVersionIdPart());
+		assertEquals(hits + 2, myDecodedResourceTextCache.getParsedResourceHitCountForUnitTest());
+	}
+
+	@Test
+	public void testResourceWhichCantBeCopiedExactlyIsReparsed() {
+		Patient p = new Patient();
+		BooleanType active = new BooleanType(true);
+		active.addExtension("http://foo", new StringType("BAR"));
+		p.setActiveElement(active);
+		IIdType id = myPatientDao.create(p).getId().toUnqualifiedVersionless();
+
+		long hits = myDecodedResourceTextCache.getParsedResourceHitCountForUnitTest();
+		for (int i = 0; i < 3; i++) {
+			Patient read = myPatientDao.read(id);
+			assertTrue(read.getActive());
+			assertEquals("BAR", read.getActiveElement().getExtensionByUrl("http://foo").getValueAsPrimitive().getValueAsString());
+		}
+		assertEquals(hits, myDecodedResourceTextCache.getParsedResourceHitCountForUnitTest());
+	}
+
+	@AfterClass
+	public static void afterClassClearContext() {
+		TestUtil.clearAllStaticFieldsForUnitTest();
+	}
+
+}
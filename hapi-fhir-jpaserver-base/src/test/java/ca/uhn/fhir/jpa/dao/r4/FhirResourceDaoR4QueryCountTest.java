@@ -4,11 +4,13 @@ import ca.uhn.fhir.jpa.dao.DaoConfig;
 import ca.uhn.fhir.jpa.model.entity.ResourceHistoryTable;
 import ca.uhn.fhir.jpa.model.entity.ResourceTable;
 import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.jpa.util.SqlQuery;
 import ca.uhn.fhir.jpa.util.TestUtil;
 import ca.uhn.fhir.model.primitive.InstantDt;
 import ca.uhn.fhir.rest.api.MethodOutcome;
 import ca.uhn.fhir.rest.api.server.IBundleProvider;
 import ca.uhn.fhir.rest.param.StringParam;
+import ca.uhn.fhir.rest.param.TokenParam;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
 import ca.uhn.fhir.rest.server.exceptions.ResourceGoneException;
 import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
@@ -20,6 +22,7 @@ import org.junit.*;
 import org.springframework.test.context.TestPropertySource;
 
 import java.util.*;
+import java.util.stream.Collectors;
 
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
@@ -35,6 +38,8 @@ public class FhirResourceDaoR4QueryCountTest extends BaseJpaR4Test {
 	public void afterResetDao() {
 		myDaoConfig.setResourceMetaCountHardLimit(new DaoConfig().getResourceMetaCountHardLimit());
 		myDaoConfig.setIndexMissingFields(new DaoConfig().getIndexMissingFields());
+		myDaoConfig.setAllowInlineMatchUrlReferences(new DaoConfig().isAllowInlineMatchUrlReferences());
+		myDaoConfig.setIndexWriteBatchSize(new DaoConfig().getIndexWriteBatchSize());
 	}
 
 	@Before
@@ -136,6 +141,185 @@ public class FhirResourceDaoR4QueryCountTest extends BaseJpaR4Test {
 		assertEquals(0, myCaptureQueriesListener.getDeleteQueriesForCurrentThread().size());
 	}
 
+	@Test
+	public void testTransactionWithConditionalUpdates() {
+		for (int i = 0; i < 5; i++) {
+			Patient p = new Patient();
+			p.addIdentifier().setSystem("urn:foo").setValue("P" + i);
+			myPatientDao.create(p, mySrd);
+		}
+
+		Bundle input = new Bundle();
+		input.setType(Bundle.BundleType.TRANSACTION);
+		for (int i = 0; i < 5; i++) {
+			Patient p = new Patient();
+			p.addIdentifier().setSystem("urn:foo").setValue("P" + i);
+			p.setActive(true);
+			input.addEntry().setResource(p).getRequest().setMethod(Bundle.HTTPVerb.PUT).setUrl("Patient?identifier=urn:foo|P" + i);
+		}
+
+		myCaptureQueriesListener.clear();
+		Bundle output = mySystemDao.transaction(mySrd, input);
+		myCaptureQueriesListener.logSelectQueriesForCurrentThread();
+
+		// All five match URLs are resolved by a single query instead of one query each
+		assertEquals(1, countSelectQueriesWithWhereClauseContaining("hash_sys_and_value"));
+
+		for (Bundle.BundleEntryComponent next : output.getEntry()) {
+			assertEquals("2", new IdType(next.getResponse().getLocation()).getVersionIdPart());
+		}
+		for (int i = 0; i < 5; i++) {
+			IBundleProvider outcome = myPatientDao.search(SearchParameterMap.newSynchronous("identifier", new TokenParam("urn:foo", "P" + i)));
+			assertEquals(1, outcome.size().intValue());
+			assertTrue(((Patient) outcome.getResources(0, 1).get(0)).getActive());
+		}
+	}
+
+	/**
+	 * Entries written in a transaction are only indexed once every entry has been
+	 * processed, so a later ifNoneExist can't match a resource created by an earlier
+	 * entry. The pre-resolved match URL must not hide the resulting duplicate.
+	 */
+	@Test
+	public void testTransactionWithCreateThenMatchingIfNoneExist() {
+		Bundle input = new Bundle();
+		input.setType(Bundle.BundleType.TRANSACTION);
+		Patient p = new Patient();
+		p.addIdentifier().setSystem("urn:foo").setValue("A");
+		input.addEntry().setResource(p).getRequest().setMethod(Bundle.HTTPVerb.POST);
+		p = new Patient();
+		p.addIdentifier().setSystem("urn:foo").setValue("A");
+		input.addEntry().setResource(p).getRequest().setMethod(Bundle.HTTPVerb.POST).setIfNoneExist("Patient?identifier=urn:foo|A");
+
+		try {
+			mySystemDao.transaction(mySrd, input);
+			fail();
+		} catch (InvalidRequestException e) {
+			assertEquals("Unable to process Transaction - Request would cause multiple resources to match URL: \"Patient?identifier=urn:foo|A\". Does transaction request contain duplicates?", e.getMessage());
+		}
+
+		assertEquals(0, myPatientDao.search(SearchParameterMap.newSynchronous("identifier", new TokenParam("urn:foo", "A"))).size().intValue());
+	}
+
+	@Test
+	public void testTransactionWithCreateThenMatchingConditionalUpdate() {
+		Bundle input = new Bundle();
+		input.setType(Bundle.BundleType.TRANSACTION);
+		Patient p = new Patient();
+		p.addIdentifier().setSystem("urn:foo").setValue("B");
+		input.addEntry().setResource(p).getRequest().setMethod(Bundle.HTTPVerb.POST);
+		p = new Patient();
+		p.addIdentifier().setSystem("urn:foo").setValue("B");
+		p.setActive(true);
+		input.addEntry().setResource(p).getRequest().setMethod(Bundle.HTTPVerb.PUT).setUrl("Patient?identifier=urn:foo|B");
+
+		try {
+			mySystemDao.transaction(mySrd, input);
+			fail();
+		} catch (InvalidRequestException e) {
+			assertEquals("Unable to process Transaction - Request would cause multiple resources to match URL: \"Patient?identifier=urn:foo|B\". Does transaction request contain duplicates?", e.getMessage());
+		}
+
+		assertEquals(0, myPatientDao.search(SearchParameterMap.newSynchronous("identifier", new TokenParam("urn:foo", "B"))).size().intValue());
+	}
+
+	@Test
+	public void testTransactionWithConditionalDeleteThenCreate() {
+		Patient p = new Patient();
+		p.addIdentifier().setSystem("urn:foo").setValue("C");
+		IIdType oldId = myPatientDao.create(p, mySrd).getId().toUnqualifiedVersionless();
+
+		Bundle input = new Bundle();
+		input.setType(Bundle.BundleType.TRANSACTION);
+		input.addEntry().getRequest().setMethod(Bundle.HTTPVerb.DELETE).setUrl("Patient?identifier=urn:foo|C");
+		p = new Patient();
+		p.addIdentifier().setSystem("urn:foo").setValue("C");
+		input.addEntry().setResource(p).getRequest().setMethod(Bundle.HTTPVerb.POST).setIfNoneExist("Patient?identifier=urn:foo|C");
+
+		Bundle output = mySystemDao.transaction(mySrd, input);
+
+		// The pre-resolved match is the deleted patient, so it must not be reused
+		assertEquals("201 Created", output.getEntry().get(1).getResponse().getStatus());
+		IIdType newId = new IdType(output.getEntry().get(1).getResponse().getLocation()).toUnqualifiedVersionless();
+		assertNotEquals(oldId.getIdPart(), newId.getIdPart());
+
+		try {
+			myPatientDao.read(oldId, mySrd);
+			fail();
+		} catch (ResourceGoneException e) {
+			// good
+		}
+		IBundleProvider outcome = myPatientDao.search(SearchParameterMap.newSynchronous("identifier", new TokenParam("urn:foo", "C")));
+		assertEquals(newId.getValue(), outcome.getResources(0, 1).get(0).getIdElement().toUnqualifiedVersionless().getValue());
+		assertEquals(1, outcome.size().intValue());
+	}
+
+	@Test
+	public void testTransactionWithConditionalReferenceToResourceInSameBundle() {
+		myDaoConfig.setAllowInlineMatchUrlReferences(true);
+
+		Bundle input = new Bundle();
+		input.setType(Bundle.BundleType.TRANSACTION);
+		Patient p = new Patient();
+		p.addIdentifier().setSystem("urn:foo").setValue("D");
+		input.addEntry().setResource(p).getRequest().setMethod(Bundle.HTTPVerb.POST);
+		Observation o = new Observation();
+		o.setStatus(Observation.ObservationStatus.FINAL);
+		o.getSubject().setReference("Patient?identifier=urn:foo|D");
+		input.addEntry().setResource(o).getRequest().setMethod(Bundle.HTTPVerb.POST);
+
+		Bundle output = mySystemDao.transaction(mySrd, input);
+
+		IIdType patientId = new IdType(output.getEntry().get(0).getResponse().getLocation()).toUnqualifiedVersionless();
+		IIdType obsId = new IdType(output.getEntry().get(1).getResponse().getLocation()).toUnqualifiedVersionless();
+		Observation obs = myObservationDao.read(obsId, mySrd);
+		assertEquals(patientId.getValue(), obs.getSubject().getReference());
+	}
+
+	private long countSelectQueriesWithWhereClauseContaining(String theText) {
+		return myCaptureQueriesListener
+			.getSelectQueriesForCurrentThread()
+			.stream()
+			.map(t -> t.getSql(false, false).toLowerCase())
+			.filter(t -> t.contains(" where ") && t.substring(t.indexOf(" where ")).contains(theText))
+			.count();
+	}
+
+	@Test
+	public void testCreateWithIndexWriteBatching() {
+		myCaptureQueriesListener.clear();
+		createPatientWithTenIdentifiers();
+		myCaptureQueriesListener.logInsertQueriesForCurrentThread();
+		List<SqlQuery> tokenInserts = getTokenIndexInsertQueriesForCurrentThread();
+		assertEquals(10, tokenInserts.size());
+
+		myDaoConfig.setIndexWriteBatchSize(50);
+		myCaptureQueriesListener.clear();
+		createPatientWithTenIdentifiers();
+		myCaptureQueriesListener.logInsertQueriesForCurrentThread();
+		tokenInserts = getTokenIndexInsertQueriesForCurrentThread();
+		assertEquals(1, tokenInserts.size());
+		assertEquals(10, tokenInserts.get(0).getSize());
+	}
+
+	private void createPatientWithTenIdentifiers() {
+		runInTransaction(() -> {
+			Patient p = new Patient();
+			for (int i = 0; i < 10; i++) {
+				p.addIdentifier().setSystem("urn:system").setValue("ID" + i);
+			}
+			myPatientDao.create(p);
+		});
+	}
+
+	private List<SqlQuery> getTokenIndexInsertQueriesForCurrentThread() {
+		return myCaptureQueriesListener
+			.getInsertQueriesForCurrentThread()
+			.stream()
+			.filter(t -> t.getSql(false, false).toLowerCase().startsWith("insert into hfj_spidx_token "))
+			.collect(Collectors.toList());
+	}
+
 	@AfterClass
 	public static void afterClassClearContext() {
 		TestUtil.clearAllStaticFieldsForUnitTest();
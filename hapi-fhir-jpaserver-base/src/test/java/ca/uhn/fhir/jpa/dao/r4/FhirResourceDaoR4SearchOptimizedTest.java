@@ -62,6 +62,8 @@ public class FhirResourceDaoR4SearchOptimizedTest extends BaseJpaR4Test {
 		mySearchCoordinatorSvcImpl.setLoadingThrottleForUnitTests(null);
 		mySearchCoordinatorSvcImpl.setSyncSizeForUnitTests(SearchCoordinatorSvcImpl.DEFAULT_SYNC_SIZE);
 		myDaoConfig.setSearchPreFetchThresholds(new DaoConfig().getSearchPreFetchThresholds());
+		myDaoConfig.setSearchPartitionCount(new DaoConfig().getSearchPartitionCount());
+		mySearchCoordinatorSvcImpl.setMinimumPartitionSizeForUnitTests(null);
 		myCaptureQueriesListener.setCaptureQueryStackTrace(false);
 	}
 
@@ -444,6 +446,63 @@ public class FhirResourceDaoR4SearchOptimizedTest extends BaseJpaR4Test {
 
 	}
 
+	/**
+	 * PIDs found by an earlier pass count against the prefetch threshold of the next
+	 * pass, so a partitioned search must not load a whole threshold of new PIDs
+	 */
+	@Test
+	public void testFetchOnlySmallBatches_Partitioned() {
+		create200Patients();
+
+		myDaoConfig.setSearchPreFetchThresholds(Arrays.asList(20, 50, 190));
+		myDaoConfig.setSearchPartitionCount(4);
+		mySearchCoordinatorSvcImpl.setMinimumPartitionSizeForUnitTests(1L);
+
+		SearchParameterMap params = new SearchParameterMap();
+		params.add(Patient.SP_ACTIVE, new TokenParam("true"));
+		IBundleProvider results = myPatientDao.search(params);
+		String uuid = results.getUuid();
+		List<String> ids = toUnqualifiedVersionlessIdValues(results, 0, 10, true);
+		assertEquals(10, ids.size());
+
+		runInTransaction(() -> {
+			Search search = mySearchEntityDao.findByUuid(uuid);
+			assertEquals(20, search.getNumFound());
+			assertEquals(search.getNumFound(), mySearchResultDao.count());
+		});
+
+		/*
+		 * Second pass
+		 */
+
+		ids = toUnqualifiedVersionlessIdValues(results, 15, 25, false);
+		assertEquals(10, ids.size());
+
+		runInTransaction(() -> {
+			Search search = mySearchEntityDao.findByUuid(uuid);
+			assertEquals(50, search.getNumFound());
+			assertEquals(search.getNumFound(), mySearchResultDao.count());
+		});
+
+		/*
+		 * Third pass
+		 */
+
+		ids = toUnqualifiedVersionlessIdValues(results, 50, 60, false);
+		assertEquals(10, ids.size());
+
+		runInTransaction(() -> {
+			Search search = mySearchEntityDao.findByUuid(uuid);
+			assertEquals(190, search.getNumFound());
+			assertEquals(search.getNumFound(), mySearchResultDao.count());
+			assertEquals(SearchStatusEnum.FINISHED, search.getStatus());
+		});
+
+		ids = toUnqualifiedVersionlessIdValues(results, 0, 190, false);
+		assertEquals(190, ids.size());
+		assertEquals(190, ids.stream().distinct().count());
+	}
+
 	@Test
 	public void testFetchMoreThanFirstPageSizeInFirstPage() {
 		create200Patients();
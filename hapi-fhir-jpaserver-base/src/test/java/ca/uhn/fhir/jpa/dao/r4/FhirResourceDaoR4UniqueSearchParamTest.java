@@ -9,6 +9,7 @@ import ca.uhn.fhir.jpa.model.entity.ResourceIndexedCompositeStringUnique;
 import ca.uhn.fhir.jpa.model.entity.ResourceTable;
 import ca.uhn.fhir.jpa.model.search.StorageProcessingMessage;
 import ca.uhn.fhir.jpa.search.DatabaseBackedPagingProvider;
+import ca.uhn.fhir.jpa.search.SearchCoordinatorSvcImpl;
 import ca.uhn.fhir.jpa.searchparam.JpaRuntimeSearchParam;
 import ca.uhn.fhir.jpa.searchparam.SearchParamConstants;
 import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
@@ -32,11 +33,13 @@ import org.junit.Test;
 import org.mockito.ArgumentMatchers;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.util.AopTestUtils;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.TransactionCallbackWithoutResult;
 import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.annotation.Nonnull;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -69,6 +72,9 @@ public class FhirResourceDaoR4UniqueSearchParamTest extends BaseJpaR4Test {
 		myDaoConfig.setUniqueIndexesCheckedBeforeSave(new DaoConfig().isUniqueIndexesCheckedBeforeSave());
 		myDaoConfig.setSchedulingDisabled(new DaoConfig().isSchedulingDisabled());
 		myDaoConfig.setUniqueIndexesEnabled(new DaoConfig().isUniqueIndexesEnabled());
+		myDaoConfig.setSearchPartitionCount(new DaoConfig().getSearchPartitionCount());
+		myDaoConfig.setReuseCachedSearchResultsForMillis(new DaoConfig().getReuseCachedSearchResultsForMillis());
+		AopTestUtils.<SearchCoordinatorSvcImpl>getTargetObject(mySearchCoordinatorSvc).setMinimumPartitionSizeForUnitTests(null);
 	}
 
 	@Before
@@ -1078,6 +1084,51 @@ public class FhirResourceDaoR4UniqueSearchParamTest extends BaseJpaR4Test {
 	}
 
 
+	/**
+	 * Each partition of a partitioned search must get its own copy of the parameters,
+	 * since the search builder removes the parameters which are satisfied by a unique
+	 * index from the map it is given
+	 */
+	@Test
+	public void testSearchUsingUniqueComposite_Partitioned() {
+		createUniqueBirthdateAndGenderSps();
+		myDaoConfig.setReuseCachedSearchResultsForMillis(null);
+
+		for (int i = 0; i < 40; i++) {
+			Patient pt = new Patient();
+			pt.setGender(i % 2 == 0 ? Enumerations.AdministrativeGender.MALE : Enumerations.AdministrativeGender.FEMALE);
+			pt.setBirthDateElement(new DateType(LocalDate.of(2011, 1, 1).plusDays(i).toString()));
+			myPatientDao.create(pt);
+		}
+
+		List<String> expectedUnique = searchForGenderAndBirthdate();
+		List<String> expectedGender = searchForGender();
+		assertEquals(1, expectedUnique.size());
+		assertEquals(20, expectedGender.size());
+
+		myDaoConfig.setSearchPartitionCount(4);
+		AopTestUtils.<SearchCoordinatorSvcImpl>getTargetObject(mySearchCoordinatorSvc).setMinimumPartitionSizeForUnitTests(1L);
+		for (int i = 0; i < 5; i++) {
+			myMessages.clear();
+			assertThat(searchForGenderAndBirthdate(), containsInAnyOrder(expectedUnique.toArray()));
+			assertThat(myMessages.toString(), containsString("Using unique index"));
+			assertThat(searchForGender(), containsInAnyOrder(expectedGender.toArray()));
+		}
+	}
+
+	private List<String> searchForGenderAndBirthdate() {
+		SearchParameterMap params = new SearchParameterMap();
+		params.add("gender", new TokenParam("http://hl7.org/fhir/administrative-gender", "male"));
+		params.add("birthdate", new DateParam("2011-01-11"));
+		return toUnqualifiedVersionlessIdValues(myPatientDao.search(params, mySrd));
+	}
+
+	private List<String> searchForGender() {
+		SearchParameterMap params = new SearchParameterMap();
+		params.add("gender", new TokenParam("http://hl7.org/fhir/administrative-gender", "female"));
+		return toUnqualifiedVersionlessIdValues(myPatientDao.search(params, mySrd));
+	}
+
 	@Test
 	public void testUniqueValuesAreIndexed_DateAndToken() {
 		createUniqueBirthdateAndGenderSps();
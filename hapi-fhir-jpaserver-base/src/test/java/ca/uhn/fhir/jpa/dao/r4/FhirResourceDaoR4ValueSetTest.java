@@ -2,6 +2,9 @@ package ca.uhn.fhir.jpa.dao.r4;
 
 import ca.uhn.fhir.jpa.dao.DaoConfig;
 import ca.uhn.fhir.jpa.dao.IFhirResourceDaoValueSet.ValidateCodeResult;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.rest.param.TokenParam;
+import ca.uhn.fhir.rest.param.TokenParamModifier;
 import ca.uhn.fhir.util.TestUtil;
 import org.hl7.fhir.instance.model.api.IIdType;
 import org.hl7.fhir.instance.model.api.IPrimitiveType;
@@ -153,6 +156,122 @@ public class FhirResourceDaoR4ValueSetTest extends BaseJpaR4Test {
 		assertEquals("Systolic blood pressure at First encounter", result.getDisplay());
 	}
 
+	@Test
+	public void testSearchInPreExpandedValueSet() {
+		myDaoConfig.setPreExpandValueSetsExperimental(true);
+		String url = "http://www.healthintersections.com.au/fhir/ValueSet/extensional-case-2";
+
+		Observation obs = new Observation();
+		obs.getCode().addCoding().setSystem("http://acme.org").setCode("11378-7");
+		String inId = myObservationDao.create(obs, mySrd).getId().toUnqualifiedVersionless().getValue();
+
+		obs = new Observation();
+		obs.getCode().addCoding().setSystem("http://example.com").setCode("11378-7");
+		String notInId = myObservationDao.create(obs, mySrd).getId().toUnqualifiedVersionless().getValue();
+
+		// Not pre-expanded yet, so the ValueSet is expanded in memory
+		assertFalse(myTermSvc.findPreExpandedValueSetPid(url).isPresent());
+		SearchParameterMap params = new SearchParameterMap();
+		params.setLoadSynchronous(true);
+		params.add(Observation.SP_CODE, new TokenParam(null, url).setModifier(TokenParamModifier.IN));
+		assertThat(toUnqualifiedVersionlessIdValues(myObservationDao.search(params)), contains(inId));
+
+		myTermSvc.saveDeferred();
+		myTermSvc.preExpandDeferredValueSetsToTerminologyTables();
+		assertTrue(myTermSvc.findPreExpandedValueSetPid(url).isPresent());
+
+		params = new SearchParameterMap();
+		params.setLoadSynchronous(true);
+		params.add(Observation.SP_CODE, new TokenParam(null, url).setModifier(TokenParamModifier.IN));
+		assertThat(toUnqualifiedVersionlessIdValues(myObservationDao.search(params)), contains(inId));
+
+		params = new SearchParameterMap();
+		params.setLoadSynchronous(true);
+		params.add(Observation.SP_CODE, new TokenParam(null, url).setModifier(TokenParamModifier.NOT_IN));
+		assertThat(toUnqualifiedVersionlessIdValues(myObservationDao.search(params)), contains(notInId));
+	}
+
+	@Test
+	public void testSearchInValueSetAfterCodeSystemChanges() {
+		CodeSystem cs = new CodeSystem();
+		cs.setId("CS");
+		cs.setUrl("http://example.com/cs");
+		cs.setContent(CodeSystem.CodeSystemContentMode.COMPLETE);
+		cs.addConcept().setCode("A");
+		myCodeSystemDao.update(cs, mySrd);
+
+		ValueSet vs = new ValueSet();
+		vs.setUrl("http://example.com/vs");
+		vs.getCompose().addInclude().setSystem("http://example.com/cs");
+		myValueSetDao.create(vs, mySrd);
+
+		Observation obs = new Observation();
+		obs.getCode().addCoding().setSystem("http://example.com/cs").setCode("A");
+		String idA = myObservationDao.create(obs, mySrd).getId().toUnqualifiedVersionless().getValue();
+
+		obs = new Observation();
+		obs.getCode().addCoding().setSystem("http://example.com/cs").setCode("B");
+		String idB = myObservationDao.create(obs, mySrd).getId().toUnqualifiedVersionless().getValue();
+
+		SearchParameterMap params = new SearchParameterMap();
+		params.setLoadSynchronous(true);
+		params.add(Observation.SP_CODE, new TokenParam(null, "http://example.com/vs").setModifier(TokenParamModifier.IN));
+		assertThat(toUnqualifiedVersionlessIdValues(myObservationDao.search(params)), containsInAnyOrder(idA));
+
+		// The cached expansion must not be reused once the CodeSystem has changed
+		cs.addConcept().setCode("B");
+		myCodeSystemDao.update(cs, mySrd);
+
+		params = new SearchParameterMap();
+		params.setLoadSynchronous(true);
+		params.add(Observation.SP_CODE, new TokenParam(null, "http://example.com/vs").setModifier(TokenParamModifier.IN));
+		assertThat(toUnqualifiedVersionlessIdValues(myObservationDao.search(params)), containsInAnyOrder(idA, idB));
+	}
+
+	@Test
+	public void testSearchInValueSetAfterIncludedValueSetChanges() {
+		CodeSystem cs = new CodeSystem();
+		cs.setId("CS");
+		cs.setUrl("http://example.com/cs");
+		cs.setContent(CodeSystem.CodeSystemContentMode.COMPLETE);
+		cs.addConcept().setCode("A");
+		cs.addConcept().setCode("B");
+		myCodeSystemDao.update(cs, mySrd);
+
+		ValueSet innerVs = new ValueSet();
+		innerVs.setId("INNER");
+		innerVs.setUrl("http://example.com/vs-inner");
+		innerVs.getCompose().addInclude().setSystem("http://example.com/cs").addConcept().setCode("A");
+		myValueSetDao.update(innerVs, mySrd);
+
+		ValueSet outerVs = new ValueSet();
+		outerVs.setUrl("http://example.com/vs-outer");
+		outerVs.getCompose().addInclude().addValueSet("http://example.com/vs-inner");
+		myValueSetDao.create(outerVs, mySrd);
+
+		Observation obs = new Observation();
+		obs.getCode().addCoding().setSystem("http://example.com/cs").setCode("A");
+		String idA = myObservationDao.create(obs, mySrd).getId().toUnqualifiedVersionless().getValue();
+
+		obs = new Observation();
+		obs.getCode().addCoding().setSystem("http://example.com/cs").setCode("B");
+		String idB = myObservationDao.create(obs, mySrd).getId().toUnqualifiedVersionless().getValue();
+
+		SearchParameterMap params = new SearchParameterMap();
+		params.setLoadSynchronous(true);
+		params.add(Observation.SP_CODE, new TokenParam(null, "http://example.com/vs-outer").setModifier(TokenParamModifier.IN));
+		assertThat(toUnqualifiedVersionlessIdValues(myObservationDao.search(params)), containsInAnyOrder(idA));
+
+		// The cached expansion of the outer ValueSet must not be reused once the included one has changed
+		innerVs.getCompose().getIncludeFirstRep().addConcept().setCode("B");
+		myValueSetDao.update(innerVs, mySrd);
+
+		params = new SearchParameterMap();
+		params.setLoadSynchronous(true);
+		params.add(Observation.SP_CODE, new TokenParam(null, "http://example.com/vs-outer").setModifier(TokenParamModifier.IN));
+		assertThat(toUnqualifiedVersionlessIdValues(myObservationDao.search(params)), containsInAnyOrder(idA, idB));
+	}
+
 	@Test
 	public void testValidateCodeOperationByResourceIdAndCodeAndSystem() {
 		UriType valueSetIdentifier = null;
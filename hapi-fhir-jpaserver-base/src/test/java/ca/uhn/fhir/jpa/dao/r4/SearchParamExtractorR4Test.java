@@ -5,15 +5,20 @@ import ca.uhn.fhir.context.RuntimeResourceDefinition;
 import ca.uhn.fhir.context.RuntimeSearchParam;
 import ca.uhn.fhir.jpa.model.entity.*;
 import ca.uhn.fhir.jpa.searchparam.JpaRuntimeSearchParam;
+import ca.uhn.fhir.jpa.searchparam.extractor.BaseSearchParamExtractor;
 import ca.uhn.fhir.jpa.searchparam.extractor.PathAndRef;
 import ca.uhn.fhir.jpa.searchparam.extractor.SearchParamExtractorR4;
 import ca.uhn.fhir.jpa.searchparam.registry.ISearchParamRegistry;
 import ca.uhn.fhir.rest.api.RestSearchParameterTypeEnum;
+import ca.uhn.fhir.util.FhirTerser;
 import ca.uhn.fhir.util.TestUtil;
 import com.google.common.collect.Sets;
+import org.hl7.fhir.exceptions.FHIRException;
 import org.hl7.fhir.r4.hapi.ctx.DefaultProfileValidationSupport;
+import org.hl7.fhir.r4.hapi.ctx.HapiWorkerContext;
 import org.hl7.fhir.r4.hapi.ctx.IValidationSupport;
 import org.hl7.fhir.r4.model.*;
+import org.hl7.fhir.r4.utils.FHIRPathEngine;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -24,8 +29,12 @@ import org.slf4j.LoggerFactory;
 import java.util.*;
 import java.util.stream.Collectors;
 
+import static org.apache.commons.lang3.StringUtils.isBlank;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
 
 public class SearchParamExtractorR4Test {
 
@@ -33,6 +42,7 @@ public class SearchParamExtractorR4Test {
 	private static FhirContext ourCtx = FhirContext.forR4();
 	private static IValidationSupport ourValidationSupport;
 	private ISearchParamRegistry mySearchParamRegistry;
+	private long myRefreshGeneration;
 
 	@Before
 	public void before() {
@@ -88,6 +98,11 @@ public class SearchParamExtractorR4Test {
 			public Collection<RuntimeSearchParam> getSearchParamsByResourceType(RuntimeResourceDefinition theResourceDef) {
 				return null;
 			}
+
+			@Override
+			public long getRefreshGeneration() {
+				return myRefreshGeneration;
+			}
 		};
 
 	}
@@ -165,6 +180,185 @@ public class SearchParamExtractorR4Test {
 		assertEquals(4, links.size());
 	}
 
+	@Test
+	public void testExtractionPlansMatchFhirPath() throws FHIRException {
+		Observation obs = new Observation();
+		obs.getCode().addCoding().setSystem("http://loinc.org").setCode("1234-5");
+		obs.addComponent().getCode().addCoding().setSystem("http://loinc.org").setCode("2222-2");
+		obs.addComponent().getCode().addCoding().setSystem("http://loinc.org").setCode("3333-3");
+		obs.setSubject(new Reference("Patient/123"));
+		obs.setValue(new Quantity().setSystem("http://unitsofmeasure.org").setCode("mg").setValue(5));
+
+		SearchParamExtractorR4 extractor = new SearchParamExtractorR4(new ModelConfig(), ourCtx, ourValidationSupport, mySearchParamRegistry);
+
+		// Simple paths use the model accessors
+		RuntimeSearchParam sp = new RuntimeSearchParam("component-code", null, "Observation.component.code", RestSearchParameterTypeEnum.TOKEN, new HashSet<>(), Sets.newHashSet("Observation"), RuntimeSearchParam.RuntimeSearchParamStatusEnum.ACTIVE);
+		List<PathAndRef> values = extractor.extractResourceLinks(obs, sp);
+		assertEquals(2, values.size());
+		assertEquals("2222-2", ((CodeableConcept) values.get(0).getRef()).getCodingFirstRep().getCode());
+		assertEquals("3333-3", ((CodeableConcept) values.get(1).getRef()).getCodingFirstRep().getCode());
+
+		// Only the matching resource type is extracted
+		sp = new RuntimeSearchParam("code", null, "Condition.code | Observation.code", RestSearchParameterTypeEnum.TOKEN, new HashSet<>(), Sets.newHashSet("Observation"), RuntimeSearchParam.RuntimeSearchParamStatusEnum.ACTIVE);
+		values = extractor.extractResourceLinks(obs, sp);
+		assertEquals(1, values.size());
+		assertEquals("1234-5", ((CodeableConcept) values.get(0).getRef()).getCodingFirstRep().getCode());
+
+		// Choice types and functions fall back to FHIRPath
+		sp = new RuntimeSearchParam("value-quantity", null, "(Observation.value as Quantity)", RestSearchParameterTypeEnum.QUANTITY, new HashSet<>(), Sets.newHashSet("Observation"), RuntimeSearchParam.RuntimeSearchParamStatusEnum.ACTIVE);
+		values = extractor.extractResourceLinks(obs, sp);
+		assertEquals(1, values.size());
+		assertEquals("mg", ((Quantity) values.get(0).getRef()).getCode());
+
+		sp = new RuntimeSearchParam("value", null, "Observation.value", RestSearchParameterTypeEnum.QUANTITY, new HashSet<>(), Sets.newHashSet("Observation"), RuntimeSearchParam.RuntimeSearchParamStatusEnum.ACTIVE);
+		values = extractor.extractResourceLinks(obs, sp);
+		assertEquals(1, values.size());
+
+		// Every simple path used by an active search parameter gives the same values as FHIRPath
+		FHIRPathEngine fhirPathEngine = new FHIRPathEngine(new HapiWorkerContext(ourCtx, ourValidationSupport));
+		int simplePathCount = 0;
+		for (Resource nextSample : createSampleResources()) {
+			for (RuntimeSearchParam nextSp : mySearchParamRegistry.getActiveSearchParams(nextSample.fhirType()).values()) {
+				if (isBlank(nextSp.getPath())) {
+					continue;
+				}
+				for (String nextPath : BaseSearchParamExtractor.SPLIT_R4.split(nextSp.getPath())) {
+					nextPath = nextPath.trim();
+					List<Object> simplePathValues = extractor.extractSimplePathValuesForUnitTest(nextPath, nextSample);
+					if (simplePathValues == null) {
+						continue;
+					}
+					simplePathCount++;
+
+					String message = nextSample.fhirType() + " " + nextPath;
+					List<Base> fhirPathValues = fhirPathEngine.evaluate(nextSample, nextPath);
+					assertEquals(message, fhirPathValues.size(), simplePathValues.size());
+					for (int i = 0; i < fhirPathValues.size(); i++) {
+						assertSame(message, fhirPathValues.get(i), simplePathValues.get(i));
+					}
+				}
+			}
+		}
+		ourLog.info("Compared {} simple paths with FHIRPath", simplePathCount);
+		assertThat(simplePathCount, greaterThan(100));
+	}
+
+	/**
+	 * Creates an instance of every resource type, with the elements used by its search parameters
+	 * populated, as well as a few resources with repeating elements
+	 */
+	private List<Resource> createSampleResources() {
+		FhirTerser terser = ourCtx.newTerser();
+		List<Resource> retVal = new ArrayList<>();
+		for (String nextResourceName : ourCtx.getResourceNames()) {
+			RuntimeResourceDefinition resourceDef = ourCtx.getResourceDefinition(nextResourceName);
+			Resource sample = (Resource) resourceDef.newInstance();
+			for (RuntimeSearchParam nextSp : resourceDef.getSearchParams()) {
+				if (isBlank(nextSp.getPath())) {
+					continue;
+				}
+				for (String nextPath : BaseSearchParamExtractor.SPLIT_R4.split(nextSp.getPath())) {
+					nextPath = nextPath.trim();
+					if (!nextPath.startsWith(nextResourceName + ".")) {
+						continue;
+					}
+					try {
+						terser.getValues(sample, nextPath, true).forEach(SearchParamExtractorR4Test::populatePrimitive);
+					} catch (Exception e) {
+						// Paths using FHIRPath functions can't be created by the terser
+						ourLog.debug("Unable to populate {}: {}", nextPath, e.toString());
+					}
+				}
+			}
+			retVal.add(sample);
+		}
+
+		Observation obs = new Observation();
+		obs.setStatus(Observation.ObservationStatus.FINAL);
+		obs.addCategory().addCoding().setSystem("http://foo").setCode("A");
+		obs.addCategory().addCoding().setSystem("http://foo").setCode("B");
+		obs.getCode().addCoding().setSystem("http://loinc.org").setCode("1234-5");
+		obs.getCode().addCoding().setSystem("http://loinc.org").setCode("1234-6");
+		obs.addComponent().getCode().addCoding().setSystem("http://loinc.org").setCode("2222-2");
+		obs.addComponent().getCode().addCoding().setSystem("http://loinc.org").setCode("3333-3");
+		obs.setSubject(new Reference("Patient/123"));
+		obs.addPerformer(new Reference("Practitioner/1"));
+		obs.addPerformer(new Reference("Organization/2"));
+		obs.addIdentifier().setSystem("http://foo").setValue("1");
+		obs.addIdentifier().setSystem("http://foo").setValue("2");
+		retVal.add(obs);
+
+		Patient patient = new Patient();
+		patient.addName().setFamily("Family1").addGiven("Given1").addGiven("Given2");
+		patient.addName().setFamily("Family2").addGiven("Given3");
+		patient.addIdentifier().setSystem("http://foo").setValue("1");
+		patient.addIdentifier().setSystem("http://foo").setValue("2");
+		patient.addAddress().setCity("City1").addLine("Line1").addLine("Line2");
+		patient.addAddress().setCity("City2");
+		patient.addTelecom().setSystem(ContactPoint.ContactPointSystem.PHONE).setValue("555-1234");
+		patient.addGeneralPractitioner(new Reference("Practitioner/1"));
+		patient.addLink().setOther(new Reference("Patient/2"));
+		patient.setGender(Enumerations.AdministrativeGender.FEMALE);
+		patient.setBirthDateElement(new DateType("2000-01-01"));
+		retVal.add(patient);
+
+		return retVal;
+	}
+
+	private static void populatePrimitive(Object theElement) {
+		if (!(theElement instanceof PrimitiveType) || theElement instanceof org.hl7.fhir.r4.model.Enumeration) {
+			return;
+		}
+		PrimitiveType<?> primitive = (PrimitiveType<?>) theElement;
+		if (primitive.getValueAsString() != null) {
+			return;
+		}
+		switch (primitive.fhirType()) {
+			case "boolean":
+				primitive.setValueAsString("true");
+				break;
+			case "date":
+				primitive.setValueAsString("2020-01-01");
+				break;
+			case "dateTime":
+			case "instant":
+				primitive.setValueAsString("2020-01-01T10:00:00.000Z");
+				break;
+			case "decimal":
+			case "integer":
+			case "positiveInt":
+			case "unsignedInt":
+				primitive.setValueAsString("1");
+				break;
+			case "time":
+				primitive.setValueAsString("10:00:00");
+				break;
+			default:
+				primitive.setValueAsString("A");
+				break;
+		}
+	}
+
+	@Test
+	public void testExtractionPlansInvalidatedOnRefresh() {
+		Observation obs = new Observation();
+		obs.getCode().addCoding().setSystem("http://loinc.org").setCode("1234-5");
+
+		SearchParamExtractorR4 extractor = new SearchParamExtractorR4(new ModelConfig(), ourCtx, ourValidationSupport, mySearchParamRegistry);
+		extractor.extractSearchParamTokens(new ResourceTable(), obs);
+		int planCount = extractor.getExtractionPlanCountForUnitTest();
+		assertThat(planCount, greaterThan(0));
+
+		// Extracting again reuses the plans
+		extractor.extractSearchParamTokens(new ResourceTable(), obs);
+		assertEquals(planCount, extractor.getExtractionPlanCountForUnitTest());
+
+		myRefreshGeneration++;
+		RuntimeSearchParam sp = new RuntimeSearchParam("code", null, "Observation.code", RestSearchParameterTypeEnum.TOKEN, new HashSet<>(), Sets.newHashSet("Observation"), RuntimeSearchParam.RuntimeSearchParamStatusEnum.ACTIVE);
+		extractor.extractResourceLinks(obs, sp);
+		assertEquals(1, extractor.getExtractionPlanCountForUnitTest());
+	}
+
 	@AfterClass
 	public static void afterClassClearContext() {
 		TestUtil.clearAllStaticFieldsForUnitTest();
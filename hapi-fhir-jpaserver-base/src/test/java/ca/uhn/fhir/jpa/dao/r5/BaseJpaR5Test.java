@@ -344,6 +344,7 @@ public abstract class BaseJpaR5Test extends BaseJpaTest {
 	public void afterClearTerminologyCaches() {
 		BaseHapiTerminologySvcImpl baseHapiTerminologySvc = AopTestUtils.getTargetObject(myTermSvc);
 		baseHapiTerminologySvc.clearTranslationCache();
+		baseHapiTerminologySvc.clearValueSetExpansionCache();
 		baseHapiTerminologySvc.clearTranslationWithReverseCache();
 		baseHapiTerminologySvc.clearDeferred();
 		BaseHapiTerminologySvcImpl.clearOurLastResultsFromTranslationCache();
@@ -0,0 +1,96 @@
+package ca.uhn.fhir.jpa.provider.r4;
+
+import ca.uhn.fhir.jpa.util.TestUtil;
+import org.apache.commons.lang3.StringUtils;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.DateType;
+import org.hl7.fhir.r4.model.Organization;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Reference;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.Assert.*;
+
+public class ResourceProviderR4StreamingBundleTest extends BaseResourceProviderR4Test {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(ResourceProviderR4StreamingBundleTest.class);
+
+	@Override
+	@After
+	public void after() throws Exception {
+		super.after();
+		ourRestServer.setBundleEntryStreamingEnabled(false);
+	}
+
+	/**
+	 * The JPA server returns included resources in the same list as the matches, so
+	 * entries must be classified by their search mode rather than by the chunk they
+	 * were loaded in
+	 */
+	@Test
+	public void testSearchWithIncludesSpanningSeveralChunks() {
+		myPagingProvider.setMaximumPageSize(200);
+		ourRestServer.setBundleEntryStreamingEnabled(true);
+
+		Organization org = new Organization();
+		org.setId("ORG");
+		org.setName("ORG");
+		ourClient.update().resource(org).execute();
+
+		for (int i = 0; i < 120; i++) {
+			Patient p = new Patient();
+			p.setId("PT" + StringUtils.leftPad(Integer.toString(i), 3, '0'));
+			p.setBirthDateElement(new DateType(LocalDate.of(2000, 1, 1).plusDays(i).toString()));
+			p.getManagingOrganization().setReference("Organization/ORG");
+			if (i == 0) {
+				// Included by the first chunk, but matched by the second
+				p.addLink().setOther(new Reference("Patient/PT060"));
+			}
+			ourClient.update().resource(p).execute();
+		}
+
+		Bundle bundle = ourClient
+			.search()
+			.byUrl(ourServerBase + "/Patient?_count=150&_sort=birthdate&_include=Patient:organization&_include=Patient:link")
+			.returnBundle(Bundle.class)
+			.execute();
+
+		List<String> matches = new ArrayList<>();
+		List<String> includes = new ArrayList<>();
+		Set<String> includeFullUrls = new HashSet<>();
+		for (Bundle.BundleEntryComponent next : bundle.getEntry()) {
+			String id = next.getResource().getIdElement().toUnqualifiedVersionless().getValue();
+			if (next.getSearch().getMode() == Bundle.SearchEntryMode.INCLUDE) {
+				includes.add(id);
+				assertTrue("Duplicate include: " + next.getFullUrl(), includeFullUrls.add(next.getFullUrl()));
+			} else {
+				matches.add(id);
+			}
+		}
+		ourLog.info("Matches: {}", matches);
+		ourLog.info("Includes: {}", includes);
+
+		assertEquals(120, matches.size());
+		assertEquals(120, new HashSet<>(matches).size());
+		assertEquals("Patient/PT000", matches.get(0));
+		assertEquals("Patient/PT119", matches.get(119));
+
+		// The organization is included by every chunk, but only written once
+		assertThat(includes, containsInAnyOrder("Organization/ORG", "Patient/PT060"));
+	}
+
+	@AfterClass
+	public static void afterClassClearContext() {
+		TestUtil.clearAllStaticFieldsForUnitTest();
+	}
+
+}
@@ -3,9 +3,11 @@ package ca.uhn.fhir.jpa.provider.r4;
 import ca.uhn.fhir.jpa.config.TestR4Config;
 import ca.uhn.fhir.jpa.dao.DaoConfig;
 import ca.uhn.fhir.jpa.entity.Search;
+import ca.uhn.fhir.jpa.model.entity.ResourceEncodingEnum;
 import ca.uhn.fhir.jpa.model.entity.ResourceHistoryTable;
 import ca.uhn.fhir.jpa.search.SearchCoordinatorSvcImpl;
 import ca.uhn.fhir.jpa.model.util.JpaConstants;
+import ca.uhn.fhir.jpa.rp.r4.PatientResourceProvider;
 import ca.uhn.fhir.jpa.util.TestUtil;
 import ca.uhn.fhir.model.api.TemporalPrecisionEnum;
 import ca.uhn.fhir.model.primitive.InstantDt;
@@ -21,6 +23,7 @@ import ca.uhn.fhir.rest.client.api.IHttpResponse;
 import ca.uhn.fhir.rest.client.interceptor.CapturingInterceptor;
 import ca.uhn.fhir.rest.gclient.StringClientParam;
 import ca.uhn.fhir.rest.param.*;
+import ca.uhn.fhir.rest.server.RestfulServerUtils;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
 import ca.uhn.fhir.rest.server.exceptions.PreconditionFailedException;
 import ca.uhn.fhir.rest.server.exceptions.ResourceGoneException;
@@ -94,6 +97,7 @@ public class ResourceProviderR4Test extends BaseResourceProviderR4Test {
 		myDaoConfig.setCountSearchResultsUpTo(new DaoConfig().getCountSearchResultsUpTo());
 		myDaoConfig.setSearchPreFetchThresholds(new DaoConfig().getSearchPreFetchThresholds());
 		myDaoConfig.setAllowContainsSearches(new DaoConfig().isAllowContainsSearches());
+		myDaoConfig.setStoredJsonPassthroughEnabled(new DaoConfig().isStoredJsonPassthroughEnabled());
 
 		mySearchCoordinatorSvcRaw.setLoadingThrottleForUnitTests(null);
 		mySearchCoordinatorSvcRaw.setSyncSizeForUnitTests(SearchCoordinatorSvcImpl.DEFAULT_SYNC_SIZE);
@@ -3003,6 +3007,99 @@ public class ResourceProviderR4Test extends BaseResourceProviderR4Test {
 		}
 	}
 
+	@Test
+	public void testReadWithStoredJsonPassthrough() throws IOException {
+		myDaoConfig.setStoredJsonPassthroughEnabled(true);
+
+		PatientResourceProvider patientRp = new PatientResourceProvider();
+		patientRp.setDao(myPatientDao);
+		patientRp.setContext(myFhirCtx);
+		patientRp.setDaoConfigForUnitTest(myDaoConfig);
+
+		Patient p = new Patient();
+		p.setActive(true);
+		p.addName().setFamily("FAM");
+		IIdType id = myPatientDao.create(p).getId().toUnqualifiedVersionless();
+		p.setId(id);
+		p.setActive(false);
+		myPatientDao.update(p);
+
+		// Read
+		Patient read = patientRp.read(null, id, mySrd);
+		assertEquals("2", read.getIdElement().getVersionIdPart());
+		String expected = myFhirCtx.newJsonParser().encodeResourceToString(read);
+		assertEquals(expected, read.getUserData(RestfulServerUtils.PRE_ENCODED_JSON_USERDATA_KEY));
+
+		// VRead
+		read = patientRp.read(null, id.withVersion("1"), mySrd);
+		assertTrue(read.getActive());
+		expected = myFhirCtx.newJsonParser().encodeResourceToString(read);
+		assertEquals(expected, read.getUserData(RestfulServerUtils.PRE_ENCODED_JSON_USERDATA_KEY));
+
+		// Callers of the DAO get a plain resource
+		assertNull(myPatientDao.read(id, mySrd).getUserData(RestfulServerUtils.PRE_ENCODED_JSON_USERDATA_KEY));
+
+		// Over HTTP
+		HttpGet get = new HttpGet(ourServerBase + "/Patient/" + id.getIdPart() + "?_format=json");
+		try (CloseableHttpResponse resp = ourHttpClient.execute(get)) {
+			assertEquals(200, resp.getStatusLine().getStatusCode());
+			String respString = IOUtils.toString(resp.getEntity().getContent(), StandardCharsets.UTF_8);
+			ourLog.info(respString);
+			Patient actual = myFhirCtx.newJsonParser().parseResource(Patient.class, respString);
+			assertEquals(id.withVersion("2").getValue(), actual.getIdElement().toUnqualified().getValue());
+			assertFalse(actual.getActive());
+			assertEquals("FAM", actual.getNameFirstRep().getFamily());
+		}
+
+		// Tags are not part of the stored text
+		p = new Patient();
+		p.getMeta().addTag("http://foo", "bar", null);
+		id = myPatientDao.create(p).getId().toUnqualifiedVersionless();
+		assertNull(patientRp.read(null, id, mySrd).getUserData(RestfulServerUtils.PRE_ENCODED_JSON_USERDATA_KEY));
+
+		myDaoConfig.setStoredJsonPassthroughEnabled(false);
+		assertNull(patientRp.read(null, id, mySrd).getUserData(RestfulServerUtils.PRE_ENCODED_JSON_USERDATA_KEY));
+	}
+
+	@Test
+	public void testReadWithStoredJsonPassthrough_CreatedOverHttp() throws IOException {
+		myDaoConfig.setStoredJsonPassthroughEnabled(true);
+
+		Patient p = new Patient();
+		p.setActive(true);
+		p.addName().setFamily("FAM");
+		IIdType id = ourClient.create().resource(p).execute().getId().toUnqualifiedVersionless();
+
+		// Escape a character in the stored text, so the response shows whether the stored text was used
+		runInTransaction(() -> {
+			ResourceHistoryTable version = myResourceHistoryTableDao.findForIdAndVersionAndFetchProvenance(id.getIdPartAsLong(), 1);
+			assertNotNull(version.getProvenance());
+			version.setEncoding(ResourceEncodingEnum.JSON);
+			version.setResource("{\"resourceType\":\"Patient\",\"active\":true,\"name\":[{\"family\":\"F\\u0041M\"}]}".getBytes(StandardCharsets.UTF_8));
+			myResourceHistoryTableDao.save(version);
+		});
+
+		HttpGet get = new HttpGet(ourServerBase + "/Patient/" + id.getIdPart() + "?_format=json");
+		try (CloseableHttpResponse resp = ourHttpClient.execute(get)) {
+			assertEquals(200, resp.getStatusLine().getStatusCode());
+			String respString = IOUtils.toString(resp.getEntity().getContent(), StandardCharsets.UTF_8);
+			ourLog.info(respString);
+			assertThat(respString, containsString("\"family\":\"F\\u0041M\""));
+
+			// The request ID stored as the source is spliced in
+			Patient actual = myFhirCtx.newJsonParser().parseResource(Patient.class, respString);
+			assertEquals(id.withVersion("1").getValue(), actual.getIdElement().toUnqualified().getValue());
+			assertThat(actual.getMeta().getSource(), startsWith("#"));
+			assertEquals("FAM", actual.getNameFirstRep().getFamily());
+		}
+
+		myDaoConfig.setStoredJsonPassthroughEnabled(false);
+		try (CloseableHttpResponse resp = ourHttpClient.execute(get)) {
+			String respString = IOUtils.toString(resp.getEntity().getContent(), StandardCharsets.UTF_8);
+			assertThat(respString, containsString("\"family\":\"FAM\""));
+		}
+	}
+
 	@Test
 	public void testRetrieveMissingVersionsDoesntCrashHistory() {
 		Patient p1 = new Patient();
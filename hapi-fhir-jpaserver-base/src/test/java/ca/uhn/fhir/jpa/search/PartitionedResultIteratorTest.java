@@ -0,0 +1,151 @@
+package ca.uhn.fhir.jpa.search;
+
+import ca.uhn.fhir.jpa.dao.IResultIterator;
+import ca.uhn.fhir.jpa.util.LongList;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiFunction;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PartitionedResultIteratorTest {
+
+	private ExecutorService myExecutor;
+	private TransactionTemplate myTxTemplate;
+
+	@After
+	public void after() {
+		myExecutor.shutdownNow();
+	}
+
+	@Before
+	public void before() {
+		myExecutor = Executors.newFixedThreadPool(3);
+
+		PlatformTransactionManager txManager = mock(PlatformTransactionManager.class);
+		when(txManager.getTransaction(any())).thenReturn(mock(TransactionStatus.class));
+		myTxTemplate = new TransactionTemplate(txManager);
+	}
+
+	@Test
+	public void testCalculateBoundaries() {
+		long[] boundaries = PartitionedResultIterator.calculateBoundaries(0, 100000, 4, 10000);
+		assertArrayEquals(new long[]{0, 25000, 50000, 75000, 100000}, boundaries);
+
+		// Not enough PIDs for the requested number of partitions
+		boundaries = PartitionedResultIterator.calculateBoundaries(1000, 26000, 8, 10000);
+		assertArrayEquals(new long[]{1000, 13500, 26000}, boundaries);
+
+		boundaries = PartitionedResultIterator.calculateBoundaries(1, 500, 8, 10000);
+		assertArrayEquals(new long[]{1, 500}, boundaries);
+	}
+
+	@Test
+	public void testLoadAllPartitions() throws Exception {
+		long[] boundaries = PartitionedResultIterator.calculateBoundaries(0, 3000, 3, 1000);
+
+		List<Long> actual = new ArrayList<>();
+		try (PartitionedResultIterator iter = new PartitionedResultIterator(myExecutor, myTxTemplate, boundaries, everyThirdPid(), null)) {
+			while (iter.hasNext()) {
+				actual.add(iter.nextLong());
+			}
+			assertEquals(3, iter.getSkippedCount());
+		}
+
+		Collections.sort(actual);
+		assertEquals(1002, actual.size());
+		assertEquals(0L, actual.get(0).longValue());
+		assertEquals(2999L, actual.get(1001).longValue());
+	}
+
+	@Test
+	public void testMaxResults() throws Exception {
+		long[] boundaries = PartitionedResultIterator.calculateBoundaries(0, 3000, 3, 1000);
+
+		int count = 0;
+		try (PartitionedResultIterator iter = new PartitionedResultIterator(myExecutor, myTxTemplate, boundaries, everyThirdPid(), 250)) {
+			while (iter.hasNext()) {
+				iter.nextLong();
+				count++;
+			}
+		}
+		assertEquals(250, count);
+	}
+
+	@Test
+	public void testPartitionFails() throws Exception {
+		long[] boundaries = PartitionedResultIterator.calculateBoundaries(0, 3000, 3, 1000);
+
+		BiFunction<Long, Long, IResultIterator> factory = (theLow, theHigh) -> {
+			if (theLow == 1000) {
+				throw new InvalidRequestException("FAILED");
+			}
+			return everyThirdPid().apply(theLow, theHigh);
+		};
+
+		try (PartitionedResultIterator iter = new PartitionedResultIterator(myExecutor, myTxTemplate, boundaries, factory, null)) {
+			while (iter.hasNext()) {
+				iter.nextLong();
+			}
+			fail();
+		} catch (InvalidRequestException e) {
+			assertEquals("FAILED", e.getMessage());
+		}
+	}
+
+	private static BiFunction<Long, Long, IResultIterator> everyThirdPid() {
+		return (theLow, theHigh) -> {
+			LongList pids = new LongList();
+			for (long i = theLow; i < theHigh; i += 3) {
+				pids.add(i);
+			}
+			return new ListResultIterator(pids, 1);
+		};
+	}
+
+	private static class ListResultIterator implements IResultIterator {
+		private final LongList myPids;
+		private final int mySkippedCount;
+		private int myIndex;
+
+		ListResultIterator(LongList thePids, int theSkippedCount) {
+			myPids = thePids;
+			mySkippedCount = theSkippedCount;
+		}
+
+		@Override
+		public int getSkippedCount() {
+			return mySkippedCount;
+		}
+
+		@Override
+		public void close() {
+			// nothing
+		}
+
+		@Override
+		public long nextLong() {
+			return myPids.getLong(myIndex++);
+		}
+
+		@Override
+		public boolean hasNext() {
+			return myIndex < myPids.size();
+		}
+	}
+
+}
@@ -5,13 +5,16 @@ import ca.uhn.fhir.interceptor.api.IInterceptorBroadcaster;
 import ca.uhn.fhir.jpa.dao.*;
 import ca.uhn.fhir.jpa.dao.data.ISearchDao;
 import ca.uhn.fhir.jpa.dao.data.ISearchIncludeDao;
+import ca.uhn.fhir.jpa.dao.data.ISearchResultBlockDao;
 import ca.uhn.fhir.jpa.dao.data.ISearchResultDao;
 import ca.uhn.fhir.jpa.entity.Search;
 import ca.uhn.fhir.jpa.entity.SearchResult;
+import ca.uhn.fhir.jpa.entity.SearchResultBlock;
 import ca.uhn.fhir.jpa.entity.SearchTypeEnum;
 import ca.uhn.fhir.jpa.model.search.SearchStatusEnum;
 import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
 import ca.uhn.fhir.jpa.util.BaseIterator;
+import ca.uhn.fhir.jpa.util.LongList;
 import ca.uhn.fhir.model.dstu2.resource.Patient;
 import ca.uhn.fhir.rest.api.CacheControlDirective;
 import ca.uhn.fhir.rest.api.server.IBundleProvider;
@@ -67,6 +70,8 @@ public class SearchCoordinatorSvcImplTest {
 	private ISearchIncludeDao mySearchIncludeDao;
 	@Mock
 	private ISearchResultDao mySearchResultDao;
+	@Mock
+	private ISearchResultBlockDao mySearchResultBlockDao;
 	private SearchCoordinatorSvcImpl mySvc;
 	@Mock
 	private PlatformTransactionManager myTxManager;
@@ -93,6 +98,7 @@ public class SearchCoordinatorSvcImplTest {
 		mySvc.setSearchDaoForUnitTest(mySearchDao);
 		mySvc.setSearchDaoIncludeForUnitTest(mySearchIncludeDao);
 		mySvc.setSearchDaoResultForUnitTest(mySearchResultDao);
+		mySvc.setSearchResultBlockDaoForUnitTest(mySearchResultBlockDao);
 		mySvc.setDaoRegistryForUnitTest(myDaoRegistry);
 		mySvc.setInterceptorBroadcasterForUnitTest(myInterceptorBroadcaster);
 
@@ -369,6 +375,33 @@ public class SearchCoordinatorSvcImplTest {
 		myExpectedNumberOfSearchBuildersCreated = 3;
 	}
 
+	@Test
+	public void testLoadSearchResultsFromBlocks() {
+		final String uuid = UUID.randomUUID().toString();
+
+		final Search search = new Search();
+		search.setUuid(uuid);
+		search.setSearchType(SearchTypeEnum.SEARCH);
+		search.setResourceType("Patient");
+		search.setResultsInBlocks(true);
+		search.setStatus(SearchStatusEnum.FINISHED);
+
+		when(mySearchDao.findByUuid(eq(uuid))).thenReturn(search);
+		doAnswer(loadPids()).when(mySearchBuider).loadResourcesByPid(any(Collection.class), any(Collection.class), any(List.class),  anyBoolean(), any());
+
+		SearchResultBlock block0 = new SearchResultBlock(search, 0, new LongList(createPidSequence(10, 25)));
+		SearchResultBlock block1 = new SearchResultBlock(search, 15, new LongList(createPidSequence(25, 60)));
+		when(mySearchResultBlockDao.findForSearchInRange(any(), eq(10), eq(20))).thenReturn(Lists.newArrayList(block0, block1));
+
+		PersistedJpaBundleProvider provider = new PersistedJpaBundleProvider(null, uuid, myCallingDao);
+		List<IBaseResource> resources = provider.getResources(10, 20);
+		assertEquals(10, resources.size());
+		assertEquals("20", resources.get(0).getIdElement().getValueAsString());
+		assertEquals("29", resources.get(9).getIdElement().getValueAsString());
+
+		verify(mySearchResultDao, never()).findWithSearchUuid(any(), any());
+	}
+
 	@Test
 	public void testSynchronousSearch() {
 		SearchParameterMap params = new SearchParameterMap();
@@ -428,12 +461,12 @@ public class SearchCoordinatorSvcImplTest {
 		}
 
 		@Override
-		public Long next() {
+		public long nextLong() {
 			myCount--;
 			if (myCount == 0) {
 				throw new NullPointerException("FAILED");
 			}
-			return myWrap.next();
+			return myWrap.nextLong();
 		}
 
 		@Override
@@ -461,7 +494,7 @@ public class SearchCoordinatorSvcImplTest {
 		}
 
 		@Override
-		public Long next() {
+		public long nextLong() {
 			return myWrap.next();
 		}
 
@@ -510,13 +543,13 @@ public class SearchCoordinatorSvcImplTest {
 		}
 
 		@Override
-		public Long next() {
+		public long nextLong() {
 			try {
 				Thread.sleep(myDelay);
 			} catch (InterruptedException e) {
 				// ignore
 			}
-			Long retVal = myWrap.next();
+			long retVal = myWrap.next();
 			myReturnedValues.add(retVal);
 			return retVal;
 		}
@@ -7,8 +7,10 @@ import ca.uhn.fhir.jpa.dao.DaoRegistry;
 import ca.uhn.fhir.jpa.dao.IFhirResourceDao;
 import ca.uhn.fhir.jpa.dao.data.IForcedIdDao;
 import ca.uhn.fhir.jpa.dao.data.IResourceReindexJobDao;
+import ca.uhn.fhir.jpa.dao.data.IResourceReindexJobRangeDao;
 import ca.uhn.fhir.jpa.dao.data.IResourceTableDao;
 import ca.uhn.fhir.jpa.entity.ResourceReindexJobEntity;
+import ca.uhn.fhir.jpa.entity.ResourceReindexJobRangeEntity;
 import ca.uhn.fhir.jpa.model.entity.ResourceTable;
 import ca.uhn.fhir.jpa.searchparam.registry.ISearchParamRegistry;
 import org.apache.commons.lang3.time.DateUtils;
@@ -50,6 +52,8 @@ public class ResourceReindexingSvcImplTest extends BaseJpaTest {
 	@Mock
 	private IResourceReindexJobDao myReindexJobDao;
 	@Mock
+	private IResourceReindexJobRangeDao myReindexJobRangeDao;
+	@Mock
 	private IResourceTableDao myResourceTableDao;
 	@Mock
 	private IFhirResourceDao myResourceDao;
@@ -63,6 +67,8 @@ public class ResourceReindexingSvcImplTest extends BaseJpaTest {
 	private ArgumentCaptor<Date> myLowCaptor;
 	@Captor
 	private ArgumentCaptor<Date> myHighCaptor;
+	@Captor
+	private ArgumentCaptor<List<ResourceReindexJobRangeEntity>> myRangesCaptor;
 	private ResourceReindexJobEntity mySingleJob;
 	@Mock
 	private ISearchParamRegistry mySearchParamRegistry;
@@ -88,6 +94,7 @@ public class ResourceReindexingSvcImplTest extends BaseJpaTest {
 		mySvc.setDaoRegistryForUnitTest(myDaoRegistry);
 		mySvc.setForcedIdDaoForUnitTest(myForcedIdDao);
 		mySvc.setReindexJobDaoForUnitTest(myReindexJobDao);
+		mySvc.setReindexJobRangeDaoForUnitTest(myReindexJobRangeDao);
 		mySvc.setResourceTableDaoForUnitTest(myResourceTableDao);
 		mySvc.setTxManagerForUnitTest(myTxManager);
 		mySvc.setSearchParamRegistryForUnitTest(mySearchParamRegistry);
@@ -152,9 +159,76 @@ public class ResourceReindexingSvcImplTest extends BaseJpaTest {
 
 		mySvc.forceReindexingPass();
 
+		verify(myReindexJobRangeDao, times(1)).deleteForJob(eq(123L));
 		verify(myReindexJobDao, times(1)).deleteById(eq(123L));
 	}
 
+	@Test
+	public void testClusteredReindexCreatesAndProcessesRanges() {
+		myDaoConfig.setClusteredReindexingEnabled(true);
+		mockNothingToExpunge();
+		mockSingleReindexingJob(null);
+		mockFetchFourResources();
+		when(myReindexJobDao.findById(eq(123L))).thenReturn(Optional.of(mySingleJob));
+		when(myResourceTableDao.findLowestPid()).thenReturn(0L);
+		when(myResourceTableDao.findHighestPidUpdatedBefore(any())).thenReturn(3L);
+		when(myReindexJobDao.initializeRangePidHigh(eq(123L), eq(4L))).thenAnswer(t -> {
+			mySingleJob.setRangePidHigh(4L);
+			return 1;
+		});
+
+		// No ranges until they have been created, then one range, then it is complete
+		ResourceReindexJobRangeEntity range = new ResourceReindexJobRangeEntity(mySingleJob, 0L, 4L);
+		when(myReindexJobRangeDao.findUnleasedIds(any(), eq(123L), any())).thenReturn(Collections.emptyList(), Collections.singletonList(5L), Collections.emptyList());
+		when(myReindexJobRangeDao.lease(eq(5L), any(), any(), any())).thenReturn(1);
+		when(myReindexJobRangeDao.findById(eq(5L))).thenReturn(Optional.of(range));
+		when(myResourceTableDao.findIdsOfResourcesWithinPidAndUpdatedRange(any(), eq(0L), eq(4L), any(), any())).thenReturn(new SliceImpl<>(Arrays.asList(0L, 1L, 2L, 3L)));
+		when(myReindexJobRangeDao.updateProgress(any(), any(), anyLong(), anyInt(), any())).thenReturn(1);
+
+		int count = mySvc.forceReindexingPass();
+		assertEquals(4, count);
+		verify(myResourceDao, times(4)).reindex(any(), any());
+
+		verify(myReindexJobRangeDao, times(1)).saveAll(myRangesCaptor.capture());
+		assertEquals(1, myRangesCaptor.getValue().size());
+		assertEquals(0L, myRangesCaptor.getValue().get(0).getPidLow());
+		assertEquals(4L, myRangesCaptor.getValue().get(0).getPidHigh());
+
+		verify(myReindexJobRangeDao, times(1)).updateProgress(any(), any(), eq(4L), eq(4), any());
+		verify(myReindexJobRangeDao, times(1)).markComplete(any(), any());
+		verify(myReindexJobDao, times(1)).incrementReindexCount(eq(123L), eq(4));
+
+		// Nothing left to cover once the range is complete
+		verify(myReindexJobDao, times(1)).markAsDeletedById(eq(123L));
+		verify(myReindexJobDao, never()).setThresholdLow(any(), any());
+		verify(mySearchParamRegistry, times(1)).forceRefresh();
+	}
+
+	@Test
+	public void testClusteredReindexAbandonsRangeWhenLeaseLost() {
+		myDaoConfig.setClusteredReindexingEnabled(true);
+		mockNothingToExpunge();
+		mockSingleReindexingJob(null);
+		mockFetchFourResources();
+
+		ResourceReindexJobRangeEntity range = new ResourceReindexJobRangeEntity(mySingleJob, 0L, 4L);
+		when(myReindexJobRangeDao.findUnleasedIds(any(), eq(123L), any())).thenReturn(Collections.singletonList(5L), Collections.emptyList());
+		when(myReindexJobRangeDao.lease(eq(5L), any(), any(), any())).thenReturn(1);
+		when(myReindexJobRangeDao.findById(eq(5L))).thenReturn(Optional.of(range));
+		when(myResourceTableDao.findIdsOfResourcesWithinPidAndUpdatedRange(any(), eq(0L), eq(4L), any(), any())).thenReturn(new SliceImpl<>(Arrays.asList(0L, 1L)));
+		// Another server has taken over the range
+		when(myReindexJobRangeDao.updateProgress(any(), any(), anyLong(), anyInt(), any())).thenReturn(0);
+		// ..and is still working on it
+		when(myReindexJobRangeDao.countIncompleteForJob(eq(123L))).thenReturn(1L);
+
+		mySvc.forceReindexingPass();
+
+		verify(myReindexJobRangeDao, never()).markComplete(any(), any());
+		verify(myReindexJobDao, never()).incrementReindexCount(any(), anyInt());
+		verify(myReindexJobDao, never()).markAsDeletedById(any());
+		verify(myReindexJobRangeDao, never()).saveAll(any());
+	}
+
 	@Test
 	public void testReindexPassAllResources() {
 		mockNothingToExpunge();
@@ -0,0 +1,148 @@
+package ca.uhn.fhir.jpa.term;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.jpa.entity.TermConcept;
+import ca.uhn.fhir.jpa.entity.TermConceptDesignation;
+import ca.uhn.fhir.jpa.entity.TermConceptParentChildLink;
+import ca.uhn.fhir.jpa.entity.TermConceptParentChildLink.RelationshipTypeEnum;
+import ca.uhn.fhir.jpa.entity.TermConceptProperty;
+import ca.uhn.fhir.jpa.entity.TermConceptPropertyTypeEnum;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import org.hl7.fhir.r4.model.ValueSet;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TermDeferredChunkCodecTest {
+
+	private static FhirContext ourCtx = FhirContext.forR4();
+
+	@Test
+	public void testConceptsRoundTrip() {
+		TermConcept concept1 = new TermConcept();
+		concept1.setCode("A");
+		concept1.setDisplay("Concept A");
+		concept1.setSequence(3);
+		concept1.addPropertyString("status", "active");
+		concept1.addPropertyCoding("method", "http://foo", "M1", "Method One");
+		concept1.addDesignation()
+			.setLanguage("fr")
+			.setUseSystem("http://snomed.info/sct")
+			.setUseCode("900000000000013009")
+			.setUseDisplay("Synonym")
+			.setValue("Concept A (fr)");
+
+		TermConcept concept2 = new TermConcept();
+		concept2.setCode("B");
+
+		List<TermConcept> decoded = TermDeferredChunkCodec.decodeConcepts(TermDeferredChunkCodec.encodeConcepts(Arrays.asList(concept1, concept2)));
+		assertEquals(2, decoded.size());
+
+		TermConcept decoded1 = decoded.get(0);
+		assertEquals("A", decoded1.getCode());
+		assertEquals("Concept A", decoded1.getDisplay());
+		assertEquals(3, decoded1.getSequence().intValue());
+		assertNull(decoded1.getId());
+
+		List<TermConceptProperty> properties = new ArrayList<>(decoded1.getProperties());
+		assertEquals(2, properties.size());
+		assertEquals(TermConceptPropertyTypeEnum.STRING, properties.get(0).getType());
+		assertEquals("status", properties.get(0).getKey());
+		assertEquals("active", properties.get(0).getValue());
+		assertNull(properties.get(0).getCodeSystem());
+		assertEquals(TermConceptPropertyTypeEnum.CODING, properties.get(1).getType());
+		assertEquals("method", properties.get(1).getKey());
+		assertEquals("M1", properties.get(1).getValue());
+		assertEquals("http://foo", properties.get(1).getCodeSystem());
+		assertEquals("Method One", properties.get(1).getDisplay());
+
+		List<TermConceptDesignation> designations = new ArrayList<>(decoded1.getDesignations());
+		assertEquals(1, designations.size());
+		assertEquals("fr", designations.get(0).getLanguage());
+		assertEquals("http://snomed.info/sct", designations.get(0).getUseSystem());
+		assertEquals("900000000000013009", designations.get(0).getUseCode());
+		assertEquals("Synonym", designations.get(0).getUseDisplay());
+		assertEquals("Concept A (fr)", designations.get(0).getValue());
+
+		TermConcept decoded2 = decoded.get(1);
+		assertEquals("B", decoded2.getCode());
+		assertNull(decoded2.getDisplay());
+		assertNull(decoded2.getSequence());
+		assertEquals(0, decoded2.getProperties().size());
+		assertEquals(0, decoded2.getDesignations().size());
+	}
+
+	@Test
+	public void testLinksRoundTrip() {
+		TermConcept parent = new TermConcept();
+		parent.setCode("PARENT");
+		TermConcept child1 = new TermConcept();
+		child1.setCode("CHILD1");
+		TermConcept child2 = new TermConcept();
+		child2.setCode("CHILD2");
+		TermConceptParentChildLink link1 = parent.addChild(child1, RelationshipTypeEnum.ISA);
+		TermConceptParentChildLink link2 = parent.addChild(child2, RelationshipTypeEnum.ISA);
+
+		List<TermDeferredChunkCodec.ConceptLink> decoded = TermDeferredChunkCodec.decodeLinks(TermDeferredChunkCodec.encodeLinks(Arrays.asList(link1, link2)));
+		assertEquals(2, decoded.size());
+		assertEquals("PARENT", decoded.get(0).getParentCode());
+		assertEquals("CHILD1", decoded.get(0).getChildCode());
+		assertEquals(RelationshipTypeEnum.ISA, decoded.get(0).getRelationshipType());
+		assertEquals("PARENT", decoded.get(1).getParentCode());
+		assertEquals("CHILD2", decoded.get(1).getChildCode());
+	}
+
+	@Test
+	public void testManyConceptsAreCompact() {
+		List<TermConcept> concepts = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			TermConcept concept = new TermConcept();
+			concept.setCode("1000" + i);
+			concept.setDisplay("Structure of concept number " + i);
+			concepts.add(concept);
+		}
+
+		byte[] encoded = TermDeferredChunkCodec.encodeConcepts(concepts);
+		assertTrue("Encoded length was " + encoded.length, encoded.length < 20000);
+		assertEquals(1000, TermDeferredChunkCodec.decodeConcepts(encoded).size());
+	}
+
+	@Test
+	public void testResourceRoundTrip() {
+		ValueSet valueSet = new ValueSet();
+		valueSet.setId("ValueSet/VS1");
+		valueSet.setUrl("http://example.com/vs");
+		valueSet.getCompose().addInclude().setSystem("http://loinc.org");
+
+		byte[] encoded = TermDeferredChunkCodec.encodeResource(ourCtx, valueSet);
+		ValueSet decoded = TermDeferredChunkCodec.decodeResource(ourCtx, ValueSet.class, encoded);
+		assertEquals("VS1", decoded.getIdElement().getIdPart());
+		assertEquals("http://example.com/vs", decoded.getUrl());
+		assertEquals("http://loinc.org", decoded.getCompose().getIncludeFirstRep().getSystem());
+	}
+
+	@Test
+	public void testInvalidChunk() {
+		try {
+			TermDeferredChunkCodec.decodeConcepts(new byte[]{99, 1, 2});
+			fail();
+		} catch (InternalErrorException e) {
+			assertEquals("Unknown deferred terminology chunk format", e.getMessage());
+		}
+
+		try {
+			TermDeferredChunkCodec.decodeLinks(new byte[0]);
+			fail();
+		} catch (InternalErrorException e) {
+			assertEquals("Unknown deferred terminology chunk format", e.getMessage());
+		}
+
+		assertEquals(0, TermDeferredChunkCodec.decodeLinks(TermDeferredChunkCodec.encodeLinks(Collections.emptyList())).size());
+	}
+
+}
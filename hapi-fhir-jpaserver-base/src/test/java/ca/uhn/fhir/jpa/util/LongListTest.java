@@ -0,0 +1,77 @@
+package ca.uhn.fhir.jpa.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PrimitiveIterator;
+
+import static org.junit.Assert.*;
+
+public class LongListTest {
+
+	@Test
+	public void testAddAndGet() {
+		LongList list = new LongList();
+		for (long i = 0; i < 1000; i++) {
+			list.add(i * 2);
+		}
+		assertEquals(1000, list.size());
+		assertEquals(0L, list.getLong(0));
+		assertEquals(1998L, list.getLong(999));
+		assertEquals(Long.valueOf(20L), list.get(10));
+		assertTrue(list.contains(20L));
+		assertFalse(list.contains(21L));
+	}
+
+	@Test
+	public void testEqualsArrayList() {
+		List<Long> expected = new ArrayList<>(Arrays.asList(3L, 1L, 2L));
+		LongList list = new LongList(expected);
+		assertEquals(expected, list);
+		assertEquals(list, expected);
+		assertEquals(expected.hashCode(), list.hashCode());
+	}
+
+	@Test
+	public void testCopyOfRange() {
+		LongList list = new LongList(Arrays.asList(1L, 2L, 3L, 4L));
+		LongList copy = list.copyOfRange(1, 3);
+		list.set(1, 99L);
+		assertEquals(Arrays.asList(2L, 3L), copy);
+		assertEquals(0, list.copyOfRange(4, 4).size());
+
+		try {
+			list.copyOfRange(2, 5);
+			fail();
+		} catch (IndexOutOfBoundsException e) {
+			// good
+		}
+	}
+
+	@Test
+	public void testRemove() {
+		LongList list = new LongList(Arrays.asList(1L, 2L, 3L, 2L));
+		assertTrue(list.remove(Long.valueOf(2L)));
+		assertEquals(Arrays.asList(1L, 3L, 2L), list);
+		assertEquals(Long.valueOf(1L), list.remove(0));
+		assertEquals(Arrays.asList(3L, 2L), list);
+		assertFalse(list.remove(Long.valueOf(7L)));
+	}
+
+	@Test
+	public void testLongIterator() {
+		LongList list = new LongList(Arrays.asList(5L, 6L));
+		PrimitiveIterator.OfLong iter = list.longIterator();
+		assertEquals(5L, iter.nextLong());
+		assertEquals(6L, iter.nextLong());
+		assertFalse(iter.hasNext());
+
+		iter = LongList.longIteratorOf(Arrays.asList(7L, 8L));
+		assertEquals(7L, iter.nextLong());
+		assertEquals(8L, iter.nextLong());
+		assertFalse(iter.hasNext());
+	}
+
+}
@@ -0,0 +1,75 @@
+package ca.uhn.fhir.jpa.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class LongSetTest {
+
+	@Test
+	public void testAddAndContains() {
+		LongSet set = new LongSet();
+		assertTrue(set.add(1L));
+		assertFalse(set.add(1L));
+		assertTrue(set.add(0L));
+		assertFalse(set.add(0L));
+		assertTrue(set.add(-1L));
+		assertEquals(3, set.size());
+		assertTrue(set.contains(0L));
+		assertTrue(set.contains(Long.valueOf(1L)));
+		assertFalse(set.contains(2L));
+	}
+
+	@Test
+	public void testGrowAndIterate() {
+		LongSet set = new LongSet();
+		for (long i = 0; i < 10000; i++) {
+			set.add(i);
+		}
+		assertEquals(10000, set.size());
+
+		Set<Long> seen = new HashSet<>();
+		PrimitiveIterator.OfLong iter = set.longIterator();
+		while (iter.hasNext()) {
+			seen.add(iter.nextLong());
+		}
+		assertEquals(10000, seen.size());
+		assertEquals(seen, set);
+		assertEquals(10000, set.toLongList().size());
+	}
+
+	@Test
+	public void testMatchesHashSet() {
+		Random random = new Random(123);
+		LongSet set = new LongSet();
+		Set<Long> expected = new HashSet<>();
+		for (int i = 0; i < 100000; i++) {
+			long value = random.nextInt(2000);
+			if (random.nextInt(3) == 0) {
+				assertEquals(expected.remove(value), set.remove(value));
+			} else {
+				assertEquals(expected.add(value), set.add(value));
+			}
+			assertEquals(expected.size(), set.size());
+		}
+		assertEquals(expected, set);
+		for (long i = 0; i < 2000; i++) {
+			assertEquals(expected.contains(i), set.contains(i));
+		}
+	}
+
+	@Test
+	public void testAddAll() {
+		LongSet set = new LongSet(Arrays.asList(1L, 2L));
+		assertTrue(set.addAll(new LongList(Arrays.asList(2L, 3L))));
+		assertFalse(set.addAll(Arrays.asList(1L, 3L)));
+		assertEquals(new HashSet<>(Arrays.asList(1L, 2L, 3L)), set);
+	}
+
+}
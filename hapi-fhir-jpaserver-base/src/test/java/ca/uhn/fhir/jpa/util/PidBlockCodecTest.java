@@ -0,0 +1,65 @@
+package ca.uhn.fhir.jpa.util;
+
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PidBlockCodecTest {
+
+	@Test
+	public void testEmpty() {
+		LongList decoded = PidBlockCodec.decode(PidBlockCodec.encode(new LongList()));
+		assertEquals(0, decoded.size());
+	}
+
+	@Test
+	public void testRoundTrip() {
+		LongList pids = new LongList(Arrays.asList(5L, 6L, 7L, 3L, 1000000000000L, 0L, Long.MAX_VALUE, 1L));
+		LongList decoded = PidBlockCodec.decode(PidBlockCodec.encode(pids));
+		assertEquals(pids, decoded);
+	}
+
+	@Test
+	public void testSequentialPidsAreCompact() {
+		LongList pids = new LongList();
+		for (long i = 0; i < 100000; i++) {
+			pids.add(1000000L + i);
+		}
+		byte[] encoded = PidBlockCodec.encode(pids);
+		assertTrue("Encoded size was " + encoded.length, encoded.length < 2000);
+		assertEquals(pids, PidBlockCodec.decode(encoded));
+	}
+
+	@Test
+	public void testRandomPids() {
+		Random random = new Random(1);
+		LongList pids = new LongList();
+		for (int i = 0; i < 10000; i++) {
+			pids.add(random.nextInt(Integer.MAX_VALUE));
+		}
+		assertEquals(pids, PidBlockCodec.decode(PidBlockCodec.encode(pids)));
+	}
+
+	@Test
+	public void testInvalidBlock() {
+		try {
+			PidBlockCodec.decode(new byte[]{99, 1, 2});
+			fail();
+		} catch (InternalErrorException e) {
+			assertEquals("Unknown search result block format", e.getMessage());
+		}
+
+		byte[] encoded = PidBlockCodec.encode(new LongList(Arrays.asList(1L, 2L, 3L)));
+		try {
+			PidBlockCodec.decode(Arrays.copyOf(encoded, encoded.length - 2));
+			fail();
+		} catch (InternalErrorException e) {
+			// good
+		}
+	}
+
+}
@@ -87,6 +87,107 @@ public class HapiFhirJpaMigrationTasks extends BaseMigrationTasks<VersionEnum> {
 			.addForeignKey("FK_TRM_VSCD_VS_PID")
 			.toColumn("VALUESET_PID")
 			.references("TRM_VALUESET", "PID");
+
+		// Bulk Export Job
+		version.startSectionWithMessage("Processing table: HFJ_BLK_EXPORT_JOB");
+		version.addIdGenerator("SEQ_BLKEXJOB_PID");
+		Builder.BuilderAddTableByColumns bulkExportJob = version.addTableByColumns("HFJ_BLK_EXPORT_JOB", "PID");
+		bulkExportJob.addColumn("PID").nonNullable().type(BaseTableColumnTypeTask.ColumnTypeEnum.LONG);
+		bulkExportJob.addColumn("JOB_ID").nonNullable().type(BaseTableColumnTypeTask.ColumnTypeEnum.STRING, Search.UUID_COLUMN_LENGTH);
+		bulkExportJob.addColumn("JOB_STATUS").nonNullable().type(BaseTableColumnTypeTask.ColumnTypeEnum.STRING, 10);
+		bulkExportJob.addColumn("EXP_STYLE").nonNullable().type(BaseTableColumnTypeTask.ColumnTypeEnum.STRING, 10);
+		bulkExportJob.addColumn("GROUP_ID").nullable().type(BaseTableColumnTypeTask.ColumnTypeEnum.STRING, BulkExportJobEntity.GROUP_ID_LENGTH);
+		bulkExportJob.addColumn("CREATED_TIME").nonNullable().type(BaseTableColumnTypeTask.ColumnTypeEnum.DATE_TIMESTAMP);
+		bulkExportJob.addColumn("STATUS_TIME").nonNullable().type(BaseTableColumnTypeTask.ColumnTypeEnum.DATE_TIMESTAMP);
+		bulkExportJob.addColumn("EXP_TIME").nullable().type(BaseTableColumnTypeTask.ColumnTypeEnum.DATE_TIMESTAMP);
+		bulkExportJob.addColumn("REQUEST").nonNullable().type(BaseTableColumnTypeTask.ColumnTypeEnum.STRING, BulkExportJobEntity.REQUEST_LENGTH);
+		bulkExportJob.addColumn("EXP_SINCE").nullable().type(BaseTableColumnTypeTask.ColumnTypeEnum.DATE_TIMESTAMP);
+		bulkExportJob.addColumn("STATUS_MESSAGE").nullable().type(BaseTableColumnTypeTask.ColumnTypeEnum.STRING, BulkExportJobEntity.STATUS_MESSAGE_LEN);
+		bulkExportJob.addColumn("OUTPUT_FORMAT").nonNullable().type(BaseTableColumnTypeTask.ColumnTypeEnum.STRING, BulkExportJobEntity.OUTPUT_FORMAT_LENGTH);
+		bulkExportJob.addColumn("OWNER_ID").nullable().type(BaseTableColumnTypeTask.ColumnTypeEnum.STRING, Search.UUID_COLUMN_LENGTH);
+		bulkExportJob.addColumn("OPTLOCK").nonNullable().type(BaseTableColumnTypeTask.ColumnTypeEnum.INT);
+		bulkExportJob.addIndex("IDX_BLKEX_JOB_ID").unique(true).withColumns("JOB_ID");
+		bulkExportJob.addIndex("IDX_BLKEX_EXPTIME").unique(false).withColumns("EXP_TIME");
+		bulkExportJob.addIndex("IDX_BLKEX_STATUS").unique(false).withColumns("JOB_STATUS");
+
+		// Bulk Export Collection
+		version.startSectionWithMessage("Processing table: HFJ_BLK_EXPORT_COLLECTION");
+		version.addIdGenerator("SEQ_BLKEXCOL_PID");
+		Builder.BuilderAddTableByColumns bulkExportCollection = version.addTableByColumns("HFJ_BLK_EXPORT_COLLECTION", "PID");
+		bulkExportCollection.addColumn("PID").nonNullable().type(BaseTableColumnTypeTask.ColumnTypeEnum.LONG);
+		bulkExportCollection.addColumn("JOB_PID").nonNullable().type(BaseTableColumnTypeTask.ColumnTypeEnum.LONG);
+		bulkExportCollection
+			.addForeignKey("FK_BLKEXCOL_JOB")
+			.toColumn("JOB_PID")
+			.references("HFJ_BLK_EXPORT_JOB", "PID");
+		bulkExportCollection.addColumn("RES_TYPE").nonNullable().type(BaseTableColumnTypeTask.ColumnTypeEnum.STRING, Constants.MAX_RESOURCE_NAME_LENGTH);
+		bulkExportCollection.addColumn("LAST_PID").nullable().type(BaseTableColumnTypeTask.ColumnTypeEnum.LONG);
+		bulkExportCollection.addColumn("OPTLOCK").nonNullable().type(BaseTableColumnTypeTask.ColumnTypeEnum.INT);
+
+		// Bulk Export Collection File
+		version.startSectionWithMessage("Processing table: HFJ_BLK_EXPORT_COLFILE");
+		version.addIdGenerator("SEQ_BLKEXCOLFILE_PID");
+		Builder.BuilderAddTableByColumns bulkExportCollectionFile = version.addTableByColumns("HFJ_BLK_EXPORT_COLFILE", "PID");
+		bulkExportCollectionFile.addColumn("PID").nonNullable().type(BaseTableColumnTypeTask.ColumnTypeEnum.LONG);
+		bulkExportCollectionFile.addColumn("COLLECTION_PID").nonNullable().type(BaseTableColumnTypeTask.ColumnTypeEnum.LONG);
+		bulkExportCollectionFile
+			.addForeignKey("FK_BLKEXCOLFILE_COLLECT")
+			.toColumn("COLLECTION_PID")
+			.references("HFJ_BLK_EXPORT_COLLECTION", "PID");
+		bulkExportCollectionFile.addColumn("RES_ID").nonNullable().type(BaseTableColumnTypeTask.ColumnTypeEnum.STRING, BulkExportCollectionFileEntity.RESOURCE_ID_LENGTH);
+		bulkExportCollectionFile.addColumn("RES_COUNT").nonNullable().type(BaseTableColumnTypeTask.ColumnTypeEnum.INT);
+
+		// Search Result Block
+		version.startSectionWithMessage("Processing table: HFJ_SEARCH_RESULT_BLOCK");
+		version.addIdGenerator("SEQ_SEARCH_RES_BLOCK");
+		Builder.BuilderAddTableByColumns searchResultBlock = version.addTableByColumns("HFJ_SEARCH_RESULT_BLOCK", "PID");
+		searchResultBlock.addColumn("PID").nonNullable().type(BaseTableColumnTypeTask.ColumnTypeEnum.LONG);
+		searchResultBlock.addColumn("SEARCH_PID").nonNullable().type(BaseTableColumnTypeTask.ColumnTypeEnum.LONG);
+		searchResultBlock
+			.addForeignKey("FK_SEARCHRESBLK_SEARCH")
+			.toColumn("SEARCH_PID")
+			.references("HFJ_SEARCH", "PID");
+		searchResultBlock.addColumn("FIRST_INDEX").nonNullable().type(BaseTableColumnTypeTask.ColumnTypeEnum.INT);
+		searchResultBlock.addColumn("RESULT_COUNT").nonNullable().type(BaseTableColumnTypeTask.ColumnTypeEnum.INT);
+		searchResultBlock.addColumn("BLOCK_DATA").nonNullable().type(BaseTableColumnTypeTask.ColumnTypeEnum.BLOB);
+		searchResultBlock.addIndex("IDX_SEARCHRESBLK_FIRST").unique(true).withColumns("SEARCH_PID", "FIRST_INDEX");
+
+		version.onTable("HFJ_SEARCH").addColumn("RESULTS_IN_BLOCKS").nullable().type(BaseTableColumnTypeTask.ColumnTypeEnum.BOOLEAN);
+
+		// Deferred Terminology Chunk
+		version.startSectionWithMessage("Processing table: TRM_DEFERRED_CHUNK");
+		version.addIdGenerator("SEQ_TRM_DEFERRED_CHUNK");
+		Builder.BuilderAddTableByColumns deferredChunk = version.addTableByColumns("TRM_DEFERRED_CHUNK", "PID");
+		deferredChunk.addColumn("PID").nonNullable().type(BaseTableColumnTypeTask.ColumnTypeEnum.LONG);
+		deferredChunk.addColumn("CHUNK_TYPE").nonNullable().type(BaseTableColumnTypeTask.ColumnTypeEnum.STRING, 20);
+		deferredChunk.addColumn("CODESYSTEM_VER_PID").nullable().type(BaseTableColumnTypeTask.ColumnTypeEnum.LONG);
+		deferredChunk.addColumn("ITEM_COUNT").nonNullable().type(BaseTableColumnTypeTask.ColumnTypeEnum.INT);
+		deferredChunk.addColumn("CREATED").nonNullable().type(BaseTableColumnTypeTask.ColumnTypeEnum.DATE_TIMESTAMP);
+		deferredChunk.addColumn("LEASE_OWNER").nullable().type(BaseTableColumnTypeTask.ColumnTypeEnum.STRING, TermDeferredChunk.MAX_LEASE_OWNER_LENGTH);
+		deferredChunk.addColumn("LEASE_EXPIRES").nullable().type(BaseTableColumnTypeTask.ColumnTypeEnum.DATE_TIMESTAMP);
+		deferredChunk.addColumn("CHUNK_DATA").nonNullable().type(BaseTableColumnTypeTask.ColumnTypeEnum.BLOB);
+		deferredChunk.addIndex("IDX_TRM_DEFCHUNK_TYPE").unique(false).withColumns("CHUNK_TYPE");
+		deferredChunk.addIndex("IDX_TRM_DEFCHUNK_CSV").unique(false).withColumns("CODESYSTEM_VER_PID");
+
+		// Reindex Job Range
+		version.onTable("HFJ_RES_REINDEX_JOB").addColumn("RANGE_PID_HIGH").nullable().type(BaseTableColumnTypeTask.ColumnTypeEnum.LONG);
+		version.startSectionWithMessage("Processing table: HFJ_RES_REINDEX_RANGE");
+		version.addIdGenerator("SEQ_RES_REINDEX_RANGE");
+		Builder.BuilderAddTableByColumns reindexRange = version.addTableByColumns("HFJ_RES_REINDEX_RANGE", "PID");
+		reindexRange.addColumn("PID").nonNullable().type(BaseTableColumnTypeTask.ColumnTypeEnum.LONG);
+		reindexRange.addColumn("JOB_PID").nonNullable().type(BaseTableColumnTypeTask.ColumnTypeEnum.LONG);
+		reindexRange
+			.addForeignKey("FK_REINDEXRANGE_JOB")
+			.toColumn("JOB_PID")
+			.references("HFJ_RES_REINDEX_JOB", "PID");
+		reindexRange.addColumn("PID_LOW").nonNullable().type(BaseTableColumnTypeTask.ColumnTypeEnum.LONG);
+		reindexRange.addColumn("PID_HIGH").nonNullable().type(BaseTableColumnTypeTask.ColumnTypeEnum.LONG);
+		reindexRange.addColumn("PID_NEXT").nonNullable().type(BaseTableColumnTypeTask.ColumnTypeEnum.LONG);
+		reindexRange.addColumn("RANGE_COMPLETE").nonNullable().type(BaseTableColumnTypeTask.ColumnTypeEnum.BOOLEAN);
+		reindexRange.addColumn("REINDEX_COUNT").nonNullable().type(BaseTableColumnTypeTask.ColumnTypeEnum.INT);
+		reindexRange.addColumn("LEASE_OWNER").nullable().type(BaseTableColumnTypeTask.ColumnTypeEnum.STRING, ResourceReindexJobRangeEntity.MAX_LEASE_OWNER_LENGTH);
+		reindexRange.addColumn("LEASE_EXPIRES").nullable().type(BaseTableColumnTypeTask.ColumnTypeEnum.DATE_TIMESTAMP);
+		reindexRange.addIndex("IDX_REINDEXRANGE_JOB").unique(false).withColumns("JOB_PID");
 	}
 
 	protected void init400() {
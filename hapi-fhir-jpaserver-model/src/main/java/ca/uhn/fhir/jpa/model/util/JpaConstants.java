@@ -174,6 +174,56 @@ public class JpaConstants {
 	 */
 	public static final String OPERATION_UPLOAD_EXTERNAL_CODE_SYSTEM = "$upload-external-code-system";
 
+	/**
+	 * Operation name for the "$export" operation
+	 */
+	public static final String OPERATION_EXPORT = "$export";
+
+	/**
+	 * Operation name for the "$export-poll-status" operation
+	 */
+	public static final String OPERATION_EXPORT_POLL_STATUS = "$export-poll-status";
+
+	/**
+	 * Parameter for the $export operation
+	 */
+	public static final String PARAM_EXPORT_OUTPUT_FORMAT = "_outputFormat";
+
+	/**
+	 * Parameter for the $export operation
+	 */
+	public static final String PARAM_EXPORT_TYPE = "_type";
+
+	/**
+	 * Parameter for the $export operation
+	 */
+	public static final String PARAM_EXPORT_SINCE = "_since";
+
+	/**
+	 * Parameter for the $export operation
+	 */
+	public static final String PARAM_EXPORT_TYPE_FILTER = "_typeFilter";
+
+	/**
+	 * Parameter for the $export-poll-status operation
+	 */
+	public static final String PARAM_EXPORT_POLL_STATUS_JOB_ID = "_jobId";
+
+	/**
+	 * Operation name for the "$import" operation
+	 */
+	public static final String OPERATION_IMPORT = "$import";
+
+	/**
+	 * Parameter for the $import operation
+	 */
+	public static final String PARAM_IMPORT_INPUT_FORMAT = "inputFormat";
+
+	/**
+	 * Parameter for the $import operation
+	 */
+	public static final String PARAM_IMPORT_INPUT_URL = "inputUrl";
+
 	/**
 	 * <p>
 	 * This extension should be of type <code>string</code> and should be
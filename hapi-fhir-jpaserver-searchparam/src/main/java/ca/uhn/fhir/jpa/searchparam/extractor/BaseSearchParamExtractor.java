@@ -84,6 +84,10 @@ public abstract class BaseSearchParamExtractor implements ISearchParamExtractor
 		return myModelConfig;
 	}
 
+	protected ISearchParamRegistry getSearchParamRegistry() {
+		return mySearchParamRegistry;
+	}
+
 	public Collection<RuntimeSearchParam> getSearchParams(IBaseResource theResource) {
 		RuntimeResourceDefinition def = getContext().getResourceDefinition(theResource);
 		Collection<RuntimeSearchParam> retVal = mySearchParamRegistry.getActiveSearchParams(def.getName()).values();
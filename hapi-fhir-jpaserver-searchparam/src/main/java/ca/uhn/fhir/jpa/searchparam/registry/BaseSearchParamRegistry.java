@@ -47,6 +47,7 @@ import org.springframework.scheduling.annotation.Scheduled;
 
 import javax.annotation.PostConstruct;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 import static org.apache.commons.lang3.StringUtils.isBlank;
@@ -69,6 +70,7 @@ public abstract class BaseSearchParamRegistry<SP extends IBaseResource> implemen
 	private volatile Map<String, Map<Set<String>, List<JpaRuntimeSearchParam>>> myActiveParamNamesToUniqueSearchParams = Collections.emptyMap();
 	private volatile Map<String, Map<String, RuntimeSearchParam>> myActiveSearchParams;
 	private volatile long myLastRefresh;
+	private final AtomicLong myRefreshGeneration = new AtomicLong();
 
 	@Autowired
 	private IInterceptorBroadcaster myInterceptorBroadcaster;
@@ -306,6 +308,7 @@ public abstract class BaseSearchParamRegistry<SP extends IBaseResource> implemen
 			myActiveSearchParams = activeSearchParams;
 
 			populateActiveSearchParams(activeSearchParams);
+			myRefreshGeneration.incrementAndGet();
 
 			myLastRefresh = System.currentTimeMillis();
 			ourLog.info("Refreshed search parameter cache in {}ms", sw.getMillis());
@@ -326,6 +329,11 @@ public abstract class BaseSearchParamRegistry<SP extends IBaseResource> implemen
 		return getActiveSearchParams(theResourceDef.getName()).values();
 	}
 
+	@Override
+	public long getRefreshGeneration() {
+		return myRefreshGeneration.get();
+	}
+
 	@Override
 	public void requestRefresh() {
 		synchronized (this) {
@@ -57,4 +57,12 @@ public interface ISearchParamRegistry {
 	RuntimeSearchParam getSearchParamByName(RuntimeResourceDefinition theResourceDef, String theParamName);
 
 	Collection<RuntimeSearchParam> getSearchParamsByResourceType(RuntimeResourceDefinition theResourceDef);
+
+	/**
+	 * Returns a number which changes every time the active search parameters are
+	 * refreshed, so that anything derived from them can be invalidated
+	 */
+	default long getRefreshGeneration() {
+		return 0;
+	}
 }
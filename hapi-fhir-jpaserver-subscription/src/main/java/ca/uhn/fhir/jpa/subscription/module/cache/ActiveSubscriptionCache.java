@@ -20,7 +20,9 @@ package ca.uhn.fhir.jpa.subscription.module.cache;
  * #L%
  */
 
+import ca.uhn.fhir.context.FhirContext;
 import org.apache.commons.lang3.Validate;
+import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,6 +36,7 @@ class ActiveSubscriptionCache {
 	private static final Logger ourLog = LoggerFactory.getLogger(ActiveSubscriptionCache.class);
 
 	private final Map<String, ActiveSubscription> myCache = new ConcurrentHashMap<>();
+	private final SubscriptionCriteriaIndex myCriteriaIndex = new SubscriptionCriteriaIndex();
 
 	public ActiveSubscription get(String theIdPart) {
 		return myCache.get(theIdPart);
@@ -43,12 +46,26 @@ class ActiveSubscriptionCache {
 		return Collections.unmodifiableCollection(myCache.values());
 	}
 
+	/**
+	 * Returns the subscriptions which could possibly match the given resource. This
+	 * will always include every subscription which does match it, but may include
+	 * others too.
+	 */
+	public Collection<ActiveSubscription> getCandidates(IBaseResource theResource) {
+		return myCriteriaIndex.getCandidates(theResource);
+	}
+
 	public int size() {
 		return myCache.size();
 	}
 
-	public void put(String theSubscriptionId, ActiveSubscription theValue) {
+	public void setFhirContext(FhirContext theFhirContext) {
+		myCriteriaIndex.setFhirContext(theFhirContext);
+	}
+
+	public synchronized void put(String theSubscriptionId, ActiveSubscription theValue) {
 		myCache.put(theSubscriptionId, theValue);
+		myCriteriaIndex.add(theSubscriptionId, theValue);
 	}
 
 	public synchronized void remove(String theSubscriptionId) {
@@ -61,6 +78,7 @@ class ActiveSubscriptionCache {
 
 		activeSubscription.close();
 		myCache.remove(theSubscriptionId);
+		myCriteriaIndex.remove(theSubscriptionId);
 	}
 
 	public void unregisterAllSubscriptionsNotInCollection(Collection<String> theAllIds) {
@@ -0,0 +1,333 @@
+package ca.uhn.fhir.jpa.subscription.module.cache;
+
+/*-
+ * #%L
+ * HAPI FHIR Subscription Server
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.RuntimeResourceDefinition;
+import ca.uhn.fhir.context.RuntimeSearchParam;
+import ca.uhn.fhir.parser.DataFormatException;
+import ca.uhn.fhir.rest.api.RestSearchParameterTypeEnum;
+import ca.uhn.fhir.util.FhirTerser;
+import ca.uhn.fhir.util.UrlUtil;
+import org.hl7.fhir.instance.model.api.IBaseReference;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IPrimitiveType;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+/**
+ * Index of the active subscriptions by the resource type in their criteria, and by
+ * the values of one of the equality token, reference or <code>_id</code> parameters in
+ * their criteria (e.g. <code>Observation?subject=Patient/123</code> is indexed under
+ * <code>Observation</code> and <code>123</code>).
+ * <p>
+ * This index is used to find the subscriptions that could possibly match a resource, so
+ * that the remaining subscriptions don't need to be evaluated at all. The keys found in
+ * a resource are a superset of the values it could match: every primitive value in the
+ * resource, the last path segment of every such value, and the ID of every reference.
+ * Keys are case-insensitive. A subscription is therefore only skipped if none of the values
+ * in the indexed parameter can possibly appear in the resource.
+ * </p>
+ */
+class SubscriptionCriteriaIndex {
+
+	private final Map<String, IndexEntry> myEntries = new ConcurrentHashMap<>();
+	private final Map<String, ActiveSubscription> myNotIndexed = new ConcurrentHashMap<>();
+	private final Map<String, Map<String, ActiveSubscription>> myResourceTypeOnly = new ConcurrentHashMap<>();
+	private final Map<String, Map<String, Map<String, ActiveSubscription>>> myResourceTypeAndKey = new ConcurrentHashMap<>();
+	private FhirContext myFhirContext;
+
+	/**
+	 * Sets the context used to parse subscription criteria. Until this is set, no
+	 * subscriptions are indexed and every subscription is a candidate for every resource.
+	 */
+	synchronized void setFhirContext(FhirContext theFhirContext) {
+		myFhirContext = theFhirContext;
+
+		List<IndexEntry> entries = new ArrayList<>(myEntries.values());
+		for (IndexEntry next : entries) {
+			add(next.mySubscriptionId, next.myActiveSubscription);
+		}
+	}
+
+	synchronized void add(String theSubscriptionId, ActiveSubscription theActiveSubscription) {
+		remove(theSubscriptionId);
+
+		IndexEntry entry = new IndexEntry(theSubscriptionId, theActiveSubscription);
+		if (myFhirContext != null && theActiveSubscription.getSubscription() != null) {
+			parseCriteria(theActiveSubscription.getCriteriaString(), entry);
+		}
+
+		if (entry.myResourceType == null) {
+			myNotIndexed.put(theSubscriptionId, theActiveSubscription);
+		} else if (entry.myKeys == null) {
+			myResourceTypeOnly
+				.computeIfAbsent(entry.myResourceType, t -> new ConcurrentHashMap<>())
+				.put(theSubscriptionId, theActiveSubscription);
+		} else {
+			Map<String, Map<String, ActiveSubscription>> byKey = myResourceTypeAndKey.computeIfAbsent(entry.myResourceType, t -> new ConcurrentHashMap<>());
+			for (String nextKey : entry.myKeys) {
+				byKey
+					.computeIfAbsent(nextKey, t -> new ConcurrentHashMap<>())
+					.put(theSubscriptionId, theActiveSubscription);
+			}
+		}
+
+		myEntries.put(theSubscriptionId, entry);
+	}
+
+	synchronized void remove(String theSubscriptionId) {
+		IndexEntry entry = myEntries.remove(theSubscriptionId);
+		if (entry == null) {
+			return;
+		}
+
+		if (entry.myResourceType == null) {
+			myNotIndexed.remove(theSubscriptionId);
+		} else if (entry.myKeys == null) {
+			Map<String, ActiveSubscription> subscriptions = myResourceTypeOnly.get(entry.myResourceType);
+			if (subscriptions != null) {
+				subscriptions.remove(theSubscriptionId);
+			}
+		} else {
+			Map<String, Map<String, ActiveSubscription>> byKey = myResourceTypeAndKey.get(entry.myResourceType);
+			if (byKey != null) {
+				for (String nextKey : entry.myKeys) {
+					Map<String, ActiveSubscription> subscriptions = byKey.get(nextKey);
+					if (subscriptions != null) {
+						subscriptions.remove(theSubscriptionId);
+						if (subscriptions.isEmpty()) {
+							byKey.remove(nextKey);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the subscriptions which could possibly match the given resource
+	 */
+	Collection<ActiveSubscription> getCandidates(IBaseResource theResource) {
+		FhirContext fhirContext = myFhirContext;
+		if (fhirContext == null || theResource == null) {
+			List<ActiveSubscription> retVal = new ArrayList<>(myEntries.size());
+			for (IndexEntry next : myEntries.values()) {
+				retVal.add(next.myActiveSubscription);
+			}
+			return retVal;
+		}
+
+		String resourceType = fhirContext.getResourceDefinition(theResource).getName();
+		List<ActiveSubscription> retVal = new ArrayList<>(myNotIndexed.values());
+
+		Map<String, ActiveSubscription> resourceTypeOnly = myResourceTypeOnly.get(resourceType);
+		if (resourceTypeOnly != null) {
+			retVal.addAll(resourceTypeOnly.values());
+		}
+
+		Map<String, Map<String, ActiveSubscription>> byKey = myResourceTypeAndKey.get(resourceType);
+		if (byKey != null && !byKey.isEmpty()) {
+			Set<String> addedIds = new HashSet<>();
+			for (String nextKey : extractResourceKeys(fhirContext, theResource)) {
+				Map<String, ActiveSubscription> subscriptions = byKey.get(nextKey);
+				if (subscriptions != null) {
+					for (Map.Entry<String, ActiveSubscription> next : subscriptions.entrySet()) {
+						if (addedIds.add(next.getKey())) {
+							retVal.add(next.getValue());
+						}
+					}
+				}
+			}
+		}
+
+		return retVal;
+	}
+
+	int size() {
+		return myEntries.size();
+	}
+
+	private void parseCriteria(String theCriteria, IndexEntry theEntry) {
+		if (isBlank(theCriteria)) {
+			return;
+		}
+
+		int questionMarkIndex = theCriteria.indexOf('?');
+		String resourceType = questionMarkIndex != -1 ? theCriteria.substring(0, questionMarkIndex) : theCriteria;
+		RuntimeResourceDefinition resourceDef;
+		try {
+			resourceDef = myFhirContext.getResourceDefinition(resourceType);
+		} catch (DataFormatException e) {
+			return;
+		}
+		theEntry.myResourceType = resourceType;
+
+		if (questionMarkIndex == -1) {
+			return;
+		}
+
+		/*
+		 * Every AND parameter must match, so we only need to index the values
+		 * of one of them. Pick the first one we can index.
+		 */
+		Map<String, String[]> params = UrlUtil.parseQueryString(theCriteria.substring(questionMarkIndex + 1));
+		for (Map.Entry<String, String[]> nextParam : params.entrySet()) {
+			String paramName = nextParam.getKey();
+			RestSearchParameterTypeEnum paramType = getIndexableParamType(resourceDef, paramName);
+			if (paramType == null) {
+				continue;
+			}
+
+			for (String nextAnd : nextParam.getValue()) {
+				Set<String> keys = toCriteriaKeys(paramType, nextAnd);
+				if (keys != null) {
+					theEntry.myKeys = keys;
+					return;
+				}
+			}
+		}
+	}
+
+	private static class IndexEntry {
+		private final String mySubscriptionId;
+		private final ActiveSubscription myActiveSubscription;
+		private String myResourceType;
+		private Set<String> myKeys;
+
+		IndexEntry(String theSubscriptionId, ActiveSubscription theActiveSubscription) {
+			mySubscriptionId = theSubscriptionId;
+			myActiveSubscription = theActiveSubscription;
+		}
+	}
+
+	/**
+	 * @return Returns the type of the parameter, or <code>null</code> if the parameter can't be indexed
+	 */
+	private static RestSearchParameterTypeEnum getIndexableParamType(RuntimeResourceDefinition theResourceDef, String theParamName) {
+		// Modifiers and chains can match values which don't appear in the resource
+		if (theParamName.contains(":") || theParamName.contains(".")) {
+			return null;
+		}
+		if ("_id".equals(theParamName)) {
+			return RestSearchParameterTypeEnum.REFERENCE;
+		}
+		if (theParamName.startsWith("_")) {
+			return null;
+		}
+
+		RuntimeSearchParam searchParam = theResourceDef.getSearchParam(theParamName);
+		if (searchParam == null) {
+			return null;
+		}
+		switch (searchParam.getParamType()) {
+			case TOKEN:
+			case REFERENCE:
+				return searchParam.getParamType();
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * @return Returns the keys for a parameter value (which may contain several comma separated OR values),
+	 * or <code>null</code> if any of the values can't be indexed
+	 */
+	private static Set<String> toCriteriaKeys(RestSearchParameterTypeEnum theParamType, String theValue) {
+		if (isBlank(theValue) || theValue.contains("\\")) {
+			return null;
+		}
+
+		Set<String> retVal = new HashSet<>();
+		for (String nextOr : theValue.split(",")) {
+			String key;
+			if (theParamType == RestSearchParameterTypeEnum.TOKEN) {
+				key = nextOr.substring(nextOr.lastIndexOf('|') + 1);
+			} else {
+				if (nextOr.startsWith("#") || nextOr.contains("?")) {
+					return null;
+				}
+				key = lastPathSegment(nextOr);
+			}
+			if (isBlank(key)) {
+				return null;
+			}
+			retVal.add(normalize(key));
+		}
+		return retVal;
+	}
+
+	private static Set<String> extractResourceKeys(FhirContext theFhirContext, IBaseResource theResource) {
+		Set<String> retVal = new HashSet<>();
+		addResourceKeys(retVal, theResource.getIdElement().getIdPart());
+
+		FhirTerser terser = theFhirContext.newTerser();
+		for (IPrimitiveType<?> next : terser.getAllPopulatedChildElementsOfType(theResource, IPrimitiveType.class)) {
+			addResourceKeys(retVal, next.getValueAsString());
+		}
+		for (IBaseReference next : terser.getAllPopulatedChildElementsOfType(theResource, IBaseReference.class)) {
+			addResourceKeys(retVal, next.getReferenceElement().getValue());
+			if (next.getResource() != null) {
+				addResourceKeys(retVal, next.getResource().getIdElement().getIdPart());
+			}
+		}
+
+		return retVal;
+	}
+
+	private static void addResourceKeys(Set<String> theKeys, String theValue) {
+		if (isBlank(theValue)) {
+			return;
+		}
+		theKeys.add(normalize(theValue));
+		theKeys.add(normalize(lastPathSegment(theValue)));
+	}
+
+	/**
+	 * Returns the ID part of a reference or canonical URL, e.g. <code>123</code> for
+	 * <code>http://example.com/Patient/123/_history/2</code>
+	 */
+	private static String lastPathSegment(String theValue) {
+		String retVal = theValue;
+		int index = retVal.indexOf('|');
+		if (index != -1) {
+			retVal = retVal.substring(0, index);
+		}
+		index = retVal.indexOf("/_history/");
+		if (index != -1) {
+			retVal = retVal.substring(0, index);
+		}
+		index = retVal.lastIndexOf('/');
+		if (index != -1) {
+			retVal = retVal.substring(index + 1);
+		}
+		return retVal;
+	}
+
+	private static String normalize(String theKey) {
+		return theKey.toLowerCase(Locale.ROOT);
+	}
+
+}
@@ -20,6 +20,7 @@ package ca.uhn.fhir.jpa.subscription.module.cache;
  * #L%
  */
 
+import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.interceptor.api.HookParams;
 import ca.uhn.fhir.jpa.model.entity.ModelConfig;
 import ca.uhn.fhir.interceptor.api.IInterceptorBroadcaster;
@@ -34,6 +35,7 @@ import org.springframework.messaging.MessageHandler;
 import org.springframework.messaging.SubscribableChannel;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import java.util.Collection;
 import java.util.Collections;
@@ -60,6 +62,8 @@ public class SubscriptionRegistry {
 	ModelConfig myModelConfig;
 	@Autowired
 	private IInterceptorBroadcaster myInterceptorBroadcaster;
+	@Autowired
+	private FhirContext myFhirContext;
 
 	/**
 	 * Constructor
@@ -68,6 +72,11 @@ public class SubscriptionRegistry {
 		super();
 	}
 
+	@PostConstruct
+	public void start() {
+		myActiveSubscriptionCache.setFhirContext(myFhirContext);
+	}
+
 	public ActiveSubscription get(String theIdPart) {
 		return myActiveSubscriptionCache.get(theIdPart);
 	}
@@ -76,6 +85,15 @@ public class SubscriptionRegistry {
 		return myActiveSubscriptionCache.getAll();
 	}
 
+	/**
+	 * Returns the active subscriptions which could possibly match the given resource, using
+	 * an index of the subscription criteria. This will always include every subscription which
+	 * does match the resource, but the criteria of each subscription must still be checked.
+	 */
+	public Collection<ActiveSubscription> getCandidates(IBaseResource theResource) {
+		return myActiveSubscriptionCache.getCandidates(theResource);
+	}
+
 	private Optional<CanonicalSubscription> hasSubscription(IIdType theId) {
 		Validate.notNull(theId);
 		Validate.notBlank(theId.getIdPart());
@@ -169,6 +187,8 @@ public class SubscriptionRegistry {
 		Validate.notNull(activeSubscription);
 		CanonicalSubscription canonicalized = mySubscriptionCanonicalizer.canonicalize(theSubscription);
 		activeSubscription.setSubscription(canonicalized);
+		// Re-index the subscription since the criteria may have changed
+		myActiveSubscriptionCache.put(theId.getIdPart(), activeSubscription);
 
 		// Interceptor call: SUBSCRIPTION_AFTER_ACTIVE_SUBSCRIPTION_REGISTERED
 		HookParams params = new HookParams()
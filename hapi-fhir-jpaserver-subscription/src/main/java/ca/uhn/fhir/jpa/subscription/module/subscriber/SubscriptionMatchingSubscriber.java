@@ -108,7 +108,12 @@ public class SubscriptionMatchingSubscriber implements MessageHandler {
 		IIdType resourceId = theMsg.getId(myFhirContext);
 		Boolean isText = false;
 
-		Collection<ActiveSubscription> subscriptions = mySubscriptionRegistry.getAll();
+		Collection<ActiveSubscription> subscriptions;
+		if (isNotBlank(theMsg.getSubscriptionId())) {
+			subscriptions = mySubscriptionRegistry.getAll();
+		} else {
+			subscriptions = mySubscriptionRegistry.getCandidates(theMsg.getNewPayload(myFhirContext));
+		}
 
 		ourLog.trace("Testing {} subscriptions for applicability", subscriptions.size());
 		boolean resourceMatched = false;
@@ -0,0 +1,140 @@
+package ca.uhn.fhir.jpa.subscription.module.cache;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.jpa.subscription.module.CanonicalSubscription;
+import org.hl7.fhir.dstu3.model.Observation;
+import org.hl7.fhir.dstu3.model.Patient;
+import org.hl7.fhir.dstu3.model.Reference;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+public class SubscriptionCriteriaIndexTest {
+
+	private static FhirContext ourCtx = FhirContext.forDstu3();
+	private SubscriptionCriteriaIndex myIndex;
+	private Map<ActiveSubscription, String> mySubscriptionIds;
+
+	@Before
+	public void before() {
+		myIndex = new SubscriptionCriteriaIndex();
+		mySubscriptionIds = new IdentityHashMap<>();
+		myIndex.setFhirContext(ourCtx);
+	}
+
+	@Test
+	public void testReferenceCriteria() {
+		add("1", "Observation?subject=Patient/123");
+		add("2", "Observation?subject=Patient/456");
+		add("3", "Observation?subject=Patient/123,Patient/789&value-quantity=5.4");
+		add("4", "Observation?");
+		add("5", "Patient?_id=123");
+
+		Observation obs = new Observation();
+		obs.setId("Observation/O1");
+		obs.setSubject(new Reference("Patient/123"));
+		assertThat(getCandidateIds(obs), contains("1", "3", "4"));
+
+		obs.setSubject(new Reference("http://example.com/fhir/Patient/789/_history/2"));
+		assertThat(getCandidateIds(obs), contains("3", "4"));
+
+		obs.setSubject(null);
+		assertThat(getCandidateIds(obs), contains("4"));
+	}
+
+	@Test
+	public void testTokenCriteria() {
+		add("1", "Observation?code=http://loinc.org|1234-5");
+		add("2", "Observation?code=9999-9");
+		add("3", "Observation?code=http://loinc.org|");
+
+		Observation obs = new Observation();
+		obs.getCode().addCoding().setSystem("http://loinc.org").setCode("1234-5");
+		assertThat(getCandidateIds(obs), contains("1", "3"));
+	}
+
+	@Test
+	public void testIdCriteria() {
+		add("1", "Patient?_id=123");
+		add("2", "Patient?_id=456");
+
+		Patient patient = new Patient();
+		patient.setId("Patient/123");
+		assertThat(getCandidateIds(patient), contains("1"));
+	}
+
+	@Test
+	public void testNotIndexableCriteria() {
+		add("1", "Observation?subject:Patient.name=SMITH");
+		add("2", "Observation?value-quantity=5.4");
+		add("3", "Observation?code:text=glucose");
+		add("4", "FooResource?code=123");
+		add("5", "");
+		ActiveSubscription noSubscription = new ActiveSubscription(null, null);
+		mySubscriptionIds.put(noSubscription, "6");
+		myIndex.add("6", noSubscription);
+
+		assertThat(getCandidateIds(new Observation()), containsInAnyOrder("1", "2", "3", "4", "5", "6"));
+		assertThat(getCandidateIds(new Patient()), containsInAnyOrder("4", "5", "6"));
+	}
+
+	@Test
+	public void testUpdateAndRemove() {
+		add("1", "Observation?subject=Patient/123");
+		add("1", "Observation?subject=Patient/456");
+		assertEquals(1, myIndex.size());
+
+		Observation obs = new Observation();
+		obs.setSubject(new Reference("Patient/123"));
+		assertThat(getCandidateIds(obs), empty());
+		obs.setSubject(new Reference("Patient/456"));
+		assertThat(getCandidateIds(obs), contains("1"));
+
+		myIndex.remove("1");
+		assertThat(getCandidateIds(obs), empty());
+		assertEquals(0, myIndex.size());
+	}
+
+	@Test
+	public void testNoFhirContext() {
+		SubscriptionCriteriaIndex index = new SubscriptionCriteriaIndex();
+		CanonicalSubscription subscription = new CanonicalSubscription();
+		subscription.setCriteriaString("Observation?subject=Patient/123");
+		index.add("1", new ActiveSubscription(subscription, null));
+		assertEquals(1, index.getCandidates(new Observation()).size());
+
+		index.setFhirContext(ourCtx);
+		assertEquals(0, index.getCandidates(new Observation()).size());
+	}
+
+	private void add(String theId, String theCriteria) {
+		CanonicalSubscription subscription = new CanonicalSubscription();
+		subscription.setCriteriaString(theCriteria);
+		ActiveSubscription activeSubscription = new ActiveSubscription(subscription, null);
+		mySubscriptionIds.put(activeSubscription, theId);
+		myIndex.add(theId, activeSubscription);
+	}
+
+	private Set<String> getCandidateIds(IBaseResource theResource) {
+		Collection<ActiveSubscription> candidates = myIndex.getCandidates(theResource);
+		Set<String> retVal = new TreeSet<>();
+		for (ActiveSubscription next : candidates) {
+			retVal.add(mySubscriptionIds.get(next));
+		}
+		assertEquals("Duplicate candidates", candidates.size(), retVal.size());
+		return retVal;
+	}
+
+}
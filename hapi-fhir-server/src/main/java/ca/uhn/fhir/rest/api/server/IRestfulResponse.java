@@ -44,6 +44,16 @@ public interface IRestfulResponse {
 
 	Object sendWriterResponse(int status, String contentType, String charset, Writer writer) throws IOException;
 
+	/**
+	 * Returns a stream to which a UTF-8 encoded response body can be written directly, or
+	 * <code>null</code> if this response type only supports writing through
+	 * {@link #getResponseWriter(int, String, String, String, boolean)}. If a stream is returned,
+	 * it is the value which should be returned to the server once the body has been written.
+	 */
+	default OutputStream getResponseOutputStream(int theStatusCode, String theStatusMessage, String theContentType, boolean theRespondGzip) throws IOException {
+		return null;
+	}
+
 	void addHeader(String headerKey, String headerValue);
 
 	Object sendAttachmentResponse(IBaseBinary bin, int stausCode, String contentType) throws IOException;
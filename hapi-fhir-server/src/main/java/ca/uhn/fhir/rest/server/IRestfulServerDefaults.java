@@ -86,6 +86,32 @@ public interface IRestfulServerDefaults {
 	 */
 	boolean isDefaultPrettyPrint();
 
+	/**
+	 * Should JSON resource responses be encoded directly to the response stream as UTF-8 bytes
+	 * (using {@link ca.uhn.fhir.parser.IParser#encodeResourceToOutputStream(org.hl7.fhir.instance.model.api.IBaseResource, java.io.OutputStream)})
+	 * instead of being written through a {@link java.io.Writer}. This only has an effect if the
+	 * response supports it (see {@link ca.uhn.fhir.rest.api.server.IRestfulResponse#getResponseOutputStream(int, String, String, boolean)}).
+	 * <p>
+	 * The default is <code>false</code>
+	 * </p>
+	 */
+	default boolean isJsonResponseOutputStreamEnabled() {
+		return false;
+	}
+
+	/**
+	 * Should search and history Bundle responses be written incrementally, loading
+	 * the resources for each entry from the {@link ca.uhn.fhir.rest.api.server.IBundleProvider}
+	 * in small chunks as the response is being encoded, instead of building the complete
+	 * Bundle in memory first.
+	 * <p>
+	 * The default is <code>false</code>
+	 * </p>
+	 */
+	default boolean isBundleEntryStreamingEnabled() {
+		return false;
+	}
+
 	/**
 	 * Returns the interceptor service for this server
 	 */
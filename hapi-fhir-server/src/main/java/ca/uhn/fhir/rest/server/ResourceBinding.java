@@ -20,9 +20,9 @@ package ca.uhn.fhir.rest.server;
  * #L%
  */
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
 
+import ca.uhn.fhir.rest.api.RequestTypeEnum;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.server.method.BaseMethodBinding;
 
@@ -35,6 +35,7 @@ public class ResourceBinding {
 
 	private String resourceName;
 	private List<BaseMethodBinding<?>> myMethodBindings = new ArrayList<>();
+	private volatile DispatchIndex myDispatchIndex;
 
 	public ResourceBinding() {
 	}
@@ -51,7 +52,7 @@ public class ResourceBinding {
 		}
 
 		ourLog.debug("Looking for a handler for {}", theRequest);
-		for (BaseMethodBinding<?> rm : myMethodBindings) {
+		for (BaseMethodBinding<?> rm : getDispatchIndex().getCandidates(theRequest)) {
 			if (rm.incomingServerRequestMatchesMethod(theRequest)) {
 				ourLog.debug("Handler {} matches", rm);
 				return rm;
@@ -61,6 +62,15 @@ public class ResourceBinding {
 		return null;
 	}
 
+	private DispatchIndex getDispatchIndex() {
+		DispatchIndex retVal = myDispatchIndex;
+		if (retVal == null || !retVal.isCurrent(myMethodBindings)) {
+			retVal = new DispatchIndex(myMethodBindings);
+			myDispatchIndex = retVal;
+		}
+		return retVal;
+	}
+
 	public String getResourceName() {
 		return resourceName;
 	}
@@ -75,10 +85,12 @@ public class ResourceBinding {
 
 	public void setMethods(List<BaseMethodBinding<?>> methods) {
 		this.myMethodBindings = methods;
+		myDispatchIndex = null;
 	}
 
 	public void addMethod(BaseMethodBinding<?> method) {
 		this.myMethodBindings.add(method);
+		myDispatchIndex = null;
 	}
 
 	@Override
@@ -93,4 +105,115 @@ public class ResourceBinding {
 		return 0;
 	}
 
+	/**
+	 * Index of the method bindings, built from the hints each binding provides (see
+	 * {@link BaseMethodBinding#getDispatchRequestTypes()}), which narrows a request down to
+	 * the few bindings that could possibly match it without testing every binding in turn.
+	 * Candidates are always returned in their original order, so the first matching binding
+	 * is the same one that a linear scan would find.
+	 */
+	private static class DispatchIndex {
+		private final List<BaseMethodBinding<?>> myMethodBindings;
+		private final int myMethodBindingCount;
+		private final Map<RequestTypeEnum, RequestTypeBucket> myRequestTypeToBucket = new EnumMap<>(RequestTypeEnum.class);
+
+		DispatchIndex(List<BaseMethodBinding<?>> theMethodBindings) {
+			myMethodBindings = theMethodBindings;
+			myMethodBindingCount = theMethodBindings.size();
+
+			for (RequestTypeEnum next : RequestTypeEnum.values()) {
+				myRequestTypeToBucket.put(next, new RequestTypeBucket());
+			}
+			for (int i = 0; i < theMethodBindings.size(); i++) {
+				BaseMethodBinding<?> next = theMethodBindings.get(i);
+				Set<RequestTypeEnum> requestTypes = next.getDispatchRequestTypes();
+				if (requestTypes == null) {
+					requestTypes = myRequestTypeToBucket.keySet();
+				}
+				for (RequestTypeEnum nextRequestType : requestTypes) {
+					myRequestTypeToBucket.get(nextRequestType).add(i, next);
+				}
+			}
+			for (RequestTypeBucket next : myRequestTypeToBucket.values()) {
+				next.complete();
+			}
+		}
+
+		/**
+		 * Returns <code>false</code> if bindings have been added to or removed from the list since it was indexed
+		 */
+		boolean isCurrent(List<BaseMethodBinding<?>> theMethodBindings) {
+			return myMethodBindings == theMethodBindings && myMethodBindingCount == theMethodBindings.size();
+		}
+
+		List<BaseMethodBinding<?>> getCandidates(RequestDetails theRequest) {
+			if (theRequest.getRequestType() == null) {
+				return myMethodBindings;
+			}
+
+			RequestTypeBucket bucket = myRequestTypeToBucket.get(theRequest.getRequestType());
+			TreeMap<Integer, BaseMethodBinding<?>> candidates = null;
+			if (theRequest.getOperation() != null) {
+				candidates = addCandidates(bucket, candidates, bucket.myOperationToBindings.get(theRequest.getOperation()));
+			}
+			if (!bucket.myParameterToBindings.isEmpty()) {
+				if (theRequest.getParameters() != null) {
+					for (String next : theRequest.getParameters().keySet()) {
+						candidates = addCandidates(bucket, candidates, bucket.myParameterToBindings.get(next));
+					}
+				}
+				if (theRequest.getUnqualifiedToQualifiedNames() != null) {
+					for (String next : theRequest.getUnqualifiedToQualifiedNames().keySet()) {
+						candidates = addCandidates(bucket, candidates, bucket.myParameterToBindings.get(next));
+					}
+				}
+			}
+
+			if (candidates == null) {
+				return bucket.myUnkeyedList;
+			}
+			return new ArrayList<>(candidates.values());
+		}
+
+		private static TreeMap<Integer, BaseMethodBinding<?>> addCandidates(RequestTypeBucket theBucket, TreeMap<Integer, BaseMethodBinding<?>> theCandidates, Map<Integer, BaseMethodBinding<?>> theBindings) {
+			if (theBindings == null) {
+				return theCandidates;
+			}
+			TreeMap<Integer, BaseMethodBinding<?>> retVal = theCandidates;
+			if (retVal == null) {
+				retVal = new TreeMap<>(theBucket.myUnkeyed);
+			}
+			retVal.putAll(theBindings);
+			return retVal;
+		}
+	}
+
+	/**
+	 * The bindings for a single request type. Bindings which require a specific operation name or
+	 * parameter are keyed by it, and all others are candidates for every request. Keys are the
+	 * position of each binding in the full list.
+	 */
+	private static class RequestTypeBucket {
+		private final TreeMap<Integer, BaseMethodBinding<?>> myUnkeyed = new TreeMap<>();
+		private final Map<String, Map<Integer, BaseMethodBinding<?>>> myOperationToBindings = new HashMap<>();
+		private final Map<String, Map<Integer, BaseMethodBinding<?>>> myParameterToBindings = new HashMap<>();
+		private List<BaseMethodBinding<?>> myUnkeyedList;
+
+		void add(int thePosition, BaseMethodBinding<?> theBinding) {
+			String operationName = theBinding.getDispatchOperationName();
+			String parameterName = theBinding.getDispatchRequiredParameterName();
+			if (operationName != null) {
+				myOperationToBindings.computeIfAbsent(operationName, t -> new HashMap<>()).put(thePosition, theBinding);
+			} else if (parameterName != null) {
+				myParameterToBindings.computeIfAbsent(parameterName, t -> new HashMap<>()).put(thePosition, theBinding);
+			} else {
+				myUnkeyed.put(thePosition, theBinding);
+			}
+		}
+
+		void complete() {
+			myUnkeyedList = Collections.unmodifiableList(new ArrayList<>(myUnkeyed.values()));
+		}
+	}
+
 }
@@ -110,6 +110,8 @@ public class RestfulServer extends HttpServlet implements IRestfulServer<Servlet
 	private IInterceptorService myInterceptorService;
 	private BundleInclusionRule myBundleInclusionRule = BundleInclusionRule.BASED_ON_INCLUDES;
 	private boolean myDefaultPrettyPrint = false;
+	private boolean myJsonResponseOutputStreamEnabled = false;
+	private boolean myBundleEntryStreamingEnabled = false;
 	private EncodingEnum myDefaultResponseEncoding = EncodingEnum.JSON;
 	private ETagSupportEnum myETagSupport = DEFAULT_ETAG_SUPPORT;
 	private FhirContext myFhirContext;
@@ -1330,6 +1332,72 @@ public class RestfulServer extends HttpServlet implements IRestfulServer<Servlet
 		myDefaultPrettyPrint = theDefaultPrettyPrint;
 	}
 
+	/**
+	 * If set to <code>true</code> (the default is <code>false</code>), JSON resource responses
+	 * are encoded directly to the servlet response stream as UTF-8 bytes using a Jackson based
+	 * writer, instead of being written through the servlet {@link java.io.Writer}. This avoids
+	 * an intermediate character encoding step and significantly reduces the CPU cost of
+	 * serializing large responses.
+	 *
+	 * @see ca.uhn.fhir.parser.IParser#encodeResourceToOutputStream(IBaseResource, java.io.OutputStream)
+	 */
+	@Override
+	public boolean isJsonResponseOutputStreamEnabled() {
+		return myJsonResponseOutputStreamEnabled;
+	}
+
+	/**
+	 * If set to <code>true</code> (the default is <code>false</code>), JSON resource responses
+	 * are encoded directly to the servlet response stream as UTF-8 bytes using a Jackson based
+	 * writer, instead of being written through the servlet {@link java.io.Writer}. This avoids
+	 * an intermediate character encoding step and significantly reduces the CPU cost of
+	 * serializing large responses.
+	 *
+	 * @see ca.uhn.fhir.parser.IParser#encodeResourceToOutputStream(IBaseResource, java.io.OutputStream)
+	 */
+	public void setJsonResponseOutputStreamEnabled(boolean theJsonResponseOutputStreamEnabled) {
+		myJsonResponseOutputStreamEnabled = theJsonResponseOutputStreamEnabled;
+	}
+
+	/**
+	 * If set to <code>true</code> (the default is <code>false</code>), search and history
+	 * Bundle responses are written incrementally: the Bundle envelope (type, total, links)
+	 * is encoded first, and the resources for each entry are then loaded from the
+	 * {@link ca.uhn.fhir.rest.api.server.IBundleProvider} in small chunks and encoded as they arrive. This keeps
+	 * memory use and time to first byte independent of the page size.
+	 * <p>
+	 * Note the following differences from the regular behaviour:
+	 * </p>
+	 * <ul>
+	 * <li>Included resources are written after the matches of the chunk which referenced them, instead of after all matches</li>
+	 * <li>A failure while loading a later chunk can not be reported with a regular error response, since the response has already been started</li>
+	 * <li>Responses are never streamed if any interceptor is registered for {@link Pointcut#SERVER_OUTGOING_RESPONSE}, since these interceptors expect to see the complete Bundle</li>
+	 * </ul>
+	 */
+	@Override
+	public boolean isBundleEntryStreamingEnabled() {
+		return myBundleEntryStreamingEnabled;
+	}
+
+	/**
+	 * If set to <code>true</code> (the default is <code>false</code>), search and history
+	 * Bundle responses are written incrementally: the Bundle envelope (type, total, links)
+	 * is encoded first, and the resources for each entry are then loaded from the
+	 * {@link ca.uhn.fhir.rest.api.server.IBundleProvider} in small chunks and encoded as they arrive. This keeps
+	 * memory use and time to first byte independent of the page size.
+	 * <p>
+	 * Note the following differences from the regular behaviour:
+	 * </p>
+	 * <ul>
+	 * <li>Included resources are written after the matches of the chunk which referenced them, instead of after all matches</li>
+	 * <li>A failure while loading a later chunk can not be reported with a regular error response, since the response has already been started</li>
+	 * <li>Responses are never streamed if any interceptor is registered for {@link Pointcut#SERVER_OUTGOING_RESPONSE}, since these interceptors expect to see the complete Bundle</li>
+	 * </ul>
+	 */
+	public void setBundleEntryStreamingEnabled(boolean theBundleEntryStreamingEnabled) {
+		myBundleEntryStreamingEnabled = theBundleEntryStreamingEnabled;
+	}
+
 	/**
 	 * If set to <code>true</code> (the default is <code>true</code>) this server will not
 	 * use the parsed request parameters (URL parameters and HTTP POST form contents) but
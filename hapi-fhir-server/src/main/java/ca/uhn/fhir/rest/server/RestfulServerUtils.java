@@ -22,6 +22,7 @@ package ca.uhn.fhir.rest.server;
 
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.context.FhirVersionEnum;
+import ca.uhn.fhir.interceptor.api.Pointcut;
 import ca.uhn.fhir.model.api.IResource;
 import ca.uhn.fhir.model.api.Include;
 import ca.uhn.fhir.model.api.ResourceMetadataKeyEnum;
@@ -43,6 +44,7 @@ import org.hl7.fhir.instance.model.api.*;
 
 import javax.servlet.http.HttpServletRequest;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Writer;
 import java.util.*;
 import java.util.regex.Matcher;
@@ -54,6 +56,19 @@ import static org.apache.commons.lang3.StringUtils.*;
 public class RestfulServerUtils {
 	static final Pattern ACCEPT_HEADER_PATTERN = Pattern.compile("\\s*([a-zA-Z0-9+.*/-]+)\\s*(;\\s*([a-zA-Z]+)\\s*=\\s*([a-zA-Z0-9.]+)\\s*)?(,?)");
 
+	/**
+	 * Request user data key for the Bundle entries which are loaded while the response
+	 * is being written (see {@link IRestfulServerDefaults#isBundleEntryStreamingEnabled()})
+	 */
+	public static final String STREAMING_BUNDLE_ENTRIES_USERDATA_KEY = RestfulServerUtils.class.getName() + "_STREAMING_BUNDLE_ENTRIES";
+	/**
+	 * Resource user data key for the complete, compact JSON encoding of a resource (including its
+	 * ID and meta), supplied by a resource provider which already has the encoded text. If the client
+	 * has asked for a plain JSON response of that resource, the text is written as-is instead of
+	 * encoding the resource again. The provider must not supply text which differs from what encoding
+	 * the resource would produce.
+	 */
+	public static final String PRE_ENCODED_JSON_USERDATA_KEY = RestfulServerUtils.class.getName() + "_PRE_ENCODED_JSON";
 	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(RestfulServerUtils.class);
 
 	private static final HashSet<String> TEXT_ENCODE_ELEMENTS = new HashSet<>(Arrays.asList("*.text", "*.id", "*.meta", "*.(mandatory)"));
@@ -116,6 +131,7 @@ public class RestfulServerUtils {
 		}
 	}
 
+	@SuppressWarnings("unchecked")
 	public static void configureResponseParser(RequestDetails theRequestDetails, IParser parser) {
 		// Pretty print
 		boolean prettyPrint = RestfulServerUtils.prettyPrintResponse(theRequestDetails.getServer(), theRequestDetails);
@@ -123,6 +139,12 @@ public class RestfulServerUtils {
 		parser.setPrettyPrint(prettyPrint);
 		parser.setServerBaseUrl(theRequestDetails.getFhirServerBase());
 
+		// Bundle entries which are loaded as they are encoded
+		Iterator<? extends IBase> streamingEntries = (Iterator<? extends IBase>) theRequestDetails.getUserData().remove(STREAMING_BUNDLE_ENTRIES_USERDATA_KEY);
+		if (streamingEntries != null) {
+			parser.setStreamingBundleEntries(streamingEntries);
+		}
+
 		// Summary mode
 		Set<SummaryEnum> summaryMode = RestfulServerUtils.determineSummaryMode(theRequestDetails);
 
@@ -856,6 +878,26 @@ public class RestfulServerUtils {
 		}
 		String charset = Constants.CHARSET_NAME_UTF8;
 
+		// If the resource has already been encoded and nothing would change the encoded form, write it as-is
+		if (!encodingDomainResourceAsText) {
+			String preEncodedJson = getPreEncodedJsonOrNull(theServer, theResource, theSummaryMode, responseEncoding, theRequestDetails);
+			if (preEncodedJson != null) {
+				Writer writer = response.getResponseWriter(theStatusCode, theStatusMessage, contentType, charset, respondGzip);
+				writer.append(preEncodedJson);
+				return response.sendWriterResponse(theStatusCode, contentType, charset, writer);
+			}
+		}
+
+		// If enabled, encode JSON straight to the response stream as UTF-8 bytes
+		if (theResource != null && !encodingDomainResourceAsText && responseEncoding.getEncoding() == EncodingEnum.JSON && theServer.isJsonResponseOutputStreamEnabled()) {
+			OutputStream outputStream = response.getResponseOutputStream(theStatusCode, theStatusMessage, contentType, respondGzip);
+			if (outputStream != null) {
+				IParser parser = getNewParser(theServer.getFhirContext(), theResource.getStructureFhirVersionEnum(), theRequestDetails);
+				parser.encodeResourceToOutputStream(theResource, outputStream);
+				return outputStream;
+			}
+		}
+
 		Writer writer = response.getResponseWriter(theStatusCode, theStatusMessage, contentType, charset, respondGzip);
 		if (theResource == null) {
 			// No response is being returned
@@ -878,6 +920,38 @@ public class RestfulServerUtils {
 		return response.sendWriterResponse(theStatusCode, contentType, charset, writer);
 	}
 
+	private static String getPreEncodedJsonOrNull(IRestfulServerDefaults theServer, IBaseResource theResource, Set<SummaryEnum> theSummaryMode, ResponseEncoding theResponseEncoding, RequestDetails theRequestDetails) {
+		if (!(theResource instanceof IAnyResource)) {
+			return null;
+		}
+		Object preEncodedJson = ((IAnyResource) theResource).getUserData(PRE_ENCODED_JSON_USERDATA_KEY);
+		if (!(preEncodedJson instanceof String)) {
+			return null;
+		}
+		if (theResponseEncoding.getEncoding() != EncodingEnum.JSON) {
+			return null;
+		}
+		if (theResource.getStructureFhirVersionEnum() != theServer.getFhirContext().getVersion().getVersion()) {
+			return null;
+		}
+		if (prettyPrintResponse(theServer, theRequestDetails)) {
+			return null;
+		}
+		if (!theSummaryMode.isEmpty() && !theSummaryMode.equals(Collections.singleton(SummaryEnum.FALSE))) {
+			return null;
+		}
+		if (ElementsParameter.getElementsValueOrNull(theRequestDetails, false) != null || ElementsParameter.getElementsValueOrNull(theRequestDetails, true) != null) {
+			return null;
+		}
+
+		// Interceptors may have modified the resource after it was encoded
+		if (theRequestDetails.getInterceptorBroadcaster() != null && theRequestDetails.getInterceptorBroadcaster().hasHooks(Pointcut.SERVER_OUTGOING_RESPONSE)) {
+			return null;
+		}
+
+		return (String) preEncodedJson;
+	}
+
 	// static Integer tryToExtractNamedParameter(HttpServletRequest theRequest, String name) {
 	// String countString = theRequest.getParameter(name);
 	// Integer count = null;
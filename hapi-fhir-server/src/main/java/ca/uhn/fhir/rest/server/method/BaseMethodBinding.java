@@ -31,6 +31,7 @@ import ca.uhn.fhir.rest.annotation.*;
 import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.rest.api.EncodingEnum;
 import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.api.RequestTypeEnum;
 import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
 import ca.uhn.fhir.rest.api.server.IBundleProvider;
 import ca.uhn.fhir.rest.api.server.IRestfulServer;
@@ -211,6 +212,39 @@ public abstract class BaseMethodBinding<T> {
 		return getRestOperationType();
 	}
 
+	/**
+	 * Returns the request types which this method can possibly match, or <code>null</code> if
+	 * it may match any request type. This is used to build the dispatch index in
+	 * {@link ca.uhn.fhir.rest.server.ResourceBinding}, so that methods which can not match
+	 * a request are never tested against it. Subclasses must never return a value which
+	 * would exclude a request that {@link #incomingServerRequestMatchesMethod(RequestDetails)}
+	 * could accept.
+	 */
+	public Set<RequestTypeEnum> getDispatchRequestTypes() {
+		return null;
+	}
+
+	/**
+	 * Returns the operation name (as returned by {@link RequestDetails#getOperation()}) which a
+	 * request must have in order to possibly match this method, or <code>null</code>
+	 *
+	 * @see #getDispatchRequestTypes()
+	 */
+	public String getDispatchOperationName() {
+		return null;
+	}
+
+	/**
+	 * Returns the name of a parameter which must be present in a request (either exactly
+	 * or with a qualifier such as <code>:exact</code>) in order to possibly match this
+	 * method, or <code>null</code>
+	 *
+	 * @see #getDispatchRequestTypes()
+	 */
+	public String getDispatchRequiredParameterName() {
+		return null;
+	}
+
 	public abstract boolean incomingServerRequestMatchesMethod(RequestDetails theRequest);
 
 	public abstract Object invokeServer(IRestfulServer<?> theServer, RequestDetails theRequest) throws BaseServerResponseException, IOException;
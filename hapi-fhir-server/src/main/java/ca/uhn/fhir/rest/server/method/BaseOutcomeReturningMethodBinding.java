@@ -106,6 +106,16 @@ abstract class BaseOutcomeReturningMethodBinding extends BaseMethodBinding<Metho
 		}
 	}
 
+	@Override
+	public Set<RequestTypeEnum> getDispatchRequestTypes() {
+		return provideAllowableRequestTypes();
+	}
+
+	@Override
+	public String getDispatchOperationName() {
+		return getMatchingOperation();
+	}
+
 	@Override
 	public boolean incomingServerRequestMatchesMethod(RequestDetails theRequest) {
 		Set<RequestTypeEnum> allowableRequestTypes = provideAllowableRequestTypes();
@@ -3,6 +3,7 @@ package ca.uhn.fhir.rest.server.method;
 import ca.uhn.fhir.context.ConfigurationException;
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.interceptor.api.HookParams;
+import ca.uhn.fhir.interceptor.api.IInterceptorBroadcaster;
 import ca.uhn.fhir.interceptor.api.Pointcut;
 import ca.uhn.fhir.model.api.IResource;
 import ca.uhn.fhir.model.api.Include;
@@ -59,6 +60,10 @@ import static org.apache.commons.lang3.StringUtils.isNotBlank;
 
 public abstract class BaseResourceReturningMethodBinding extends BaseMethodBinding<Object> {
 	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(BaseResourceReturningMethodBinding.class);
+	/**
+	 * Request user data key which marks a request whose Bundle entries should be streamed
+	 */
+	private static final String STREAM_BUNDLE_ENTRIES_USERDATA_KEY = BaseResourceReturningMethodBinding.class.getName() + "_STREAM_BUNDLE_ENTRIES";
 
 	private MethodReturnTypeEnum myMethodReturnType;
 	private String myResourceName;
@@ -114,14 +119,24 @@ public abstract class BaseResourceReturningMethodBinding extends BaseMethodBindi
 																IBundleProvider theResult, int theOffset, BundleTypeEnum theBundleType, EncodingEnum theLinkEncoding, String theSearchId) {
 		IVersionSpecificBundleFactory bundleFactory = theServer.getFhirContext().newBundleFactory();
 
+		/*
+		 * If the entries are being streamed, only the first chunk of resources is loaded
+		 * here. The rest are loaded as the response is written.
+		 */
+		boolean streamEntries = Boolean.TRUE.equals(theRequest.getUserData().get(STREAM_BUNDLE_ENTRIES_USERDATA_KEY));
+
 		int numToReturn;
+		int numToLoad;
+		int fromIndex;
 		String searchId = null;
 		List<IBaseResource> resourceList;
 		Integer numTotalResults = theResult.size();
 		if (theServer.getPagingProvider() == null) {
 			numToReturn = numTotalResults;
+			numToLoad = determineNumberToLoad(theResult, numToReturn, streamEntries);
+			fromIndex = 0;
 			if (numToReturn > 0) {
-				resourceList = theResult.getResources(0, numToReturn);
+				resourceList = theResult.getResources(0, numToLoad);
 			} else {
 				resourceList = Collections.emptyList();
 			}
@@ -139,8 +154,10 @@ public abstract class BaseResourceReturningMethodBinding extends BaseMethodBindi
 				numToReturn = Math.min(numToReturn, numTotalResults - theOffset);
 			}
 
+			numToLoad = determineNumberToLoad(theResult, numToReturn, streamEntries);
+			fromIndex = theOffset;
 			if (numToReturn > 0 || theResult.getCurrentPageId() != null) {
-				resourceList = theResult.getResources(theOffset, numToReturn + theOffset);
+				resourceList = theResult.getResources(theOffset, numToLoad + theOffset);
 			} else {
 				resourceList = Collections.emptyList();
 			}
@@ -163,32 +180,7 @@ public abstract class BaseResourceReturningMethodBinding extends BaseMethodBindi
 			}
 		}
 
-		/*
-		 * Remove any null entries in the list - This generally shouldn't happen but can if
-		 * data has been manually purged from the JPA database
-		 */
-		boolean hasNull = false;
-		for (IBaseResource next : resourceList) {
-			if (next == null) {
-				hasNull = true;
-				break;
-			}
-		}
-		if (hasNull) {
-			resourceList.removeIf(Objects::isNull);
-		}
-
-		/*
-		 * Make sure all returned resources have an ID (if not, this is a bug
-		 * in the user server code)
-		 */
-		for (IBaseResource next : resourceList) {
-			if (next.getIdElement() == null || next.getIdElement().isEmpty()) {
-				if (!(next instanceof IBaseOperationOutcome)) {
-					throw new InternalErrorException("Server method returned resource of type[" + next.getClass().getSimpleName() + "] with no ID specified (IResource#setId(IdDt) must be called)");
-				}
-			}
-		}
+		removeNullsAndValidateResourceIds(resourceList);
 
 		String serverBase = theRequest.getFhirServerBase();
 		boolean prettyPrint = RestfulServerUtils.prettyPrintResponse(theServer, theRequest);
@@ -224,7 +216,12 @@ public abstract class BaseResourceReturningMethodBinding extends BaseMethodBindi
 		}
 
 		bundleFactory.addRootPropertiesToBundle(theResult.getUuid(), serverBase, theLinkSelf, linkPrev, linkNext, theResult.size(), theBundleType, theResult.getPublished());
-		bundleFactory.addResourcesToBundle(new ArrayList<>(resourceList), theBundleType, serverBase, theServer.getBundleInclusionRule(), theIncludes);
+		if (streamEntries) {
+			StreamingBundleEntryIterator entries = new StreamingBundleEntryIterator(theServer.getFhirContext(), theResult, resourceList, fromIndex + numToLoad, fromIndex + numToReturn, theBundleType, serverBase, theServer.getBundleInclusionRule(), theIncludes);
+			theRequest.getUserData().put(RestfulServerUtils.STREAMING_BUNDLE_ENTRIES_USERDATA_KEY, entries);
+		} else {
+			bundleFactory.addResourcesToBundle(new ArrayList<>(resourceList), theBundleType, serverBase, theServer.getBundleInclusionRule(), theIncludes);
+		}
 
 		if (theServer.getPagingProvider() != null) {
 			int limit;
@@ -237,6 +234,43 @@ public abstract class BaseResourceReturningMethodBinding extends BaseMethodBindi
 
 	}
 
+	private static int determineNumberToLoad(IBundleProvider theResult, int theNumToReturn, boolean theStreamEntries) {
+		// Named pages can't be loaded partially
+		if (theStreamEntries && theResult.getCurrentPageId() == null) {
+			return Math.min(theNumToReturn, StreamingBundleEntryIterator.CHUNK_SIZE);
+		}
+		return theNumToReturn;
+	}
+
+	static void removeNullsAndValidateResourceIds(List<IBaseResource> theResourceList) {
+		/*
+		 * Remove any null entries in the list - This generally shouldn't happen but can if
+		 * data has been manually purged from the JPA database
+		 */
+		boolean hasNull = false;
+		for (IBaseResource next : theResourceList) {
+			if (next == null) {
+				hasNull = true;
+				break;
+			}
+		}
+		if (hasNull) {
+			theResourceList.removeIf(Objects::isNull);
+		}
+
+		/*
+		 * Make sure all returned resources have an ID (if not, this is a bug
+		 * in the user server code)
+		 */
+		for (IBaseResource next : theResourceList) {
+			if (next.getIdElement() == null || next.getIdElement().isEmpty()) {
+				if (!(next instanceof IBaseOperationOutcome)) {
+					throw new InternalErrorException("Server method returned resource of type[" + next.getClass().getSimpleName() + "] with no ID specified (IResource#setId(IdDt) must be called)");
+				}
+			}
+		}
+	}
+
 	public IBaseResource doInvokeServer(IRestfulServer<?> theServer, RequestDetails theRequest) {
 		Object[] params = createMethodParams(theRequest);
 
@@ -377,7 +411,20 @@ public abstract class BaseResourceReturningMethodBinding extends BaseMethodBindi
 	@Override
 	public Object invokeServer(IRestfulServer<?> theServer, RequestDetails theRequest) throws BaseServerResponseException, IOException {
 
-		IBaseResource response = doInvokeServer(theServer, theRequest);
+		boolean streamEntries = isStreamBundleEntries(theServer, theRequest);
+		if (streamEntries) {
+			theRequest.getUserData().put(STREAM_BUNDLE_ENTRIES_USERDATA_KEY, Boolean.TRUE);
+		}
+
+		IBaseResource response;
+		try {
+			response = doInvokeServer(theServer, theRequest);
+		} finally {
+			if (streamEntries) {
+				// The marker is only needed while the Bundle is being built
+				theRequest.getUserData().remove(STREAM_BUNDLE_ENTRIES_USERDATA_KEY);
+			}
+		}
 		if (response == null) {
 			return null;
 		}
@@ -422,6 +469,18 @@ public abstract class BaseResourceReturningMethodBinding extends BaseMethodBindi
 		RESOURCE
 	}
 
+	/**
+	 * Bundle entries can only be loaded while the response is being written if nothing
+	 * needs to see the complete Bundle before that
+	 */
+	private boolean isStreamBundleEntries(IRestfulServer<?> theServer, RequestDetails theRequest) {
+		if (!theServer.isBundleEntryStreamingEnabled() || getReturnType() != ReturnTypeEnum.BUNDLE) {
+			return false;
+		}
+		IInterceptorBroadcaster broadcaster = theRequest.getInterceptorBroadcaster();
+		return broadcaster == null || !broadcaster.hasHooks(Pointcut.SERVER_OUTGOING_RESPONSE);
+	}
+
 	public static boolean callOutgoingResponseHook(RequestDetails theRequest, ResponseDetails theResponseDetails) {
 		HttpServletRequest servletRequest = null;
 		HttpServletResponse servletResponse = null;
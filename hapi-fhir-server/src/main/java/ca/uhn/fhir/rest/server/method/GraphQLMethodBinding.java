@@ -68,6 +68,11 @@ public class GraphQLMethodBinding extends BaseMethodBinding<String> {
 		return true;
 	}
 
+	@Override
+	public String getDispatchOperationName() {
+		return Constants.OPERATION_NAME_GRAPHQL;
+	}
+
 	@Override
 	public boolean incomingServerRequestMatchesMethod(RequestDetails theRequest) {
 		if (Constants.OPERATION_NAME_GRAPHQL.equals(theRequest.getOperation())) {
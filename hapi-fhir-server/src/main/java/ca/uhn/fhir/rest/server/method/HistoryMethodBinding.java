@@ -103,6 +103,11 @@ public class HistoryMethodBinding extends BaseResourceReturningMethodBinding {
 		return ReturnTypeEnum.BUNDLE;
 	}
 
+	@Override
+	public String getDispatchOperationName() {
+		return Constants.PARAM_HISTORY;
+	}
+
 	// ObjectUtils.equals is replaced by a JDK7 method..
 	@Override
 	public boolean incomingServerRequestMatchesMethod(RequestDetails theRequest) {
@@ -49,7 +49,9 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 import static org.apache.commons.lang3.StringUtils.isBlank;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
@@ -215,6 +217,16 @@ public class OperationMethodBinding extends BaseResourceReturningMethodBinding {
 		return myReturnType;
 	}
 
+	@Override
+	public Set<RequestTypeEnum> getDispatchRequestTypes() {
+		return EnumSet.of(RequestTypeEnum.GET, RequestTypeEnum.POST);
+	}
+
+	@Override
+	public String getDispatchOperationName() {
+		return WILDCARD_NAME.equals(myName) ? null : myName;
+	}
+
 	@Override
 	public boolean incomingServerRequestMatchesMethod(RequestDetails theRequest) {
 		if (isBlank(theRequest.getOperation())) {
@@ -50,7 +50,9 @@ import javax.annotation.Nonnull;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 
@@ -112,6 +114,11 @@ public class ReadMethodBinding extends BaseResourceReturningMethodBinding {
 		return ReturnTypeEnum.RESOURCE;
 	}
 
+	@Override
+	public Set<RequestTypeEnum> getDispatchRequestTypes() {
+		return EnumSet.of(RequestTypeEnum.GET, RequestTypeEnum.HEAD);
+	}
+
 	@Override
 	public boolean incomingServerRequestMatchesMethod(RequestDetails theRequest) {
 		if (!theRequest.getResourceName().equals(getResourceName())) {
@@ -41,11 +41,13 @@ import org.hl7.fhir.instance.model.api.IBaseResource;
 import javax.annotation.Nonnull;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
 
 import static org.apache.commons.lang3.StringUtils.isBlank;
@@ -186,7 +188,15 @@ public class ResourceParameter implements IParameter {
 		parser.setServerBaseUrl(theRequest.getFhirServerBase());
 		T retVal;
 		try {
-			if (theResourceType != null) {
+			if (encoding == EncodingEnum.XML && StandardCharsets.UTF_8.equals(charset)) {
+				// The XML parser can decode UTF-8 bytes itself, which is cheaper than going through a Reader
+				InputStream requestStream = new ByteArrayInputStream(theRequest.loadRequestContents());
+				if (theResourceType != null) {
+					retVal = parser.parseResource(theResourceType, requestStream);
+				} else {
+					retVal = (T) parser.parseResource(requestStream);
+				}
+			} else if (theResourceType != null) {
 				retVal = parser.parseResource(theResourceType, requestReader);
 			} else {
 				retVal = (T) parser.parseResource(requestReader);
@@ -126,6 +126,21 @@ public class SearchMethodBinding extends BaseResourceReturningMethodBinding {
 			return ReturnTypeEnum.BUNDLE;
 	}
 
+	@Override
+	public Set<RequestTypeEnum> getDispatchRequestTypes() {
+		return EnumSet.of(RequestTypeEnum.GET, RequestTypeEnum.POST);
+	}
+
+	@Override
+	public String getDispatchRequiredParameterName() {
+		for (IParameter next : getParameters()) {
+			if (next instanceof BaseQueryParameter && ((BaseQueryParameter) next).isRequired()) {
+				return ((BaseQueryParameter) next).getName();
+			}
+		}
+		return null;
+	}
+
 	@Override
 	public boolean incomingServerRequestMatchesMethod(RequestDetails theRequest) {
 		
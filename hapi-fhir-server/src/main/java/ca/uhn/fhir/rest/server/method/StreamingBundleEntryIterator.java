@@ -0,0 +1,196 @@
+package ca.uhn.fhir.rest.server.method;
+
+/*
+ * #%L
+ * HAPI FHIR - Server Framework
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.context.BaseRuntimeChildDefinition;
+import ca.uhn.fhir.context.BaseRuntimeElementCompositeDefinition;
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.RuntimeResourceDefinition;
+import ca.uhn.fhir.context.api.BundleInclusionRule;
+import ca.uhn.fhir.model.api.Include;
+import ca.uhn.fhir.model.valueset.BundleEntrySearchModeEnum;
+import ca.uhn.fhir.model.valueset.BundleTypeEnum;
+import ca.uhn.fhir.rest.api.IVersionSpecificBundleFactory;
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import ca.uhn.fhir.rest.server.RestfulServerUtils;
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.instance.model.api.IPrimitiveType;
+
+import java.util.*;
+
+/**
+ * Supplies the <code>Bundle.entry</code> values for a page of search or history results,
+ * loading the resources from the {@link IBundleProvider} a chunk at a time as the entries
+ * are consumed by the parser. Entries are created by the regular {@link IVersionSpecificBundleFactory}
+ * so they are identical to the ones in a Bundle built in one go, except that the included
+ * resources for each chunk follow the matches for that chunk.
+ * <p>
+ * Entries are classified by their <code>Bundle.entry.search.mode</code>, since a provider may
+ * return included resources in the same list as the matches (as the JPA server does). Matches are
+ * always written. Included resources are only written if no entry with the same ID has already
+ * been written, so a resource which is included by one chunk and matched by a later one appears
+ * twice: once as an include, and again as a match.
+ * </p>
+ */
+class StreamingBundleEntryIterator implements Iterator<IBase> {
+
+	static final int CHUNK_SIZE = 50;
+
+	private final FhirContext myContext;
+	private final IBundleProvider myResult;
+	private final int myToIndex;
+	private final BundleTypeEnum myBundleType;
+	private final String myServerBase;
+	private final BundleInclusionRule myBundleInclusionRule;
+	private final Set<Include> myIncludes;
+	private final Set<String> myAddedResourceIds = new HashSet<>();
+	private List<IBaseResource> myNextChunk;
+	private int myNextIndex;
+	private Iterator<IBase> myEntries = Collections.emptyIterator();
+	private IBase myNext;
+
+	/**
+	 * Constructor
+	 *
+	 * @param theFirstChunk The resources at the start of the page, which have already been loaded
+	 * @param theNextIndex  The index of the first resource after those in <code>theFirstChunk</code>
+	 * @param theToIndex    The index after the last resource on the page
+	 */
+	StreamingBundleEntryIterator(FhirContext theContext, IBundleProvider theResult, List<IBaseResource> theFirstChunk, int theNextIndex, int theToIndex, BundleTypeEnum theBundleType,
+										  String theServerBase, BundleInclusionRule theBundleInclusionRule, Set<Include> theIncludes) {
+		myContext = theContext;
+		myResult = theResult;
+		myNextChunk = theFirstChunk;
+		myNextIndex = theNextIndex;
+		myToIndex = theToIndex;
+		myBundleType = theBundleType;
+		myServerBase = theServerBase;
+		myBundleInclusionRule = theBundleInclusionRule;
+		myIncludes = theIncludes;
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (myNext == null) {
+			if (myEntries.hasNext()) {
+				IBase next = myEntries.next();
+				if (shouldAdd(next)) {
+					myNext = next;
+				}
+				continue;
+			}
+
+			if (myNextChunk == null) {
+				if (myNextIndex >= myToIndex) {
+					return false;
+				}
+				int toIndex = Math.min(myNextIndex + CHUNK_SIZE, myToIndex);
+				myNextChunk = myResult.getResources(myNextIndex, toIndex);
+				RestfulServerUtils.validateResourceListNotNull(myNextChunk);
+				if (myNextChunk.isEmpty()) {
+					// The provider has fewer resources than expected
+					myNextIndex = myToIndex;
+				} else {
+					BaseResourceReturningMethodBinding.removeNullsAndValidateResourceIds(myNextChunk);
+					myNextIndex = toIndex;
+				}
+			}
+
+			myEntries = createEntries(myNextChunk).iterator();
+			myNextChunk = null;
+		}
+		return true;
+	}
+
+	@Override
+	public IBase next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		IBase retVal = myNext;
+		myNext = null;
+		return retVal;
+	}
+
+	private List<IBase> createEntries(List<IBaseResource> theResources) {
+		IVersionSpecificBundleFactory bundleFactory = myContext.newBundleFactory();
+		bundleFactory.addRootPropertiesToBundle(null, myServerBase, null, null, null, null, myBundleType, null);
+		bundleFactory.addResourcesToBundle(new ArrayList<>(theResources), myBundleType, myServerBase, myBundleInclusionRule, myIncludes);
+
+		IBaseResource bundle = bundleFactory.getResourceBundle();
+		RuntimeResourceDefinition bundleDef = myContext.getResourceDefinition(bundle);
+		return new ArrayList<>(bundleDef.getChildByName("entry").getAccessor().getValues(bundle));
+	}
+
+	/**
+	 * Entries for matches are always added. An included resource is only added if no
+	 * match or include with the same ID has already been added.
+	 */
+	private boolean shouldAdd(IBase theEntry) {
+		BaseRuntimeElementCompositeDefinition<?> entryDef = (BaseRuntimeElementCompositeDefinition<?>) myContext.getElementDefinition(theEntry.getClass());
+		BaseRuntimeChildDefinition resourceChild = entryDef.getChildByName("resource");
+		List<IBase> resources = resourceChild.getAccessor().getValues(theEntry);
+		if (resources.isEmpty()) {
+			return true;
+		}
+
+		IBaseResource resource = (IBaseResource) resources.get(0);
+		IIdType id = resource.getIdElement();
+		if (id == null || !id.hasIdPart()) {
+			return true;
+		}
+		// History Bundles can contain several versions of the same resource
+		String key = myContext.getResourceDefinition(resource).getName() + "/" + id.getIdPart();
+		if (id.hasVersionIdPart()) {
+			key = key + "/_history/" + id.getVersionIdPart();
+		}
+
+		boolean added = myAddedResourceIds.add(key);
+		return added || !isInclude(entryDef, theEntry);
+	}
+
+	/**
+	 * Returns <code>true</code> if the <code>Bundle.entry.search.mode</code> of the given
+	 * entry is <code>include</code>
+	 */
+	private boolean isInclude(BaseRuntimeElementCompositeDefinition<?> theEntryDef, IBase theEntry) {
+		BaseRuntimeChildDefinition searchChild = theEntryDef.getChildByName("search");
+		if (searchChild == null) {
+			return false;
+		}
+		List<IBase> searches = searchChild.getAccessor().getValues(theEntry);
+		if (searches.isEmpty()) {
+			return false;
+		}
+
+		IBase search = searches.get(0);
+		BaseRuntimeElementCompositeDefinition<?> searchDef = (BaseRuntimeElementCompositeDefinition<?>) myContext.getElementDefinition(search.getClass());
+		List<IBase> modes = searchDef.getChildByName("mode").getAccessor().getValues(search);
+		if (modes.isEmpty()) {
+			return false;
+		}
+		String mode = ((IPrimitiveType<?>) modes.get(0)).getValueAsString();
+		return BundleEntrySearchModeEnum.INCLUDE.getCode().equals(mode);
+	}
+
+}
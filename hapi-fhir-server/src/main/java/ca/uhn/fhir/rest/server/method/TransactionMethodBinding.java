@@ -22,8 +22,10 @@ package ca.uhn.fhir.rest.server.method;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 
 import java.lang.reflect.Method;
+import java.util.Collections;
 import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 
 import org.hl7.fhir.instance.model.api.IBaseResource;
 
@@ -91,6 +93,11 @@ public class TransactionMethodBinding extends BaseResourceReturningMethodBinding
 		return ReturnTypeEnum.BUNDLE;
 	}
 
+	@Override
+	public Set<RequestTypeEnum> getDispatchRequestTypes() {
+		return Collections.singleton(RequestTypeEnum.POST);
+	}
+
 	@Override
 	public boolean incomingServerRequestMatchesMethod(RequestDetails theRequest) {
 		if (theRequest.getRequestType() != RequestTypeEnum.POST) {
@@ -21,6 +21,7 @@ package ca.uhn.fhir.rest.server.servlet;
  */
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
@@ -77,6 +78,20 @@ public class ServletRestfulResponse extends RestfulResponse<ServletRequestDetail
 		return theHttpResponse.getWriter();
 	}
 
+	@Override
+	public OutputStream getResponseOutputStream(int theStatusCode, String theStatusMessage, String theContentType, boolean theRespondGzip) throws IOException {
+		addHeaders();
+		HttpServletResponse theHttpResponse = getRequestDetails().getServletResponse();
+		theHttpResponse.setCharacterEncoding(Constants.CHARSET_NAME_UTF8);
+		theHttpResponse.setStatus(theStatusCode);
+		theHttpResponse.setContentType(theContentType);
+		if (theRespondGzip) {
+			theHttpResponse.addHeader(Constants.HEADER_CONTENT_ENCODING, Constants.ENCODING_GZIP);
+			return new GZIPOutputStream(theHttpResponse.getOutputStream());
+		}
+		return theHttpResponse.getOutputStream();
+	}
+
 	private void addHeaders() {
 		HttpServletResponse theHttpResponse = getRequestDetails().getServletResponse();
 		getRequestDetails().getServer().addHeadersToResponse(theHttpResponse);
@@ -57,6 +57,27 @@ public class ModelScannerDstu3Test {
 		assertEquals(Patient.class, baseDef.getImplementingClass());
 	}
 
+	@Test
+	public void testBuiltInResourceTypesResolvedByName() {
+		FhirContext ctx = FhirContext.forDstu3();
+
+		RuntimeResourceDefinition def = ctx.getResourceDefinition("observation");
+		assertEquals(Observation.class, def.getImplementingClass());
+		assertTrue(def.isStandardType());
+		assertSame(def, ctx.getResourceDefinition(FhirVersionEnum.DSTU3, "Observation"));
+		assertSame(def, ctx.getResourceDefinition(Observation.class));
+
+		assertFalse(ctx.getResourceDefinition(MyPatient.class).isStandardType());
+		assertTrue(ctx.getResourceDefinition("Patient").isStandardType());
+
+		try {
+			ctx.getResourceDefinition("FooResource");
+			fail();
+		} catch (DataFormatException e) {
+			// good
+		}
+	}
+
 	@Test
 	public void testResourceWithNoDef() {
 		try {
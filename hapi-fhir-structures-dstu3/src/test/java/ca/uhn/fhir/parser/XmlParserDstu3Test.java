@@ -43,6 +43,7 @@ import org.xmlunit.diff.DefaultNodeMatcher;
 import org.xmlunit.diff.Diff;
 import org.xmlunit.diff.ElementSelectors;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.StringReader;
 import java.nio.charset.StandardCharsets;
@@ -2995,6 +2996,45 @@ public class XmlParserDstu3Test {
 		ourCtx.newXmlParser().parseResource("FOO");
 	}
 
+	@Test
+	public void testParseFromInputStream() {
+		String input = "<Patient xmlns=\"http://hl7.org/fhir\">\n" +
+			"   <text>\n" +
+			"      <status value=\"generated\"/>\n" +
+			"      <div xmlns=\"http://www.w3.org/1999/xhtml\"><p class=\"x\">Hello <b>Zoë</b> &amp; <!-- comment -->friends</p></div>\n" +
+			"   </text>\n" +
+			"   <extension url=\"http://example.com/ext\">\n" +
+			"      <valueString value=\"Ærøskøbing\"/>\n" +
+			"   </extension>\n" +
+			"   <modifierExtension url=\"http://example.com/modext\">\n" +
+			"      <valueBoolean value=\"true\"/>\n" +
+			"   </modifierExtension>\n" +
+			"   <!--before name-->\n" +
+			"   <name>\n" +
+			"      <family value=\"Müller\"/>\n" +
+			"   </name>\n" +
+			"</Patient>";
+
+		Patient fromStream = ourCtx.newXmlParser().parseResource(Patient.class, new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)));
+		Patient fromString = ourCtx.newXmlParser().parseResource(Patient.class, input);
+
+		assertThat(fromStream.getText().getDivAsString(), containsString("<p class=\"x\">Hello <b>Zoë</b> &amp; "));
+		assertEquals(fromString.getText().getDivAsString(), fromStream.getText().getDivAsString());
+		assertEquals("Ærøskøbing", ((StringType) fromStream.getExtensionByUrl("http://example.com/ext").getValue()).getValue());
+		assertEquals(true, ((BooleanType) fromStream.getModifierExtension().get(0).getValue()).booleanValue());
+		assertEquals("Müller", fromStream.getNameFirstRep().getFamily());
+		assertThat(fromStream.getNameFirstRep().getFormatCommentsPre(), contains("before name"));
+
+		assertEquals(ourCtx.newXmlParser().encodeResourceToString(fromString), ourCtx.newXmlParser().encodeResourceToString(fromStream));
+
+		try {
+			ourCtx.newXmlParser().parseResource(new ByteArrayInputStream("<Patient xmlns=\"http://hl7.org/fhir\">\n   <active value=\"1\"/>\n</Patient>".getBytes(StandardCharsets.UTF_8)));
+			fail();
+		} catch (DataFormatException e) {
+			assertEquals("DataFormatException at [[row,col {unknown-source}]: [2,4]]: Invalid attribute value \"1\": Invalid boolean string: '1'", e.getMessage());
+		}
+	}
+
 	/**
 	 * See #366
 	 */
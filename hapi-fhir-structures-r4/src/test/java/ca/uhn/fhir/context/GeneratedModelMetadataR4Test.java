@@ -0,0 +1,151 @@
+package ca.uhn.fhir.context;
+
+import ca.uhn.fhir.model.api.annotation.Binding;
+import ca.uhn.fhir.model.api.annotation.Child;
+import ca.uhn.fhir.model.api.annotation.ChildOrder;
+import ca.uhn.fhir.model.api.annotation.Description;
+import ca.uhn.fhir.model.api.annotation.Extension;
+import ca.uhn.fhir.model.api.annotation.ResourceDef;
+import ca.uhn.fhir.util.TestUtil;
+import org.hl7.fhir.r4.model.*;
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+import static org.junit.Assert.*;
+
+public class GeneratedModelMetadataR4Test {
+
+	private static FhirContext ourCtx = FhirContext.forR4();
+
+	@Test
+	public void testGeneratedMetadataMatchesAnnotations() {
+		assertMatchesAnnotations(Patient.class);
+		assertMatchesAnnotations(Patient.ContactComponent.class);
+		assertMatchesAnnotations(Observation.class);
+		assertMatchesAnnotations(DomainResource.class);
+		assertMatchesAnnotations(Resource.class);
+		assertMatchesAnnotations(BackboneElement.class);
+		assertMatchesAnnotations(Element.class);
+		assertMatchesAnnotations(org.hl7.fhir.r4.model.Extension.class);
+		assertMatchesAnnotations(Narrative.class);
+		assertMatchesAnnotations(Quantity.class);
+		assertMatchesAnnotations(StringType.class);
+	}
+
+	@Test
+	public void testNoMetadataForOtherClasses() {
+		assertNull(GeneratedModelMetadata.forClass(FhirContext.class));
+		assertNull(GeneratedModelMetadata.forClass(MyPatient.class));
+	}
+
+	@Test
+	public void testScanWithGeneratedMetadata() {
+		RuntimeResourceDefinition def = ourCtx.getResourceDefinition(Patient.class);
+
+		BaseRuntimeChildDefinition name = def.getChildByName("name");
+		assertEquals(0, name.getMin());
+		assertEquals(Child.MAX_UNLIMITED, name.getMax());
+		assertTrue(name.isSummary());
+		assertTrue(isNotBlank(((BaseRuntimeDeclaredChildDefinition) name).getShortDefinition()));
+
+		BaseRuntimeChildDefinition deceased = def.getChildByName("deceased[x]");
+		assertTrue(deceased.isModifier());
+		assertNotNull(deceased.getChildByName("deceasedBoolean"));
+		assertNotNull(deceased.getChildByName("deceasedDateTime"));
+
+		// A custom subclass uses generated metadata for the model classes and annotations for itself
+		RuntimeResourceDefinition customDef = ourCtx.getResourceDefinition(MyPatient.class);
+		assertNotNull(customDef.getChildByName("name"));
+		RuntimeChildDeclaredExtensionDefinition favouriteColour = customDef.getDeclaredExtension("http://example.com/favouriteColour", "");
+		assertNotNull(favouriteColour);
+		assertEquals("Favourite colour", favouriteColour.getShortDefinition());
+	}
+
+	private void assertMatchesAnnotations(Class<?> theClass) {
+		GeneratedModelMetadata metadata = GeneratedModelMetadata.forClass(theClass);
+		assertNotNull(theClass.getName(), metadata);
+
+		List<String> expectedFieldNames = new ArrayList<>();
+		for (Field next : theClass.getDeclaredFields()) {
+			if (next.getAnnotation(Child.class) != null && !Modifier.isFinal(next.getModifiers())) {
+				expectedFieldNames.add(next.getName());
+			}
+		}
+		List<String> actualFieldNames = metadata.getChildFields().stream().map(t -> t.getField().getName()).collect(Collectors.toList());
+		assertEquals(theClass.getName(), expectedFieldNames, actualFieldNames);
+
+		for (GeneratedModelMetadata.ChildField next : metadata.getChildFields()) {
+			Field field = next.getField();
+			String message = theClass.getName() + "#" + field.getName();
+			assertEquals(message, theClass, field.getDeclaringClass());
+
+			Child expectedChild = field.getAnnotation(Child.class);
+			assertEquals(message, expectedChild.name(), next.getChild().name());
+			assertEquals(message, expectedChild.order(), next.getChild().order());
+			assertEquals(message, expectedChild.min(), next.getChild().min());
+			assertEquals(message, expectedChild.max(), next.getChild().max());
+			assertEquals(message, expectedChild.modifier(), next.getChild().modifier());
+			assertEquals(message, expectedChild.summary(), next.getChild().summary());
+			assertArrayEquals(message, expectedChild.type(), next.getChild().type());
+			assertEquals(message, ModelScanner.determineElementType(field), next.getElementType());
+
+			Description expectedDescription = field.getAnnotation(Description.class);
+			if (expectedDescription == null) {
+				assertNull(message, next.getDescription());
+			} else {
+				assertEquals(message, expectedDescription.shortDefinition(), next.getDescription().shortDefinition());
+				assertEquals(message, expectedDescription.formalDefinition(), next.getDescription().formalDefinition());
+			}
+
+			Extension expectedExtension = field.getAnnotation(Extension.class);
+			if (expectedExtension == null) {
+				assertNull(message, next.getExtension());
+			} else {
+				assertEquals(message, expectedExtension.url(), next.getExtension().url());
+				assertEquals(message, expectedExtension.definedLocally(), next.getExtension().definedLocally());
+				assertEquals(message, expectedExtension.isModifier(), next.getExtension().isModifier());
+			}
+
+			Binding expectedBinding = field.getAnnotation(Binding.class);
+			if (expectedBinding == null) {
+				assertNull(message, next.getBinding());
+			} else {
+				assertEquals(message, expectedBinding.valueSet(), next.getBinding().valueSet());
+			}
+		}
+
+		ChildOrder expectedChildOrder = theClass.getAnnotation(ChildOrder.class);
+		assertArrayEquals(theClass.getName(), expectedChildOrder != null ? expectedChildOrder.names() : null, metadata.getChildOrder());
+	}
+
+	@AfterClass
+	public static void afterClassClearContext() {
+		TestUtil.clearAllStaticFieldsForUnitTest();
+	}
+
+	@ResourceDef(name = "Patient", profile = "http://example.com/StructureDefinition/MyPatient")
+	public static class MyPatient extends Patient {
+		private static final long serialVersionUID = 1L;
+
+		@Child(name = "favouriteColour")
+		@Extension(url = "http://example.com/favouriteColour", definedLocally = false, isModifier = false)
+		@Description(shortDefinition = "Favourite colour")
+		private StringType myFavouriteColour;
+
+		public StringType getFavouriteColour() {
+			return myFavouriteColour;
+		}
+
+		public void setFavouriteColour(StringType theFavouriteColour) {
+			myFavouriteColour = theFavouriteColour;
+		}
+	}
+
+}
@@ -13,7 +13,9 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -444,6 +446,104 @@ public class JsonParserR4Test {
 
 	}
 
+	@Test
+	public void testParseWithStreamingParser() {
+		FhirContext ctx = FhirContext.forR4();
+		ctx.getParserOptions().setStreamingJsonParserEnabled(true);
+
+		String input = "{" +
+			"\"resourceType\":\"Bundle\"," +
+			"\"type\":\"transaction\"," +
+			"\"entry\":[" +
+			"{\"fullUrl\":\"Patient/P1\",\"resource\":{" +
+			"\"resourceType\":\"Patient\"," +
+			"\"contained\":[{\"resourceType\":\"Organization\",\"id\":\"org\",\"name\":\"ORG\"}]," +
+			"\"extension\":[{\"url\":\"http://foo\",\"valueString\":\"FOO\"}]," +
+			"\"_active\":{\"extension\":[{\"url\":\"http://bar\",\"valueString\":\"BAR\"}]}," +
+			"\"active\":true," +
+			"\"name\":[{\"family\":\"FAMILY\",\"given\":[\"G1\",\"G2\"],\"_given\":[null,{\"id\":\"g2\"}]}]," +
+			"\"_birthDate\":{\"extension\":[{\"url\":\"http://baz\",\"valueString\":\"BAZ\"}]}," +
+			"\"managingOrganization\":{\"reference\":\"#org\"}" +
+			"}}," +
+			"{\"resource\":{\"id\":\"O1\",\"resourceType\":\"Observation\",\"status\":\"final\",\"valueQuantity\":{\"value\":1.50}}}" +
+			"]}";
+
+		Bundle bundle = ctx.newJsonParser().parseResource(Bundle.class, input);
+		assertEquals(Bundle.BundleType.TRANSACTION, bundle.getType());
+		assertEquals(2, bundle.getEntry().size());
+
+		Patient patient = (Patient) bundle.getEntry().get(0).getResource();
+		assertEquals("Patient/P1", patient.getIdElement().getValue());
+		assertEquals("FOO", patient.getExtensionByUrl("http://foo").getValue().primitiveValue());
+		assertTrue(patient.getActive());
+		assertEquals("BAR", patient.getActiveElement().getExtensionByUrl("http://bar").getValue().primitiveValue());
+		assertEquals("FAMILY", patient.getNameFirstRep().getFamily());
+		assertEquals("G2", patient.getNameFirstRep().getGiven().get(1).getValue());
+		assertEquals("g2", patient.getNameFirstRep().getGiven().get(1).getId());
+		assertNull(patient.getBirthDate());
+		assertEquals("BAZ", patient.getBirthDateElement().getExtensionByUrl("http://baz").getValue().primitiveValue());
+		assertEquals("ORG", ((Organization) patient.getManagingOrganization().getResource()).getName());
+
+		Observation obs = (Observation) bundle.getEntry().get(1).getResource();
+		assertEquals("O1", obs.getIdElement().getIdPart());
+		assertEquals("1.50", obs.getValueQuantity().getValueElement().getValueAsString());
+
+		// The streaming parser should produce the same model as the tree based parser
+		Bundle treeBundle = ourCtx.newJsonParser().parseResource(Bundle.class, input);
+		assertEquals(ourCtx.newJsonParser().encodeResourceToString(treeBundle), ourCtx.newJsonParser().encodeResourceToString(bundle));
+	}
+
+	@Test
+	public void testParseWithStreamingParser_InvalidContent() {
+		FhirContext ctx = FhirContext.forR4();
+		ctx.getParserOptions().setStreamingJsonParserEnabled(true);
+
+		try {
+			ctx.newJsonParser().parseResource(Patient.class, "FOO");
+			fail();
+		} catch (DataFormatException e) {
+			assertEquals("Failed to parse JSON content, error was: Content does not appear to be FHIR JSON, first non-whitespace character was: 'F' (must be '{')", e.getMessage());
+		}
+
+		try {
+			ctx.newJsonParser().parseResource(Patient.class, "{\"active\":true}");
+			fail();
+		} catch (DataFormatException e) {
+			assertEquals("Invalid JSON content detected, missing required element: 'resourceType'", e.getMessage());
+		}
+
+		try {
+			ctx.newJsonParser().parseResource(Patient.class, "{\"resourceType\":\"Patient\",\"active\":");
+			fail();
+		} catch (DataFormatException e) {
+			assertThat(e.getMessage(), containsString("Failed to parse JSON encoded FHIR content"));
+		}
+	}
+
+	@Test
+	public void testEncodeResourceToOutputStream() throws IOException {
+		Patient patient = new Patient();
+		patient.setId("Patient/P1");
+		patient.addExtension("http://foo", new StringType("FOO \u00e9\u4e2d"));
+		patient.setActive(true);
+		patient.addName().setFamily("FAMILY").addGiven("G1").addGiven("G2");
+		patient.addIdentifier();
+		patient.getBirthDateElement().setValueAsString("2019-01-01");
+		patient.getText().setDivAsString("<div>HELLO</div>");
+
+		for (boolean prettyPrint : new boolean[]{false, true}) {
+			IParser parser = ourCtx.newJsonParser().setPrettyPrint(prettyPrint);
+			String expected = parser.encodeResourceToString(patient);
+
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			parser.encodeResourceToOutputStream(patient, bytes);
+			String actual = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+			ourLog.info(actual);
+
+			assertEquals(expected, actual);
+		}
+	}
+
 	@AfterClass
 	public static void afterClassClearContext() {
 		TestUtil.clearAllStaticFieldsForUnitTest();
@@ -0,0 +1,173 @@
+package ca.uhn.fhir.rest.server;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.annotation.*;
+import ca.uhn.fhir.rest.param.StringParam;
+import ca.uhn.fhir.rest.param.TokenParam;
+import ca.uhn.fhir.test.utilities.JettyUtil;
+import ca.uhn.fhir.util.TestUtil;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.servlet.ServletHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Parameters;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.StringType;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class MethodDispatchR4Test {
+
+	private static CloseableHttpClient ourClient;
+	private static FhirContext ourCtx = FhirContext.forR4();
+	private static String ourLastMethod;
+	private static int ourPort;
+	private static Server ourServer;
+
+	@Before
+	public void before() {
+		ourLastMethod = null;
+	}
+
+	@Test
+	public void testSearchDispatchedByRequiredParameters() throws Exception {
+		assertEquals(200, execute(new HttpGet("http://localhost:" + ourPort + "/Patient?family=SMITH")));
+		assertEquals("searchByFamily", ourLastMethod);
+
+		assertEquals(200, execute(new HttpGet("http://localhost:" + ourPort + "/Patient?family:exact=SMITH")));
+		assertEquals("searchByFamily", ourLastMethod);
+
+		assertEquals(200, execute(new HttpGet("http://localhost:" + ourPort + "/Patient?family=SMITH&given=JOHN")));
+		assertEquals("searchByFamilyAndGiven", ourLastMethod);
+
+		assertEquals(200, execute(new HttpGet("http://localhost:" + ourPort + "/Patient?identifier=foo|123")));
+		assertEquals("searchByIdentifier", ourLastMethod);
+
+		assertEquals(200, execute(new HttpGet("http://localhost:" + ourPort + "/Patient?gender=male")));
+		assertEquals("searchOptional", ourLastMethod);
+
+		assertEquals(200, execute(new HttpGet("http://localhost:" + ourPort + "/Patient")));
+		assertEquals("searchOptional", ourLastMethod);
+
+		assertEquals(200, execute(new HttpPost("http://localhost:" + ourPort + "/Patient/_search?identifier=foo|123")));
+		assertEquals("searchByIdentifier", ourLastMethod);
+
+		// No method accepts this combination of parameters
+		assertEquals(400, execute(new HttpGet("http://localhost:" + ourPort + "/Patient?identifier=foo|123&family=SMITH")));
+	}
+
+	@Test
+	public void testOtherMethodsDispatched() throws Exception {
+		assertEquals(200, execute(new HttpGet("http://localhost:" + ourPort + "/Patient/123")));
+		assertEquals("read", ourLastMethod);
+
+		assertEquals(200, execute(new HttpGet("http://localhost:" + ourPort + "/Patient/123/$everything")));
+		assertEquals("everything", ourLastMethod);
+
+		assertEquals(200, execute(new HttpPost("http://localhost:" + ourPort + "/Patient/$everything")));
+		assertEquals("everything", ourLastMethod);
+
+		assertEquals(400, execute(new HttpGet("http://localhost:" + ourPort + "/Patient/$foo")));
+		assertEquals(null, ourLastMethod);
+	}
+
+	private int execute(HttpRequestBase theRequest) throws Exception {
+		try (CloseableHttpResponse status = ourClient.execute(theRequest)) {
+			IOUtils.toString(status.getEntity().getContent(), StandardCharsets.UTF_8);
+			return status.getStatusLine().getStatusCode();
+		}
+	}
+
+	@AfterClass
+	public static void afterClassClearContext() throws Exception {
+		JettyUtil.closeServer(ourServer);
+		TestUtil.clearAllStaticFieldsForUnitTest();
+	}
+
+	@BeforeClass
+	public static void beforeClass() throws Exception {
+		ourServer = new Server(0);
+
+		ServletHandler proxyHandler = new ServletHandler();
+		RestfulServer servlet = new RestfulServer(ourCtx);
+		servlet.setResourceProviders(new DummyPatientResourceProvider());
+		ServletHolder servletHolder = new ServletHolder(servlet);
+		proxyHandler.addServletWithMapping(servletHolder, "/*");
+		ourServer.setHandler(proxyHandler);
+		JettyUtil.startServer(ourServer);
+		ourPort = JettyUtil.getPortForStartedServer(ourServer);
+
+		PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(5000, TimeUnit.MILLISECONDS);
+		HttpClientBuilder builder = HttpClientBuilder.create();
+		builder.setConnectionManager(connectionManager);
+		ourClient = builder.build();
+	}
+
+	public static class DummyPatientResourceProvider implements IResourceProvider {
+
+		@Override
+		public Class<? extends IBaseResource> getResourceType() {
+			return Patient.class;
+		}
+
+		@Operation(name = "$everything", idempotent = true)
+		public Parameters everything(@IdParam(optional = true) IdType theId) {
+			ourLastMethod = "everything";
+			Parameters retVal = new Parameters();
+			retVal.addParameter().setName("return").setValue(new StringType("OK"));
+			return retVal;
+		}
+
+		@Read
+		public Patient read(@IdParam IdType theId) {
+			ourLastMethod = "read";
+			Patient retVal = new Patient();
+			retVal.setId(theId);
+			return retVal;
+		}
+
+		@Search
+		public List<Patient> searchByFamilyAndGiven(@RequiredParam(name = Patient.SP_FAMILY) StringParam theFamily, @RequiredParam(name = Patient.SP_GIVEN) StringParam theGiven) {
+			ourLastMethod = "searchByFamilyAndGiven";
+			return Collections.emptyList();
+		}
+
+		@Search
+		public List<Patient> searchByFamily(@RequiredParam(name = Patient.SP_FAMILY) StringParam theFamily) {
+			ourLastMethod = "searchByFamily";
+			return Collections.emptyList();
+		}
+
+		@Search
+		public List<Patient> searchByIdentifier(@RequiredParam(name = Patient.SP_IDENTIFIER) TokenParam theIdentifier) {
+			ourLastMethod = "searchByIdentifier";
+			return Collections.emptyList();
+		}
+
+		@Search
+		public List<Patient> searchOptional(@OptionalParam(name = Patient.SP_GENDER) TokenParam theGender) {
+			ourLastMethod = "searchOptional";
+			return Collections.emptyList();
+		}
+
+	}
+
+}
@@ -0,0 +1,123 @@
+package ca.uhn.fhir.rest.server;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.annotation.IdParam;
+import ca.uhn.fhir.rest.annotation.Read;
+import ca.uhn.fhir.rest.server.interceptor.InterceptorAdapter;
+import ca.uhn.fhir.test.utilities.JettyUtil;
+import ca.uhn.fhir.util.TestUtil;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.servlet.ServletHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+public class PreEncodedJsonR4Test {
+
+	private static final String PRE_ENCODED = "{\"resourceType\":\"Patient\",\"id\":\"123\",\"meta\":{\"versionId\":\"2\"},\"name\":[{\"family\":\"PREENCODED\"}]}";
+	private static CloseableHttpClient ourClient;
+	private static FhirContext ourCtx = FhirContext.forR4();
+	private static int ourPort;
+	private static Server ourServer;
+	private static RestfulServer ourServlet;
+
+	@Test
+	public void testReadJsonUsesPreEncodedText() throws Exception {
+		assertEquals(PRE_ENCODED, executeRead("_format=json"));
+		assertEquals(PRE_ENCODED, executeRead("_format=json&_summary=false"));
+	}
+
+	@Test
+	public void testReadEncodedNormallyWhenOutputWouldDiffer() throws Exception {
+		assertThat(executeRead("_format=xml"), containsString("<family value=\"ENCODED\"/>"));
+		assertThat(executeRead("_format=json&_pretty=true"), containsString("\"family\": \"ENCODED\""));
+		assertThat(executeRead("_format=json&_summary=true"), not(containsString("PREENCODED")));
+		assertThat(executeRead("_format=json&_elements=name"), containsString("\"family\":\"ENCODED\""));
+		assertThat(executeRead("_format=json&_elements:exclude=gender"), containsString("\"family\":\"ENCODED\""));
+	}
+
+	@Test
+	public void testReadEncodedNormallyWhenOutgoingResponseInterceptorRegistered() throws Exception {
+		InterceptorAdapter interceptor = new InterceptorAdapter();
+		ourServlet.registerInterceptor(interceptor);
+		try {
+			assertThat(executeRead("_format=json"), containsString("\"family\":\"ENCODED\""));
+		} finally {
+			ourServlet.unregisterInterceptor(interceptor);
+		}
+	}
+
+	private String executeRead(String theParams) throws Exception {
+		HttpGet httpGet = new HttpGet("http://localhost:" + ourPort + "/Patient/123?" + theParams);
+		try (CloseableHttpResponse status = ourClient.execute(httpGet)) {
+			String responseContent = IOUtils.toString(status.getEntity().getContent(), StandardCharsets.UTF_8);
+			assertEquals(200, status.getStatusLine().getStatusCode());
+			assertEquals("W/\"2\"", status.getFirstHeader("ETag").getValue());
+			return responseContent;
+		}
+	}
+
+	@AfterClass
+	public static void afterClassClearContext() throws Exception {
+		JettyUtil.closeServer(ourServer);
+		TestUtil.clearAllStaticFieldsForUnitTest();
+	}
+
+	@BeforeClass
+	public static void beforeClass() throws Exception {
+		ourServer = new Server(0);
+
+		ServletHandler proxyHandler = new ServletHandler();
+		ourServlet = new RestfulServer(ourCtx);
+		ourServlet.setResourceProviders(new DummyPatientResourceProvider());
+		ServletHolder servletHolder = new ServletHolder(ourServlet);
+		proxyHandler.addServletWithMapping(servletHolder, "/*");
+		ourServer.setHandler(proxyHandler);
+		JettyUtil.startServer(ourServer);
+		ourPort = JettyUtil.getPortForStartedServer(ourServer);
+
+		PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(5000, TimeUnit.MILLISECONDS);
+		HttpClientBuilder builder = HttpClientBuilder.create();
+		builder.setConnectionManager(connectionManager);
+		ourClient = builder.build();
+	}
+
+	public static class DummyPatientResourceProvider implements IResourceProvider {
+
+		@Override
+		public Class<? extends IBaseResource> getResourceType() {
+			return Patient.class;
+		}
+
+		@Read
+		public Patient read(@IdParam IdType theId) {
+			Patient retVal = new Patient();
+			retVal.setId(theId.withVersion("2"));
+			retVal.getMeta().setVersionId("2");
+			retVal.addName().setFamily("ENCODED");
+			// Deliberately different from the real encoding, so that the test can tell which was used
+			retVal.setUserData(RestfulServerUtils.PRE_ENCODED_JSON_USERDATA_KEY, PRE_ENCODED);
+			return retVal;
+		}
+
+	}
+
+}
@@ -0,0 +1,219 @@
+package ca.uhn.fhir.rest.server;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.model.api.Include;
+import ca.uhn.fhir.rest.annotation.IncludeParam;
+import ca.uhn.fhir.rest.annotation.Search;
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import ca.uhn.fhir.test.utilities.JettyUtil;
+import ca.uhn.fhir.util.TestUtil;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.servlet.ServletHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Organization;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SearchStreamingBundleEntriesR4Test {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(SearchStreamingBundleEntriesR4Test.class);
+	private static CloseableHttpClient ourClient;
+	private static FhirContext ourCtx = FhirContext.forR4();
+	private static IBundleProvider ourLastBundleProvider;
+	private static boolean ourLinkToLaterMatch;
+	private static int ourPort;
+	private static Server ourServer;
+	private static RestfulServer ourServlet;
+
+	@Before
+	public void before() {
+		ourLinkToLaterMatch = false;
+		ourServlet.setBundleEntryStreamingEnabled(true);
+		ourLastBundleProvider = mock(IBundleProvider.class);
+		when(ourLastBundleProvider.size()).thenReturn(120);
+		when(ourLastBundleProvider.getResources(anyInt(), anyInt())).then(theInvocation -> {
+			int from = (Integer) theInvocation.getArguments()[0];
+			int to = (Integer) theInvocation.getArguments()[1];
+			List<IBaseResource> retVal = new ArrayList<>();
+			for (int i = from; i < to; i++) {
+				Organization org = new Organization();
+				org.setId("Organization/O" + (i % 3));
+				org.setName("ORG" + (i % 3));
+
+				Patient p = new Patient();
+				p.setId("Patient/" + i);
+				p.getManagingOrganization().setResource(org);
+				if (ourLinkToLaterMatch && i == 10) {
+					// Included by the first chunk, but matched by the second
+					Patient other = new Patient();
+					other.setId("Patient/60");
+					p.addGeneralPractitioner().setResource(other);
+				}
+				retVal.add(p);
+			}
+			return retVal;
+		});
+	}
+
+	@Test
+	public void testSearchJson() throws Exception {
+		Bundle respBundle = executeSearch("json");
+		validateBundle(respBundle);
+	}
+
+	@Test
+	public void testSearchXml() throws Exception {
+		Bundle respBundle = executeSearch("xml");
+		validateBundle(respBundle);
+	}
+
+	@Test
+	public void testResourceIncludedByEarlierChunkIsStillMatched() throws Exception {
+		ourLinkToLaterMatch = true;
+
+		ourServlet.setBundleEntryStreamingEnabled(false);
+		Bundle expected = executeSearch("json", "&_include=Patient:general-practitioner");
+		ourServlet.setBundleEntryStreamingEnabled(true);
+		Bundle actual = executeSearch("json", "&_include=Patient:general-practitioner");
+
+		assertEquals(toIds(expected, false), toIds(actual, false));
+		assertEquals(120, toIds(actual, false).size());
+		assertThat(toIds(expected, false), hasItem("Patient/60"));
+
+		// Patient/60 was already written as an include before it was matched
+		assertThat(toIds(expected, true), not(hasItem("Patient/60")));
+		List<String> expectedIncludes = toIds(expected, true);
+		expectedIncludes.add("Patient/60");
+		assertThat(toIds(actual, true), containsInAnyOrder(expectedIncludes.toArray()));
+	}
+
+	private List<String> toIds(Bundle theBundle, boolean theIncludes) {
+		List<String> retVal = new ArrayList<>();
+		for (Bundle.BundleEntryComponent next : theBundle.getEntry()) {
+			boolean include = next.getSearch().getMode() == Bundle.SearchEntryMode.INCLUDE;
+			if (include == theIncludes) {
+				retVal.add(next.getResource().getIdElement().toUnqualifiedVersionless().getValue());
+			}
+		}
+		return retVal;
+	}
+
+	private Bundle executeSearch(String theFormat) throws Exception {
+		return executeSearch(theFormat, "");
+	}
+
+	private Bundle executeSearch(String theFormat, String theExtraParams) throws Exception {
+		HttpGet httpGet = new HttpGet("http://localhost:" + ourPort + "/Patient?_count=150&_include=Patient:organization&_format=" + theFormat + theExtraParams);
+		try (CloseableHttpResponse status = ourClient.execute(httpGet)) {
+			String responseContent = IOUtils.toString(status.getEntity().getContent(), StandardCharsets.UTF_8);
+			ourLog.info(responseContent);
+			assertEquals(200, status.getStatusLine().getStatusCode());
+			if ("json".equals(theFormat)) {
+				return ourCtx.newJsonParser().parseResource(Bundle.class, responseContent);
+			}
+			return ourCtx.newXmlParser().parseResource(Bundle.class, responseContent);
+		}
+	}
+
+	private void validateBundle(Bundle theBundle) {
+		assertEquals(120, theBundle.getTotal());
+		assertEquals(Bundle.BundleType.SEARCHSET, theBundle.getType());
+		assertNotNull(theBundle.getLink(Bundle.LINK_SELF));
+
+		// Each organization is only included once, by the first chunk which references it
+		assertEquals(123, theBundle.getEntry().size());
+		Set<String> ids = new HashSet<>();
+		int matches = 0;
+		for (Bundle.BundleEntryComponent next : theBundle.getEntry()) {
+			ids.add(next.getResource().getIdElement().toUnqualifiedVersionless().getValue());
+			if (next.getResource() instanceof Patient) {
+				assertEquals("Patient/" + matches, next.getResource().getIdElement().toUnqualifiedVersionless().getValue());
+				matches++;
+			} else {
+				assertEquals(Bundle.SearchEntryMode.INCLUDE, next.getSearch().getMode());
+			}
+		}
+		assertEquals(120, matches);
+		assertEquals(123, ids.size());
+
+		// Resources are loaded in chunks
+		verify(ourLastBundleProvider).getResources(0, 50);
+		verify(ourLastBundleProvider).getResources(50, 100);
+		verify(ourLastBundleProvider).getResources(100, 120);
+	}
+
+	@AfterClass
+	public static void afterClassClearContext() throws Exception {
+		JettyUtil.closeServer(ourServer);
+		TestUtil.clearAllStaticFieldsForUnitTest();
+	}
+
+	@BeforeClass
+	public static void beforeClass() throws Exception {
+		ourServer = new Server(0);
+
+		DummyPatientResourceProvider patientProvider = new DummyPatientResourceProvider();
+
+		ServletHandler proxyHandler = new ServletHandler();
+		ourServlet = new RestfulServer(ourCtx);
+		ourServlet.setPagingProvider(new FifoMemoryPagingProvider(10).setDefaultPageSize(10).setMaximumPageSize(200));
+		ourServlet.setBundleEntryStreamingEnabled(true);
+
+		ourServlet.setResourceProviders(patientProvider);
+		ServletHolder servletHolder = new ServletHolder(ourServlet);
+		proxyHandler.addServletWithMapping(servletHolder, "/*");
+		ourServer.setHandler(proxyHandler);
+		JettyUtil.startServer(ourServer);
+		ourPort = JettyUtil.getPortForStartedServer(ourServer);
+
+		PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(5000, TimeUnit.MILLISECONDS);
+		HttpClientBuilder builder = HttpClientBuilder.create();
+		builder.setConnectionManager(connectionManager);
+		ourClient = builder.build();
+
+	}
+
+	public static class DummyPatientResourceProvider implements IResourceProvider {
+
+		@Override
+		public Class<? extends IBaseResource> getResourceType() {
+			return Patient.class;
+		}
+
+		@Search()
+		public IBundleProvider searchAll(@IncludeParam(allow = {"Patient:organization", "Patient:general-practitioner"}) Set<Include> theIncludes) {
+			return ourLastBundleProvider;
+		}
+
+	}
+
+}
@@ -222,6 +222,38 @@ public class FhirTerserR4Test {
 
 	}
 
+	@Test
+	public void testGetAllPopulatedChildElementsOfTypeReferences() {
+		Organization org = new Organization();
+		org.setName("ORG");
+
+		Practitioner practitioner = new Practitioner();
+		practitioner.setId("Practitioner/123");
+
+		Patient p = new Patient();
+		p.addName().setFamily("PATIENT");
+		p.getManagingOrganization().setResource(org);
+		p.addGeneralPractitioner().setResource(practitioner);
+		p.addGeneralPractitioner();
+		p.addLink().getOther().setReference("Patient/456");
+
+		// Circular reference back to the patient
+		org.getPartOf().setResource(new Organization().addEndpoint(new Reference(p)));
+
+		FhirTerser t = ourCtx.newTerser();
+		List<IBaseReference> refs = t.getAllPopulatedChildElementsOfType(p, IBaseReference.class);
+		assertEquals(5, refs.size());
+		assertSame(practitioner, refs.get(0).getResource());
+		assertSame(p.getManagingOrganization(), refs.get(1));
+		assertSame(org.getPartOf(), refs.get(2));
+		assertSame(p, refs.get(3).getResource());
+		assertEquals("Patient/456", refs.get(4).getReferenceElement().getValue());
+
+		// Elements of a referenced resource with no ID are included, but not of one with an ID
+		practitioner.addName().setFamily("PRACTITIONER");
+		assertThat(toStrings(t.getAllPopulatedChildElementsOfType(p, StringType.class)), containsInAnyOrder("PATIENT", "ORG", "Patient/456"));
+	}
+
 	@Test
 	public void testGetResourceReferenceInExtension() {
 		Patient p = new Patient();
@@ -288,6 +320,85 @@ public class FhirTerserR4Test {
 		Assert.assertEquals("nestedValue", ((StringType) ((Extension) values.get(0)).getValue()).getValueAsString());
 	}
 
+	@Test
+	public void testCompile() {
+		FhirTerser terser = ourCtx.newTerser();
+		FhirTerser.CompiledPath familyPath = terser.compile("Patient", "Patient.name.family");
+		assertEquals("Patient.name.family", familyPath.getPath());
+		assertSame(familyPath, ourCtx.newTerser().compile(Patient.class, "Patient.name.family"));
+
+		Patient p1 = new Patient();
+		p1.addName().setFamily("SMITH");
+		p1.addName().setFamily("JONES");
+		Patient p2 = new Patient();
+
+		List<StringType> values = familyPath.getValues(p1, StringType.class);
+		assertEquals(2, values.size());
+		assertEquals("SMITH", values.get(0).getValue());
+		assertEquals("JONES", values.get(1).getValue());
+		assertEquals(0, familyPath.getValues(p2).size());
+		assertNull(familyPath.getSingleValueOrNull(p2, StringType.class));
+
+		familyPath.getValues(p2, StringType.class, true, false).get(0).setValue("CREATED");
+		assertEquals("CREATED", p2.getNameFirstRep().getFamily());
+
+		FhirTerser.CompiledPath extensionPath = terser.compile("Patient", "Patient.extension('http://acme.org/parentExtension').extension('http://acme.org/childExtension')");
+		p1.addExtension()
+			.setUrl("http://acme.org/parentExtension")
+			.addExtension()
+			.setUrl("http://acme.org/childExtension")
+			.setValue(new StringType("nestedValue"));
+		assertEquals("nestedValue", ((StringType) extensionPath.getSingleValueOrNull(p1, Extension.class).getValue()).getValue());
+
+		Observation obs = new Observation();
+		obs.setValue(new Quantity(123L));
+		assertEquals(1, terser.compile("Observation", "Observation.valueQuantity.value").getValues(obs).size());
+		assertEquals(1, terser.compile("Observation", "Observation.value[x]").getValues(obs).size());
+		assertEquals(0, terser.compile("Observation", "Observation.valueString").getValues(obs).size());
+
+		try {
+			familyPath.getValues(obs);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("Path 'Patient.name.family' was compiled for resource type Patient and can not be applied to Observation", e.getMessage());
+		}
+
+		try {
+			terser.compile("Patient", "Patient.foo");
+			fail();
+		} catch (DataFormatException e) {
+			assertThat(e.getMessage(), Matchers.containsString("Unknown child name 'foo'"));
+		}
+	}
+
+	/**
+	 * getValues only resolves the path as far as the resource has values, so an
+	 * unknown element below an empty element is not an error (unlike compile)
+	 */
+	@Test
+	public void testGetValuesWithUnknownChildBelowEmptyElement() {
+		FhirTerser terser = ourCtx.newTerser();
+		Patient p = new Patient();
+
+		assertEquals(0, terser.getValues(p, "Patient.contact.foo").size());
+		assertNull(terser.getSingleValueOrNull(p, "Patient.contact.foo", IBase.class));
+
+		try {
+			terser.compile("Patient", "Patient.contact.foo");
+			fail();
+		} catch (DataFormatException e) {
+			assertThat(e.getMessage(), Matchers.containsString("Unknown child name 'foo'"));
+		}
+
+		p.addContact().getName().setFamily("SMITH");
+		try {
+			terser.getValues(p, "Patient.contact.foo");
+			fail();
+		} catch (DataFormatException e) {
+			assertThat(e.getMessage(), Matchers.containsString("Unknown child name 'foo'"));
+		}
+	}
+
 	@Test
 	public void testGetEmbeddedResourcesOnBundle() {
 